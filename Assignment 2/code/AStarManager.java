@@ -1,44 +1,111 @@
 import java.util.*;
 
 /**
- * A class to manage and carry out A* Searches
+ * A class to manage and carry out A* Searches. Searches run over the states of a TurnGraph rather than the nodes, so
+ * turn restrictions are obeyed no matter how many paths reach an intersection and turns can be charged for.
  */
 public class AStarManager {
 
     private static Node start;
     private static Node end;
-    private static boolean miniseTime = false;
+
+    //Search arrays are reused between searches on the same thread rather than allocated per search
+    private static ThreadLocal<SearchState> states = new ThreadLocal<>();
 
     /**
      * Preforms a search for the shortest route between the start and end node using the
      * A* Pathfinding algorithm
-     * @return      The path calculated to be the shortest
+     * @param graph     The graph to search
+     * @param metric    The metric to minimise
+     * @param mode      The mode of travel, only edges it is allowed on are used
+     * @return          The path calculated to be the shortest
+     */
+    public static List<Node> pathfind(TurnGraph graph, Metric metric, TravelMode mode){
+        return pathfind(graph, start, end, metric, mode);
+    }
+
+    /**
+     * Preforms a search for the shortest route between the two nodes provided, ignoring the selected start and end
+     * @param turnGraph The graph to search
+     * @param start     The start of the path
+     * @param end       The end of the path
+     * @param metric    The metric to minimise
+     * @param mode      The mode of travel, only edges it is allowed on are used
+     * @return          The path calculated to be the shortest
      */
-    public static List<Node> pathfind(boolean miniseTime){
+    public static List<Node> pathfind(TurnGraph turnGraph, Node start, Node end, Metric metric, TravelMode mode){
+        return pathfind(turnGraph, start, end, metric, mode, null);
+    }
+
+    /**
+     * Preforms a search for the shortest route between the two nodes provided, counting the work it does
+     * @param turnGraph The graph to search
+     * @param start     The start of the path
+     * @param end       The end of the path
+     * @param metric    The metric to minimise
+     * @param mode      The mode of travel, only edges it is allowed on are used
+     * @param stats     The stats to count the search's work in, null to not count it
+     * @return          The path calculated to be the shortest
+     */
+    public static List<Node> pathfind(TurnGraph turnGraph, Node start, Node end, Metric metric, TravelMode mode, SearchStats stats){
+        long startTime = stats == null ? 0 : System.nanoTime();
+        List<Node> path = search(turnGraph, start, end, metric, mode, stats);
+        if(stats != null) stats.setTime(System.nanoTime() - startTime);
+        return path;
+    }
+
+    private static List<Node> search(TurnGraph turnGraph, Node start, Node end, Metric metric, TravelMode mode, SearchStats stats){
+        RoutingGraph graph = turnGraph.getGraph();
         if(start == null || end == null) return new ArrayList<>();
-        AStarManager.miniseTime = miniseTime;
-        Set<Node> searched = new HashSet<>();
-        Queue<AStarNode> frontier = new PriorityQueue<>();
-        Map<Node, Node> path = new HashMap<>();     //Maps node to parent node
-        path.put(start, null);
-        frontier.add(new AStarNode(start));
-
-        while(!frontier.isEmpty()){
-            AStarNode node = frontier.poll();
-
-            if(node.node.equals(end)){
-                return reconstructPath(path, end, start);
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if(source == -1 || target == -1) return new ArrayList<>();
+
+        SearchState state = getState(turnGraph);
+        state.reset();
+        float[] weights = metric.getWeights(mode);
+        int modeMask = mode.getMask();
+        boolean restricted = mode.followsTurnRestrictions();
+        boolean turnCosts = restricted && turnGraph.hasTurnCosts() && metric.hasTurnCosts();
+        Location endLocation = end.getLocation();
+
+        int sourceState = turnGraph.startState(source);
+        state.setCost(sourceState, 0, -1);
+        state.frontier.offer(sourceState, metric.estimate(start.getLocation(), endLocation, mode));
+        if(stats != null) stats.push(state.frontier.size());
+
+        while(!state.frontier.isEmpty()){
+            int current = state.frontier.poll();
+            int node = turnGraph.getNode(current);
+            if(stats != null){
+                stats.pop();
+                stats.settle(node);
+            }
+            if(node == target){
+                return reconstructPath(turnGraph, state, current);
             }
 
-            searched.add(node.node);
-            for(Node neighbour : node.node.getOutgoingNodes()){
-                if(!searched.contains(neighbour)){
-                    if(node.node.isRestricted(path.get(node.node), neighbour)) continue;
-                    AStarNode sNode = new AStarNode(neighbour);
-                    sNode.gCost = node.gCost + calculateGCost(node.node, neighbour);
-                    sNode.hCost = calculateHeuristic(neighbour, end);
-                    frontier.offer(sNode);
-                    path.put(neighbour, node.node);
+            //The heuristic is consistent so a state is never improved once it has been settled
+            state.settled[current] = state.round;
+            float gCost = state.gCosts[current];
+            int inEdge = turnGraph.getArrivalEdge(current);
+
+            for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                if((graph.getAccess(edge) & modeMask) == 0) continue;
+                if(restricted && turnGraph.isBanned(inEdge, edge)) continue;
+                int neighbour = turnGraph.arrivalState(edge);
+                if(state.settled[neighbour] == state.round) continue;
+                float newCost = gCost + weights[edge];
+                if(turnCosts) newCost += metric.getTurnCost(turnGraph.getTurn(inEdge, edge));
+                if(stats != null) stats.relax();
+                if(newCost < state.getCost(neighbour)){
+                    boolean queued = stats != null && state.frontier.contains(neighbour);
+                    state.setCost(neighbour, newCost, current);
+                    state.frontier.offer(neighbour, newCost + metric.estimate(graph.getNode(graph.getHead(edge)).getLocation(), endLocation, mode));
+                    if(stats != null){
+                        if(queued) stats.decreaseKey();
+                        else stats.push(state.frontier.size());
+                    }
                 }
             }
         }
@@ -47,26 +114,30 @@ public class AStarManager {
 
     /**
      * Reconstructs the path provided by A*
-     * @param pathMap   The mapping of node to parent
-     * @param end       The end node of the path
-     * @param start     The start node of the path
-     * @return          A list of nodes that the path is
+     * @param turnGraph     The graph searched
+     * @param state         The finished search
+     * @param target        The state the path ends at
+     * @return              A list of nodes that the path is
      */
-    private static List<Node> reconstructPath(Map<Node, Node> pathMap, Node end, Node start){
+    private static List<Node> reconstructPath(TurnGraph turnGraph, SearchState state, int target){
+        RoutingGraph graph = turnGraph.getGraph();
         List<Node> path = new ArrayList<>();
-        Stack<Node> pathStack = new Stack<>();
-        Node node = end;
-        while(node != null){
-            pathStack.push(node);
-            node = pathMap.get(node);
+        int current = target;
+        while(current != -1){
+            path.add(graph.getNode(turnGraph.getNode(current)));
+            current = state.parentStates[current];
         }
+        Collections.reverse(path);
+        return path;
+    }
 
-        path.add(start);
-        while(!pathStack.isEmpty()){
-            path.add(pathStack.pop());
+    private static SearchState getState(TurnGraph graph){
+        SearchState state = states.get();
+        if(state == null || state.graph != graph){
+            state = new SearchState(graph);
+            states.set(state);
         }
-
-        return path;
+        return state;
     }
 
     /**
@@ -85,50 +156,55 @@ public class AStarManager {
         AStarManager.end = end;
     }
 
+    public static Node getStart() {
+        return start;
+    }
 
-    /**
-     * Calculates the heuristic value for two selected nodes based on our configuration of A*
-     * @param start The start node
-     * @param end   The end node
-     * @return      The heuristic value calculated
-     */
-    private static double calculateHeuristic(Node start, Node end){
-        if(miniseTime){
-            return start.getLocation().distance(end.getLocation()) / Main.averageSpeed;
-        }else{
-            return start.getLocation().distance(end.getLocation());
-        }
+    public static Node getEnd() {
+        return end;
     }
 
+    public static boolean isStartOrEnd(Node node){
+        if (start == null && end == null) return false;
+        if(start == null) return end.equals(node);
+        else if(end == null) return start.equals(node);
+        return start.equals(node) || end.equals(node);
+    }
 
     /**
-     * Calculates the GCost value for any two nodes based on our configuration of A*
-     * @param node          The start node
-     * @param neighbour     The end node
-     * @return              The calculated GCost
+     * The arrays used by one search, indexed by TurnGraph state and reset lazily using a round counter
      */
-    private static double calculateGCost(Node node, Node neighbour){
-        Segment segment = node.getOutgoingSegment(neighbour);
+    private static class SearchState {
+        TurnGraph graph;
+        float[] gCosts;
+        int[] parentStates;
+        int[] rounds;       //Round in which the gCost was last set
+        int[] settled;      //Round in which the node was settled
+        int round = 0;
+        NodeHeap frontier;
+
+        SearchState(TurnGraph graph){
+            this.graph = graph;
+            this.gCosts = new float[graph.getStateCount()];
+            this.parentStates = new int[graph.getStateCount()];
+            this.rounds = new int[graph.getStateCount()];
+            this.settled = new int[graph.getStateCount()];
+            this.frontier = new NodeHeap(graph.getStateCount());
+        }
 
-        if(miniseTime){
-            return (segment.getLength() / (segment.getRoad().getSpeedLimit() + segment.getRoad().getRoadClass().getIncreasedSpeed())) + (segment.getEnd().isIntersection() ? 0.05 : 0);
-        }else{
-            return segment.getLength();
+        void reset(){
+            round++;
+            frontier.clear();
         }
-    }
 
-    /**
-     * Sets our configuration of A*
-     * @param value Configuration value
-     */
-    public static void setMinimiseTime(boolean value){
-        miniseTime = value;
-    }
+        float getCost(int state){
+            return rounds[state] == round ? gCosts[state] : RoutingGraph.INFINITY;
+        }
 
-    public static boolean isStartOrEnd(Node node){
-        if (start == null && end == null) return false;
-        if(start == null) return end.equals(node);
-        else if(end == null) return start.equals(node);
-        return start.equals(node) || end.equals(node);
+        void setCost(int state, float cost, int parentState){
+            gCosts[state] = cost;
+            parentStates[state] = parentState;
+            rounds[state] = round;
+        }
     }
-}
\ No newline at end of file
+}
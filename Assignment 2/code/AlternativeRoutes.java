@@ -0,0 +1,228 @@
+import java.util.*;
+
+/**
+ * Finds alternatives to the shortest route with the via node method. A bidirectional Dijkstra search is carried on
+ * past the point where it finds the shortest route, until both its forward tree from the start and its backward tree
+ * to the end reach STRETCH times the shortest cost. Every node settled by both is a candidate via node, and its route
+ * (the forward tree's path to it followed by the backward tree's path from it) can be read straight out of the trees,
+ * so the k routes come from one search rather than k.
+ * <p>
+ * A via route is only kept if it is admissible:
+ * <ul>
+ *     <li>Limited sharing: it shares at most SHARING of the shortest cost with the routes already chosen</li>
+ *     <li>Bounded stretch: it costs at most STRETCH times the shortest cost</li>
+ *     <li>Local optimality: the stretch of LOCAL_OPTIMALITY times the shortest cost around the via node is itself a
+ *     shortest path, checked with a small search, so the route has no pointless detour in it</li>
+ * </ul>
+ * Candidates are tried cheapest cost plus sharing first. The sharing of every candidate is found at once by running
+ * back over the trees in the order they were settled, and is worked out again after each route is chosen so the
+ * nodes on its plateau don't give the same route twice. Not thread safe, each thread should have its own instance.
+ */
+public class AlternativeRoutes {
+
+    private static final double STRETCH = 1.25;
+    private static final double SHARING = 0.8;
+    private static final double LOCAL_OPTIMALITY = 0.25;
+
+    private RoutingGraph graph;
+    private DijkstraSearch forward;
+    private DijkstraSearch backward;
+    private DijkstraSearch check;                   //For the local optimality tests
+    private float[] forwardShared;                  //Cost each forward tree path shares with the chosen routes
+    private float[] backwardShared;
+    private boolean[] backwardSettled;
+    private int candidateCount = 0;
+
+    /**
+     * A route from the start to the end
+     */
+    public static class Route {
+        private List<Integer> edges;
+        private float cost;
+
+        Route(List<Integer> edges, float cost) {
+            this.edges = edges;
+            this.cost = cost;
+        }
+
+        /**
+         * @return The edges of the route in order
+         */
+        public List<Integer> getEdges(){
+            return edges;
+        }
+
+        /**
+         * @return The total weight of the route's edges
+         */
+        public float getCost(){
+            return cost;
+        }
+    }
+
+    public AlternativeRoutes(RoutingGraph graph) {
+        this.graph = graph;
+        this.forward = new DijkstraSearch(graph, false);
+        this.backward = new DijkstraSearch(graph, true);
+        this.check = new DijkstraSearch(graph, false);
+        this.forwardShared = new float[graph.getNodeCount()];
+        this.backwardShared = new float[graph.getNodeCount()];
+        this.backwardSettled = new boolean[graph.getNodeCount()];
+    }
+
+    /**
+     * Finds the shortest route between two nodes and up to count - 1 alternatives to it
+     * @param start     The start node
+     * @param end       The end node
+     * @param weights   The weight of each edge, from the metric being minimised
+     * @param count     The most routes to return
+     * @return          The shortest route followed by the alternatives, best first, empty if the end can't be reached
+     */
+    public List<Route> find(int start, int end, float[] weights, int count){
+        candidateCount = 0;
+        forward.reset();
+        backward.reset();
+        forward.addSource(start, 0);
+        backward.addSource(end, 0);
+        List<Integer> forwardOrder = new ArrayList<>();
+        List<Integer> backwardOrder = new ArrayList<>();
+
+        //The bidirectional search, always growing the side with the smaller frontier distance
+        float best = RoutingGraph.INFINITY;
+        int meeting = -1;
+        while(true){
+            float forwardKey = forward.peekDistance();
+            float backwardKey = backward.peekDistance();
+            float limit = (float) (best * STRETCH);
+            boolean canGrowForward = forwardKey != RoutingGraph.INFINITY && forwardKey <= limit;
+            boolean canGrowBackward = backwardKey != RoutingGraph.INFINITY && backwardKey <= limit;
+            if(!canGrowForward && !canGrowBackward) break;
+            boolean growForward = canGrowForward && (!canGrowBackward || forwardKey <= backwardKey);
+            DijkstraSearch search = growForward ? forward : backward;
+            DijkstraSearch other = growForward ? backward : forward;
+            int node = search.settleNext(weights);
+            (growForward ? forwardOrder : backwardOrder).add(node);
+            float through = search.getDistance(node) + other.getDistance(node);
+            if(through < best){
+                best = through;
+                meeting = node;
+            }
+        }
+        List<Route> routes = new ArrayList<>();
+        if(meeting == -1) return routes;
+        routes.add(new Route(viaEdges(meeting), best));
+
+        //Nodes settled by both trees, with the cost of the route through them
+        for(int node : backwardOrder) backwardSettled[node] = true;
+        List<Integer> candidates = new ArrayList<>();
+        for(int node : forwardOrder){
+            if(backwardSettled[node] && forward.getDistance(node) + backward.getDistance(node) <= best * STRETCH){
+                candidates.add(node);
+            }
+        }
+        candidateCount = candidates.size();
+        for(int node : backwardOrder) backwardSettled[node] = false;
+
+        boolean[] used = new boolean[graph.getEdgeCount()];
+        for(int edge : routes.get(0).getEdges()) used[edge] = true;
+        boolean[] rejected = new boolean[graph.getNodeCount()];
+        while(routes.size() < count){
+            //Shared cost of each tree path with the chosen routes, parents are always settled before their children
+            for(int node : forwardOrder){
+                int edge = forward.getParentEdge(node);
+                forwardShared[node] = edge == -1 ? 0 : forwardShared[graph.getTail(edge)] + (used[edge] ? weights[edge] : 0);
+            }
+            for(int node : backwardOrder){
+                int edge = backward.getParentEdge(node);
+                backwardShared[node] = edge == -1 ? 0 : backwardShared[graph.getHead(edge)] + (used[edge] ? weights[edge] : 0);
+            }
+
+            //Candidates by score, packed as the score's bits and the node so they sort without boxing
+            List<Long> scored = new ArrayList<>();
+            for(int node : candidates){
+                if(rejected[node]) continue;
+                float shared = forwardShared[node] + backwardShared[node];
+                if(shared > SHARING * best) continue;
+                float score = forward.getDistance(node) + backward.getDistance(node) + shared;
+                scored.add(((long) Float.floatToIntBits(score) << 32) | node);
+            }
+            Collections.sort(scored);       //Non negative floats order the same as their bits
+            int chosen = -1;
+            for(long entry : scored){
+                int node = (int) entry;
+                if(isSimple(node) && isLocallyOptimal(node, weights, (float) (LOCAL_OPTIMALITY * best))){
+                    chosen = node;
+                    break;
+                }
+                rejected[node] = true;
+            }
+            if(chosen == -1) break;
+            Route route = new Route(viaEdges(chosen), forward.getDistance(chosen) + backward.getDistance(chosen));
+            for(int edge : route.getEdges()) used[edge] = true;
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    /**
+     * @return The edges of the route through a node settled by both trees
+     */
+    private List<Integer> viaEdges(int via){
+        LinkedList<Integer> edges = new LinkedList<>();
+        for(int node = via, edge; (edge = forward.getParentEdge(node)) != -1; node = graph.getTail(edge)){
+            edges.addFirst(edge);
+        }
+        for(int node = via, edge; (edge = backward.getParentEdge(node)) != -1; node = graph.getHead(edge)){
+            edges.addLast(edge);
+        }
+        return new ArrayList<>(edges);
+    }
+
+    /**
+     * @return Whether the route through a node never visits the same node twice
+     */
+    private boolean isSimple(int via){
+        Set<Integer> visited = new HashSet<>();
+        visited.add(via);
+        for(int node = via, edge; (edge = forward.getParentEdge(node)) != -1; ){
+            node = graph.getTail(edge);
+            visited.add(node);
+        }
+        for(int node = via, edge; (edge = backward.getParentEdge(node)) != -1; ){
+            node = graph.getHead(edge);
+            if(!visited.add(node)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The T-test: walks back along the forward tree and on along the backward tree from the via node until at least
+     * window has been covered each way, then checks there is no shorter way between the two ends of the stretch
+     */
+    private boolean isLocallyOptimal(int via, float[] weights, float window){
+        int from = via;
+        int edge;
+        while(forward.getDistance(via) - forward.getDistance(from) < window && (edge = forward.getParentEdge(from)) != -1){
+            from = graph.getTail(edge);
+        }
+        int to = via;
+        while(backward.getDistance(via) - backward.getDistance(to) < window && (edge = backward.getParentEdge(to)) != -1){
+            to = graph.getHead(edge);
+        }
+        float along = forward.getDistance(via) - forward.getDistance(from) + backward.getDistance(via) - backward.getDistance(to);
+        check.reset();
+        check.addSource(from, 0);
+        int node;
+        while(check.peekDistance() < along * (1 - 1e-5f) && (node = check.settleNext(weights)) != -1){
+            if(node == to) break;
+        }
+        return check.getDistance(to) >= along * (1 - 1e-5f);
+    }
+
+    /**
+     * @return The number of via node candidates the last search had to choose from
+     */
+    public int getCandidateCount(){
+        return candidateCount;
+    }
+}
@@ -0,0 +1,123 @@
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * The betweenness of every road segment (how many shortest paths run along it, both ways added together), drawn over
+ * the map as a heat map where the busier a segment is the wider and redder its line. Can be written to and read back
+ * from a file of one segment per line (its road ID, start and end node IDs and betweenness, tab separated) so it
+ * doesn't have to be worked out again for the same map.
+ */
+public class Betweenness {
+
+    private static final float MAX_WIDTH = 8;
+
+    private Map<Segment, Double> values;        //By the segment as loaded, not its reverse
+    private double max;
+
+    public Betweenness(Map<Segment, Double> values) {
+        this.values = values;
+        this.max = values.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+    }
+
+    /**
+     * Sums the betweenness of each segment's edges
+     * @param graph         The graph the betweenness was computed on
+     * @param roads         The roads of the map
+     * @param centrality    The betweenness of each edge
+     * @return              The betweenness of each segment
+     */
+    public static Betweenness fromEdges(RoutingGraph graph, Collection<Road> roads, double[] centrality){
+        Map<Segment, Double> values = new HashMap<>();
+        for(Road road : roads){
+            for(Segment segment : road.segments){
+                double value = 0;
+                for(int edge : graph.getEdges(segment)) value += centrality[edge];
+                values.merge(segment, value, Double::sum);
+            }
+        }
+        return new Betweenness(values);
+    }
+
+    /**
+     * Draws each segment with a line as wide as its share of the busiest segment's betweenness, going from yellow to
+     * red as it gets busier
+     * @param g         The graphics pane in which to render to
+     * @param scale     The numbers of pixels per kilometer
+     * @param origin    The origin of the rendering
+     */
+    public void redraw(Graphics g, double scale, Location origin){
+        if(max == 0) return;
+        Graphics2D g2 = (Graphics2D) g;
+        Stroke stroke = g2.getStroke();
+        for(Map.Entry<Segment, Double> entry : values.entrySet()){
+            float share = (float) (entry.getValue() / max);
+            if(share < 0.01) continue;
+            g2.setStroke(new BasicStroke(1 + share * (MAX_WIDTH - 1), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            MapRenderer.drawSegment(g, entry.getKey(), scale, origin, new Color(255, (int) (220 * (1 - share)), 0));
+        }
+        g2.setStroke(stroke);
+    }
+
+    /**
+     * @param count The number of segments
+     * @return      The busiest segments, busiest first
+     */
+    public List<Segment> getTop(int count){
+        List<Segment> segments = new ArrayList<>(values.keySet());
+        segments.sort((a, b) -> Double.compare(values.get(b), values.get(a)));
+        return segments.subList(0, Math.min(count, segments.size()));
+    }
+
+    /**
+     * @return The betweenness of a segment as loaded, 0 if it isn't known
+     */
+    public double getValue(Segment segment){
+        return values.getOrDefault(segment, 0.0);
+    }
+
+    /**
+     * Writes the betweenness of every segment
+     * @param file  The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void write(File file) throws IOException {
+        try(PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))){
+            for(Map.Entry<Segment, Double> entry : values.entrySet()){
+                Segment segment = entry.getKey();
+                writer.println(segment.getRoad().getID() + "\t" + segment.getStart().getID() + "\t" + segment.getEnd().getID() + "\t" + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads back betweenness written by write
+     * @param file  The file to read
+     * @param roads The roads of the map, by ID
+     * @return      The betweenness of each segment in the file that is in the map
+     * @throws IOException If the file couldn't be read
+     */
+    public static Betweenness read(File file, IntMap<Road> roads) throws IOException {
+        Map<Segment, Double> values = new HashMap<>();
+        try(BufferedReader reader = new BufferedReader(new FileReader(file))){
+            String line;
+            while((line = reader.readLine()) != null){
+                String[] columns = line.split("\t");
+                Road road = roads.get(Integer.parseInt(columns[0]));
+                if(road == null) continue;
+                int start = Integer.parseInt(columns[1]);
+                int end = Integer.parseInt(columns[2]);
+                for(Segment segment : road.segments){
+                    if(segment.getStart().getID() == start && segment.getEnd().getID() == end && !values.containsKey(segment)){
+                        values.put(segment, Double.parseDouble(columns[3]));
+                        break;
+                    }
+                }
+            }
+        }catch(NumberFormatException | ArrayIndexOutOfBoundsException e){
+            throw new IOException("Not a betweenness file", e);
+        }
+        return new Betweenness(values);
+    }
+}
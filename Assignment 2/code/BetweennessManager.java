@@ -0,0 +1,141 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * A class to estimate the betweenness centrality of every edge, how many shortest paths between pairs of nodes run
+ * along it, to find the roads the network most depends on. It is Brandes' algorithm: a Dijkstra search from a source
+ * counting the number of shortest paths to every node, then a pass back over the nodes furthest first handing each
+ * node's share of paths back to the edges it was reached through.
+ * <p>
+ * Running it from every source is exact but costs a full search per node, so sources are sampled instead and the
+ * totals scaled up. Each sampled source's contribution to an edge, divided by the number of other nodes, lies between
+ * 0 and 1, so by Hoeffding's inequality (with a union bound over every edge) samplesFor sources are enough for every
+ * normalised estimate to be within the error bound with the given confidence. Sources are searched in parallel, each
+ * thread adding into its own accumulator, and the accumulators are summed at the end.
+ */
+public class BetweennessManager {
+
+    public static final double CONFIDENCE = 0.9;
+
+    /**
+     * Works out how many sources need sampling for every edge's estimate to be within an error bound
+     * @param graph The graph
+     * @param error The bound on the error of each edge's betweenness divided by the number of nodes - 1
+     * @return      The number of sources, which is the number of nodes if sampling would take more than every node
+     */
+    public static int samplesFor(RoutingGraph graph, double error){
+        double samples = Math.ceil(Math.log(2.0 * graph.getEdgeCount() / (1 - CONFIDENCE)) / (2 * error * error));
+        return (int) Math.min(graph.getNodeCount(), samples);
+    }
+
+    /**
+     * Estimates the betweenness of every edge
+     * @param graph     The graph
+     * @param weights   The weight of each edge, from the metric being minimised
+     * @param samples   The number of sources to search from, all of them if it is at least the number of nodes
+     * @param seed      The seed for picking the sources
+     * @return          The estimated number of shortest paths along each edge
+     */
+    public static double[] compute(RoutingGraph graph, float[] weights, int samples, long seed){
+        int nodeCount = graph.getNodeCount();
+        int[] sources = new int[nodeCount];
+        for(int i = 0; i < nodeCount; i++) sources[i] = i;
+        if(samples < nodeCount){        //The first few of a shuffle, so no source is picked twice
+            Random random = new Random(seed);
+            for(int i = 0; i < samples; i++){
+                int j = i + random.nextInt(nodeCount - i);
+                int swap = sources[i];
+                sources[i] = sources[j];
+                sources[j] = swap;
+            }
+        }
+        int sourceCount = Math.min(samples, nodeCount);
+
+        ConcurrentLinkedQueue<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Accumulator> local = ThreadLocal.withInitial(() -> {
+            Accumulator accumulator = new Accumulator(graph);
+            accumulators.add(accumulator);
+            return accumulator;
+        });
+        IntStream.range(0, sourceCount).parallel().forEach(i -> local.get().add(sources[i], weights));
+
+        double[] centrality = new double[graph.getEdgeCount()];
+        double scale = sourceCount == 0 ? 0 : (double) nodeCount / sourceCount;
+        for(Accumulator accumulator : accumulators){
+            for(int edge = 0; edge < centrality.length; edge++) centrality[edge] += accumulator.centrality[edge] * scale;
+        }
+        return centrality;
+    }
+
+    /**
+     * One thread's search state and running totals
+     */
+    private static class Accumulator {
+        private RoutingGraph graph;
+        private double[] centrality;
+        private float[] distances;
+        private double[] paths;         //Number of shortest paths from the source to each node
+        private double[] dependency;    //Share of the paths from the source through each node
+        private int[] order;            //Nodes in the order they were settled
+        private NodeHeap frontier;
+
+        Accumulator(RoutingGraph graph) {
+            this.graph = graph;
+            this.centrality = new double[graph.getEdgeCount()];
+            this.distances = new float[graph.getNodeCount()];
+            this.paths = new double[graph.getNodeCount()];
+            this.dependency = new double[graph.getNodeCount()];
+            this.order = new int[graph.getNodeCount()];
+            this.frontier = new NodeHeap(graph.getNodeCount());
+            Arrays.fill(distances, RoutingGraph.INFINITY);
+        }
+
+        /**
+         * Adds the shortest paths from one source
+         */
+        void add(int source, float[] weights){
+            int settled = 0;
+            distances[source] = 0;
+            paths[source] = 1;
+            frontier.offer(source, 0);
+            while(!frontier.isEmpty()){
+                int node = frontier.poll();
+                order[settled++] = node;
+                for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                    if(weights[edge] == RoutingGraph.INFINITY) continue;
+                    int head = graph.getHead(edge);
+                    float distance = distances[node] + weights[edge];
+                    if(distance < distances[head]){
+                        distances[head] = distance;
+                        paths[head] = paths[node];
+                        frontier.offer(head, distance);
+                    }else if(distance == distances[head]){
+                        paths[head] += paths[node];
+                    }
+                }
+            }
+
+            //Furthest first, every node has had its dependency added to by the nodes it leads to before it passes it on
+            for(int i = settled - 1; i > 0; i--){
+                int node = order[i];
+                double share = (1 + dependency[node]) / paths[node];
+                for(int j = graph.firstIn(node); j < graph.endIn(node); j++){
+                    int edge = graph.inEdge(j);
+                    int tail = graph.getTail(edge);
+                    if(weights[edge] != RoutingGraph.INFINITY && distances[tail] + weights[edge] == distances[node]){
+                        double contribution = paths[tail] * share;
+                        centrality[edge] += contribution;
+                        dependency[tail] += contribution;
+                    }
+                }
+            }
+
+            for(int i = 0; i < settled; i++){
+                distances[order[i]] = RoutingGraph.INFINITY;
+                paths[order[i]] = 0;
+                dependency[order[i]] = 0;
+            }
+        }
+    }
+}
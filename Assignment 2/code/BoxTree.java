@@ -0,0 +1,137 @@
+import java.util.*;
+
+/**
+ * A static R-tree over axis aligned boxes, bulk loaded with sort-tile-recursive packing: the boxes are sorted into
+ * vertical slices by x, then each slice by y, and packed NODE_CAPACITY at a time into leaves, with the levels above
+ * packed the same way from the level below. As it never changes, every level is just an array of boxes and the
+ * children of box i are boxes i * NODE_CAPACITY onwards of the level below, so no node objects are needed. Level 0
+ * holds the boxes themselves in packing order, getItem maps them back to the order they were given in.
+ */
+public class BoxTree {
+
+    public static final int NODE_CAPACITY = 16;
+
+    private int[] items;                //Leaf position -> index of the box as given
+    private float[][] boxes;            //Level -> minX, minY, maxX, maxY of each box
+
+    /**
+     * Builds the tree
+     * @param itemBoxes The minX, minY, maxX and maxY of each box in turn
+     */
+    public BoxTree(float[] itemBoxes) {
+        int count = itemBoxes.length / 4;
+        items = tile(itemBoxes, count);
+        List<float[]> levels = new ArrayList<>();
+        float[] level = new float[4 * count];
+        for(int i = 0; i < count; i++){
+            System.arraycopy(itemBoxes, 4 * items[i], level, 4 * i, 4);
+        }
+        levels.add(level);
+
+        //Each level above holds the bounds of runs of NODE_CAPACITY boxes of the one below, which STR left close together
+        while(level.length / 4 > 1){
+            int below = level.length / 4;
+            int above = (below + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            float[] parents = new float[4 * above];
+            for(int i = 0; i < above; i++){
+                parents[4 * i] = parents[4 * i + 1] = Float.POSITIVE_INFINITY;
+                parents[4 * i + 2] = parents[4 * i + 3] = Float.NEGATIVE_INFINITY;
+                for(int child = i * NODE_CAPACITY; child < Math.min(below, (i + 1) * NODE_CAPACITY); child++){
+                    parents[4 * i] = Math.min(parents[4 * i], level[4 * child]);
+                    parents[4 * i + 1] = Math.min(parents[4 * i + 1], level[4 * child + 1]);
+                    parents[4 * i + 2] = Math.max(parents[4 * i + 2], level[4 * child + 2]);
+                    parents[4 * i + 3] = Math.max(parents[4 * i + 3], level[4 * child + 3]);
+                }
+            }
+            level = parents;
+            levels.add(level);
+        }
+        boxes = levels.toArray(new float[0][]);
+    }
+
+    /**
+     * Sort-tile-recursive ordering of boxes, into slices by centre x and then by centre y within each slice
+     * @return The box indices in packing order
+     */
+    private static int[] tile(float[] boxes, int count){
+        Integer[] order = new Integer[count];
+        for(int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> boxes[4 * i] + boxes[4 * i + 2]));
+        int leaves = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceSize = NODE_CAPACITY * (int) Math.ceil(Math.sqrt(leaves));
+        for(int start = 0; start < count; start += sliceSize){
+            Arrays.sort(order, start, Math.min(count, start + sliceSize), Comparator.comparingDouble(i -> boxes[4 * i + 1] + boxes[4 * i + 3]));
+        }
+        int[] result = new int[count];
+        for(int i = 0; i < count; i++) result[i] = order[i];
+        return result;
+    }
+
+    /**
+     * Finds every box overlapping a query box
+     * @param minX  The left of the query box
+     * @param minY  The bottom of the query box
+     * @param maxX  The right of the query box
+     * @param maxY  The top of the query box
+     * @param found Has the leaf position of every overlapping box added to it
+     */
+    public void search(double minX, double minY, double maxX, double maxY, List<Integer> found){
+        if(isEmpty()) return;
+        search(getRootLevel(), 0, minX, minY, maxX, maxY, found);
+    }
+
+    private void search(int level, int box, double minX, double minY, double maxX, double maxY, List<Integer> found){
+        float[] b = boxes[level];
+        if(b[4 * box] > maxX || b[4 * box + 2] < minX || b[4 * box + 1] > maxY || b[4 * box + 3] < minY) return;
+        if(level == 0){
+            found.add(box);
+            return;
+        }
+        for(int child = firstChild(box); child < endChild(level, box); child++){
+            search(level - 1, child, minX, minY, maxX, maxY, found);
+        }
+    }
+
+    /**
+     * @return The shortest distance from a point to a box, 0 if it is inside
+     */
+    public double distance(int level, int box, double x, double y){
+        float[] b = boxes[level];
+        double dX = Math.max(0, Math.max(b[4 * box] - x, x - b[4 * box + 2]));
+        double dY = Math.max(0, Math.max(b[4 * box + 1] - y, y - b[4 * box + 3]));
+        return Math.hypot(dX, dY);
+    }
+
+    /**
+     * @return The index, in the order they were given, of the box at a leaf position
+     */
+    public int getItem(int position){
+        return items[position];
+    }
+
+    public int getItemCount(){
+        return items.length;
+    }
+
+    public boolean isEmpty(){
+        return items.length == 0;
+    }
+
+    /**
+     * @return The level of the single box covering everything
+     */
+    public int getRootLevel(){
+        return boxes.length - 1;
+    }
+
+    public int firstChild(int box){
+        return box * NODE_CAPACITY;
+    }
+
+    /**
+     * @return One past the last child, on the level below, of a box
+     */
+    public int endChild(int level, int box){
+        return Math.min(boxes[level - 1].length / 4, (box + 1) * NODE_CAPACITY);
+    }
+}
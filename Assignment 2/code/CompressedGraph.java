@@ -0,0 +1,291 @@
+import java.util.*;
+
+/**
+ * A smaller copy of the RoutingGraph with chains of degree 2 nodes collapsed. A node is inside a chain if it has
+ * exactly two neighbours, every edge at it belongs to the same named road (long roads are split into several road
+ * records in the data), each edge into it carries straight on out the other side with the same access, and there are
+ * no turn restrictions at it. Such nodes are never a routing decision, so the maximal runs of them are replaced by
+ * single compressed edges between the core nodes either end, with the length of the whole run. Only core nodes are
+ * kept in the compressed graph.
+ * <p>
+ * Each compressed edge keeps an unpacking table of the original edges it stands for in order, which gives back the
+ * full geometry for rendering and the exact roads used for reporting. Like the other indexes the structure is metric
+ * independent and customise sums the weights of a metric along each chain.
+ */
+public class CompressedGraph {
+
+    private RoutingGraph graph;
+
+    private int[] coreNodes;        //Compressed node -> node index in the original graph
+    private int[] coreIndex;        //Original node index -> compressed node, -1 if it is inside a chain
+
+    private int[] firstOut;         //Outgoing compressed edge offsets per compressed node (size n + 1)
+    private int[] head;             //Compressed edge -> compressed node it goes to
+    private int[] tail;             //Compressed edge -> compressed node it comes from
+    private float[] lengths;        //Compressed edge -> total length in km
+    private byte[] access;          //Compressed edge -> mask of the travel modes allowed, the same along the chain
+
+    private int[] unpackFirst;      //Compressed edge -> offset of its original edges (size m + 1)
+    private int[] unpackEdges;      //Original edge ids, grouped by compressed edge and in order along it
+    private int[] chainOf;          //Original edge -> compressed edge it is part of
+    private int[] chainPosition;    //Original edge -> position within its compressed edge's unpacking table
+
+    private long buildTime;
+
+    /**
+     * Finds the chains and builds the compressed graph
+     * @param graph The graph to compress
+     */
+    public CompressedGraph(RoutingGraph graph) {
+        long startTime = System.currentTimeMillis();
+        this.graph = graph;
+        int nodeCount = graph.getNodeCount();
+        boolean[] core = new boolean[nodeCount];
+        for(int v = 0; v < nodeCount; v++){
+            core[v] = !isChainNode(v);
+        }
+
+        int edgeCount = graph.getEdgeCount();
+        chainOf = new int[edgeCount];
+        chainPosition = new int[edgeCount];
+        Arrays.fill(chainOf, -1);
+        List<Integer> tails = new ArrayList<>();
+        List<Integer> heads = new ArrayList<>();
+        List<Integer> unpackFirstList = new ArrayList<>();
+        List<Integer> unpackList = new ArrayList<>();
+
+        //Walk every edge leaving a core node along its chain. Chains that loop without reaching a core node can't be
+        //entered from one, so a node on each is made core and the loop walked from there.
+        for(int pass = 0; pass < 2; pass++){
+            for(int u = 0; u < nodeCount; u++){
+                if(pass == 1 && !core[u]){
+                    boolean walked = false;
+                    for(int edge = graph.firstOut(u); edge < graph.endOut(u); edge++) walked |= chainOf[edge] != -1;
+                    if(walked) continue;
+                    core[u] = true;
+                }else if(!core[u]){
+                    continue;
+                }
+                for(int edge = graph.firstOut(u); edge < graph.endOut(u); edge++){
+                    if(chainOf[edge] != -1) continue;
+                    int chain = tails.size();
+                    tails.add(u);
+                    unpackFirstList.add(unpackList.size());
+                    int current = edge;
+                    while(true){
+                        chainOf[current] = chain;
+                        chainPosition[current] = unpackList.size() - unpackFirstList.get(chain);
+                        unpackList.add(current);
+                        int node = graph.getHead(current);
+                        if(core[node]) {
+                            heads.add(node);
+                            break;
+                        }
+                        current = continuation(current);
+                    }
+                }
+            }
+        }
+        unpackFirstList.add(unpackList.size());
+
+        coreIndex = new int[nodeCount];
+        Arrays.fill(coreIndex, -1);
+        int coreCount = 0;
+        for(int v = 0; v < nodeCount; v++){
+            if(core[v]) coreIndex[v] = coreCount++;
+        }
+        coreNodes = new int[coreCount];
+        for(int v = 0; v < nodeCount; v++){
+            if(core[v]) coreNodes[coreIndex[v]] = v;
+        }
+
+        //Chains are mostly created grouped by the core node they leave, but those around loops are walked afterwards,
+        //so they are counting sorted by that node to put them in CSR order
+        int chainCount = tails.size();
+        firstOut = new int[coreCount + 1];
+        for(int c = 0; c < chainCount; c++) firstOut[coreIndex[tails.get(c)] + 1]++;
+        for(int v = 0; v < coreCount; v++) firstOut[v + 1] += firstOut[v];
+        int[] next = Arrays.copyOf(firstOut, coreCount);
+        int[] order = new int[chainCount];      //Chain in the order it was walked -> compressed edge
+        for(int c = 0; c < chainCount; c++) order[c] = next[coreIndex[tails.get(c)]]++;
+
+        head = new int[chainCount];
+        tail = new int[chainCount];
+        lengths = new float[chainCount];
+        access = new byte[chainCount];
+        unpackFirst = new int[chainCount + 1];
+        for(int c = 0; c < chainCount; c++){
+            unpackFirst[order[c] + 1] = unpackFirstList.get(c + 1) - unpackFirstList.get(c);
+        }
+        for(int c = 0; c < chainCount; c++) unpackFirst[c + 1] += unpackFirst[c];
+        unpackEdges = new int[unpackList.size()];
+        for(int c = 0; c < chainCount; c++){
+            int e = order[c];
+            tail[e] = coreIndex[tails.get(c)];
+            head[e] = coreIndex[heads.get(c)];
+            for(int i = unpackFirstList.get(c); i < unpackFirstList.get(c + 1); i++){
+                int edge = unpackList.get(i);
+                unpackEdges[unpackFirst[e] + chainPosition[edge]] = edge;
+                chainOf[edge] = e;
+            }
+        }
+        for(int c = 0; c < chainCount; c++){
+            access[c] = (byte) graph.getAccess(unpackEdges[unpackFirst[c]]);
+            for(int i = unpackFirst[c]; i < unpackFirst[c + 1]; i++) lengths[c] += graph.getLength(unpackEdges[i]);
+        }
+        buildTime = System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * @return Whether the node is inside a chain, so can be left out of the compressed graph
+     */
+    private boolean isChainNode(int node){
+        Node mapNode = graph.getNode(node);
+        if(mapNode.hasRestrictions() || graph.endOut(node) - graph.firstOut(node) != graph.endIn(node) - graph.firstIn(node)){
+            return false;
+        }
+        int outCount = graph.endOut(node) - graph.firstOut(node);
+        if(outCount == 0 || outCount > 2) return false;
+
+        Set<Integer> neighbours = new HashSet<>();
+        String road = graph.getSegment(graph.firstOut(node)).getRoad().getName();
+        for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+            if(!graph.getSegment(edge).getRoad().getName().equals(road) || !neighbours.add(graph.getHead(edge))) return false;
+        }
+        for(int i = graph.firstIn(node); i < graph.endIn(node); i++){
+            int edge = graph.inEdge(i);
+            if(!graph.getSegment(edge).getRoad().getName().equals(road)) return false;
+            neighbours.add(graph.getTail(edge));
+        }
+        if(neighbours.size() != 2 || neighbours.contains(node)) return false;
+
+        for(int i = graph.firstIn(node); i < graph.endIn(node); i++){
+            if(continuation(graph.inEdge(i)) == -1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The edge carrying straight on from the edge, through its head and away from its tail with the same
+     *         access, or -1 if there isn't one
+     */
+    private int continuation(int edge){
+        int node = graph.getHead(edge);
+        for(int next = graph.firstOut(node); next < graph.endOut(node); next++){
+            if(graph.getHead(next) != graph.getTail(edge) && graph.getAccess(next) == graph.getAccess(edge)) return next;
+        }
+        return -1;
+    }
+
+    /**
+     * Sums the weights of a metric along every chain
+     * @param weights   The weight of each original edge
+     * @return          The weight of each compressed edge
+     */
+    public float[] customise(float[] weights){
+        float[] chainWeights = new float[head.length];
+        for(int c = 0; c < head.length; c++){
+            for(int i = unpackFirst[c]; i < unpackFirst[c + 1]; i++) chainWeights[c] += weights[unpackEdges[i]];
+        }
+        return chainWeights;
+    }
+
+    /**
+     * @param edge  A compressed edge
+     * @return      The offset of its first original edge in the unpacking table
+     */
+    public int unpackFirst(int edge){
+        return unpackFirst[edge];
+    }
+
+    /**
+     * @param edge  A compressed edge
+     * @return      The offset after its last original edge in the unpacking table
+     */
+    public int unpackEnd(int edge){
+        return unpackFirst[edge + 1];
+    }
+
+    /**
+     * @param position  A position in the unpacking table
+     * @return          The original edge at that position
+     */
+    public int getUnpackedEdge(int position){
+        return unpackEdges[position];
+    }
+
+    /**
+     * @param edge  An edge of the original graph
+     * @return      The compressed edge it is part of
+     */
+    public int getChain(int edge){
+        return chainOf[edge];
+    }
+
+    /**
+     * @param edge  An edge of the original graph
+     * @return      How far along its compressed edge it is, 0 for the first
+     */
+    public int getChainPosition(int edge){
+        return chainPosition[edge];
+    }
+
+    /**
+     * @param node  A node index of the original graph
+     * @return      The compressed node, -1 if the node is inside a chain
+     */
+    public int getCoreIndex(int node){
+        return coreIndex[node];
+    }
+
+    /**
+     * @param node  A compressed node
+     * @return      The node index in the original graph
+     */
+    public int getCoreNode(int node){
+        return coreNodes[node];
+    }
+
+    public int firstOut(int node){
+        return firstOut[node];
+    }
+
+    public int endOut(int node){
+        return firstOut[node + 1];
+    }
+
+    public int getHead(int edge){
+        return head[edge];
+    }
+
+    public int getTail(int edge){
+        return tail[edge];
+    }
+
+    public float getLength(int edge){
+        return lengths[edge];
+    }
+
+    public int getAccess(int edge){
+        return access[edge];
+    }
+
+    public int getNodeCount(){
+        return coreNodes.length;
+    }
+
+    public int getEdgeCount(){
+        return head.length;
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * @return How long building took in milliseconds
+     */
+    public long getBuildTime(){
+        return buildTime;
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+
+/**
+ * A* over a CompressedGraph for one metric and mode of travel. Ends of the path inside a chain are joined to the core
+ * nodes at either end of the chain with the part of the chain between them, so any two nodes of the original graph
+ * can be searched between. Paths are unpacked back into every node of the original graph. Turn restrictions aren't
+ * taken into account. Not thread safe, each thread should have its own instance.
+ */
+public class CompressedSearch {
+
+    private CompressedGraph compressed;
+    private RoutingGraph graph;
+    private Metric metric;
+    private TravelMode mode;
+    private float[] weights;            //Weights of the original edges
+    private float[] chainWeights;       //Weights of the compressed edges
+
+    private float[] gCosts;
+    private int[] parentChains;         //Compressed edge the node was reached by, -1 for the start
+    private int[] parentPositions;      //Position along that edge the path joined it, 0 unless it is the start's chain
+    private int[] rounds;
+    private int round = 0;
+    private NodeHeap frontier;
+    private int settledCount;
+
+    /**
+     * @param compressed    The compressed graph
+     * @param metric        The metric to minimise, already customised for the graph
+     * @param mode          The mode of travel
+     */
+    public CompressedSearch(CompressedGraph compressed, Metric metric, TravelMode mode) {
+        this.compressed = compressed;
+        this.graph = compressed.getGraph();
+        this.metric = metric;
+        this.mode = mode;
+        this.weights = metric.getWeights(mode);
+        this.chainWeights = compressed.customise(weights);
+        int nodeCount = compressed.getNodeCount();
+        gCosts = new float[nodeCount];
+        parentChains = new int[nodeCount];
+        parentPositions = new int[nodeCount];
+        rounds = new int[nodeCount];
+        frontier = new NodeHeap(nodeCount);
+    }
+
+    /**
+     * Finds the shortest path between two nodes
+     * @param start The start of the path
+     * @param end   The end of the path
+     * @return      The nodes of the path in order, empty if there is no path
+     */
+    public List<Node> pathfind(Node start, Node end){
+        List<Node> path = new ArrayList<>();
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if(source == -1 || target == -1) return path;
+        if(source == target){
+            path.add(start);
+            return path;
+        }
+        round++;
+        frontier.clear();
+        settledCount = 0;
+        Location endLocation = end.getLocation();
+
+        //Best complete path found so far: either straight along the start's chain, or to a core node then along the
+        //chain into the target from it
+        float best = RoutingGraph.INFINITY;
+        int bestChain = -1;         //Compressed edge the path finishes along
+        int bestFrom = 0;           //Position along it the path starts, if it is the start's chain
+        int bestTo = -1;            //Position along it of the last edge of the path
+        boolean bestDirect = false;
+
+        if(compressed.getCoreIndex(source) != -1){
+            seed(compressed.getCoreIndex(source), 0, -1, 0, endLocation);
+        }else{
+            for(int edge = graph.firstOut(source); edge < graph.endOut(source); edge++){
+                int chain = compressed.getChain(edge);
+                int first = compressed.unpackFirst(chain);
+                float cost = 0;
+                for(int i = first + compressed.getChainPosition(edge); i < compressed.unpackEnd(chain); i++){
+                    int original = compressed.getUnpackedEdge(i);
+                    cost += weights[original];
+                    if(graph.getHead(original) == target && cost < best){
+                        best = cost;
+                        bestChain = chain;
+                        bestFrom = compressed.getChainPosition(edge);
+                        bestTo = i - first;
+                        bestDirect = true;
+                    }
+                }
+                if(cost < RoutingGraph.INFINITY) seed(compressed.getHead(chain), cost, chain, compressed.getChainPosition(edge), endLocation);
+            }
+        }
+
+        //Chains into the target from a core node, with the cost from that node along the chain to the target
+        int targetCore = compressed.getCoreIndex(target);
+        List<Integer> exitChains = new ArrayList<>();
+        List<Integer> exitPositions = new ArrayList<>();
+        List<Float> exitCosts = new ArrayList<>();
+        if(targetCore == -1){
+            for(int i = graph.firstIn(target); i < graph.endIn(target); i++){
+                int edge = graph.inEdge(i);
+                int chain = compressed.getChain(edge);
+                float cost = 0;
+                for(int j = compressed.unpackFirst(chain); j <= compressed.unpackFirst(chain) + compressed.getChainPosition(edge); j++){
+                    cost += weights[compressed.getUnpackedEdge(j)];
+                }
+                if(cost == RoutingGraph.INFINITY) continue;
+                exitChains.add(chain);
+                exitPositions.add(compressed.getChainPosition(edge));
+                exitCosts.add(cost);
+            }
+        }
+
+        int modeMask = mode.getMask();
+        while(!frontier.isEmpty() && frontier.peekKey() < best){
+            int node = frontier.poll();
+            settledCount++;
+            float gCost = gCosts[node];
+            if(node == targetCore){
+                best = gCost;
+                bestChain = -1;
+                bestDirect = false;
+                break;
+            }
+            for(int e = 0; e < exitChains.size(); e++){
+                int chain = exitChains.get(e);
+                if(compressed.getTail(chain) == node && gCost + exitCosts.get(e) < best){
+                    best = gCost + exitCosts.get(e);
+                    bestChain = chain;
+                    bestTo = exitPositions.get(e);
+                    bestDirect = false;
+                }
+            }
+            for(int chain = compressed.firstOut(node); chain < compressed.endOut(node); chain++){
+                if((compressed.getAccess(chain) & modeMask) == 0) continue;
+                int neighbour = compressed.getHead(chain);
+                float newCost = gCost + chainWeights[chain];
+                if(newCost < getCost(neighbour)) seed(neighbour, newCost, chain, 0, endLocation);
+            }
+        }
+        if(best == RoutingGraph.INFINITY) return path;
+
+        //Collect the original edges backwards from the target, then turn them into nodes
+        List<Integer> edges = new ArrayList<>();
+        int node;
+        if(bestDirect){
+            addEdges(edges, bestChain, bestFrom, bestTo);
+            node = -1;
+        }else if(bestChain == -1){
+            node = targetCore;
+        }else{
+            addEdges(edges, bestChain, 0, bestTo);
+            node = compressed.getTail(bestChain);
+        }
+        while(node != -1 && parentChains[node] != -1){
+            int chain = parentChains[node];
+            int position = parentPositions[node];
+            addEdges(edges, chain, position, compressed.unpackEnd(chain) - compressed.unpackFirst(chain) - 1);
+            if(position != 0) break;        //Joined the chain part way along, from the start
+            node = compressed.getTail(chain);
+        }
+
+        path.add(start);
+        for(int i = edges.size() - 1; i >= 0; i--){
+            path.add(graph.getNode(graph.getHead(edges.get(i))));
+        }
+        return path;
+    }
+
+    /**
+     * Adds the original edges between two positions along a compressed edge to the list, last first
+     */
+    private void addEdges(List<Integer> edges, int chain, int from, int to){
+        int first = compressed.unpackFirst(chain);
+        for(int i = first + to; i >= first + from; i--){
+            edges.add(compressed.getUnpackedEdge(i));
+        }
+    }
+
+    private void seed(int node, float cost, int chain, int position, Location endLocation){
+        if(cost >= getCost(node)) return;
+        gCosts[node] = cost;
+        parentChains[node] = chain;
+        parentPositions[node] = position;
+        rounds[node] = round;
+        Location location = graph.getNode(compressed.getCoreNode(node)).getLocation();
+        frontier.offer(node, cost + metric.estimate(location, endLocation, mode));
+    }
+
+    private float getCost(int node){
+        return rounds[node] == round ? gCosts[node] : RoutingGraph.INFINITY;
+    }
+
+    /**
+     * @return The number of compressed nodes settled by the last search
+     */
+    public int getSettledCount(){
+        return settledCount;
+    }
+
+    public CompressedGraph getCompressedGraph(){
+        return compressed;
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.*;
+
+/**
+ * A customisable contraction hierarchy over a RoutingGraph. Building it is split into two phases:
+ * <ul>
+ *     <li>Preprocessing, which only looks at the shape of the graph. Nodes are ranked by a nested dissection order
+ *     and contracted in that order, connecting all of the higher ranked neighbours of each node to one another. This
+ *     is slow but never has to be repeated, whatever the edge weights.</li>
+ *     <li>Customisation, which takes one set of edge weights and works out the weight of every arc of the hierarchy by
+ *     walking the triangles of the contracted graph from the bottom up. This only takes milliseconds, so metrics can
+ *     be changed or re-weighted while the program is running.</li>
+ * </ul>
+ * Arcs are stored once per pair of neighbours in CSR form, indexed by sweep position (highest rank first) of the
+ * lower ranked node, so that a downward sweep over all nodes (see PhastSearch) reads the arrays front to back. Each
+ * arc has an upward weight (lower to higher ranked node) and a downward weight (higher to lower).
+ */
+public class ContractionHierarchy {
+
+    private RoutingGraph graph;
+    private int[] positions;        //Node index -> sweep position
+    private int[] nodesAt;          //Sweep position -> node index
+
+    private int[] arcFirst;         //Arcs to higher ranked neighbours of each position (size n + 1)
+    private int[] arcHead;          //Position of the higher ranked neighbour, in decreasing position order per node
+    private int[] edgeArcs;         //Edge -> arc * 2, plus 1 if the edge runs downward
+
+    private float[] upWeights;      //Null until customised
+    private float[] downWeights;
+
+    private long buildTime;
+    private long customiseTime;
+
+    /**
+     * Runs the metric independent preprocessing on the graph. The hierarchy has to be customised before it can be
+     * searched.
+     * @param graph The graph to contract
+     */
+    public ContractionHierarchy(RoutingGraph graph) {
+        this.graph = graph;
+        long startTime = System.currentTimeMillis();
+        int nodeCount = graph.getNodeCount();
+
+        int[] ranks = GraphPartitioner.nestedDissectionOrder(graph);
+        positions = new int[nodeCount];
+        nodesAt = new int[nodeCount];
+        for(int v = 0; v < nodeCount; v++){
+            positions[v] = nodeCount - 1 - ranks[v];
+            nodesAt[positions[v]] = v;
+        }
+
+        //Higher ranked neighbours of each node, by rank
+        int[][] upward = new int[nodeCount][];
+        for(int v = 0; v < nodeCount; v++){
+            Set<Integer> neighbours = new TreeSet<>();
+            final int rank = ranks[v];
+            GraphPartitioner.forEachNeighbour(graph, v, w -> {
+                if(ranks[w] > rank) neighbours.add(ranks[w]);
+            });
+            upward[rank] = neighbours.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        //Contract in rank order, the higher ranked neighbours of a node all become neighbours of the lowest of them
+        for(int rank = 0; rank < nodeCount; rank++){
+            if(upward[rank].length > 1){
+                int lowest = upward[rank][0];
+                upward[lowest] = merge(upward[lowest], upward[rank], 1);
+            }
+        }
+
+        arcFirst = new int[nodeCount + 1];
+        for(int rank = 0; rank < nodeCount; rank++){
+            arcFirst[nodeCount - rank] = upward[rank].length;      //Position of the rank is nodeCount - 1 - rank
+        }
+        for(int p = 0; p < nodeCount; p++) arcFirst[p + 1] += arcFirst[p];
+        arcHead = new int[arcFirst[nodeCount]];
+        for(int rank = 0; rank < nodeCount; rank++){
+            int position = nodeCount - 1 - rank;
+            for(int i = 0; i < upward[rank].length; i++){
+                arcHead[arcFirst[position] + i] = nodeCount - 1 - upward[rank][i];
+            }
+        }
+
+        edgeArcs = new int[graph.getEdgeCount()];
+        for(int edge = 0; edge < graph.getEdgeCount(); edge++){
+            int tail = positions[graph.getTail(edge)];
+            int head = positions[graph.getHead(edge)];
+            if(tail == head) edgeArcs[edge] = -1;
+            else if(tail > head) edgeArcs[edge] = findArc(tail, head) * 2;          //Tail is lower ranked, upward edge
+            else edgeArcs[edge] = findArc(head, tail) * 2 + 1;
+        }
+        buildTime = System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Creates a customised copy of a hierarchy, sharing all of the metric independent arrays
+     */
+    private ContractionHierarchy(ContractionHierarchy hierarchy) {
+        this.graph = hierarchy.graph;
+        this.positions = hierarchy.positions;
+        this.nodesAt = hierarchy.nodesAt;
+        this.arcFirst = hierarchy.arcFirst;
+        this.arcHead = hierarchy.arcHead;
+        this.edgeArcs = hierarchy.edgeArcs;
+        this.buildTime = hierarchy.buildTime;
+    }
+
+    /**
+     * Customises the hierarchy for a set of edge weights, the hierarchy itself is left untouched so it can be
+     * customised for any number of metrics.
+     * @param weights   The weight of each edge of the graph
+     * @return          A copy of the hierarchy with arc weights for the metric
+     */
+    public ContractionHierarchy customise(float[] weights){
+        long startTime = System.currentTimeMillis();
+        ContractionHierarchy customised = new ContractionHierarchy(this);
+        customised.upWeights = new float[arcHead.length];
+        customised.downWeights = new float[arcHead.length];
+        Arrays.fill(customised.upWeights, RoutingGraph.INFINITY);
+        Arrays.fill(customised.downWeights, RoutingGraph.INFINITY);
+        float[] up = customised.upWeights;
+        float[] down = customised.downWeights;
+
+        for(int edge = 0; edge < edgeArcs.length; edge++){
+            if(edgeArcs[edge] == -1) continue;
+            int arc = edgeArcs[edge] >> 1;
+            if((edgeArcs[edge] & 1) == 0) up[arc] = Math.min(up[arc], weights[edge]);
+            else down[arc] = Math.min(down[arc], weights[edge]);
+        }
+
+        //Lower triangles, for each node v and pair of higher neighbours w1 < w2, the path w1 -> v -> w2 may be
+        //shorter than the arc w1 -> w2 (and the same the other way). Going up from the lowest rank means each arc
+        //from v is already final by the time v is reached.
+        for(int v = arcFirst.length - 2; v >= 0; v--){
+            for(int a = arcFirst[v]; a < arcFirst[v + 1]; a++){
+                if(Float.isInfinite(up[a]) && Float.isInfinite(down[a])) continue;
+                int w1 = arcHead[a];
+                for(int b = a + 1; b < arcFirst[v + 1]; b++){
+                    int c = findArc(w1, arcHead[b]);
+                    float upVia = down[a] + up[b];
+                    float downVia = down[b] + up[a];
+                    if(upVia < up[c]) up[c] = upVia;
+                    if(downVia < down[c]) down[c] = downVia;
+                }
+            }
+        }
+        customised.customiseTime = System.currentTimeMillis() - startTime;
+        return customised;
+    }
+
+    /**
+     * Finds the arc between two nodes, the lower ranked of which must be given first
+     * @param position      Sweep position of the lower ranked node
+     * @param headPosition  Sweep position of the higher ranked node
+     * @return              The arc id
+     */
+    private int findArc(int position, int headPosition){
+        int low = arcFirst[position];
+        int high = arcFirst[position + 1] - 1;
+        while(low <= high){         //Heads are stored in decreasing position order
+            int middle = (low + high) >>> 1;
+            if(arcHead[middle] == headPosition) return middle;
+            if(arcHead[middle] > headPosition) low = middle + 1;
+            else high = middle - 1;
+        }
+        throw new IllegalStateException("Hierarchy is missing an arc between " + position + " and " + headPosition);
+    }
+
+    /**
+     * Merges two sorted arrays of ranks, skipping the first few entries of the second
+     */
+    private static int[] merge(int[] a, int[] b, int skip){
+        int[] merged = new int[a.length + b.length - skip];
+        int i = 0, j = skip, size = 0;
+        while(i < a.length || j < b.length){
+            int next;
+            if(j >= b.length || (i < a.length && a[i] < b[j])) next = a[i++];
+            else if(i >= a.length || b[j] < a[i]) next = b[j++];
+            else{
+                next = a[i++];
+                j++;
+            }
+            merged[size++] = next;
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * @param node  A node index of the graph
+     * @return      The sweep position of the node, 0 being the highest ranked node
+     */
+    public int getPosition(int node){
+        return positions[node];
+    }
+
+    /**
+     * @param position  A sweep position
+     * @return          The node index at that position
+     */
+    public int getNodeAt(int position){
+        return nodesAt[position];
+    }
+
+    /**
+     * @return The first upward arc leaving the position
+     */
+    public int getUpFirst(int position){
+        return arcFirst[position];
+    }
+
+    public int getUpEnd(int position){
+        return arcFirst[position + 1];
+    }
+
+    public int getUpHead(int arc){
+        return arcHead[arc];
+    }
+
+    public float getUpWeight(int arc){
+        return upWeights[arc];
+    }
+
+    /**
+     * @return The first downward arc entering the position, downward arcs share their ids with the upward arcs
+     * going the other way
+     */
+    public int getDownFirst(int position){
+        return arcFirst[position];
+    }
+
+    public int getDownEnd(int position){
+        return arcFirst[position + 1];
+    }
+
+    public int getDownTail(int arc){
+        return arcHead[arc];
+    }
+
+    public float getDownWeight(int arc){
+        return downWeights[arc];
+    }
+
+    public int getArcCount(){
+        return arcHead.length;
+    }
+
+    /**
+     * @return How long the metric independent preprocessing took in milliseconds
+     */
+    public long getBuildTime(){
+        return buildTime;
+    }
+
+    /**
+     * @return How long customisation took in milliseconds, 0 if this hierarchy hasn't been customised
+     */
+    public long getCustomiseTime(){
+        return customiseTime;
+    }
+}
@@ -0,0 +1,103 @@
+import java.awt.*;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The features within a distance either side of a route: the nodes (with the traffic light intersections among them
+ * picked out) and the polygons, along with how much work finding them took, for listing and drawing over the map.
+ */
+public class Corridor {
+
+    private static final Color NODE_COLOUR = new Color(220, 170, 0);
+    private static final Color TRAFFIC_LIGHT_COLOUR = Color.RED;
+    private static final Color POLYGON_COLOUR = new Color(220, 170, 0);
+
+    private double width;
+    private List<Node> nodes;
+    private List<Polygon> polygons;
+    private int boxCount;
+    private int candidateCount;
+    private long time;
+
+    public Corridor(double width, List<Node> nodes, List<Polygon> polygons, int boxCount, int candidateCount, long time) {
+        this.width = width;
+        this.nodes = nodes;
+        this.polygons = polygons;
+        this.boxCount = boxCount;
+        this.candidateCount = candidateCount;
+        this.time = time;
+    }
+
+    /**
+     * Rings the nodes in the corridor, filling in the traffic lights, and outlines the polygons
+     * @param g         The graphics pane in which to render to
+     * @param scale     The numbers of pixels per kilometer
+     * @param origin    The origin of the rendering
+     */
+    public void redraw(Graphics g, double scale, Location origin){
+        g.setColor(POLYGON_COLOUR);
+        for(Polygon polygon : polygons){
+            MapRenderer.outlinePolygon(g, polygon, scale, origin);
+        }
+        for(Node node : nodes){
+            Point point = node.getLocation().asPoint(origin, scale);
+            if(node.isIntersection()){
+                g.setColor(TRAFFIC_LIGHT_COLOUR);
+                g.fillOval(point.x - 4, point.y - 4, 8, 8);
+            }else{
+                g.setColor(NODE_COLOUR);
+                g.drawOval(point.x - 4, point.y - 4, 8, 8);
+            }
+        }
+    }
+
+    /**
+     * @return The distance in km either side of the route
+     */
+    public double getWidth(){
+        return width;
+    }
+
+    /**
+     * @return The nodes in the corridor, in the order they were come across along the route
+     */
+    public List<Node> getNodes(){
+        return nodes;
+    }
+
+    /**
+     * @return The nodes in the corridor with traffic lights
+     */
+    public List<Node> getTrafficLights(){
+        return nodes.stream().filter(Node::isIntersection).collect(Collectors.toList());
+    }
+
+    /**
+     * @return The polygons in the corridor, in the order they were come across along the route
+     */
+    public List<Polygon> getPolygons(){
+        return polygons;
+    }
+
+    /**
+     * @return The number of boxes the corridor was split into
+     */
+    public int getBoxCount(){
+        return boxCount;
+    }
+
+    /**
+     * @return The number of features the range queries returned, before duplicates and features outside the corridor
+     * were thrown away
+     */
+    public int getCandidateCount(){
+        return candidateCount;
+    }
+
+    /**
+     * @return How long finding the corridor took in nanoseconds
+     */
+    public long getTime(){
+        return time;
+    }
+}
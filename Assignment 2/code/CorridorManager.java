@@ -0,0 +1,188 @@
+import java.util.*;
+
+/**
+ * A class to find the features near a route. The route is buffered by the corridor width and the buffer split into
+ * one box per segment (the segment's bounding box grown by the width), and each box is range queried against the
+ * quadtree of nodes and the R-tree of polygons. The features returned are then measured exactly against the
+ * segment's polyline, so the corners of the boxes don't let in anything too far away, and duplicates from
+ * neighbouring boxes are removed. The work done depends on the length of the route and what is near it, not on the
+ * size of the map.
+ */
+public class CorridorManager {
+
+    /**
+     * Builds the R-tree over the polygons' bounding boxes used by compute
+     * @param polygons  The polygons
+     * @return          The tree, whose items are indices into the list of polygons
+     */
+    public static BoxTree indexPolygons(List<Polygon> polygons){
+        float[] boxes = new float[4 * polygons.size()];
+        double[][] points = new double[2][64];
+        for(int i = 0; i < polygons.size(); i++){
+            Polygon polygon = polygons.get(i);
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for(int ring : polygon.getRings()){
+                points = decode(polygon.getGeometry(), ring, points);
+                for(int p = 0; p < polygon.getGeometry().getPointCount(ring); p++){
+                    minX = Math.min(minX, (float) points[0][p]);
+                    minY = Math.min(minY, (float) points[1][p]);
+                    maxX = Math.max(maxX, (float) points[0][p]);
+                    maxY = Math.max(maxY, (float) points[1][p]);
+                }
+            }
+            boxes[4 * i] = minX;
+            boxes[4 * i + 1] = minY;
+            boxes[4 * i + 2] = maxX;
+            boxes[4 * i + 3] = maxY;
+        }
+        return new BoxTree(boxes);
+    }
+
+    /**
+     * Finds the nodes and polygons within a distance of a route
+     * @param route         The segments of the route
+     * @param width         The distance in km either side of the route
+     * @param nodes         The root of the quadtree of nodes
+     * @param polygons      The polygons
+     * @param polygonIndex  The tree over the polygons from indexPolygons
+     * @return              The corridor
+     */
+    public static Corridor compute(List<Segment> route, double width, QuadNode nodes, List<Polygon> polygons, BoxTree polygonIndex){
+        long startTime = System.nanoTime();
+        Set<Node> foundNodes = new LinkedHashSet<>();
+        Set<Polygon> foundPolygons = new LinkedHashSet<>();
+        List<Node> nodeHits = new ArrayList<>();
+        List<Integer> polygonHits = new ArrayList<>();
+        double[][] line = new double[2][64];
+        double[][] ring = new double[2][64];
+        int candidates = 0;
+
+        for(Segment segment : route){
+            line = decode(segment.getGeometry(), segment.getPolyline(), line);
+            int size = segment.getGeometry().getPointCount(segment.getPolyline());
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for(int p = 0; p < size; p++){
+                minX = Math.min(minX, line[0][p]);
+                minY = Math.min(minY, line[1][p]);
+                maxX = Math.max(maxX, line[0][p]);
+                maxY = Math.max(maxY, line[1][p]);
+            }
+            minX -= width;
+            minY -= width;
+            maxX += width;
+            maxY += width;
+
+            nodeHits.clear();
+            if(nodes != null) nodes.collect(minX, minY, maxX, maxY, nodeHits);
+            candidates += nodeHits.size();
+            for(Node node : nodeHits){
+                if(!foundNodes.contains(node) && distance(line, size, node.getX(), node.getY()) <= width) foundNodes.add(node);
+            }
+
+            polygonHits.clear();
+            polygonIndex.search(minX, minY, maxX, maxY, polygonHits);
+            candidates += polygonHits.size();
+            for(int position : polygonHits){
+                Polygon polygon = polygons.get(polygonIndex.getItem(position));
+                if(foundPolygons.contains(polygon)) continue;
+                for(int r : polygon.getRings()){
+                    ring = decode(polygon.getGeometry(), r, ring);
+                    if(isNear(line, size, ring, polygon.getGeometry().getPointCount(r), width)){
+                        foundPolygons.add(polygon);
+                        break;
+                    }
+                }
+            }
+        }
+        return new Corridor(width, new ArrayList<>(foundNodes), new ArrayList<>(foundPolygons), route.size(), candidates,
+                System.nanoTime() - startTime);
+    }
+
+    /**
+     * @return Whether a polyline comes within a distance of a ring, or lies inside it
+     */
+    private static boolean isNear(double[][] line, int lineSize, double[][] ring, int ringSize, double width){
+        if(ringSize == 0) return false;
+        if(contains(ring, ringSize, line[0][0], line[1][0])) return true;
+        for(int i = 0; i < ringSize; i++){
+            int j = (i + 1) % ringSize;
+            if(lineSize == 1 && distance(line[0][0], line[1][0], ring[0][i], ring[1][i], ring[0][j], ring[1][j]) <= width) return true;
+            for(int p = 0; p < lineSize - 1; p++){
+                if(distance(line[0][p], line[1][p], line[0][p + 1], line[1][p + 1], ring[0][i], ring[1][i], ring[0][j], ring[1][j]) <= width){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether a point is inside a ring, by counting how many of its edges a ray to the right of the point crosses
+     */
+    private static boolean contains(double[][] ring, int size, double x, double y){
+        boolean inside = false;
+        for(int i = 0, j = size - 1; i < size; j = i++){
+            if((ring[1][i] > y) != (ring[1][j] > y)
+                    && x < ring[0][j] + (y - ring[1][j]) * (ring[0][i] - ring[0][j]) / (ring[1][i] - ring[1][j])){
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * @return The shortest distance from a point to a polyline
+     */
+    private static double distance(double[][] line, int size, double x, double y){
+        if(size == 1) return MathUtil.distance(line[0][0], line[1][0], x, y);
+        double closest = Double.POSITIVE_INFINITY;
+        for(int p = 0; p < size - 1; p++){
+            closest = Math.min(closest, distance(x, y, line[0][p], line[1][p], line[0][p + 1], line[1][p + 1]));
+        }
+        return closest;
+    }
+
+    /**
+     * @return The shortest distance from the point (x, y) to the line from (x1, y1) to (x2, y2)
+     */
+    private static double distance(double x, double y, double x1, double y1, double x2, double y2){
+        double dX = x2 - x1;
+        double dY = y2 - y1;
+        double lengthSquared = dX * dX + dY * dY;
+        double t = lengthSquared == 0 ? 0 : MathUtil.constrain(((x - x1) * dX + (y - y1) * dY) / lengthSquared, 0, 1);
+        return MathUtil.distance(x1 + t * dX, y1 + t * dY, x, y);
+    }
+
+    /**
+     * @return The shortest distance between the line from a1 to a2 and the line from b1 to b2, 0 if they cross
+     */
+    private static double distance(double a1x, double a1y, double a2x, double a2y, double b1x, double b1y, double b2x, double b2y){
+        double d1 = cross(b1x, b1y, b2x, b2y, a1x, a1y);
+        double d2 = cross(b1x, b1y, b2x, b2y, a2x, a2y);
+        double d3 = cross(a1x, a1y, a2x, a2y, b1x, b1y);
+        double d4 = cross(a1x, a1y, a2x, a2y, b2x, b2y);
+        if(((d1 > 0) != (d2 > 0)) && ((d3 > 0) != (d4 > 0))) return 0;
+        return Math.min(Math.min(distance(a1x, a1y, b1x, b1y, b2x, b2y), distance(a2x, a2y, b1x, b1y, b2x, b2y)),
+                Math.min(distance(b1x, b1y, a1x, a1y, a2x, a2y), distance(b2x, b2y, a1x, a1y, a2x, a2y)));
+    }
+
+    /**
+     * @return Which side of the line from (x1, y1) to (x2, y2) the point (x, y) is on, as the sign of the cross product
+     */
+    private static double cross(double x1, double y1, double x2, double y2, double x, double y){
+        return (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+    }
+
+    /**
+     * Decodes a polyline into scratch arrays, growing them if they are too small
+     * @return The arrays holding the points
+     */
+    private static double[][] decode(GeometryStore geometry, int polyline, double[][] points){
+        int size = geometry.getPointCount(polyline);
+        if(points[0].length < size) points = new double[][]{new double[2 * size], new double[2 * size]};
+        geometry.decode(polyline, points[0], points[1]);
+        return points;
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * A one-to-all shortest path search that spreads its work over several threads, using Meyer and Sanders'
+ * delta-stepping. Rather than settling one node at a time like Dijkstra, nodes are kept in buckets of width delta by
+ * distance and a whole bucket is relaxed at once. Edges no longer than delta (light edges) can put nodes back into the
+ * bucket being relaxed, so its light edges are relaxed over and over until it stops changing, and only then are its
+ * heavy edges relaxed, once. Each round of relaxations is split between the threads, with distances lowered by
+ * compare and set so threads relaxing into the same node don't lose each other's work.
+ * <p>
+ * Every node ends up with the smallest sum of its final predecessor distance and edge weight, exactly as Dijkstra
+ * works it out, so the distances are identical to Dijkstra's. A small delta means little wasted work but many rounds
+ * of little parallelism, a large one means few big rounds but more nodes relaxed before their distance is final;
+ * chooseDelta picks one from the distribution of edge weights. Not thread safe, each thread should have its own
+ * instance, and shutdown should be called when it is finished with.
+ */
+public class DeltaStepping {
+
+    private static final double DELTA_PERCENTILE = 0.9;     //Of the finite edge weights, so most edges are light
+    private static final int PARALLEL_THRESHOLD = 512;      //Rounds with fewer nodes than this are relaxed on one thread
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private RoutingGraph graph;
+    private int threads;
+    private ExecutorService executor;
+    private AtomicIntegerArray distances;                   //Float bits, non negative floats order the same as their bits
+    private int[] stamps;                                   //Round each node was last relaxed in, to skip duplicates
+    private int round = 0;
+    private int[][] buckets = new int[16][];
+    private int[] bucketSizes = new int[16];
+
+    /**
+     * @param graph     The graph to search
+     * @param threads   The number of threads to relax edges on
+     */
+    public DeltaStepping(RoutingGraph graph, int threads) {
+        this.graph = graph;
+        this.threads = threads;
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        this.distances = new AtomicIntegerArray(graph.getNodeCount());
+        this.stamps = new int[graph.getNodeCount()];
+    }
+
+    /**
+     * Picks a bucket width so that most edges are light, the DELTA_PERCENTILE percentile of the finite weights
+     * @param weights   The weight of each edge
+     * @return          The bucket width
+     */
+    public static float chooseDelta(float[] weights){
+        float[] finite = new float[weights.length];
+        int count = 0;
+        for(float weight : weights){
+            if(weight != RoutingGraph.INFINITY) finite[count++] = weight;
+        }
+        if(count == 0) return 1;
+        Arrays.sort(finite, 0, count);
+        float delta = finite[(int) Math.min(count - 1, DELTA_PERCENTILE * count)];
+        return delta > 0 ? delta : 1;
+    }
+
+    /**
+     * Checks the search gives the same distances as Dijkstra from some sources, then times it from 1 thread up to one
+     * per core, logging the time per query and speedup over Dijkstra for each
+     * @param graph     The graph to search
+     * @param weights   The weight of each edge, from the metric being minimised
+     * @param sources   The sources to search from
+     * @param log       Where to report the results
+     */
+    public static void benchmark(RoutingGraph graph, float[] weights, int[] sources, Consumer<String> log){
+        float delta = chooseDelta(weights);
+        int nodeCount = graph.getNodeCount();
+
+        DijkstraSearch dijkstra = new DijkstraSearch(graph, false);
+        float[][] expected = new float[sources.length][nodeCount];
+        long startTime = System.nanoTime();
+        for(int i = 0; i < sources.length; i++){
+            dijkstra.reset();
+            dijkstra.addSource(sources[i], 0);
+            while(dijkstra.settleNext(weights) != -1);
+            for(int node = 0; node < nodeCount; node++) expected[i][node] = dijkstra.getDistance(node);
+        }
+        long dijkstraTime = System.nanoTime() - startTime;
+        log.accept("Delta stepping with bucket width " + MathUtil.round(delta, 4) + ", Dijkstra takes "
+                + MathUtil.round(dijkstraTime / 1e6 / sources.length, 3) + "ms per query.");
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for(int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(cores, 2 * threads)){
+            DeltaStepping search = new DeltaStepping(graph, threads);
+            float[][] results = new float[sources.length][];
+            long time;
+            try{
+                search.compute(sources[0], weights, delta);        //Warm up
+                startTime = System.nanoTime();
+                for(int i = 0; i < sources.length; i++){
+                    results[i] = search.compute(sources[i], weights, delta);
+                }
+                time = System.nanoTime() - startTime;
+            }finally{
+                search.shutdown();
+            }
+            int mismatches = 0;
+            for(int i = 0; i < sources.length; i++){
+                if(!Arrays.equals(results[i], expected[i])) mismatches++;
+            }
+            log.accept("\t" + threads + " threads: " + MathUtil.round(time / 1e6 / sources.length, 3) + "ms per query (speedup "
+                    + MathUtil.round((double) dijkstraTime / time, 2) + " over Dijkstra), "
+                    + (mismatches == 0 ? "identical to Dijkstra." : mismatches + " queries differ from Dijkstra!"));
+        }
+    }
+
+    /**
+     * Finds the distance from a source to every node
+     * @param source    The source node
+     * @param weights   The weight of each edge, from the metric being minimised
+     * @param delta     The bucket width
+     * @return          The distance to each node, infinity if it can't be reached
+     */
+    public float[] compute(int source, float[] weights, float delta){
+        int infinity = Float.floatToIntBits(RoutingGraph.INFINITY);
+        for(int node = 0; node < graph.getNodeCount(); node++) distances.set(node, infinity);
+        Arrays.fill(bucketSizes, 0);
+        distances.set(source, Float.floatToIntBits(0));
+        add(0, source);
+
+        int[] settled = new int[16];
+        for(int bucket = 0; bucket < bucketSizes.length; bucket++){
+            int settledCount = 0;
+            round++;
+            int bucketRound = round;        //Nodes relaxed since this, from any light round, are already in settled
+            while(bucketSizes[bucket] > 0){
+                //Take the nodes out of the bucket, skipping stale entries and nodes already relaxed at this distance
+                int[] frontier = new int[bucketSizes[bucket]];
+                int size = 0;
+                round++;
+                for(int i = 0; i < bucketSizes[bucket]; i++){
+                    int node = buckets[bucket][i];
+                    if(stamps[node] == round || bucketOf(node, delta) != bucket) continue;
+                    if(stamps[node] <= bucketRound){
+                        if(settledCount == settled.length) settled = Arrays.copyOf(settled, 2 * settledCount);
+                        settled[settledCount++] = node;
+                    }
+                    stamps[node] = round;
+                    frontier[size++] = node;
+                }
+                bucketSizes[bucket] = 0;
+                for(int node : relax(frontier, size, weights, delta, true)) add(bucketOf(node, delta), node);
+            }
+            for(int node : relax(settled, settledCount, weights, delta, false)) add(bucketOf(node, delta), node);
+        }
+
+        float[] result = new float[graph.getNodeCount()];
+        for(int node = 0; node < result.length; node++) result[node] = Float.intBitsToFloat(distances.get(node));
+        return result;
+    }
+
+    /**
+     * Relaxes the light or heavy edges out of some nodes, split between the threads if there are enough of them
+     * @return The nodes whose distances were lowered, possibly more than once each
+     */
+    private int[] relax(int[] nodes, int size, float[] weights, float delta, boolean light){
+        if(executor == null || size < PARALLEL_THRESHOLD) return relax(nodes, 0, size, weights, delta, light);
+        int chunks = Math.min(threads * CHUNKS_PER_THREAD, size);
+        List<Callable<int[]>> tasks = new ArrayList<>();
+        for(int chunk = 0; chunk < chunks; chunk++){
+            int from = (int) ((long) size * chunk / chunks);
+            int to = (int) ((long) size * (chunk + 1) / chunks);
+            tasks.add(() -> relax(nodes, from, to, weights, delta, light));
+        }
+        try{
+            List<int[]> lowered = new ArrayList<>();
+            int total = 0;
+            for(Future<int[]> future : executor.invokeAll(tasks)){
+                lowered.add(future.get());
+                total += lowered.get(lowered.size() - 1).length;
+            }
+            int[] result = new int[total];
+            int position = 0;
+            for(int[] part : lowered){
+                System.arraycopy(part, 0, result, position, part.length);
+                position += part.length;
+            }
+            return result;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relaxing edges", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private int[] relax(int[] nodes, int from, int to, float[] weights, float delta, boolean light){
+        int[] lowered = new int[16];
+        int count = 0;
+        for(int i = from; i < to; i++){
+            int node = nodes[i];
+            float distance = Float.intBitsToFloat(distances.get(node));
+            for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                float weight = weights[edge];
+                if(weight == RoutingGraph.INFINITY || (weight <= delta) != light) continue;
+                int head = graph.getHead(edge);
+                if(lower(head, distance + weight)){
+                    if(count == lowered.length) lowered = Arrays.copyOf(lowered, 2 * count);
+                    lowered[count++] = head;
+                }
+            }
+        }
+        return Arrays.copyOf(lowered, count);
+    }
+
+    /**
+     * Lowers a node's distance if the new one is smaller, safely with other threads doing the same
+     * @return Whether the distance was lowered
+     */
+    private boolean lower(int node, float distance){
+        int bits = Float.floatToIntBits(distance);
+        while(true){
+            int current = distances.get(node);
+            if(current <= bits) return false;
+            if(distances.compareAndSet(node, current, bits)) return true;
+        }
+    }
+
+    private int bucketOf(int node, float delta){
+        return (int) (Float.intBitsToFloat(distances.get(node)) / delta);
+    }
+
+    private void add(int bucket, int node){
+        if(bucket >= buckets.length){
+            int length = Math.max(bucket + 1, 2 * buckets.length);
+            buckets = Arrays.copyOf(buckets, length);
+            bucketSizes = Arrays.copyOf(bucketSizes, length);
+        }
+        if(buckets[bucket] == null) buckets[bucket] = new int[16];
+        if(bucketSizes[bucket] == buckets[bucket].length) buckets[bucket] = Arrays.copyOf(buckets[bucket], 2 * bucketSizes[bucket]);
+        buckets[bucket][bucketSizes[bucket]++] = node;
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
+    /**
+     * Stops the threads
+     */
+    public void shutdown(){
+        if(executor != null) executor.shutdown();
+    }
+}
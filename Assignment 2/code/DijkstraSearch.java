@@ -0,0 +1,110 @@
+/**
+ * Reusable Dijkstra search over a RoutingGraph. The arrays are allocated once and reset lazily using a search round
+ * counter, so running many searches in a row (one per matrix row for example) doesn't touch the whole graph each time.
+ * The search is run one settled node at a time so callers can decide when to stop. Not thread safe, each thread
+ * should have its own instance.
+ */
+public class DijkstraSearch {
+
+    private RoutingGraph graph;
+    private boolean reverse;
+
+    private float[] distances;
+    private int[] parentEdges;
+    private int[] rounds;       //The search round in which each node's distance was last set
+    private int round = 0;
+    private NodeHeap frontier;
+
+    /**
+     * @param graph     The graph to search
+     * @param reverse   If true the search runs over incoming edges, giving distances to the sources instead of from
+     */
+    public DijkstraSearch(RoutingGraph graph, boolean reverse) {
+        this.graph = graph;
+        this.reverse = reverse;
+        this.distances = new float[graph.getNodeCount()];
+        this.parentEdges = new int[graph.getNodeCount()];
+        this.rounds = new int[graph.getNodeCount()];
+        this.frontier = new NodeHeap(graph.getNodeCount());
+    }
+
+    /**
+     * Starts a new search, forgetting everything from the last one
+     */
+    public void reset(){
+        round++;
+        frontier.clear();
+    }
+
+    /**
+     * Adds a source to the current search
+     * @param node      The source node
+     * @param distance  The distance the source starts with
+     */
+    public void addSource(int node, float distance){
+        if(distance < getDistance(node)){
+            distances[node] = distance;
+            parentEdges[node] = -1;
+            rounds[node] = round;
+            frontier.offer(node, distance);
+        }
+    }
+
+    /**
+     * Settles the closest node in the frontier and relaxes its edges.
+     * @param weights   The weight of each edge
+     * @return          The node settled, or -1 if the frontier is empty
+     */
+    public int settleNext(float[] weights){
+        if(frontier.isEmpty()) return -1;
+        int node = frontier.poll();
+        float distance = distances[node];
+        if(reverse){
+            for(int i = graph.firstIn(node); i < graph.endIn(node); i++){
+                int edge = graph.inEdge(i);
+                relax(graph.getTail(edge), edge, distance + weights[edge]);
+            }
+        }else{
+            for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                relax(graph.getHead(edge), edge, distance + weights[edge]);
+            }
+        }
+        return node;
+    }
+
+    private void relax(int node, int edge, float distance){
+        if(distance < getDistance(node)){
+            distances[node] = distance;
+            parentEdges[node] = edge;
+            rounds[node] = round;
+            frontier.offer(node, distance);
+        }
+    }
+
+    /**
+     * @return The smallest distance left in the frontier, infinity if there is nothing left to settle
+     */
+    public float peekDistance(){
+        return frontier.isEmpty() ? RoutingGraph.INFINITY : frontier.peekKey();
+    }
+
+    /**
+     * @param node  The node
+     * @return      The best distance found to the node this search, infinity if it hasn't been reached
+     */
+    public float getDistance(int node){
+        return rounds[node] == round ? distances[node] : RoutingGraph.INFINITY;
+    }
+
+    /**
+     * @param node  The node
+     * @return      The edge the node was reached through, -1 for sources or nodes that haven't been reached
+     */
+    public int getParentEdge(int node){
+        return rounds[node] == round ? parentEdges[node] : -1;
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * Labels every node with its nearest few facilities (hospitals, traffic lights and so on) by travel cost, so the
+ * nearest facilities to a node can be looked up directly rather than pathfinding to every facility in turn.
+ * <p>
+ * The labels come from one multi-source Dijkstra search seeded from every facility at once and run over reversed
+ * edges, so the distances are from each node to the facilities. Each node may be settled up to count times, once per
+ * distinct facility, and each time it is settled the facility is passed on to the nodes with edges into it. That is
+ * enough to find every node's count nearest facilities: any facility nearer to a node's neighbour than one of the
+ * node's own nearest must be nearer the node too, so the neighbour has it among its nearest as well.
+ */
+public class FacilityLabels {
+
+    private int count;              //Facilities kept per node
+    private int[] facilities;       //Node * count + rank -> facility, -1 if there are fewer than rank + 1 reachable
+    private float[] distances;      //Node * count + rank -> cost of travelling from the node to the facility
+    private long buildTime;
+
+    private FacilityLabels(int nodeCount, int count) {
+        this.count = count;
+        this.facilities = new int[nodeCount * count];
+        this.distances = new float[nodeCount * count];
+        Arrays.fill(facilities, -1);
+        Arrays.fill(distances, RoutingGraph.INFINITY);
+    }
+
+    /**
+     * Labels every node with its nearest facilities
+     * @param graph             The graph to search
+     * @param weights           The weight of each edge, from the metric being minimised
+     * @param facilityNodes     The node each facility is reached at, by facility, several facilities can share a node
+     * @param count             The number of nearest facilities to keep per node
+     * @return                  The labels
+     */
+    public static FacilityLabels build(RoutingGraph graph, float[] weights, int[] facilityNodes, int count){
+        long startTime = System.currentTimeMillis();
+        FacilityLabels labels = new FacilityLabels(graph.getNodeCount(), count);
+        int[] settled = new int[graph.getNodeCount()];       //Number of labels each node has so far
+
+        EntryHeap heap = new EntryHeap();
+        for(int facility = 0; facility < facilityNodes.length; facility++){
+            if(facilityNodes[facility] != -1) heap.offer(0, facilityNodes[facility], facility);
+        }
+        while(!heap.isEmpty()){
+            float distance = heap.peekKey();
+            int node = heap.peekNode();
+            int facility = heap.peekFacility();
+            heap.poll();
+            if(settled[node] == count || labels.has(node, facility, settled[node])) continue;     //Already has it or is full
+
+            labels.facilities[node * count + settled[node]] = facility;
+            labels.distances[node * count + settled[node]] = distance;
+            settled[node]++;
+            for(int i = graph.firstIn(node); i < graph.endIn(node); i++){
+                int edge = graph.inEdge(i);
+                int tail = graph.getTail(edge);
+                if(weights[edge] != RoutingGraph.INFINITY && settled[tail] < count){
+                    heap.offer(distance + weights[edge], tail, facility);
+                }
+            }
+        }
+        labels.buildTime = System.currentTimeMillis() - startTime;
+        return labels;
+    }
+
+    private boolean has(int node, int facility, int labelCount){
+        for(int rank = 0; rank < labelCount; rank++){
+            if(facilities[node * count + rank] == facility) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param node  The node
+     * @param rank  0 for the nearest facility, 1 for the next nearest and so on, less than getCount
+     * @return      The facility, -1 if fewer than rank + 1 facilities can be reached from the node
+     */
+    public int getFacility(int node, int rank){
+        return facilities[node * count + rank];
+    }
+
+    /**
+     * @param node  The node
+     * @param rank  0 for the nearest facility, 1 for the next nearest and so on, less than getCount
+     * @return      The cost of travelling from the node to the facility, infinity if there isn't one
+     */
+    public float getDistance(int node, int rank){
+        return distances[node * count + rank];
+    }
+
+    /**
+     * @return The number of facilities kept per node
+     */
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * @return How long labelling the nodes took in milliseconds
+     */
+    public long getBuildTime(){
+        return buildTime;
+    }
+
+    /**
+     * A binary min heap of (node, facility) pairs keyed by distance. The same node can be in it many times, once per
+     * facility reaching it, so entries that turn out to be stale are skipped when they are polled instead of being
+     * updated in place like NodeHeap does.
+     */
+    private static class EntryHeap {
+        private float[] keys = new float[64];
+        private int[] nodes = new int[64];
+        private int[] facilities = new int[64];
+        private int size = 0;
+
+        void offer(float key, int node, int facility){
+            if(size == keys.length){
+                keys = Arrays.copyOf(keys, 2 * size);
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                facilities = Arrays.copyOf(facilities, 2 * size);
+            }
+            int position = size++;
+            while(position > 0){
+                int parent = (position - 1) / 2;
+                if(keys[parent] <= key) break;
+                move(parent, position);
+                position = parent;
+            }
+            keys[position] = key;
+            nodes[position] = node;
+            facilities[position] = facility;
+        }
+
+        void poll(){
+            size--;
+            float key = keys[size];
+            int node = nodes[size];
+            int facility = facilities[size];
+            int position = 0;
+            while(2 * position + 1 < size){
+                int child = 2 * position + 1;
+                if(child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if(keys[child] >= key) break;
+                move(child, position);
+                position = child;
+            }
+            keys[position] = key;
+            nodes[position] = node;
+            facilities[position] = facility;
+        }
+
+        private void move(int from, int to){
+            keys[to] = keys[from];
+            nodes[to] = nodes[from];
+            facilities[to] = facilities[from];
+        }
+
+        float peekKey(){
+            return keys[0];
+        }
+
+        int peekNode(){
+            return nodes[0];
+        }
+
+        int peekFacility(){
+            return facilities[0];
+        }
+
+        boolean isEmpty(){
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.*;
+
+/**
+ * A class to work out where the facilities of a type are on the road graph, for labelling nodes with their nearest
+ * ones. Traffic lights are their own intersections. Polygons (hospitals, car parks and so on) are reached at the end
+ * of the road segment nearest their centre that is closer to it.
+ */
+public class FacilityManager {
+
+    public static final String TRAFFIC_LIGHTS = "Traffic Lights";
+
+    /**
+     * The facilities of one type
+     */
+    public static class Facilities {
+        private String[] names;
+        private int[] nodes;
+
+        Facilities(String[] names, int[] nodes) {
+            this.names = names;
+            this.nodes = nodes;
+        }
+
+        /**
+         * @return A description of each facility for the user
+         */
+        public String[] getNames(){
+            return names;
+        }
+
+        /**
+         * @return The node index each facility is reached at, -1 if it couldn't be placed on the graph
+         */
+        public int[] getNodes(){
+            return nodes;
+        }
+    }
+
+    /**
+     * @return The types of facility there are in the map, traffic lights first then polygon types by name
+     */
+    public static List<String> getTypes(List<Polygon> polygons){
+        List<String> types = new ArrayList<>();
+        types.add(TRAFFIC_LIGHTS);
+        Set<String> polygonTypes = new TreeSet<>();
+        for(Polygon polygon : polygons) polygonTypes.add(polygon.getTypeName());
+        types.addAll(polygonTypes);
+        return types;
+    }
+
+    /**
+     * Finds every facility of a type
+     * @param type      The type, from getTypes
+     * @param nodes     The nodes of the map
+     * @param polygons  The polygons of the map
+     * @param graph     The graph the facilities are placed on
+     * @param index     The index over the map's segments
+     * @return          The facilities
+     */
+    public static Facilities find(String type, Collection<Node> nodes, List<Polygon> polygons, RoutingGraph graph, SegmentIndex index){
+        List<String> names = new ArrayList<>();
+        List<Integer> facilityNodes = new ArrayList<>();
+        if(type.equals(TRAFFIC_LIGHTS)){
+            for(Node node : nodes){
+                if(!node.isIntersection()) continue;
+                names.add("Intersection ID " + node.getID());
+                facilityNodes.add(graph.indexOf(node));
+            }
+        }else{
+            double[][] points = new double[2][64];
+            for(Polygon polygon : polygons){
+                if(!polygon.getTypeName().equals(type) || polygon.getRings().isEmpty()) continue;
+                names.add(polygon.getTypeName() + (polygon.getLabel() == null ? "" : " " + polygon.getLabel()));
+                facilityNodes.add(locate(polygon, graph, index, points));
+            }
+        }
+        int[] result = new int[facilityNodes.size()];
+        for(int i = 0; i < result.length; i++) result[i] = facilityNodes.get(i);
+        return new Facilities(names.toArray(new String[0]), result);
+    }
+
+    /**
+     * @return The node a polygon is reached at, -1 if there are no roads
+     */
+    private static int locate(Polygon polygon, RoutingGraph graph, SegmentIndex index, double[][] points){
+        GeometryStore geometry = polygon.getGeometry();
+        int ring = polygon.getRings().get(0);
+        int size = geometry.getPointCount(ring);
+        if(points[0].length < size){
+            points[0] = new double[size];
+            points[1] = new double[size];
+        }
+        geometry.decode(ring, points[0], points[1]);
+        double x = 0, y = 0;
+        for(int p = 0; p < size; p++){
+            x += points[0][p] / size;
+            y += points[1][p] / size;
+        }
+        SegmentIndex.Projection closest = index.nearest(new Location(x, y), Double.POSITIVE_INFINITY);
+        if(closest == null) return -1;
+        Segment segment = closest.getSegment();
+        return graph.indexOf(closest.getFraction() < 0.5 ? segment.getStart() : segment.getEnd());
+    }
+}
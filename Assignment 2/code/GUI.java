@@ -38,10 +38,40 @@ public abstract class GUI{
 
 	protected abstract void onScroll(MouseWheelEvent e);
 
+	/**
+	 * Is called when the mouse moves over the drawing area without a button held.
+	 * @return Whether anything changed that needs redrawing
+	 */
+	protected abstract boolean onHover(MouseEvent e);
+
 	protected abstract void onSetStart();
 
 	protected abstract void onSetEnd();
 
+	protected abstract void onAddStop();
+
+	protected abstract void onOptimiseStops();
+
+	protected abstract void onClearStops();
+
+	protected abstract void onIsochrone();
+
+	protected abstract void onCorridor();
+
+	protected abstract void onNearestFacilities();
+
+	protected abstract void onBuildHubLabels();
+
+	protected abstract void onOverlayRoute();
+
+	protected abstract void onCompressGraph();
+
+	protected abstract void onMapMatch();
+
+	protected abstract void onBetweenness();
+
+	protected abstract void onDeltaStepping();
+
 	protected abstract void calculateAPs();
 
 	protected abstract void calculateAllAps();
@@ -54,7 +84,15 @@ public abstract class GUI{
 
 	protected abstract boolean renderPolygons();
 
-	protected abstract void onSetMinimiseValue(boolean minimiseValue);
+	protected abstract void onSetMinimiseValue(String minimiseValue);
+
+	protected abstract void onNewProfile();
+
+	protected abstract void onSetTravelMode(TravelMode mode);
+
+	protected abstract void onSetAlternatives(boolean alternatives);
+
+	protected abstract void onSetSearchStats(boolean searchStats);
 
 	/**
 	 * Is called when the drawing area is redrawn and performs all the logic for
@@ -139,6 +177,42 @@ public abstract class GUI{
 		return minimiseValue.getSelectedObjects()[0].toString();
 	}
 
+	public TravelMode getTravelMode(){
+		return (TravelMode) travelMode.getSelectedItem();
+	}
+
+	/**
+	 * @return Whether routes should be found with a search that is repaired when roads change, rather than started again
+	 */
+	public boolean isIncremental(){
+		return incremental.isSelected();
+	}
+
+	/**
+	 * @return Whether alternatives to the best route should be shown as well
+	 */
+	public boolean isAlternatives(){
+		return alternatives.isSelected();
+	}
+
+	/**
+	 * @return Whether the work done by each route search should be counted, printed and drawn
+	 */
+	public boolean isSearchStats(){
+		return searchStats.isSelected();
+	}
+
+	/**
+	 * Adds an option to the minimise drop down (if it isn't already there) and selects it
+	 * @param value The option to add
+	 */
+	public void addMinimiseValue(String value){
+		if(((DefaultComboBoxModel<String>) minimiseValue.getModel()).getIndexOf(value) == -1){
+			minimiseValue.addItem(value);
+		}
+		minimiseValue.setSelectedItem(value);
+	}
+
 	// --------------------------------------------------------------------
 	// Everything below here is Swing-related and, while it's worth
 	// understanding, you don't need to look any further to finish the
@@ -152,12 +226,12 @@ public abstract class GUI{
 	public static final int TEXT_OUTPUT_ROWS = 5;
 	public static final int SEARCH_COLS = 15;
 
-	private static final String NODES_FILENAME = "nodeID-lat-lon.tab";
-	private static final String ROADS_FILENAME = "roadID-roadInfo.tab";
-	private static final String SEGS_FILENAME = "roadSeg-roadID-length-nodeID-nodeID-coords.tab";
-	private static final String POLYS_FILENAME = "polygon-shapes.mp";
-	private static final String RESTR_FILENAME = "restrictions.tab";
-	private static final String TRAFFIC_FILENAME = "NZtrafficLightCoords.txt";
+	private static final String NODES_FILENAME = MapLoader.NODES_FILENAME;
+	private static final String ROADS_FILENAME = MapLoader.ROADS_FILENAME;
+	private static final String SEGS_FILENAME = MapLoader.SEGS_FILENAME;
+	private static final String POLYS_FILENAME = MapLoader.POLYS_FILENAME;
+	private static final String RESTR_FILENAME = MapLoader.RESTR_FILENAME;
+	private static final String TRAFFIC_FILENAME = MapLoader.TRAFFIC_FILENAME;
 
 	/*
 	 * In Swing, everything is a component; buttons, graphics panes, tool tips,
@@ -181,6 +255,10 @@ public abstract class GUI{
 	private JTextField endText;
 
 	private JComboBox<String> minimiseValue;
+	private JComboBox<TravelMode> travelMode;
+	private JCheckBox incremental;
+	private JCheckBox alternatives;
+	private JCheckBox searchStats;
 
 	private JComboBox search;
 	private JFileChooser fileChooser;
@@ -384,17 +462,54 @@ public abstract class GUI{
 		JLabel pathOptionsLabel = new JLabel("<html><div style='text-align: justify;'>Minimise:</div></html>");
 		String[] options = new String[]{"Distance", "Time"};
 		minimiseValue = new JComboBox<>(options);
+		JLabel travelModeLabel = new JLabel("<html><div style='text-align: justify;'>Travel by:</div></html>");
+		travelMode = new JComboBox<>(TravelMode.values());
 
 		JPanel pathOptionsPanel = new JPanel();
-		pathOptionsPanel.setLayout(new GridLayout(2, 1));
-		pathOptionsPanel.setMaximumSize(new Dimension(50, 100));
+		pathOptionsPanel.setLayout(new GridLayout(8, 1));
+		pathOptionsPanel.setMaximumSize(new Dimension(50, 250));
 		pathOptionsPanel.add(pathOptionsLabel);
 		pathOptionsPanel.add(minimiseValue);
+		pathOptionsPanel.add(travelModeLabel);
+		pathOptionsPanel.add(travelMode);
+
+		JButton newProfile = new JButton("New Profile");
+		newProfile.addActionListener((e)->{
+			onNewProfile();
+			redraw();
+		});
+		pathOptionsPanel.add(newProfile);
+
+		incremental = new JCheckBox("Incremental");
+		incremental.setToolTipText("Repair the route when roads are closed (right click a road, shift to change its speed)");
+		pathOptionsPanel.add(incremental);
+
+		alternatives = new JCheckBox("Alternatives");
+		alternatives.setToolTipText("Also show up to two meaningfully different alternative routes");
+		alternatives.addActionListener((e)->{
+			onSetAlternatives(alternatives.isSelected());
+			redraw();
+		});
+		pathOptionsPanel.add(alternatives);
+
+		searchStats = new JCheckBox("Search Stats");
+		searchStats.setToolTipText("Count the work each route search does and colour the nodes it settled by when they were settled");
+		searchStats.addActionListener((e)->{
+			onSetSearchStats(searchStats.isSelected());
+			redraw();
+		});
+		pathOptionsPanel.add(searchStats);
 		controls.add(pathOptionsPanel);
 
 
 		minimiseValue.addActionListener((e) ->{
-			this.onSetMinimiseValue(minimiseValue.getItemAt(0).equals("Time"));
+			this.onSetMinimiseValue((String) minimiseValue.getSelectedItem());
+			redraw();
+		});
+
+		travelMode.addActionListener((e) ->{
+			this.onSetTravelMode((TravelMode) travelMode.getSelectedItem());
+			redraw();
 		});
 
 		//Create pathfinding controls
@@ -419,6 +534,87 @@ public abstract class GUI{
 		pathpanel.add(endText);
 		controls.add(pathpanel);
 
+		JPanel stopPanel = new JPanel();
+		stopPanel.setLayout(new GridLayout(3, 2));
+		stopPanel.setMaximumSize(new Dimension(100, 100));
+
+		JButton addStop = new JButton("Add Stop");
+		addStop.addActionListener((e)->onAddStop());
+		JButton optimiseStops = new JButton("Optimise Stops");
+		optimiseStops.addActionListener((e)->{
+			onOptimiseStops();
+			redraw();
+		});
+		JButton clearStops = new JButton("Clear Stops");
+		clearStops.addActionListener((e)->{
+			onClearStops();
+			redraw();
+		});
+
+		stopPanel.add(addStop);
+		stopPanel.add(optimiseStops);
+		stopPanel.add(clearStops);
+
+		JButton isochrone = new JButton("Isochrone");
+		isochrone.addActionListener((e)->{
+			onIsochrone();
+			redraw();
+		});
+		stopPanel.add(isochrone);
+
+		JButton corridor = new JButton("Corridor");
+		corridor.addActionListener((e)->{
+			onCorridor();
+			redraw();
+		});
+		stopPanel.add(corridor);
+
+		JButton nearest = new JButton("Nearest");
+		nearest.setToolTipText("List the nearest facilities of a type to the selected node");
+		nearest.addActionListener((e)->onNearestFacilities());
+		stopPanel.add(nearest);
+		controls.add(stopPanel);
+
+		JPanel indexPanel = new JPanel();
+		indexPanel.setLayout(new GridLayout(6, 1));
+		indexPanel.setMaximumSize(new Dimension(100, 100));
+
+		JButton hubLabels = new JButton("Hub Labels");
+		hubLabels.addActionListener((e)->onBuildHubLabels());
+		indexPanel.add(hubLabels);
+
+		JButton overlayRoute = new JButton("Overlay Route");
+		overlayRoute.addActionListener((e)->{
+			onOverlayRoute();
+			redraw();
+		});
+		indexPanel.add(overlayRoute);
+
+		JButton compressGraph = new JButton("Compress Graph");
+		compressGraph.addActionListener((e)->{
+			onCompressGraph();
+			redraw();
+		});
+		indexPanel.add(compressGraph);
+
+		JButton mapMatch = new JButton("Map Match");
+		mapMatch.addActionListener((e)->onMapMatch());
+		indexPanel.add(mapMatch);
+
+		JButton betweenness = new JButton("Betweenness");
+		betweenness.setToolTipText("Estimate how many shortest paths use each road and show it as a heat map");
+		betweenness.addActionListener((e)->{
+			onBetweenness();
+			redraw();
+		});
+		indexPanel.add(betweenness);
+
+		JButton deltaStepping = new JButton("Delta Stepping");
+		deltaStepping.setToolTipText("Check the parallel one-to-all search against Dijkstra and time it on 1 to N threads");
+		deltaStepping.addActionListener((e)->onDeltaStepping());
+		indexPanel.add(deltaStepping);
+		controls.add(indexPanel);
+
 		JPanel APPanel = new JPanel();
 		APPanel.setLayout(new GridLayout(2, 1));
 		APPanel.setMaximumSize(new Dimension(100, 100));
@@ -528,6 +724,11 @@ public abstract class GUI{
 				onDrag(e);
 				redraw();
 			}
+
+			@Override
+			public void mouseMoved(MouseEvent e){
+				if(onHover(e)) redraw();
+			}
 		});
 
 		drawing.addMouseWheelListener(new MouseAdapter(){
@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Holds the coordinates of every polyline in the map (segment shapes and polygon rings) in one compressed byte
+ * buffer, instead of a list of Location objects per polyline. Coordinates are rounded to a 1 metre grid and each
+ * point is stored as the difference from the point before it, zig-zag encoded (so small negative differences stay
+ * small) and written as a varint of 7 bits per byte. Points along a road are only a few metres apart so most
+ * coordinates take one or two bytes. A polyline is an id into offset tables giving where its bytes and points start.
+ * Segments going both ways share the same polyline.
+ * <p>
+ * Polylines are only ever read whole: toScreen decodes one straight into the renderer's pixel arrays for drawing and
+ * decode into kilometre coordinates for everything else. The buffers are laid out exactly as in the snapshot file written by
+ * write, so a snapshot can be memory mapped by map and used with no parsing. A mapped store is read only, but
+ * endPolyline still hands out the polyline ids in order so the loaders can number segments and polygons the same way
+ * without reading their coordinates. A snapshot records a hash of the files it was built from and is only mapped for
+ * the same hash, and the loaders check isComplete afterwards in case they asked for a different number of polylines.
+ */
+public class GeometryStore {
+
+    private static final int MAGIC = 0x47454F32;            //"GEO2"
+    private static final int HEADER_LENGTH = 24;
+    private static final double GRID = 1000;                //Grid cells per km
+
+    //While loading
+    private byte[] bytes = new byte[4096];
+    private int byteCount = 0;
+    private int[] byteStarts = new int[256];                //Polyline -> offset of its first byte (size polylines + 1)
+    private int[] pointStarts = new int[256];               //Polyline -> index of its first point (size polylines + 1)
+    private int pointCount = 0;
+    private int polylineCount = 0;
+    private int lastX, lastY;                               //Last point added to the polyline being built, in grid cells
+
+    //Once trimmed or mapped
+    private ByteBuffer data;
+    private IntBuffer byteOffsets;
+    private IntBuffer pointOffsets;
+    private boolean mapped = false;
+    private int nextPolyline = 0;                           //Next id handed out by endPolyline when mapped, past the end if the snapshot ran short
+
+    /**
+     * Adds a point to the polyline being built
+     * @param x The x coordinate of the point in km
+     * @param y The y coordinate of the point in km
+     */
+    public void addPoint(double x, double y){
+        if(mapped) throw new IllegalStateException("A mapped geometry store is read only");
+        int qx = (int) Math.round(x * GRID);
+        int qy = (int) Math.round(y * GRID);
+        boolean first = pointCount == pointStarts[polylineCount];
+        if(byteCount + 10 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        writeVarint(zigZag(first ? qx : qx - lastX));
+        writeVarint(zigZag(first ? qy : qy - lastY));
+        lastX = qx;
+        lastY = qy;
+        pointCount++;
+    }
+
+    /**
+     * Finishes the polyline being built, made of the points added since the last one was finished
+     * @return The id of the polyline. For a mapped store that has run out of polylines the id isn't valid, and
+     *         isComplete tells the loader to rebuild the geometry.
+     */
+    public int endPolyline(){
+        if(mapped) return nextPolyline++;
+        if(polylineCount + 2 > byteStarts.length){
+            byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+            pointStarts = Arrays.copyOf(pointStarts, pointStarts.length * 2);
+        }
+        byteStarts[polylineCount + 1] = byteCount;
+        pointStarts[polylineCount + 1] = pointCount;
+        return polylineCount++;
+    }
+
+    /**
+     * Finishes loading, shrinking the buffers to the size of what has been added
+     */
+    public void trim(){
+        if(mapped) return;
+        data = ByteBuffer.wrap(Arrays.copyOf(bytes, byteCount));
+        byteOffsets = IntBuffer.wrap(Arrays.copyOf(byteStarts, polylineCount + 1));
+        pointOffsets = IntBuffer.wrap(Arrays.copyOf(pointStarts, polylineCount + 1));
+        bytes = null;
+        byteStarts = null;
+        pointStarts = null;
+    }
+
+    /**
+     * Decodes a polyline straight into pixel positions, for drawing
+     * @param polyline  The polyline
+     * @param origin    The origin of the rendering
+     * @param scale     The number of pixels per kilometer
+     * @param screenX   Filled with the x pixel positions, at least getPointCount long
+     * @param screenY   Filled with the y pixel positions, at least getPointCount long
+     * @return          The number of points
+     */
+    public int toScreen(int polyline, Location origin, double scale, int[] screenX, int[] screenY){
+        int count = getPointCount(polyline);
+        double pixelsPerCell = scale / GRID;
+        double offsetX = origin.x * scale;
+        double offsetY = origin.y * scale;
+        ByteBuffer in = reader(polyline);
+        int x = 0, y = 0;
+        for(int i = 0; i < count; i++){
+            x += readDelta(in);
+            y += readDelta(in);
+            screenX[i] = (int) (x * pixelsPerCell - offsetX);
+            screenY[i] = (int) (offsetY - y * pixelsPerCell);
+        }
+        return count;
+    }
+
+    /**
+     * Decodes a polyline into coordinates in km
+     * @param polyline  The polyline
+     * @param xs        Filled with the x coordinates, at least getPointCount long
+     * @param ys        Filled with the y coordinates, at least getPointCount long
+     * @return          The number of points
+     */
+    public int decode(int polyline, double[] xs, double[] ys){
+        int count = getPointCount(polyline);
+        ByteBuffer in = reader(polyline);
+        int x = 0, y = 0;
+        for(int i = 0; i < count; i++){
+            x += readDelta(in);
+            y += readDelta(in);
+            xs[i] = x / GRID;
+            ys[i] = y / GRID;
+        }
+        return count;
+    }
+
+    public int getPointCount(int polyline){
+        return pointOffsets.get(polyline + 1) - pointOffsets.get(polyline);
+    }
+
+    public int getPolylineCount(){
+        return mapped || data != null ? byteOffsets.limit() - 1 : polylineCount;
+    }
+
+    public int getTotalPointCount(){
+        return mapped || data != null ? pointOffsets.get(byteOffsets.limit() - 1) : pointCount;
+    }
+
+    /**
+     * @return Whether the store was memory mapped from a snapshot
+     */
+    public boolean isMapped(){
+        return mapped;
+    }
+
+    /**
+     * @return Whether exactly every polyline of a mapped snapshot has been handed out by endPolyline, so the loaders
+     *         read the same number of polylines as the snapshot was written with, no fewer and no more. Always true if
+     *         the store wasn't mapped.
+     */
+    public boolean isComplete(){
+        return !mapped || nextPolyline == getPolylineCount();
+    }
+
+    /**
+     * @return The size of the encoded coordinates and offset tables in bytes
+     */
+    public long getSizeInBytes(){
+        return data.capacity() + 8L * byteOffsets.capacity();
+    }
+
+    /**
+     * Writes a snapshot of the trimmed store. The layout is a magic number, the hash of the source files, the polyline,
+     * point and encoded byte counts, then the byte offsets and point offsets of every polyline and finally the encoded
+     * bytes, all big endian.
+     * @param file      The file to write to
+     * @param source    A hash of the files the geometry was read from
+     * @throws IOException If the file couldn't be written
+     */
+    public void write(File file, long source) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            int polylines = getPolylineCount();
+            out.writeInt(MAGIC);
+            out.writeLong(source);
+            out.writeInt(polylines);
+            out.writeInt(getTotalPointCount());
+            out.writeInt(data.capacity());
+            for(int i = 0; i <= polylines; i++) out.writeInt(byteOffsets.get(i));
+            for(int i = 0; i <= polylines; i++) out.writeInt(pointOffsets.get(i));
+            for(int i = 0; i < data.capacity(); i++) out.writeByte(data.get(i));
+        }
+    }
+
+    /**
+     * Memory maps a snapshot previously written with write, the operating system pages it in as it is drawn
+     * @param file      The snapshot
+     * @param source    The hash of the files the geometry is needed for
+     * @return          A read only store over the snapshot
+     * @throws IOException If the file couldn't be mapped, isn't a snapshot or was written from other files
+     */
+    public static GeometryStore map(File file, long source) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            //Check the header before mapping, so a snapshot that is about to be replaced isn't left mapped
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while(header.hasRemaining() && channel.read(header) >= 0);
+            if(header.hasRemaining() || header.getInt(0) != MAGIC) throw new IOException("Not a geometry snapshot");
+            if(header.getLong(4) != source) throw new IOException("Geometry snapshot was written from other data");
+            int polylines = header.getInt(12);
+            int points = header.getInt(16);
+            int byteLength = header.getInt(20);
+            int offsetsLength = 4 * (polylines + 1);
+            if(channel.size() != HEADER_LENGTH + 2L * offsetsLength + byteLength) throw new IOException("Geometry snapshot is truncated");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            GeometryStore store = new GeometryStore();
+            store.byteOffsets = slice(buffer, HEADER_LENGTH, offsetsLength).asIntBuffer();
+            store.pointOffsets = slice(buffer, HEADER_LENGTH + offsetsLength, offsetsLength).asIntBuffer();
+            store.data = slice(buffer, HEADER_LENGTH + 2 * offsetsLength, byteLength);
+            if(store.pointOffsets.get(polylines) != points) throw new IOException("Geometry snapshot point count doesn't match");
+            store.mapped = true;
+            store.bytes = null;
+            store.byteStarts = null;
+            store.pointStarts = null;
+            return store;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length){
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + length);
+        return slice.slice();
+    }
+
+    /**
+     * @return A view of the encoded bytes positioned at the start of the polyline, so several threads can decode at once
+     */
+    private ByteBuffer reader(int polyline){
+        ByteBuffer in = data.duplicate();
+        in.position(byteOffsets.get(polyline));
+        return in;
+    }
+
+    /**
+     * Reads one varint and undoes the zig-zag encoding
+     * @param in    The bytes, positioned at the varint and left after it
+     * @return      The difference from the previous coordinate, in grid cells
+     */
+    private static int readDelta(ByteBuffer in){
+        int value = 0, shift = 0, b;
+        do{
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }while(b < 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void writeVarint(int value){
+        while((value & ~0x7F) != 0){
+            bytes[byteCount++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[byteCount++] = (byte) value;
+    }
+
+    private static int zigZag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+}
@@ -0,0 +1,356 @@
+import java.util.*;
+
+/**
+ * Splits the road graph up using the locations of its nodes. Used to find a nested dissection order for the
+ * ContractionHierarchy and a multi-level Partition for the OverlayGraph, both of which only depend on the shape of the
+ * graph and not on any edge weights.
+ */
+public class GraphPartitioner {
+
+    private static final int LEAF_SIZE = 8;     //Parts this small aren't split any further
+
+    //Inertial flow settings, the nodes are sorted along each direction and the first and last fraction are pinned to
+    //opposite sides of the cut
+    private static final double[][] FLOW_DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    private static final double FLOW_FRACTION = 0.25;
+
+    /**
+     * Computes a nested dissection order of the graph. The nodes are split in half at the median of the longer side
+     * of their bounding box, the nodes along the cut are taken out as a separator, and both halves are ordered
+     * recursively before the separator. Road networks have small separators, so contracting nodes in this order
+     * adds few shortcuts no matter what the edge weights are.
+     * @param graph The graph to order
+     * @return      The rank of each node, 0 being the least important
+     */
+    public static int[] nestedDissectionOrder(RoutingGraph graph){
+        int[] nodes = new int[graph.getNodeCount()];
+        for(int v = 0; v < nodes.length; v++) nodes[v] = v;
+
+        Dissection dissection = new Dissection(graph);
+        dissection.dissect(nodes);
+        int[] ranks = new int[nodes.length];
+        for(int rank = 0; rank < nodes.length; rank++){
+            ranks[dissection.order[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Computes a multi-level partition of the graph using inertial flow. The whole graph is bisected until every part
+     * has at most the largest cell size, giving the cells of the top level, then each of those is bisected again for
+     * the level below and so on. Each bisection tries a few straight line directions, pinning the nodes at either end
+     * to opposite sides, and keeps the minimum cut found by a max flow between them. Levels that would only have one
+     * cell are left out.
+     * @param graph         The graph to partition
+     * @param cellSizes     The maximum number of nodes in a cell on each level, lowest level first
+     * @return              The partition
+     */
+    public static Partition inertialFlowPartition(RoutingGraph graph, int[] cellSizes){
+        long startTime = System.currentTimeMillis();
+        int[] nodes = new int[graph.getNodeCount()];
+        for(int v = 0; v < nodes.length; v++) nodes[v] = v;
+
+        InertialFlow flow = new InertialFlow(graph);
+        List<int[]> parents = new ArrayList<>();        //Cells of the level above, starting with the whole graph
+        parents.add(nodes);
+        List<int[]> levels = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        for(int level = cellSizes.length - 1; level >= 0; level--){
+            List<int[]> cells = new ArrayList<>();
+            for(int[] parent : parents){
+                flow.split(parent, cellSizes[level], cells);
+            }
+            if(cells.size() == 1) continue;
+
+            int[] cellOf = new int[nodes.length];
+            for(int cell = 0; cell < cells.size(); cell++){
+                for(int v : cells.get(cell)) cellOf[v] = cell;
+            }
+            levels.add(0, cellOf);
+            counts.add(0, cells.size());
+            parents = cells;
+        }
+        return new Partition(graph, levels.toArray(new int[0][]), counts.stream().mapToInt(Integer::intValue).toArray(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Calls consumer for every node joined to v by an edge in either direction.
+     */
+    static void forEachNeighbour(RoutingGraph graph, int v, java.util.function.IntConsumer consumer){
+        for(int edge = graph.firstOut(v); edge < graph.endOut(v); edge++){
+            consumer.accept(graph.getHead(edge));
+        }
+        for(int i = graph.firstIn(v); i < graph.endIn(v); i++){
+            consumer.accept(graph.getTail(graph.inEdge(i)));
+        }
+    }
+
+    /**
+     * Bisects sets of nodes with a unit capacity max flow between the two ends of the set along a direction
+     */
+    private static class InertialFlow {
+        private RoutingGraph graph;
+        private int[] local;        //Node index -> index within the set being bisected, -1 if not in it
+        private int[] marks;
+        private int mark = 0;
+
+        InertialFlow(RoutingGraph graph){
+            this.graph = graph;
+            this.local = new int[graph.getNodeCount()];
+            this.marks = new int[graph.getNodeCount()];
+            Arrays.fill(local, -1);
+        }
+
+        /**
+         * Recursively bisects the nodes until every part has at most maxSize nodes
+         * @param nodes     The nodes to split
+         * @param maxSize   The largest part allowed
+         * @param parts     The list the parts are added to
+         */
+        void split(int[] nodes, int maxSize, List<int[]> parts){
+            if(nodes.length <= maxSize){
+                parts.add(nodes);
+                return;
+            }
+            boolean[] side = bisect(nodes);
+            int count = 0;
+            for(boolean inA : side) if(inA) count++;
+            int[] a = new int[count];
+            int[] b = new int[nodes.length - count];
+            int sizeA = 0, sizeB = 0;
+            for(int i = 0; i < nodes.length; i++){
+                if(side[i]) a[sizeA++] = nodes[i];
+                else b[sizeB++] = nodes[i];
+            }
+            split(a, maxSize, parts);
+            split(b, maxSize, parts);
+        }
+
+        /**
+         * @return Which side of the best cut found each node is on
+         */
+        private boolean[] bisect(int[] nodes){
+            for(int i = 0; i < nodes.length; i++) local[nodes[i]] = i;
+
+            //Undirected adjacency within the set, each edge being a pair of arcs that are each other's reverse
+            int[] first = new int[nodes.length + 1];
+            List<Integer> heads = new ArrayList<>();
+            for(int i = 0; i < nodes.length; i++){
+                first[i] = heads.size();
+                mark++;
+                marks[nodes[i]] = mark;
+                final int tail = i;
+                forEachNeighbour(graph, nodes[i], w -> {
+                    if(local[w] != -1 && marks[w] != mark && local[w] != tail){
+                        marks[w] = mark;
+                        heads.add(local[w]);
+                    }
+                });
+            }
+            first[nodes.length] = heads.size();
+            int[] head = heads.stream().mapToInt(Integer::intValue).toArray();
+            int[] reverse = new int[head.length];
+            for(int u = 0; u < nodes.length; u++){
+                for(int arc = first[u]; arc < first[u + 1]; arc++){
+                    int v = head[arc];
+                    for(int back = first[v]; back < first[v + 1]; back++){
+                        if(head[back] == u) reverse[arc] = back;
+                    }
+                }
+            }
+
+            boolean[] best = null;
+            int bestCut = Integer.MAX_VALUE;
+            int bestBalance = 0;
+            for(double[] direction : FLOW_DIRECTIONS){
+                Integer[] sorted = new Integer[nodes.length];
+                for(int i = 0; i < nodes.length; i++) sorted[i] = i;
+                Arrays.sort(sorted, Comparator.comparingDouble(i -> graph.getNode(nodes[i]).getX() * direction[0] + graph.getNode(nodes[i]).getY() * direction[1]));
+
+                int pinned = Math.max(1, (int) (nodes.length * FLOW_FRACTION));
+                int[] terminal = new int[nodes.length];        //1 source, 2 sink
+                for(int i = 0; i < pinned; i++){
+                    terminal[sorted[i]] = 1;
+                    terminal[sorted[nodes.length - 1 - i]] = 2;
+                }
+
+                int[] capacity = new int[head.length];
+                Arrays.fill(capacity, 1);
+                int cut = maxFlow(first, head, reverse, capacity, terminal);
+                boolean[] side = reachable(first, head, capacity, terminal);
+                int sizeA = 0;
+                for(boolean inA : side) if(inA) sizeA++;
+                int balance = Math.min(sizeA, nodes.length - sizeA);
+                if(cut < bestCut || (cut == bestCut && balance > bestBalance)){
+                    best = side;
+                    bestCut = cut;
+                    bestBalance = balance;
+                }
+            }
+
+            for(int v : nodes) local[v] = -1;
+            return best;
+        }
+
+        /**
+         * Pushes flow from the sources to the sinks along shortest augmenting paths until none are left
+         * @return The value of the flow, which is the size of the minimum cut
+         */
+        private int maxFlow(int[] first, int[] head, int[] reverse, int[] capacity, int[] terminal){
+            int n = first.length - 1;
+            int[] parentArc = new int[n];
+            int[] queue = new int[n];
+            int flow = 0;
+            while(true){
+                Arrays.fill(parentArc, -2);
+                int size = 0;
+                for(int v = 0; v < n; v++){
+                    if(terminal[v] == 1){
+                        parentArc[v] = -1;
+                        queue[size++] = v;
+                    }
+                }
+                int sink = -1;
+                for(int i = 0; i < size && sink == -1; i++){
+                    int u = queue[i];
+                    for(int arc = first[u]; arc < first[u + 1]; arc++){
+                        int v = head[arc];
+                        if(capacity[arc] > 0 && parentArc[v] == -2){
+                            parentArc[v] = arc;
+                            if(terminal[v] == 2){
+                                sink = v;
+                                break;
+                            }
+                            queue[size++] = v;
+                        }
+                    }
+                }
+                if(sink == -1) return flow;
+
+                for(int v = sink; parentArc[v] != -1; v = head[reverse[parentArc[v]]]){
+                    capacity[parentArc[v]]--;
+                    capacity[reverse[parentArc[v]]]++;
+                }
+                flow++;
+            }
+        }
+
+        /**
+         * @return Which nodes can still be reached from the sources after the max flow, this is the source side of
+         * the minimum cut
+         */
+        private boolean[] reachable(int[] first, int[] head, int[] capacity, int[] terminal){
+            int n = first.length - 1;
+            boolean[] seen = new boolean[n];
+            int[] queue = new int[n];
+            int size = 0;
+            for(int v = 0; v < n; v++){
+                if(terminal[v] == 1){
+                    seen[v] = true;
+                    queue[size++] = v;
+                }
+            }
+            for(int i = 0; i < size; i++){
+                int u = queue[i];
+                for(int arc = first[u]; arc < first[u + 1]; arc++){
+                    if(capacity[arc] > 0 && !seen[head[arc]]){
+                        seen[head[arc]] = true;
+                        queue[size++] = head[arc];
+                    }
+                }
+            }
+            return seen;
+        }
+    }
+
+    private static class Dissection {
+        private RoutingGraph graph;
+        private int[] order;
+        private int next = 0;
+        private int[] marks;
+        private int mark = 0;
+
+        Dissection(RoutingGraph graph){
+            this.graph = graph;
+            this.order = new int[graph.getNodeCount()];
+            this.marks = new int[graph.getNodeCount()];
+        }
+
+        void dissect(int[] nodes){
+            if(nodes.length <= LEAF_SIZE){
+                for(int v : nodes) order[next++] = v;
+                return;
+            }
+
+            double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for(int v : nodes){
+                Location location = graph.getNode(v).getLocation();
+                minX = Math.min(minX, location.x);
+                maxX = Math.max(maxX, location.x);
+                minY = Math.min(minY, location.y);
+                maxY = Math.max(maxY, location.y);
+            }
+            boolean splitX = maxX - minX >= maxY - minY;
+            Integer[] sorted = new Integer[nodes.length];
+            for(int i = 0; i < nodes.length; i++) sorted[i] = nodes[i];
+            Arrays.sort(sorted, Comparator.comparingDouble(v -> splitX ? graph.getNode(v).getX() : graph.getNode(v).getY()));
+
+            int half = nodes.length / 2;
+            int[] a = new int[half];
+            int[] b = new int[nodes.length - half];
+            for(int i = 0; i < nodes.length; i++){
+                if(i < half) a[i] = sorted[i];
+                else b[i - half] = sorted[i];
+            }
+
+            //The separator is whichever side's boundary (nodes with a neighbour on the other side) is smaller
+            boolean[] boundaryA = boundary(a, b);
+            boolean[] boundaryB = boundary(b, a);
+            int countA = 0, countB = 0;
+            for(boolean inBoundary : boundaryA) if(inBoundary) countA++;
+            for(boolean inBoundary : boundaryB) if(inBoundary) countB++;
+
+            List<Integer> separator = new ArrayList<>();
+            if(countA <= countB){
+                a = split(a, boundaryA, separator);
+            }else{
+                b = split(b, boundaryB, separator);
+            }
+
+            dissect(a);
+            dissect(b);
+            for(int v : separator) order[next++] = v;
+        }
+
+        /**
+         * @return For each node of side, whether it has a neighbour in other
+         */
+        private boolean[] boundary(int[] side, int[] other){
+            mark++;
+            for(int v : other) marks[v] = mark;
+            boolean[] boundary = new boolean[side.length];
+            for(int i = 0; i < side.length; i++){
+                final int index = i;
+                forEachNeighbour(graph, side[i], w -> {
+                    if(marks[w] == mark) boundary[index] = true;
+                });
+            }
+            return boundary;
+        }
+
+        /**
+         * Moves the nodes flagged by the boundary into the separator
+         * @return The nodes left on the side
+         */
+        private int[] split(int[] side, boolean[] boundary, List<Integer> separator){
+            int[] remaining = new int[side.length];
+            int size = 0;
+            for(int i = 0; i < side.length; i++){
+                if(boundary[i]) separator.add(side[i]);
+                else remaining[size++] = side[i];
+            }
+            return Arrays.copyOf(remaining, size);
+        }
+    }
+}
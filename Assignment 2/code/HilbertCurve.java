@@ -0,0 +1,69 @@
+import java.util.*;
+
+/**
+ * Orders nodes along a Hilbert curve through their bounding box. The curve visits every cell of a grid so that cells
+ * next to each other along it are next to each other on the map, so nodes close on the map (and so usually close in
+ * the road graph) end up close in the order. Giving nodes their array indices in this order means a search touching
+ * a neighbourhood of the map touches a few runs of memory instead of the whole of every array.
+ */
+public class HilbertCurve {
+
+    private static final int ORDER = 16;               //The grid is 2^ORDER cells along each side
+    private static final int SIDE = 1 << ORDER;
+
+    /**
+     * Sorts nodes by their position along the curve
+     * @param nodes The nodes to sort
+     * @return      A new list of the nodes in curve order
+     */
+    public static List<Node> sort(Collection<Node> nodes){
+        List<Node> sorted = new ArrayList<>(nodes);
+        if(sorted.isEmpty()) return sorted;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(Node node : sorted){
+            minX = Math.min(minX, node.getX());
+            minY = Math.min(minY, node.getY());
+            maxX = Math.max(maxX, node.getX());
+            maxY = Math.max(maxY, node.getY());
+        }
+        double cellSize = Math.max(maxX - minX, maxY - minY) / (SIDE - 1);
+        if(cellSize == 0) cellSize = 1;
+
+        Map<Node, Long> keys = new HashMap<>();
+        for(Node node : sorted){
+            int x = (int) ((node.getX() - minX) / cellSize);
+            int y = (int) ((node.getY() - minY) / cellSize);
+            keys.put(node, index(x, y));
+        }
+        sorted.sort(Comparator.comparingLong(keys::get));
+        return sorted;
+    }
+
+    /**
+     * Works out how far along the curve a cell of the grid is
+     * @param x The column of the cell
+     * @param y The row of the cell
+     * @return  The position of the cell along the curve
+     */
+    public static long index(int x, int y){
+        long index = 0;
+        for(int s = SIDE >>> 1; s > 0; s >>>= 1){
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+
+            //Rotate the quadrant so the curve inside it joins up with the next one
+            if(ry == 0){
+                if(rx == 1){
+                    x = SIDE - 1 - x;
+                    y = SIDE - 1 - y;
+                }
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return index;
+    }
+}
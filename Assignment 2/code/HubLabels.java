@@ -0,0 +1,416 @@
+import java.io.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * A hub labelling (2-hop cover) index for exact distance queries in microseconds. Every node has a forward label, a
+ * list of hubs it can reach with the distance to each, and a backward label of hubs that can reach it. For any two
+ * nodes the shortest path passes through a hub in both the forward label of the source and the backward label of the
+ * target, so a query is just a merge of two sorted arrays.
+ * <p>
+ * Labels are built from a customised ContractionHierarchy, top down in rank order: the label of a node is the labels
+ * of its higher ranked neighbours pushed down the arcs to it, with hubs that are reached quicker through another hub
+ * pruned. Nodes on the same level of the hierarchy don't depend on each other, so each level is built in parallel.
+ * Labels are stored packed in CSR form, hubs sorted by sweep position, along with the neighbour each hub was reached
+ * through (its parent) so paths can be recovered.
+ */
+public class HubLabels {
+
+    private RoutingGraph graph;
+    private float[] weights;            //Edge weights the labels were built for, used to unpack paths
+    private int[] positions;            //Node index -> sweep position
+    private int[] nodesAt;              //Sweep position -> node index
+
+    private Label forward;              //Hubs reachable from each position
+    private Label backward;             //Hubs that can reach each position
+
+    private long buildTime;
+
+    private HubLabels(){ }
+
+    /**
+     * Builds the labels from a hierarchy
+     * @param hierarchy     A customised hierarchy
+     * @param weights       The edge weights the hierarchy was customised with
+     * @return              The labels
+     */
+    public static HubLabels build(ContractionHierarchy hierarchy, float[] weights){
+        long startTime = System.currentTimeMillis();
+        HubLabels labels = new HubLabels();
+        labels.graph = hierarchy.getGraph();
+        labels.weights = weights;
+        int nodeCount = labels.graph.getNodeCount();
+        labels.positions = new int[nodeCount];
+        labels.nodesAt = new int[nodeCount];
+        for(int position = 0; position < nodeCount; position++){
+            labels.nodesAt[position] = hierarchy.getNodeAt(position);
+            labels.positions[labels.nodesAt[position]] = position;
+        }
+
+        //A node's level is one more than its highest level neighbour, so a level only needs the labels of those before it
+        int[] levels = new int[nodeCount];
+        int levelCount = 0;
+        for(int position = 0; position < nodeCount; position++){
+            for(int arc = hierarchy.getUpFirst(position); arc < hierarchy.getUpEnd(position); arc++){
+                levels[position] = Math.max(levels[position], levels[hierarchy.getUpHead(arc)] + 1);
+            }
+            levelCount = Math.max(levelCount, levels[position] + 1);
+        }
+        List<List<Integer>> byLevel = new ArrayList<>();
+        for(int level = 0; level < levelCount; level++) byLevel.add(new ArrayList<>());
+        for(int position = 0; position < nodeCount; position++) byLevel.get(levels[position]).add(position);
+
+        Entries[] forward = new Entries[nodeCount];
+        Entries[] backward = new Entries[nodeCount];
+        ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(() -> new Scratch(nodeCount));
+        for(List<Integer> level : byLevel){
+            level.parallelStream().forEach(position -> {
+                Scratch scratch = scratches.get();
+                forward[position] = collect(hierarchy, position, forward, true, scratch);
+                backward[position] = collect(hierarchy, position, backward, false, scratch);
+                forward[position] = prune(forward[position], backward);
+                backward[position] = prune(backward[position], forward);
+            });
+        }
+
+        labels.forward = new Label(forward);
+        labels.backward = new Label(backward);
+        labels.buildTime = System.currentTimeMillis() - startTime;
+        return labels;
+    }
+
+    /**
+     * Gathers the unpruned label of a position from the labels of its higher ranked neighbours
+     */
+    private static Entries collect(ContractionHierarchy hierarchy, int position, Entries[] labels, boolean forward, Scratch scratch){
+        scratch.round++;
+        List<Integer> touched = new ArrayList<>();
+        scratch.offer(position, 0, -1, touched);
+        for(int arc = hierarchy.getUpFirst(position); arc < hierarchy.getUpEnd(position); arc++){
+            int neighbour = hierarchy.getUpHead(arc);
+            float weight = forward ? hierarchy.getUpWeight(arc) : hierarchy.getDownWeight(arc);
+            if(Float.isInfinite(weight)) continue;
+            Entries label = labels[neighbour];
+            for(int i = 0; i < label.hubs.length; i++){
+                scratch.offer(label.hubs[i], label.distances[i] + weight, neighbour, touched);
+            }
+        }
+
+        int[] hubs = touched.stream().mapToInt(Integer::intValue).sorted().toArray();
+        Entries entries = new Entries(hubs.length);
+        for(int i = 0; i < hubs.length; i++){
+            entries.hubs[i] = hubs[i];
+            entries.distances[i] = scratch.distances[hubs[i]];
+            entries.parents[i] = scratch.parents[hubs[i]];
+        }
+        return entries;
+    }
+
+    /**
+     * Removes the hubs of a label that are reached quicker through another hub, the opposite labels of every hub are
+     * already final as hubs are higher ranked
+     */
+    private static Entries prune(Entries label, Entries[] opposite){
+        boolean[] keep = new boolean[label.hubs.length];
+        int kept = 0;
+        for(int i = 0; i < label.hubs.length; i++){
+            Entries hubLabel = opposite[label.hubs[i]];
+            keep[i] = hubLabel == null || merge(label.hubs, label.distances, 0, label.hubs.length,
+                    hubLabel.hubs, hubLabel.distances, 0, hubLabel.hubs.length) >= label.distances[i];
+            if(keep[i]) kept++;
+        }
+        Entries pruned = new Entries(kept);
+        int size = 0;
+        for(int i = 0; i < keep.length; i++){
+            if(!keep[i]) continue;
+            pruned.hubs[size] = label.hubs[i];
+            pruned.distances[size] = label.distances[i];
+            pruned.parents[size] = label.parents[i];
+            size++;
+        }
+        return pruned;
+    }
+
+    /**
+     * Finds the shortest distance through a hub common to two sorted labels
+     */
+    private static float merge(int[] hubsA, float[] distancesA, int a, int endA, int[] hubsB, float[] distancesB, int b, int endB){
+        float best = RoutingGraph.INFINITY;
+        while(a < endA && b < endB){
+            if(hubsA[a] < hubsB[b]) a++;
+            else if(hubsA[a] > hubsB[b]) b++;
+            else{
+                float distance = distancesA[a++] + distancesB[b++];
+                if(distance < best) best = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param source    The index of the source node
+     * @param target    The index of the target node
+     * @return          The shortest distance between the two, infinity if the target can't be reached
+     */
+    public float getDistance(int source, int target){
+        int s = positions[source];
+        int t = positions[target];
+        return merge(forward.hubs, forward.distances, forward.first[s], forward.first[s + 1],
+                backward.hubs, backward.distances, backward.first[t], backward.first[t + 1]);
+    }
+
+    /**
+     * Finds the shortest path between two nodes. The hub the path meets at is found by the same merge as a distance
+     * query, the path up to it and down from it is recovered by following parent hubs through the hierarchy, then
+     * each arc of the hierarchy is unpacked into road edges using distance queries.
+     * @param start The start of the path
+     * @param end   The end of the path
+     * @return      The nodes of the path in order, empty if there is no path
+     */
+    public List<Node> getPath(Node start, Node end){
+        List<Node> path = new ArrayList<>();
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if(source == -1 || target == -1) return path;
+
+        int s = positions[source];
+        int t = positions[target];
+        int hub = -1;
+        float best = RoutingGraph.INFINITY;
+        int a = forward.first[s], b = backward.first[t];
+        while(a < forward.first[s + 1] && b < backward.first[t + 1]){
+            if(forward.hubs[a] < backward.hubs[b]) a++;
+            else if(forward.hubs[a] > backward.hubs[b]) b++;
+            else{
+                float distance = forward.distances[a] + backward.distances[b];
+                if(distance < best){
+                    best = distance;
+                    hub = forward.hubs[a];
+                }
+                a++;
+                b++;
+            }
+        }
+        if(hub == -1) return path;
+
+        //Positions of the hierarchy path, source up to the hub then down to the target. If a parent's own entry for
+        //the hub was pruned (distances that only differ by rounding) the rest of that side is unpacked in one go
+        List<Integer> hierarchyPath = new ArrayList<>();
+        for(int position = s; position != hub && position != -1; position = forward.getParent(position, hub)){
+            hierarchyPath.add(position);
+        }
+        List<Integer> down = new ArrayList<>();
+        for(int position = t; position != hub && position != -1; position = backward.getParent(position, hub)){
+            down.add(position);
+        }
+        hierarchyPath.add(hub);
+        Collections.reverse(down);
+        hierarchyPath.addAll(down);
+
+        path.add(start);
+        for(int i = 0; i + 1 < hierarchyPath.size(); i++){
+            unpack(nodesAt[hierarchyPath.get(i)], nodesAt[hierarchyPath.get(i + 1)], path);
+        }
+        return path;
+    }
+
+    /**
+     * Adds the road nodes between two ends of a hierarchy arc to the path, always taking the edge that keeps the
+     * remaining distance shortest
+     */
+    private void unpack(int from, int to, List<Node> path){
+        int node = from;
+        for(int steps = 0; node != to && steps < graph.getNodeCount(); steps++){
+            int next = -1;
+            float best = RoutingGraph.INFINITY;
+            for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                float remaining = weights[edge] + (graph.getHead(edge) == to ? 0 : getDistance(graph.getHead(edge), to));
+                if(remaining < best){
+                    best = remaining;
+                    next = graph.getHead(edge);
+                }
+            }
+            if(next == -1) return;
+            node = next;
+            path.add(graph.getNode(node));
+        }
+    }
+
+    /**
+     * Writes the labels to a binary file. The layout is the node count, the node IDs by sweep position, then the
+     * forward and backward labels each as offsets, hubs, distances and parents, all big endian.
+     * @param file  The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void write(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            out.writeInt(nodesAt.length);
+            for(int node : nodesAt) out.writeInt(graph.getExternalId(node));
+            forward.write(out);
+            backward.write(out);
+        }
+    }
+
+    /**
+     * Reads labels previously written with write
+     * @param file      The file to read from
+     * @param graph     The graph the labels were built for
+     * @param weights   The edge weights the labels were built for
+     * @return          The labels read
+     * @throws IOException If the file couldn't be read or was built for a different graph
+     */
+    public static HubLabels read(File file, RoutingGraph graph, float[] weights) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            HubLabels labels = new HubLabels();
+            labels.graph = graph;
+            labels.weights = weights;
+            int nodeCount = in.readInt();
+            if(nodeCount != graph.getNodeCount()) throw new IOException("Labels were built for a different graph");
+
+            labels.positions = new int[nodeCount];
+            labels.nodesAt = new int[nodeCount];
+            for(int position = 0; position < nodeCount; position++){
+                int node = graph.indexOfId(in.readInt());
+                if(node == -1) throw new IOException("Labels were built for a different graph");
+                labels.nodesAt[position] = node;
+                labels.positions[node] = position;
+            }
+            labels.forward = Label.read(in, nodeCount);
+            labels.backward = Label.read(in, nodeCount);
+            return labels;
+        }
+    }
+
+    /**
+     * @return How long building the labels took in milliseconds
+     */
+    public long getBuildTime(){
+        return buildTime;
+    }
+
+    /**
+     * @return The total number of hubs in every forward and backward label
+     */
+    public long getEntryCount(){
+        return forward.hubs.length + (long) backward.hubs.length;
+    }
+
+    /**
+     * @return The average number of hubs in a label
+     */
+    public double getAverageLabelSize(){
+        return getEntryCount() / (2.0 * nodesAt.length);
+    }
+
+    /**
+     * @return The size of the packed label arrays in bytes
+     */
+    public long getSizeInBytes(){
+        return getEntryCount() * (Integer.BYTES + Float.BYTES + Integer.BYTES) + 2L * (nodesAt.length + 1) * Integer.BYTES;
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * One label per node while building
+     */
+    private static class Entries {
+        int[] hubs;
+        float[] distances;
+        int[] parents;
+
+        Entries(int size){
+            hubs = new int[size];
+            distances = new float[size];
+            parents = new int[size];
+        }
+    }
+
+    /**
+     * Every label of one direction packed into flat arrays, the hubs of position p are first[p] up to first[p + 1]
+     */
+    private static class Label {
+        int[] first;
+        int[] hubs;
+        float[] distances;
+        int[] parents;      //The neighbour the hub was reached through, -1 for the node itself
+
+        private Label(){ }
+
+        Label(Entries[] entries){
+            first = new int[entries.length + 1];
+            for(int position = 0; position < entries.length; position++){
+                first[position + 1] = first[position] + entries[position].hubs.length;
+            }
+            hubs = new int[first[entries.length]];
+            distances = new float[hubs.length];
+            parents = new int[hubs.length];
+            IntStream.range(0, entries.length).parallel().forEach(position -> {
+                Entries label = entries[position];
+                System.arraycopy(label.hubs, 0, hubs, first[position], label.hubs.length);
+                System.arraycopy(label.distances, 0, distances, first[position], label.hubs.length);
+                System.arraycopy(label.parents, 0, parents, first[position], label.hubs.length);
+            });
+        }
+
+        /**
+         * @return The neighbour the position reaches the hub through, -1 if the hub isn't in its label
+         */
+        int getParent(int position, int hub){
+            int index = Arrays.binarySearch(hubs, first[position], first[position + 1], hub);
+            return index < 0 ? -1 : parents[index];
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(hubs.length);
+            for(int offset : first) out.writeInt(offset);
+            for(int hub : hubs) out.writeInt(hub);
+            for(float distance : distances) out.writeFloat(distance);
+            for(int parent : parents) out.writeInt(parent);
+        }
+
+        static Label read(DataInputStream in, int nodeCount) throws IOException {
+            Label label = new Label();
+            int size = in.readInt();
+            label.first = new int[nodeCount + 1];
+            label.hubs = new int[size];
+            label.distances = new float[size];
+            label.parents = new int[size];
+            for(int i = 0; i < label.first.length; i++) label.first[i] = in.readInt();
+            for(int i = 0; i < size; i++) label.hubs[i] = in.readInt();
+            for(int i = 0; i < size; i++) label.distances[i] = in.readFloat();
+            for(int i = 0; i < size; i++) label.parents[i] = in.readInt();
+            return label;
+        }
+    }
+
+    /**
+     * Per thread arrays for gathering a label, reset lazily using a round counter
+     */
+    private static class Scratch {
+        float[] distances;
+        int[] parents;
+        int[] rounds;
+        int round = 0;
+
+        Scratch(int nodeCount){
+            distances = new float[nodeCount];
+            parents = new int[nodeCount];
+            rounds = new int[nodeCount];
+        }
+
+        void offer(int hub, float distance, int parent, List<Integer> touched){
+            if(rounds[hub] != round){
+                rounds[hub] = round;
+                distances[hub] = distance;
+                parents[hub] = parent;
+                touched.add(hub);
+            }else if(distance < distances[hub]){
+                distances[hub] = distance;
+                parents[hub] = parent;
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+import java.util.*;
+
+/**
+ * An incremental shortest path search (D* Lite) between a start and a goal that can be repaired instead of started
+ * again. The search runs backwards from the goal, keeping for every node g, its distance to the goal, and rhs, a one
+ * step lookahead worked out from its successors. When edges change only the nodes whose rhs changes are put back in
+ * the queue, and only as much of the old search tree as is affected gets searched again. Since distances are to the
+ * goal, the start can also move (for example along the route as it is driven) without throwing anything away.
+ * <p>
+ * Edge weights are read live from the metric, so after Metric.updateEdges the changed edges just need passing to
+ * updateEdges here. Turn restrictions aren't taken into account.
+ */
+public class IncrementalSearch {
+
+    private RoutingGraph graph;
+    private Metric metric;
+    private TravelMode mode;
+    private int start;
+    private int goal;
+    private int lastStart;          //Where the start was when km was last updated
+    private float km = 0;           //Sum of heuristic changes from moving the start, added to keys instead of re-keying the queue
+    private float costPerKm;        //Heuristic bound the queue was keyed with
+
+    private float[] g;
+    private float[] rhs;
+    private KeyQueue queue;
+    private int expandedCount;      //Nodes expanded by the last call to pathfind
+
+    /**
+     * @param graph     The graph to search
+     * @param metric    The metric to minimise
+     * @param mode      The mode of travel
+     * @param start     The start of the path
+     * @param goal      The end of the path
+     */
+    public IncrementalSearch(RoutingGraph graph, Metric metric, TravelMode mode, Node start, Node goal) {
+        this.graph = graph;
+        this.metric = metric;
+        this.mode = mode;
+        this.start = graph.indexOf(start);
+        this.goal = graph.indexOf(goal);
+        this.g = new float[graph.getNodeCount()];
+        this.rhs = new float[graph.getNodeCount()];
+        this.queue = new KeyQueue(graph.getNodeCount());
+        initialise();
+    }
+
+    /**
+     * Forgets the search so far, only needed if the heuristic bound of the metric changes
+     */
+    private void initialise(){
+        Arrays.fill(g, RoutingGraph.INFINITY);
+        Arrays.fill(rhs, RoutingGraph.INFINITY);
+        queue.clear();
+        km = 0;
+        lastStart = start;
+        costPerKm = metric.getCostPerKm(mode);
+        rhs[goal] = 0;
+        queue.offer(goal, heuristic(start, goal), 0);
+    }
+
+    /**
+     * Finds the shortest path from the current start to the goal, carrying on from the last search
+     * @return The nodes of the path in order, empty if there is no path
+     */
+    public List<Node> pathfind(){
+        List<Node> path = new ArrayList<>();
+        if(start == -1 || goal == -1) return path;
+        if(metric.getCostPerKm(mode) != costPerKm) initialise();
+        computeShortestPath();
+        if(Float.isInfinite(g[start])) return path;
+
+        float[] weights = metric.getWeights(mode);
+        int node = start;
+        path.add(graph.getNode(node));
+        for(int steps = 0; node != goal && steps < graph.getNodeCount(); steps++){
+            int next = -1;
+            float best = RoutingGraph.INFINITY;
+            for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                float cost = weights[edge] + g[graph.getHead(edge)];
+                if(cost < best){
+                    best = cost;
+                    next = graph.getHead(edge);
+                }
+            }
+            if(next == -1) return new ArrayList<>();
+            node = next;
+            path.add(graph.getNode(node));
+        }
+        return path;
+    }
+
+    /**
+     * Moves the start of the path, the search is kept as distances are measured to the goal
+     * @param newStart  The new start of the path
+     */
+    public void moveStart(Node newStart){
+        int index = graph.indexOf(newStart);
+        if(index == -1 || index == start) return;
+        start = index;
+        km += heuristic(lastStart, start);
+        lastStart = start;
+    }
+
+    /**
+     * Repairs the search after the weights of some edges have changed
+     * @param edges The edges that changed
+     */
+    public void updateEdges(Collection<Integer> edges){
+        Set<Integer> tails = new HashSet<>();
+        for(int edge : edges) tails.add(graph.getTail(edge));
+        for(int node : tails){
+            if(node != goal) rhs[node] = lookahead(node);
+            updateNode(node);
+        }
+    }
+
+    private void computeShortestPath(){
+        expandedCount = 0;
+        float[] weights = metric.getWeights(mode);
+        while(!queue.isEmpty() && (compare(queue.peekKey1(), queue.peekKey2(), key1(start), key2(start)) < 0 || rhs[start] != g[start])){
+            int node = queue.peek();
+            float oldKey1 = queue.peekKey1(), oldKey2 = queue.peekKey2();
+            float newKey1 = key1(node), newKey2 = key2(node);
+            expandedCount++;
+
+            if(compare(oldKey1, oldKey2, newKey1, newKey2) < 0){
+                queue.offer(node, newKey1, newKey2);
+            }else if(g[node] > rhs[node]){
+                //Overconsistent, the node got closer so its predecessors may too
+                g[node] = rhs[node];
+                queue.remove(node);
+                for(int i = graph.firstIn(node); i < graph.endIn(node); i++){
+                    int edge = graph.inEdge(i);
+                    int tail = graph.getTail(edge);
+                    if(tail != goal) rhs[tail] = Math.min(rhs[tail], weights[edge] + g[node]);
+                    updateNode(tail);
+                }
+            }else{
+                //Underconsistent, the node got further away so anything that went through it has to look again
+                float oldG = g[node];
+                g[node] = RoutingGraph.INFINITY;
+                if(node != goal) rhs[node] = lookahead(node);
+                updateNode(node);
+                for(int i = graph.firstIn(node); i < graph.endIn(node); i++){
+                    int edge = graph.inEdge(i);
+                    int tail = graph.getTail(edge);
+                    if(tail != goal && rhs[tail] == weights[edge] + oldG) rhs[tail] = lookahead(tail);
+                    updateNode(tail);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The best distance to the goal going through one of the node's successors
+     */
+    private float lookahead(int node){
+        float[] weights = metric.getWeights(mode);
+        float best = RoutingGraph.INFINITY;
+        for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+            best = Math.min(best, weights[edge] + g[graph.getHead(edge)]);
+        }
+        return best;
+    }
+
+    /**
+     * Puts the node in the queue if it is inconsistent, otherwise takes it out
+     */
+    private void updateNode(int node){
+        if(g[node] != rhs[node]) queue.offer(node, key1(node), key2(node));
+        else queue.remove(node);
+    }
+
+    private float key1(int node){
+        return Math.min(g[node], rhs[node]) + heuristic(start, node) + km;
+    }
+
+    private float key2(int node){
+        return Math.min(g[node], rhs[node]);
+    }
+
+    private float heuristic(int from, int to){
+        return metric.estimate(graph.getNode(from).getLocation(), graph.getNode(to).getLocation(), mode);
+    }
+
+    private static int compare(float a1, float a2, float b1, float b2){
+        int first = Float.compare(a1, b1);
+        return first != 0 ? first : Float.compare(a2, b2);
+    }
+
+    /**
+     * @return The number of nodes expanded by the last call to pathfind, a full search expands every node it settles
+     */
+    public int getExpandedCount(){
+        return expandedCount;
+    }
+
+    public Node getStart(){
+        return graph.getNode(start);
+    }
+
+    public Node getGoal(){
+        return graph.getNode(goal);
+    }
+
+    public Metric getMetric(){
+        return metric;
+    }
+
+    public TravelMode getMode(){
+        return mode;
+    }
+
+    /**
+     * An indexed binary heap keyed by pairs of floats compared in order, whose keys can go up as well as down
+     */
+    private static class KeyQueue {
+        private int[] heap;
+        private float[] keys1;
+        private float[] keys2;
+        private int[] positions;
+        private int size = 0;
+
+        KeyQueue(int capacity){
+            heap = new int[capacity];
+            keys1 = new float[capacity];
+            keys2 = new float[capacity];
+            positions = new int[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        /**
+         * Adds the node or changes its key if it is already in the queue
+         */
+        void offer(int node, float key1, float key2){
+            int position = positions[node];
+            if(position == -1){
+                position = size++;
+                heap[position] = node;
+                positions[node] = position;
+            }
+            keys1[node] = key1;
+            keys2[node] = key2;
+            siftDown(siftUp(position));
+        }
+
+        void remove(int node){
+            int position = positions[node];
+            if(position == -1) return;
+            positions[node] = -1;
+            size--;
+            if(position < size){
+                heap[position] = heap[size];
+                positions[heap[position]] = position;
+                siftDown(siftUp(position));
+            }
+        }
+
+        int peek(){
+            return heap[0];
+        }
+
+        float peekKey1(){
+            return keys1[heap[0]];
+        }
+
+        float peekKey2(){
+            return keys2[heap[0]];
+        }
+
+        boolean isEmpty(){
+            return size == 0;
+        }
+
+        void clear(){
+            for(int i = 0; i < size; i++) positions[heap[i]] = -1;
+            size = 0;
+        }
+
+        private boolean less(int a, int b){
+            return compare(keys1[a], keys2[a], keys1[b], keys2[b]) < 0;
+        }
+
+        private int siftUp(int position){
+            int node = heap[position];
+            while(position > 0){
+                int parent = (position - 1) >>> 1;
+                if(!less(node, heap[parent])) break;
+                heap[position] = heap[parent];
+                positions[heap[position]] = position;
+                position = parent;
+            }
+            heap[position] = node;
+            positions[node] = position;
+            return position;
+        }
+
+        private void siftDown(int position){
+            int node = heap[position];
+            int half = size >>> 1;
+            while(position < half){
+                int child = 2 * position + 1;
+                if(child + 1 < size && less(heap[child + 1], heap[child])) child++;
+                if(!less(heap[child], node)) break;
+                heap[position] = heap[child];
+                positions[heap[position]] = position;
+                position = child;
+            }
+            heap[position] = node;
+            positions[node] = position;
+        }
+    }
+}
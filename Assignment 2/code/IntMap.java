@@ -0,0 +1,142 @@
+import java.util.*;
+
+/**
+ * A hash map from int keys to objects using open addressing, for looking things up by the IDs in the data files.
+ * Keys are kept unboxed in one int array and values in a parallel array, with linear probing between them, so there
+ * is no Integer or entry object per mapping like there is with a HashMap. Mappings can't be removed one at a time,
+ * which the loaders never need, only all cleared at once.
+ * @param <V> The type of the values
+ */
+public class IntMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;        //Null for an empty slot
+    private int size = 0;
+
+    public IntMap() {
+        keys = new int[DEFAULT_CAPACITY];
+        values = new Object[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Maps the key to the value, replacing any value it was already mapped to
+     * @param key   The key
+     * @param value The value, which can't be null
+     */
+    public void put(int key, V value){
+        Objects.requireNonNull(value);
+        int slot = find(key);
+        if(values[slot] == null){
+            if(2 * (size + 1) > keys.length){      //Keep at least half the slots empty so probe runs stay short
+                grow();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @param key   The key
+     * @return      The value the key is mapped to, null if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key){
+        return (V) values[find(key)];
+    }
+
+    public boolean containsKey(int key){
+        return values[find(key)] != null;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Removes every mapping, going back to the default capacity
+     */
+    public void clear(){
+        keys = new int[DEFAULT_CAPACITY];
+        values = new Object[DEFAULT_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * @return A view of the values in the map, in no particular order
+     */
+    public Collection<V> values(){
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<V>() {
+                    private int slot = next(0);
+
+                    private int next(int from){
+                        while(from < values.length && values[from] == null) from++;
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < values.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public V next() {
+                        if(!hasNext()) throw new NoSuchElementException();
+                        V value = (V) values[slot];
+                        slot = next(slot + 1);
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return The slot holding the key, or the empty slot it would go in
+     */
+    private int find(int key){
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while(values[slot] != null && keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Spreads the bits of the key so sequential IDs don't land in runs of neighbouring slots
+     */
+    private static int hash(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow(){
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldValues[i] == null) continue;
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
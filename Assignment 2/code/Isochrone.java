@@ -0,0 +1,77 @@
+import java.awt.*;
+import java.util.List;
+
+/**
+ * The area reachable from an origin node within a travel budget, the nodes and segments that can be reached along
+ * with the outline of the area (the convex hull of the nodes) for drawing over the map.
+ */
+public class Isochrone {
+
+    private static final Color AREA_COLOUR = new Color(255, 140, 0, 60);
+    private static final Color SEGMENT_COLOUR = new Color(255, 140, 0);
+
+    private Node origin;
+    private double budget;
+    private List<Node> nodes;
+    private List<Segment> segments;
+    private List<Location> outline;
+
+    public Isochrone(Node origin, double budget, List<Node> nodes, List<Segment> segments, List<Location> outline) {
+        this.origin = origin;
+        this.budget = budget;
+        this.nodes = nodes;
+        this.segments = segments;
+        this.outline = outline;
+    }
+
+    /**
+     * Draws the reachable area as a translucent polygon with the reachable segments over the top of it
+     * @param g         The graphics pane in which to render to
+     * @param scale     The numbers of pixels per kilometer
+     * @param origin    The origin of the rendering
+     */
+    public void redraw(Graphics g, double scale, Location origin){
+        int[] xPoints = new int[outline.size()];
+        int[] yPoints = new int[outline.size()];
+        for(int i = 0; i < outline.size(); i++){
+            Point point = outline.get(i).asPoint(origin, scale);
+            xPoints[i] = point.x;
+            yPoints[i] = point.y;
+        }
+        g.setColor(AREA_COLOUR);
+        g.fillPolygon(xPoints, yPoints, outline.size());
+
+        for(Segment segment : segments){
+            MapRenderer.drawSegment(g, segment, scale, origin, SEGMENT_COLOUR);
+        }
+    }
+
+    public Node getOrigin(){
+        return origin;
+    }
+
+    public double getBudget(){
+        return budget;
+    }
+
+    /**
+     * @return The nodes reachable within the budget
+     */
+    public List<Node> getNodes(){
+        return nodes;
+    }
+
+    /**
+     * @return The segments that can be travelled the whole way along within the budget
+     */
+    public List<Segment> getSegments(){
+        return segments;
+    }
+
+    /**
+     * @return The outline of the reachable area, in anticlockwise order
+     */
+    public List<Location> getOutline(){
+        return outline;
+    }
+}
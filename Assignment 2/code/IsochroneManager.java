@@ -0,0 +1,84 @@
+import java.util.*;
+
+/**
+ * A class to compute isochrones, the area reachable from a node within a travel budget. A single PHAST sweep gives
+ * the distance to every node, so any number of budgets from the same origin cost one search.
+ */
+public class IsochroneManager {
+
+    /**
+     * Computes the isochrone for the origin and budget
+     * @param search    The one-to-all search to use
+     * @param origin    The node travel starts from
+     * @param budget    The maximum travel cost, in the units of the hierarchy's weights
+     * @param weights   The edge weights the hierarchy was built with
+     * @return          The isochrone
+     */
+    public static Isochrone compute(PhastSearch search, Node origin, double budget, float[] weights){
+        return compute(search, origin, new double[]{budget}, weights).get(0);
+    }
+
+    /**
+     * Computes the isochrones for several budgets from the same origin using one search
+     * @param search    The one-to-all search to use
+     * @param origin    The node travel starts from
+     * @param budgets   The maximum travel costs, in the units of the hierarchy's weights
+     * @param weights   The edge weights the hierarchy was built with
+     * @return          One isochrone per budget, in the same order
+     */
+    public static List<Isochrone> compute(PhastSearch search, Node origin, double[] budgets, float[] weights){
+        RoutingGraph graph = search.getHierarchy().getGraph();
+        List<Isochrone> isochrones = new ArrayList<>();
+        int source = graph.indexOf(origin);
+        if(source == -1) return isochrones;
+        float[] distances = search.search(source);
+
+        for(double budget : budgets){
+            List<Node> nodes = new ArrayList<>();
+            List<Location> locations = new ArrayList<>();
+            for(int v = 0; v < distances.length; v++){
+                if(distances[v] <= budget){
+                    nodes.add(graph.getNode(v));
+                    locations.add(graph.getNode(v).getLocation());
+                }
+            }
+            List<Segment> segments = new ArrayList<>();
+            for(int edge = 0; edge < graph.getEdgeCount(); edge++){
+                if(distances[graph.getTail(edge)] + weights[edge] <= budget){
+                    segments.add(graph.getSegment(edge));
+                }
+            }
+            isochrones.add(new Isochrone(origin, budget, nodes, segments, convexHull(locations)));
+        }
+        return isochrones;
+    }
+
+    /**
+     * Computes the convex hull of the locations using Andrew's monotone chain algorithm
+     * @param locations The locations to wrap
+     * @return          The hull, in anticlockwise order
+     */
+    private static List<Location> convexHull(List<Location> locations){
+        List<Location> sorted = new ArrayList<>(locations);
+        sorted.sort((A, B) -> A.x != B.x ? Double.compare(A.x, B.x) : Double.compare(A.y, B.y));
+        if(sorted.size() < 3) return sorted;
+
+        Location[] hull = new Location[sorted.size() * 2];
+        int size = 0;
+        for(Location location : sorted){      //Lower hull
+            while(size >= 2 && cross(hull[size - 2], hull[size - 1], location) <= 0) size--;
+            hull[size++] = location;
+        }
+        int lowerSize = size + 1;
+        for(int i = sorted.size() - 2; i >= 0; i--){       //Upper hull
+            Location location = sorted.get(i);
+            while(size >= lowerSize && cross(hull[size - 2], hull[size - 1], location) <= 0) size--;
+            hull[size++] = location;
+        }
+        return new ArrayList<>(Arrays.asList(hull).subList(0, size - 1));
+    }
+
+    private static double cross(Location o, Location a, Location b){
+        return (a.x - o.x) * (b.y - o.y) - (a.y - o.y) * (b.x - o.x);
+    }
+}
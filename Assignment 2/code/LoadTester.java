@@ -0,0 +1,465 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A headless load test of the route searches, to measure throughput and tail latency reproducibly and compare them
+ * between versions. Loads a map directory with the same MapEngine as the GUI, generates query sets from a seed, then
+ * runs every set against every chosen engine and mode of travel on each thread count, writing a row per run to a CSV
+ * file (appending, so runs of different versions can be told apart by their label).
+ * <p>
+ * The query sets are:
+ * <ul>
+ *     <li>uniform: both ends picked at random</li>
+ *     <li>rank-2^k: targets that are the 2^k-th node a Dijkstra search from the source settles, one set per k, so
+ *     the cost of short and long queries can be told apart (the Dijkstra rank of the query). Ranks are measured with
+ *     the weights of each mode of travel, so each mode has its own rank sets.</li>
+ *     <li>local: targets within LOCAL_RADIUS km of the source as the crow flies</li>
+ *     <li>long-haul: ends at least LONG_HAUL_FRACTION of the width of the map apart</li>
+ * </ul>
+ * Each set is run once untimed first so the JIT has compiled the search and each thread has built its search state.
+ * Latency is per query, queries per second is over the whole run, and allocation is the bytes allocated by the
+ * worker threads while searching (where the JVM can measure it, -1 otherwise).
+ * <p>
+ * Before an engine is timed for a mode of travel, its routes between random pairs of nodes are checked to cost the
+ * same as the shortest paths a plain Dijkstra search of the uncompressed graph finds. Mismatches are printed and make
+ * the tester exit with an error once every run is done. A* isn't checked as it keeps to turn restrictions, which the
+ * other engines ignore.
+ * <p>
+ * Usage: java LoadTester directory [--engines astar,compressed,overlay,hublabels] [--modes CAR,PEDESTRIAN,BICYCLE]
+ * [--metric Time|Distance] [--threads 1,2,4] [--queries 1000] [--check 200] [--seed 1] [--label name] [--out loadtest.csv]
+ */
+public class LoadTester {
+
+    private static final int RANK_MIN_EXPONENT = 4;         //The shortest rank set is rank 2^4
+    private static final double LOCAL_RADIUS = 2;           //km
+    private static final double LONG_HAUL_FRACTION = 0.5;   //Of the diagonal of the map
+    private static final int MAX_ATTEMPTS = 1000;           //Random tries at a local or long haul query before settling for the best
+    private static final double CHECK_TOLERANCE = 1e-4;     //Relative difference in cost allowed for float rounding
+    private static final String CSV_HEADER = "label,engine,mode,metric,set,threads,queries,found,p50_us,p95_us,p99_us,mean_us,qps,alloc_mb_per_s,alloc_bytes_per_query";
+
+    /**
+     * The ways of answering a route query
+     */
+    enum Engine {
+        ASTAR, COMPRESSED, OVERLAY, HUBLABELS
+    }
+
+    /**
+     * Answers route queries, each thread gets its own
+     */
+    interface Router {
+        List<Node> route(Node start, Node end);
+    }
+
+    /**
+     * A named list of queries, by node index
+     */
+    static class QuerySet {
+        private String name;
+        private int[] sources;
+        private int[] targets;
+
+        QuerySet(String name, List<int[]> queries) {
+            this.name = name;
+            this.sources = new int[queries.size()];
+            this.targets = new int[queries.size()];
+            for(int i = 0; i < queries.size(); i++){
+                sources[i] = queries.get(i)[0];
+                targets[i] = queries.get(i)[1];
+            }
+        }
+
+        int size(){
+            return sources.length;
+        }
+    }
+
+    /**
+     * The measurements of one run of a query set
+     */
+    static class Result {
+        private long[] latencies;       //Nanoseconds, sorted
+        private int found;              //Queries a path was found for
+        private long time;              //Nanoseconds for the whole run
+        private long allocated;         //Bytes, -1 if it couldn't be measured
+
+        Result(long[] latencies, int found, long time, long allocated) {
+            this.latencies = latencies;
+            this.found = found;
+            this.time = time;
+            this.allocated = allocated;
+            Arrays.sort(latencies);
+        }
+
+        /**
+         * @param fraction  The fraction of queries, 0.99 for the 99th percentile
+         * @return          The latency that fraction of the queries took no longer than, in microseconds
+         */
+        double percentile(double fraction){
+            if(latencies.length == 0) return 0;
+            int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1000.0;
+        }
+
+        double mean(){
+            return latencies.length == 0 ? 0 : Arrays.stream(latencies).sum() / 1000.0 / latencies.length;
+        }
+
+        double queriesPerSecond(){
+            return latencies.length / (time / 1e9);
+        }
+
+        double allocationRate(){
+            return allocated < 0 ? -1 : allocated / (1024.0 * 1024.0) / (time / 1e9);
+        }
+
+        double allocationPerQuery(){
+            return allocated < 0 || latencies.length == 0 ? -1 : (double) allocated / latencies.length;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        String directory = null;
+        for(int i = 0; i < args.length; i++){
+            if(args[i].startsWith("--") && i + 1 < args.length) options.put(args[i].substring(2), args[++i]);
+            else if(directory == null) directory = args[i];
+            else usage("Unexpected argument " + args[i]);
+        }
+        if(directory == null) usage("No map directory given");
+
+        List<Engine> engines = new ArrayList<>();
+        List<TravelMode> modes = new ArrayList<>();
+        List<Integer> threadCounts = new ArrayList<>();
+        Metric metric = null;
+        int queryCount = 0;
+        int checkCount = 0;
+        long seed = 0;
+        try{
+            for(String engine : options.getOrDefault("engines", "astar,compressed,overlay,hublabels").split(",")){
+                engines.add(Engine.valueOf(engine.trim().toUpperCase()));
+            }
+            for(String mode : options.getOrDefault("modes", TravelMode.CAR.name()).split(",")){
+                modes.add(TravelMode.valueOf(mode.trim().toUpperCase()));
+            }
+            for(String threads : options.getOrDefault("threads", "1," + Runtime.getRuntime().availableProcessors()).split(",")){
+                int count = Integer.parseInt(threads.trim());
+                if(count < 1) throw new IllegalArgumentException("Thread counts must be at least 1");
+                if(!threadCounts.contains(count)) threadCounts.add(count);
+            }
+            String metricName = options.getOrDefault("metric", Metric.TIME);
+            if(metricName.equalsIgnoreCase(Metric.TIME)) metric = Metric.time();
+            else if(metricName.equalsIgnoreCase(Metric.DISTANCE)) metric = Metric.distance();
+            else throw new IllegalArgumentException("Unknown metric " + metricName);
+            queryCount = Integer.parseInt(options.getOrDefault("queries", "1000"));
+            checkCount = Integer.parseInt(options.getOrDefault("check", "200"));
+            if(checkCount < 0) throw new IllegalArgumentException("The number of pairs to check can't be negative");
+            seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        }catch(IllegalArgumentException e){
+            usage(e.getMessage());
+        }
+        String label = options.getOrDefault("label", "run");
+        File out = new File(options.getOrDefault("out", "loadtest.csv"));
+
+        long startTime = System.currentTimeMillis();
+        RoutingGraph graph = MapEngine.load(new File(directory), System.out::println).getGraph();
+        metric.customise(graph);
+        System.out.println("Loaded " + graph.getNodeCount() + " nodes and " + graph.getEdgeCount() + " edges in "
+                + (System.currentTimeMillis() - startTime) + "ms.");
+
+        //Dijkstra ranks depend on the weights of the mode, so each mode gets its own sets. Starting from the same seed
+        //the other sets are the same for every mode.
+        Map<TravelMode, List<QuerySet>> modeSets = new EnumMap<>(TravelMode.class);
+        for(TravelMode mode : modes){
+            List<QuerySet> sets = generate(graph, metric.getWeights(mode), queryCount, new Random(seed));
+            modeSets.put(mode, sets);
+            for(QuerySet set : sets) System.out.println("Query set " + set.name + " by " + mode + ": " + set.size() + " queries.");
+        }
+
+        int mismatches = 0;
+        boolean newFile = !out.exists() || out.length() == 0;
+        try(PrintWriter csv = new PrintWriter(new BufferedWriter(new FileWriter(out, true)))){
+            if(newFile) csv.println(CSV_HEADER);
+            Map<Engine, Object> prepared = new EnumMap<>(Engine.class);     //Metric and mode independent parts, built once
+            for(Engine engine : engines){
+                for(TravelMode mode : modes){
+                    ThreadLocal<Router> routers = prepare(engine, graph, metric, mode, prepared);
+                    if(engine != Engine.ASTAR && checkCount > 0){
+                        mismatches += check(engine, mode, routers.get(), graph, metric.getWeights(mode), checkCount, new Random(seed));
+                    }
+                    for(int threads : threadCounts){
+                        ExecutorService pool = Executors.newFixedThreadPool(threads);
+                        try{
+                            for(QuerySet set : modeSets.get(mode)){
+                                run(pool, threads, routers, graph, set);       //Warm up
+                                Result result = run(pool, threads, routers, graph, set);
+                                System.out.println(engine + " " + mode + " " + set.name + " on " + threads + " threads: p50 = "
+                                        + MathUtil.round(result.percentile(0.5), 1) + "us | p95 = " + MathUtil.round(result.percentile(0.95), 1)
+                                        + "us | p99 = " + MathUtil.round(result.percentile(0.99), 1) + "us | "
+                                        + MathUtil.round(result.queriesPerSecond(), 0) + " queries/s | "
+                                        + MathUtil.round(result.allocationRate(), 1) + "MB/s allocated");
+                                csv.println(String.join(",", label, engine.name().toLowerCase(), mode.name(), metric.getName(), set.name,
+                                        String.valueOf(threads), String.valueOf(set.size()), String.valueOf(result.found),
+                                        format(result.percentile(0.5)), format(result.percentile(0.95)), format(result.percentile(0.99)),
+                                        format(result.mean()), format(result.queriesPerSecond()), format(result.allocationRate()),
+                                        format(result.allocationPerQuery())));
+                                csv.flush();
+                            }
+                        }finally{
+                            pool.shutdown();
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("Results written to " + out.getPath());
+        if(mismatches > 0){
+            System.err.println(mismatches + " checked routes didn't cost the same as Dijkstra's.");
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String problem){
+        System.err.println(problem);
+        System.err.println("Usage: java LoadTester directory [--engines astar,compressed,overlay,hublabels] [--modes CAR,PEDESTRIAN,BICYCLE]"
+                + " [--metric Time|Distance] [--threads 1,2,4] [--queries 1000] [--check 200] [--seed 1] [--label name] [--out loadtest.csv]");
+        System.exit(1);
+    }
+
+    private static String format(double value){
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Generates the query sets, reproducibly for the same graph and random number generator
+     * @param graph     The graph
+     * @param weights   The weights the Dijkstra ranks are measured with
+     * @param count     The number of queries in each set, split between the rank sets
+     * @param random    The random number generator
+     * @return          The non empty sets
+     */
+    static List<QuerySet> generate(RoutingGraph graph, float[] weights, int count, Random random){
+        int nodeCount = graph.getNodeCount();
+        List<QuerySet> sets = new ArrayList<>();
+
+        List<int[]> uniform = new ArrayList<>();
+        for(int i = 0; i < count; i++) uniform.add(new int[]{random.nextInt(nodeCount), random.nextInt(nodeCount)});
+        sets.add(new QuerySet("uniform", uniform));
+
+        //One Dijkstra search per source gives a target for every rank it reaches
+        int maxExponent = 31 - Integer.numberOfLeadingZeros(nodeCount);
+        int rankCount = Math.max(0, maxExponent - RANK_MIN_EXPONENT + 1);
+        List<List<int[]>> ranks = new ArrayList<>();
+        for(int i = 0; i < rankCount; i++) ranks.add(new ArrayList<>());
+        int perRank = rankCount == 0 ? 0 : Math.max(1, count / rankCount);
+        DijkstraSearch search = new DijkstraSearch(graph, false);
+        for(int attempt = 0; attempt < MAX_ATTEMPTS && rankCount > 0 && ranks.get(rankCount - 1).size() < perRank; attempt++){
+            int source = random.nextInt(nodeCount);
+            search.reset();
+            search.addSource(source, 0);
+            int settled = 0;
+            int node;
+            while((node = search.settleNext(weights)) != -1){
+                settled++;
+                if(Integer.bitCount(settled) != 1) continue;
+                int rank = Integer.numberOfTrailingZeros(settled) - RANK_MIN_EXPONENT;
+                if(rank >= 0 && ranks.get(rank).size() < perRank) ranks.get(rank).add(new int[]{source, node});
+            }
+        }
+        for(int i = 0; i < rankCount; i++){
+            if(!ranks.get(i).isEmpty()) sets.add(new QuerySet("rank-2^" + (i + RANK_MIN_EXPONENT), ranks.get(i)));
+        }
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        List<Node> nodes = new ArrayList<>();
+        for(int i = 0; i < nodeCount; i++){
+            Node node = graph.getNode(i);
+            nodes.add(node);
+            minX = Math.min(minX, node.getX());
+            minY = Math.min(minY, node.getY());
+            maxX = Math.max(maxX, node.getX());
+            maxY = Math.max(maxY, node.getY());
+        }
+
+        QuadNode quadRoot = MapLoader.buildQuadTree(nodes);
+        List<int[]> local = new ArrayList<>();
+        List<Node> nearby = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            for(int attempt = 0; attempt < MAX_ATTEMPTS; attempt++){
+                Node source = graph.getNode(random.nextInt(nodeCount));
+                nearby.clear();
+                quadRoot.collect(source.getX() - LOCAL_RADIUS, source.getY() - LOCAL_RADIUS, source.getX() + LOCAL_RADIUS,
+                        source.getY() + LOCAL_RADIUS, nearby);
+                nearby.removeIf(node -> node == source || MathUtil.distance(source.getX(), source.getY(), node.getX(), node.getY()) > LOCAL_RADIUS);
+                if(nearby.isEmpty()) continue;
+                local.add(new int[]{graph.indexOf(source), graph.indexOf(nearby.get(random.nextInt(nearby.size())))});
+                break;
+            }
+        }
+        if(!local.isEmpty()) sets.add(new QuerySet("local", local));
+
+        double longHaul = LONG_HAUL_FRACTION * MathUtil.distance(minX, minY, maxX, maxY);
+        List<int[]> longHaulQueries = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            int[] best = null;
+            double bestDistance = -1;
+            for(int attempt = 0; attempt < MAX_ATTEMPTS && bestDistance < longHaul; attempt++){
+                int source = random.nextInt(nodeCount);
+                int target = random.nextInt(nodeCount);
+                double distance = MathUtil.distance(graph.getNode(source).getX(), graph.getNode(source).getY(),
+                        graph.getNode(target).getX(), graph.getNode(target).getY());
+                if(distance > bestDistance){
+                    best = new int[]{source, target};
+                    bestDistance = distance;
+                }
+            }
+            longHaulQueries.add(best);
+        }
+        sets.add(new QuerySet("long-haul", longHaulQueries));
+        return sets;
+    }
+
+    /**
+     * Checks the routes an engine finds between random pairs of distinct nodes cost the same as the shortest paths a
+     * Dijkstra search of the uncompressed graph finds, printing the pairs that don't
+     * @param router    The engine's router for this thread
+     * @param weights   The weights of the mode of travel
+     * @param count     The number of pairs to check
+     * @return          The number of pairs that didn't cost the same
+     */
+    static int check(Engine engine, TravelMode mode, Router router, RoutingGraph graph, float[] weights, int count, Random random){
+        int nodeCount = graph.getNodeCount();
+        if(nodeCount < 2) return 0;
+        DijkstraSearch search = new DijkstraSearch(graph, false);
+        int mismatches = 0;
+        for(int i = 0; i < count; i++){
+            int source = random.nextInt(nodeCount);
+            int target = random.nextInt(nodeCount - 1);
+            if(target >= source) target++;
+            search.reset();
+            search.addSource(source, 0);
+            int node;
+            do{
+                node = search.settleNext(weights);
+            }while(node != -1 && node != target);
+            float expected = search.getDistance(target);
+            float cost = pathCost(graph, weights, router.route(graph.getNode(source), graph.getNode(target)));
+            boolean same = expected == RoutingGraph.INFINITY ? cost == RoutingGraph.INFINITY
+                    : Math.abs(cost - expected) <= CHECK_TOLERANCE * Math.max(1, expected);
+            if(!same){
+                mismatches++;
+                System.out.println("Check failed: " + engine + " " + mode + " from " + graph.getExternalId(source) + " to "
+                        + graph.getExternalId(target) + " costs " + cost + ", Dijkstra found " + expected);
+            }
+        }
+        System.out.println("Checked " + engine + " " + mode + " against Dijkstra on " + count + " random pairs: "
+                + mismatches + " mismatches.");
+        return mismatches;
+    }
+
+    /**
+     * @param path  The nodes of a path in order
+     * @return      The sum of the cheapest edge between each pair of nodes along the path, infinity if the path is
+     *              empty or any pair isn't joined by an edge
+     */
+    private static float pathCost(RoutingGraph graph, float[] weights, List<Node> path){
+        if(path.isEmpty()) return RoutingGraph.INFINITY;
+        float cost = 0;
+        for(int i = 1; i < path.size(); i++){
+            int from = graph.indexOf(path.get(i - 1));
+            int to = graph.indexOf(path.get(i));
+            float cheapest = RoutingGraph.INFINITY;
+            for(int edge = graph.firstOut(from); edge < graph.endOut(from); edge++){
+                if(graph.getHead(edge) == to) cheapest = Math.min(cheapest, weights[edge]);
+            }
+            cost += cheapest;
+        }
+        return cost;
+    }
+
+    /**
+     * Builds what an engine needs to answer queries for a metric and mode of travel
+     * @param prepared  The metric independent structures already built, by engine, added to if this engine's isn't
+     * @return          A router for each thread, made the first time the thread asks
+     */
+    private static ThreadLocal<Router> prepare(Engine engine, RoutingGraph graph, Metric metric, TravelMode mode, Map<Engine, Object> prepared){
+        long startTime = System.currentTimeMillis();
+        float[] weights = metric.getWeights(mode);
+        ThreadLocal<Router> routers;
+        switch(engine){
+            case ASTAR:
+                TurnGraph turnGraph = (TurnGraph) prepared.computeIfAbsent(engine, key -> TurnGraph.build(graph, metric.hasTurnCosts()));
+                routers = ThreadLocal.withInitial(() -> (start, end) -> AStarManager.pathfind(turnGraph, start, end, metric, mode));
+                break;
+            case COMPRESSED:
+                CompressedGraph compressed = (CompressedGraph) prepared.computeIfAbsent(engine, key -> new CompressedGraph(graph));
+                routers = ThreadLocal.withInitial(() -> new CompressedSearch(compressed, metric, mode)::pathfind);
+                break;
+            case OVERLAY:
+                OverlayGraph overlay = (OverlayGraph) prepared.computeIfAbsent(engine,
+                        key -> new OverlayGraph(GraphPartitioner.inertialFlowPartition(graph, OverlayGraph.CELL_SIZES)));
+                OverlayGraph customised = overlay.customise(weights);
+                routers = ThreadLocal.withInitial(() -> new OverlaySearch(customised)::pathfind);
+                break;
+            default:
+                ContractionHierarchy hierarchy = (ContractionHierarchy) prepared.computeIfAbsent(engine, key -> new ContractionHierarchy(graph));
+                HubLabels labels = HubLabels.build(hierarchy.customise(weights), weights);
+                routers = ThreadLocal.withInitial(() -> labels::getPath);
+        }
+        System.out.println("Prepared " + engine + " for " + metric.getName() + " by " + mode + " in " + (System.currentTimeMillis() - startTime) + "ms.");
+        return routers;
+    }
+
+    /**
+     * Runs every query of a set once, the threads taking the next query left until there are none
+     * @return The measurements of the run
+     */
+    private static Result run(ExecutorService pool, int threads, ThreadLocal<Router> routers, RoutingGraph graph, QuerySet set)
+            throws InterruptedException, ExecutionException {
+        long[] latencies = new long[set.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger found = new AtomicInteger();
+        List<Callable<Long>> workers = new ArrayList<>();
+        for(int thread = 0; thread < threads; thread++){
+            workers.add(() -> {
+                Router router = routers.get();
+                long allocatedBefore = allocatedBytes();
+                int i;
+                while((i = next.getAndIncrement()) < latencies.length){
+                    Node start = graph.getNode(set.sources[i]);
+                    Node end = graph.getNode(set.targets[i]);
+                    long queryStart = System.nanoTime();
+                    List<Node> path = router.route(start, end);
+                    latencies[i] = System.nanoTime() - queryStart;
+                    if(!path.isEmpty()) found.incrementAndGet();
+                }
+                return allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+            });
+        }
+        long startTime = System.nanoTime();
+        List<Future<Long>> futures = pool.invokeAll(workers);
+        long time = System.nanoTime() - startTime;
+        long allocated = 0;
+        for(Future<Long> future : futures){
+            long bytes = future.get();
+            allocated = bytes < 0 || allocated < 0 ? -1 : allocated + bytes;
+        }
+        return new Result(latencies, found.get(), time, allocated);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, -1 if the JVM can't tell
+     */
+    private static long allocatedBytes(){
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if(!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return -1;
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -79,6 +79,20 @@ public class Location{
 		return new Location(x, y);
 	}
 
+	/**
+	 * Returns the latitude of this location, the opposite of newFromLatLon.
+	 */
+	public double getLatitude(){
+		return y / SCALE_LAT + CENTRE_LAT;
+	}
+
+	/**
+	 * Returns the longitude of this location, the opposite of newFromLatLon.
+	 */
+	public double getLongitude(){
+		return x / (SCALE_LAT * Math.cos((getLatitude() - CENTRE_LAT) * DEG_TO_RAD)) + CENTRE_LON;
+	}
+
 	// ------------------------------------------
 	// some utility methods for Location objects
 	// ------------------------------------------
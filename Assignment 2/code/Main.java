@@ -5,42 +5,74 @@ import java.awt.event.MouseWheelEvent;
 import java.io.*;
 import java.util.*;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
 
 public class Main extends GUI{
 
-	private Map<Integer, Node> nodeMap = new HashMap<>();
-	private Map<Integer, Road> roadMap = new HashMap<>();
+	private IntMap<Node> nodeMap = new IntMap<>();     //Nodes by ID
+	private IntMap<Road> roadMap = new IntMap<>();     //Roads by ID
 	private List<Polygon> polygons = new ArrayList<>();
+	private GeometryStore geometry = new GeometryStore();     //Coordinates of every segment and polygon
 	private List<Node> pathfindingNodes = new ArrayList<>();
 	private List<Segment> pathfindingSegments = new ArrayList<>();
 	private Set<QuadNode> searched = new HashSet<>();
 	private Set<Road> selectedRoads = new HashSet<>();
 	private Set<Node> articulationPoints = new HashSet<>();
+	private List<Node> stops = new ArrayList<>();
 
 	private double scale;       //AKA pixels per kilometer
 	private Location origin;    //Origin for rendering from
 	private double width;
 	private double height;
-	public static double averageSpeed;
 
 	private Node selectedNode;
-	private TrieNode<Road, Character> trieRoot;
 	private QuadNode quadRoot;
+	private MapEngine engine;                                               //The loaded map, which the rest of these are parts of
+	private RoutingGraph routingGraph;
+	private TurnGraph turnGraph;                                            //Expanded only at restricted intersections
+	private Map<String, Metric> metrics = new LinkedHashMap<>();            //Metrics by name, in the order shown to the user
+	private Isochrone isochrone;
+	private Corridor corridor;                                              //Features along the path
+	private BoxTree polygonIndex;
+	private Betweenness betweenness;                                        //Last computed or saved for the loaded map
+	private boolean renderBetweenness = false;
+	private File dataDirectory;
+	private IncrementalSearch incrementalSearch;                            //Kept between routes so it can be repaired
+	private AlternativeRoutes alternativeRoutes;                            //Built when first needed
+	private List<List<Segment>> alternativeSegments = new ArrayList<>();    //Segments of each alternative to the path, drawn in ALTERNATIVE_COLOURS
+	private SearchStats searchStats;                                        //Work done by the last A* search, when it is being counted
+	private RouteCache routeCache;                                          //Routes already found on the current graph
+	private List<Segment> closedSegments = new ArrayList<>();
+	private List<Segment> slowedSegments = new ArrayList<>();
 	private Location dragStart;
+	private SegmentIndex segmentIndex;
+	private SegmentIndex.Projection hovered;                                //Closest point on a road to the mouse, if it is near one
 
 	private boolean setStart = false;
 	private boolean setEnd = false;
+	private boolean addStop = false;
 
 	private static final double ZOOM_FACTOR = 1.05;
 	private static final double ZOOM_LEVEL_STEP = 50;
+	private static final long STOP_OPTIMISE_TIME = 2000;   //Milliseconds spent improving the order of stops
+	private static final int HUB_LABEL_TEST_QUERIES = 100000;
+	private static final int COMPRESSION_TEST_QUERIES = 1000;
+	private static final int NEAREST_FACILITY_COUNT = 3;
+	private static final int DELTA_STEPPING_TEST_QUERIES = 20;
+	private static final Color[] ALTERNATIVE_COLOURS = {new Color(0, 150, 0), new Color(150, 0, 200)};
+	private static final String[] ALTERNATIVE_COLOUR_NAMES = {"green", "purple"};
+	private static final double HOVER_PIXELS = 8;                           //How close the mouse has to be to a road to highlight it
+	private static final String BETWEENNESS_FILE = "betweenness.tab";         //Written next to the data files
+	private static final int BETWEENNESS_TOP_SEGMENTS = 10;
 
 	private boolean RENDER_QUADNODES = false;
 	private boolean RENDER_POLYGONS = true;
 	private boolean RENDER_APS = true;
 
-	public Main(){ }
+	public Main(){
+		metrics.put(Metric.DISTANCE, Metric.distance());
+		metrics.put(Metric.TIME, Metric.time());
+	}
 
 	/**
 	 * Draws all of the nodes, roads and polygons associated with our graph to the graphics object passed to it.
@@ -53,24 +85,53 @@ public class Main extends GUI{
 		if(RENDER_POLYGONS){
 			for(Polygon polygon : polygons){
 				if(ZOOM_LEVEL_STEP / scale < polygon.getZoomLevel()){   //Checks if our current zoom level is not larger
-					polygon.redraw(g, scale, origin);                   //than the maximum provided by the polygon.
+					MapRenderer.drawPolygon(g, polygon, scale, origin); //than the maximum provided by the polygon.
 				}
 			}
 		}
 
 		for(Node node : nodeMap.values()){
-			if(node == selectedNode) node.redraw(g, scale, origin, true, false);
-			else if(pathfindingNodes.contains(node)) node.redraw(g, scale, origin, false, true);
-			else node.redraw(g, scale, origin, false, false);
+			if(node == selectedNode) MapRenderer.drawNode(g, node, scale, origin, true, false);
+			else if(pathfindingNodes.contains(node)) MapRenderer.drawNode(g, node, scale, origin, false, true);
+			else MapRenderer.drawNode(g, node, scale, origin, false, false);
 		}
 
 		for(Road road : roadMap.values()){
-			if(selectedRoads.contains(road)) road.redraw(g, scale, origin, true, pathfindingSegments);
-			else road.redraw(g, scale, origin, false, pathfindingSegments);
+			if(selectedRoads.contains(road)) MapRenderer.drawRoad(g, road, scale, origin, true, pathfindingSegments);
+			else MapRenderer.drawRoad(g, road, scale, origin, false, pathfindingSegments);
+		}
+
+		if(!alternativeSegments.isEmpty()){       //Drawn under the best path where they share roads with it
+			for(int i = alternativeSegments.size() - 1; i >= 0; i--){
+				for(Segment segment : alternativeSegments.get(i)) MapRenderer.drawSegment(g, segment, scale, origin, ALTERNATIVE_COLOURS[i]);
+			}
+			for(Segment segment : pathfindingSegments) MapRenderer.drawSegment(g, segment, scale, origin, Color.BLUE);
+		}
+
+		if(renderBetweenness && betweenness != null)
+			betweenness.redraw(g, scale, origin);
+
+		if(searchStats != null)
+			searchStats.redraw(g, scale, origin);
+
+		for(Segment segment : slowedSegments) MapRenderer.drawSegment(g, segment, scale, origin, Color.ORANGE);
+		for(Segment segment : closedSegments) MapRenderer.drawSegment(g, segment, scale, origin, Color.MAGENTA);
+
+		if(hovered != null){
+			MapRenderer.drawSegment(g, hovered.getSegment(), scale, origin, Color.CYAN);
+			Point point = hovered.getLocation().asPoint(origin, scale);
+			g.fillOval(point.x - 3, point.y - 3, 6, 6);
+			g.drawString(hovered.getSegment().getRoad().getName(), point.x + 6, point.y - 6);
 		}
 
+		if(isochrone != null)
+			isochrone.redraw(g, scale, origin);
+
+		if(corridor != null)
+			corridor.redraw(g, scale, origin);
+
 		if(RENDER_QUADNODES && quadRoot != null)
-			quadRoot.redraw(g, origin, scale);
+			MapRenderer.drawQuadTree(g, quadRoot, origin, scale);
 
 		if(RENDER_APS){
 			g.setColor(Color.RED);
@@ -80,6 +141,13 @@ public class Main extends GUI{
 				g.drawOval(point.x - 5, point.y - 5, 10, 10);
 			}
 		}
+
+		g.setColor(Color.GREEN.darker());
+		for(int i = 0; i < stops.size(); i++){
+			Point point = stops.get(i).getLocation().asPoint(origin, scale);
+			g.fillOval(point.x - 5, point.y - 5, 10, 10);
+			g.drawString(String.valueOf(i + 1), point.x + 6, point.y - 6);
+		}
 	}
 
 	/**
@@ -90,6 +158,7 @@ public class Main extends GUI{
 	protected void onSetStart() {
 		setStart = true;
 		setEnd = false;
+		addStop = false;
 	}
 
 	/**
@@ -100,6 +169,428 @@ public class Main extends GUI{
 	protected void onSetEnd() {
 		setEnd = true;
 		setStart = false;
+		addStop = false;
+	}
+
+	/**
+	 *	Called when the user presses the add stop button, the next click will add the node clicked to the list of stops.
+	 */
+	@Override
+	protected void onAddStop() {
+		addStop = true;
+		setStart = false;
+		setEnd = false;
+	}
+
+	/**
+	 * Called when the user presses the optimise stops button. Computes the travel matrix between all of the stops,
+	 * orders them into the shortest round trip we can find in the time budget (starting and ending at the first stop
+	 * added) and then shows the route through them.
+	 */
+	@Override
+	protected void onOptimiseStops() {
+		if(stops.size() < 2){
+			println("Add at least two stops to optimise a route.");
+			return;
+		}
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		RoutingGraph graph = routingGraph;
+		List<Node> tourStops = new ArrayList<>(stops);
+		println("Optimising the order of " + tourStops.size() + " stops...");
+
+		//Runs off the event dispatch thread as the optimiser alone takes STOP_OPTIMISE_TIME, the route is shown back on it
+		new SwingWorker<List<Node>, Void>(){
+			private String report;		//Read in done, once get has waited for doInBackground
+
+			@Override
+			protected List<Node> doInBackground(){
+				TravelMatrix matrix = MatrixManager.computeMatrix(graph, tourStops, metric.getWeights(mode));
+				int[] tour = StopOptimiser.optimise(matrix, STOP_OPTIMISE_TIME, Runtime.getRuntime().availableProcessors());
+
+				StringBuilder order = new StringBuilder("Stop order:");
+				List<Node> route = new ArrayList<>();
+				for(int i = 0; i < tour.length; i++){
+					Node from = tourStops.get(tour[i]);
+					Node to = tourStops.get(tour[(i + 1) % tour.length]);
+					order.append(" ").append(tour[i] + 1);
+					List<Node> leg = AStarManager.pathfind(getTurnGraph(metric), from, to, metric, mode);
+					if(leg.isEmpty()){
+						report = "No path found between stop " + (tour[i] + 1) + " and stop " + (tour[(i + 1) % tour.length] + 1) + ".";
+						return new ArrayList<>();
+					}
+					route.addAll(i == 0 ? leg : leg.subList(1, leg.size()));	//Each leg starts at the stop the last one ended at
+				}
+				order.append(" ").append(tour[0] + 1);
+				report = order.toString();
+				return route;
+			}
+
+			@Override
+			protected void done(){
+				try{
+					List<Node> route = get();
+					println(report);
+					if(!route.isEmpty()) showPath(route);
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}catch(ExecutionException e){
+					println("Failed to optimise the stops: " + e.getCause().getMessage());
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Called when the user presses the clear stops button, removes all stops.
+	 */
+	@Override
+	protected void onClearStops() {
+		stops.clear();
+		addStop = false;
+	}
+
+	/**
+	 * Called when the user presses the isochrone button, asks for a travel budget and then shows the area reachable
+	 * from the selected node within it. An empty budget clears the isochrone.
+	 */
+	@Override
+	protected void onIsochrone() {
+		if(selectedNode == null){
+			println("Select a node to compute the isochrone from.");
+			return;
+		}
+		Metric metric = getMetric();
+		String input = JOptionPane.showInputDialog(metric.isTime() ? "Travel time budget (minutes):" : "Travel distance budget (km):");
+		if(input == null || input.trim().isEmpty()){
+			isochrone = null;
+			return;
+		}
+
+		double budget;
+		try{
+			budget = Double.parseDouble(input.trim());
+		}catch(NumberFormatException e){
+			println("Invalid budget: " + input);
+			return;
+		}
+		if(metric.isTime()) budget /= 60;      //Edge times are in hours
+
+		TravelMode mode = getTravelMode();
+		isochrone = IsochroneManager.compute(engine.getOneToAllSearch(metric, mode), selectedNode, budget, metric.getWeights(mode));
+		println("Isochrone from " + selectedNode.getID() + ": " + isochrone.getNodes().size() + " nodes and "
+				+ isochrone.getSegments().size() + " segments reachable.");
+	}
+
+	/**
+	 * Called when the user presses the corridor button, asks how far either side of the path to look and then lists the
+	 * traffic lights, polygons and other nodes within that distance of it. An empty distance clears the corridor.
+	 */
+	@Override
+	protected void onCorridor() {
+		if(pathfindingSegments.isEmpty()){
+			println("Find a path to search along first.");
+			return;
+		}
+		String input = JOptionPane.showInputDialog("Distance either side of the path (metres):");
+		if(input == null || input.trim().isEmpty()){
+			corridor = null;
+			return;
+		}
+
+		double width;
+		try{
+			width = Double.parseDouble(input.trim()) / 1000;
+		}catch(NumberFormatException e){
+			println("Invalid distance: " + input);
+			return;
+		}
+
+		corridor = CorridorManager.compute(pathfindingSegments, width, quadRoot, polygons, polygonIndex);
+		List<Node> trafficLights = corridor.getTrafficLights();
+		println("Within " + input.trim() + "m of the path:");
+		println("	" + trafficLights.size() + " traffic lights" + (trafficLights.isEmpty() ? "" : ":"));
+		for(Node node : trafficLights) println("		Intersection ID " + node.getID());
+		println("	" + corridor.getPolygons().size() + " polygons" + (corridor.getPolygons().isEmpty() ? "" : ":"));
+		for(Polygon polygon : corridor.getPolygons()){
+			println("		" + polygon.getTypeName() + (polygon.getLabel() == null ? "" : " " + polygon.getLabel()));
+		}
+		println("	" + corridor.getNodes().size() + " nodes");
+		println("Searched " + corridor.getBoxCount() + " boxes (" + corridor.getCandidateCount() + " candidates) in "
+				+ MathUtil.round(corridor.getTime() / 1e6, 3) + "ms.");
+	}
+
+	/**
+	 * Called when the user presses the nearest button, asks for a type of facility and lists the nearest few of them to
+	 * the selected node by the current metric. The nodes are labelled with their nearest facilities of the type the
+	 * first time it is asked for with the metric and mode of travel, after which every lookup is just reading a label.
+	 */
+	@Override
+	protected void onNearestFacilities() {
+		if(selectedNode == null){
+			println("Select a node to find the nearest facilities to.");
+			return;
+		}
+		Object[] types = FacilityManager.getTypes(polygons).toArray();
+		Object type = JOptionPane.showInputDialog(null, "Facility:", "Nearest Facilities", JOptionPane.QUESTION_MESSAGE, null, types, types[0]);
+		if(type == null) return;
+
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		FacilityManager.Facilities found = engine.getFacilities(type.toString());
+		FacilityLabels labels = engine.getFacilityLabels(type.toString(), metric, mode, NEAREST_FACILITY_COUNT);
+
+		int node = routingGraph.indexOf(selectedNode);
+		long startTime = System.nanoTime();
+		int[] nearest = new int[labels.getCount()];
+		for(int rank = 0; rank < nearest.length; rank++) nearest[rank] = labels.getFacility(node, rank);
+		long time = System.nanoTime() - startTime;
+		println("Nearest " + type + " to Intersection ID " + selectedNode.getID() + " (looked up in " + MathUtil.round(time / 1000.0, 2) + " microseconds):");
+		if(nearest[0] == -1) println("	None can be reached.");
+		for(int rank = 0; rank < nearest.length && nearest[rank] != -1; rank++){
+			float cost = labels.getDistance(node, rank);
+			println("	" + (rank + 1) + ". " + found.getNames()[nearest[rank]] + " | "
+					+ (metric.isTime() ? MathUtil.round(MathUtil.minutes(cost), 1) + " minutes" : MathUtil.round(cost, 2) + "km"));
+		}
+	}
+
+	/**
+	 * Called when the user presses the betweenness button, asks for an error bound and estimates the betweenness of
+	 * every road segment by the current metric from enough sampled sources to meet it, saving it next to the data
+	 * files and showing it as a heat map. A blank bound shows the saved betweenness instead, cancelling hides it.
+	 */
+	@Override
+	protected void onBetweenness() {
+		if(routingGraph == null) return;
+		String input = JOptionPane.showInputDialog("Error bound (blank to show the saved betweenness):", "0.05");
+		if(input == null){
+			renderBetweenness = false;
+			return;
+		}
+		if(input.trim().isEmpty()){
+			if(betweenness == null) println("No saved betweenness for this map.");
+			renderBetweenness = betweenness != null;
+			return;
+		}
+
+		double error;
+		try{
+			error = Double.parseDouble(input.trim());
+		}catch(NumberFormatException e){
+			println("Invalid error bound: " + input);
+			return;
+		}
+		if(error <= 0){
+			println("The error bound must be above 0.");
+			return;
+		}
+
+		Metric metric = getMetric();
+		int samples = BetweennessManager.samplesFor(routingGraph, error);
+		long startTime = System.currentTimeMillis();
+		double[] centrality = BetweennessManager.compute(routingGraph, metric.getWeights(getTravelMode()), samples, System.nanoTime());
+		long time = System.currentTimeMillis() - startTime;
+		betweenness = Betweenness.fromEdges(routingGraph, roadMap.values(), centrality);
+		renderBetweenness = true;
+		println("Computed betweenness by " + metric.getName() + " from " + samples + " of " + routingGraph.getNodeCount() + " sources in "
+				+ time + "ms on " + Runtime.getRuntime().availableProcessors() + " threads (every segment within "
+				+ MathUtil.round(error * routingGraph.getNodeCount() * (routingGraph.getNodeCount() - 1), 0) + " paths of the exact value with "
+				+ MathUtil.round(100 * BetweennessManager.CONFIDENCE, 0) + "% confidence).");
+		println("Busiest segments:");
+		for(Segment segment : betweenness.getTop(BETWEENNESS_TOP_SEGMENTS)){
+			println("	" + segment.getRoad().getName() + " (" + segment.getStart().getID() + " to " + segment.getEnd().getID() + ") | "
+					+ MathUtil.round(betweenness.getValue(segment), 0) + " paths");
+		}
+		try{
+			betweenness.write(new File(dataDirectory, BETWEENNESS_FILE));
+		}catch(IOException e){
+			println("Failed to write betweenness: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Called when the user presses the delta stepping button, checks the parallel one-to-all search against Dijkstra
+	 * from some random sources and times it (see DeltaStepping.benchmark).
+	 */
+	@Override
+	protected void onDeltaStepping() {
+		if(routingGraph == null) return;
+		int[] sources = new Random().ints(DELTA_STEPPING_TEST_QUERIES, 0, routingGraph.getNodeCount()).toArray();
+		DeltaStepping.benchmark(routingGraph, getMetric().getWeights(getTravelMode()), sources, this::println);
+	}
+
+	/**
+	 * Called when the user presses the hub labels button, builds the hub labelling index for the selected metric and
+	 * travel mode, reports how long it took, how big it is and how fast queries are, then offers to save it.
+	 */
+	@Override
+	protected void onBuildHubLabels() {
+		if(routingGraph == null) return;
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		HubLabels labels = HubLabels.build(engine.getOneToAllSearch(metric, mode).getHierarchy(), metric.getWeights(mode));
+		println("Built hub labels for " + metric.getName() + " by " + mode + " in " + labels.getBuildTime() + "ms, "
+				+ MathUtil.round(labels.getAverageLabelSize(), 1) + " hubs per label, "
+				+ MathUtil.round(labels.getSizeInBytes() / (1024.0 * 1024.0), 2) + "MB.");
+
+		Random random = new Random();
+		int nodeCount = routingGraph.getNodeCount();
+		long startTime = System.nanoTime();
+		for(int i = 0; i < HUB_LABEL_TEST_QUERIES; i++){
+			labels.getDistance(random.nextInt(nodeCount), random.nextInt(nodeCount));
+		}
+		double microseconds = (System.nanoTime() - startTime) / 1000.0 / HUB_LABEL_TEST_QUERIES;
+		println("Average distance query: " + MathUtil.round(microseconds, 3) + " microseconds.");
+
+		JFileChooser chooser = new JFileChooser(new File("."));
+		chooser.setDialogTitle("Save hub labels");
+		if(chooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION){
+			try{
+				labels.write(chooser.getSelectedFile());
+			}catch(IOException e){
+				println("Failed to write hub labels: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Called when the user presses the overlay route button, finds the path between the start and end nodes using the
+	 * multi-level overlay instead of A* and reports how much work the search did.
+	 */
+	@Override
+	protected void onOverlayRoute() {
+		if(routingGraph == null) return;
+		OverlaySearch search = getOverlaySearch(getMetric(), getTravelMode());
+		long startTime = System.nanoTime();
+		List<Node> path = search.pathfind(AStarManager.getStart(), AStarManager.getEnd());
+		long time = System.nanoTime() - startTime;
+		showPath(path);
+		if(!path.isEmpty()){
+			println("Overlay search settled " + search.getSettledCount() + " nodes in " + MathUtil.round(time / 1e6, 3) + "ms.");
+		}
+	}
+
+	/**
+	 * Called when the user presses the compress graph button, collapses the chains of degree 2 nodes, reports how much
+	 * smaller the graph got and how much faster routing on it is, then routes on the compressed graph from then on.
+	 */
+	@Override
+	protected void onCompressGraph() {
+		if(routingGraph == null) return;
+		CompressedGraph compressedGraph = engine.compress();
+		println("Compressed graph in " + compressedGraph.getBuildTime() + "ms from " + routingGraph.getNodeCount() + " nodes and "
+				+ routingGraph.getEdgeCount() + " edges to " + compressedGraph.getNodeCount() + " nodes and " + compressedGraph.getEdgeCount()
+				+ " edges (shrink factor " + MathUtil.round((double) routingGraph.getNodeCount() / compressedGraph.getNodeCount(), 2) + ").");
+
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		CompressedSearch search = engine.getCompressedSearch(metric, mode);
+		int nodeCount = routingGraph.getNodeCount();
+		long seed = System.nanoTime();
+		Random random = new Random(seed);
+		long startTime = System.nanoTime();
+		for(int i = 0; i < COMPRESSION_TEST_QUERIES; i++){
+			AStarManager.pathfind(turnGraph, routingGraph.getNode(random.nextInt(nodeCount)), routingGraph.getNode(random.nextInt(nodeCount)), metric, mode);
+		}
+		long fullTime = System.nanoTime() - startTime;
+		random = new Random(seed);
+		startTime = System.nanoTime();
+		for(int i = 0; i < COMPRESSION_TEST_QUERIES; i++){
+			search.pathfind(routingGraph.getNode(random.nextInt(nodeCount)), routingGraph.getNode(random.nextInt(nodeCount)));
+		}
+		long compressedTime = System.nanoTime() - startTime;
+		println("Average query: " + MathUtil.round(fullTime / 1000.0 / COMPRESSION_TEST_QUERIES, 2) + " microseconds on the full graph, "
+				+ MathUtil.round(compressedTime / 1000.0 / COMPRESSION_TEST_QUERIES, 2) + " compressed (speedup "
+				+ MathUtil.round((double) fullTime / compressedTime, 2) + ").");
+	}
+
+	/**
+	 * Called when the user presses the map match button, matches every GPS trace in a chosen directory onto the roads
+	 * for the current mode of travel, writing the matched traces to a matched folder inside it.
+	 */
+	@Override
+	protected void onMapMatch() {
+		if(routingGraph == null || segmentIndex == null) return;
+		JFileChooser chooser = new JFileChooser(new File("."));
+		chooser.setDialogTitle("Choose a directory of traces");
+		chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		if(chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) return;
+		File directory = chooser.getSelectedFile();
+		int threads = Runtime.getRuntime().availableProcessors();
+		RoutingGraph graph = routingGraph;
+		SegmentIndex index = segmentIndex;
+		TravelMode mode = getTravelMode();
+		println("Map matching " + directory + "...");
+
+		//Runs off the event dispatch thread so the map can still be used, the result is printed back on it
+		new SwingWorker<MapMatchingManager.Result, Void>(){
+			@Override
+			protected MapMatchingManager.Result doInBackground() throws IOException {
+				return MapMatchingManager.matchDirectory(graph, index, mode, directory, new File(directory, "matched"), threads);
+			}
+
+			@Override
+			protected void done(){
+				try{
+					MapMatchingManager.Result result = get();
+					println("Map matched " + result.getTraces() + " traces (" + result.getPoints() + " points, " + result.getMatched()
+							+ " matched) in " + result.getMillis() + "ms on " + threads + " threads, "
+							+ MathUtil.round(result.getPointsPerSecond(), 0) + " points/second.");
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}catch(ExecutionException e){
+					println("Failed to map match: " + e.getCause().getMessage());
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Gets the overlay search for a metric, partitioning the graph the first time one is needed (offering to save the
+	 * partition) and customising the overlay the first time the metric is used with a travel mode.
+	 * @param metric	The metric being minimised
+	 * @param mode		The mode of travel
+	 * @return			The search
+	 */
+	private OverlaySearch getOverlaySearch(Metric metric, TravelMode mode){
+		boolean partitioned = engine.getOverlayGraph() != null;
+		OverlaySearch search = engine.getOverlaySearch(metric, mode);
+		if(!partitioned) savePartition(engine.getOverlayGraph().getPartition());
+		return search;
+	}
+
+	/**
+	 * Asks where to save a partition, if anywhere
+	 * @param partition	The partition to save
+	 */
+	private void savePartition(Partition partition){
+		JFileChooser chooser = new JFileChooser(new File("."));
+		chooser.setDialogTitle("Save partition");
+		if(chooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION){
+			try{
+				partition.write(chooser.getSelectedFile());
+			}catch(IOException e){
+				println("Failed to write partition: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Gets the turn expanded graph to search with a metric, only metrics that charge for turns need every
+	 * intersection expanded.
+	 * @param metric	The metric being minimised
+	 * @return			The graph
+	 */
+	private TurnGraph getTurnGraph(Metric metric){
+		return engine.getTurnGraph(metric);
+	}
+
+
+	/**
+	 * @return The metric currently selected to be minimised
+	 */
+	private Metric getMetric(){
+		return metrics.get(getMinimiseValue());
 	}
 
 	/**
@@ -108,9 +599,7 @@ public class Main extends GUI{
 	@Override
 	protected void calculateAPs() {
 		if(selectedNode != null){
-			resetAPPoints();
-			articulationPoints.clear();
-			articulationPoints.addAll(ArticulationPointManager.getAPS(selectedNode));
+			articulationPoints = engine.getArticulationPoints(selectedNode);
 		}
 		redraw();
 	}
@@ -120,9 +609,8 @@ public class Main extends GUI{
 	 */
 	@Override
 	protected void calculateAllAps() {
-		resetAPPoints();
-		articulationPoints.clear();
-		articulationPoints.addAll(ArticulationPointManager.getAllAps(nodeMap.values()));
+		if(engine == null) return;
+		articulationPoints = engine.getAllArticulationPoints();
 		redraw();
 	}
 
@@ -131,7 +619,7 @@ public class Main extends GUI{
 	 */
 	@Override
 	protected void resetAPs() {
-		resetAPPoints();
+		if(engine != null) engine.resetArticulationPoints();
 		articulationPoints.clear();
 		redraw();
 	}
@@ -186,7 +674,11 @@ public class Main extends GUI{
 		searched.clear();
 		searched.add(selectedQuadNode);
 		checkClosest(loc.x, loc.y, selectedQuadNode.getParent());
-		if(setStart){
+		if(SwingUtilities.isRightMouseButton(e)){
+			selectedNode = tmpSelected;
+			SegmentIndex.Projection closest = segmentIndex.nearest(loc, Double.POSITIVE_INFINITY);
+			if(closest != null) updateSegment(closest.getSegment(), e.isShiftDown());
+		}else if(setStart){
 			AStarManager.setStart(selectedNode);
 			setStart = false;
 			setEnd = false;
@@ -200,19 +692,175 @@ public class Main extends GUI{
 			constructPath();
 			setEndText(selectedNode);
 			selectedNode = tmpSelected;
+		}else if(addStop){
+			stops.add(selectedNode);
+			addStop = false;
+			println("Added stop " + stops.size() + ": Intersection ID " + selectedNode.getID());
+			selectedNode = tmpSelected;
 		}else{
 			println(selectedNode.getInformation());
+			SegmentIndex.Projection closest = segmentIndex.nearest(loc, Double.POSITIVE_INFINITY);
+			if(closest != null){
+				println("Nearest road: " + closest.getSegment().getRoad().getName() + ", " + Math.round(closest.getFraction() * 100)
+						+ "% along the segment from " + closest.getSegment().getStart().getID() + " to " + closest.getSegment().getEnd().getID()
+						+ " (" + Math.round(closest.getDistance() * 1000) + "m away)");
+			}
 		}
 	}
 
 	/**
-	 *	Sets A* to find the best path based on the user selected value, either distance or time
-	 * @param minimiseValue What we are minimising
+	 * Highlights the road closest to the mouse, if it is within a few pixels
+	 * @param e The mouse event
+	 * @return	Whether the highlighted road changed
 	 */
 	@Override
-	protected void onSetMinimiseValue(boolean minimiseValue) {
- 		AStarManager.setMinimiseTime(minimiseValue);
-		constructPath();
+	protected boolean onHover(MouseEvent e){
+		if(segmentIndex == null) return false;
+		SegmentIndex.Projection closest = segmentIndex.nearest(Location.newFromPoint(e.getPoint(), origin, scale), HOVER_PIXELS / scale);
+		boolean changed = closest == null ? hovered != null : hovered == null || !closest.getLocation().equals(hovered.getLocation());
+		hovered = closest;
+		return changed;
+	}
+
+	/**
+	 * Closes or reopens a segment of road, or with changeSpeed asks for the speed traffic is moving along it, then
+	 * passes the change on to the engine (see MapEngine.updateEdges) and the incremental search, and finds the route
+	 * again.
+	 * @param segment		The segment to change
+	 * @param changeSpeed	Whether to change the speed rather than close or reopen it
+	 */
+	private void updateSegment(Segment segment, boolean changeSpeed){
+		List<Integer> edges = routingGraph.getEdges(segment);
+		if(edges.isEmpty()) return;
+		String name = segment.getRoad().getName();
+		if(changeSpeed){
+			String input = JOptionPane.showInputDialog("Speed along " + name + " (km/h, empty for the speed limit):");
+			if(input == null) return;
+			float speed;
+			try{
+				speed = input.trim().isEmpty() ? Float.NaN : Float.parseFloat(input.trim());
+			}catch(NumberFormatException ex){
+				println("Invalid speed: " + input);
+				return;
+			}
+			if(speed <= 0){
+				println("Invalid speed: " + input);
+				return;
+			}
+			for(int edge : edges) routingGraph.setSpeed(edge, speed);
+			slowedSegments.remove(segment);
+			if(!Float.isNaN(speed)) slowedSegments.add(segment);
+			println(Float.isNaN(speed) ? "Reset speed along " + name + "." : "Set speed along " + name + " to " + speed + "km/h.");
+		}else{
+			boolean closed = !routingGraph.isClosed(edges.get(0));
+			for(int edge : edges) routingGraph.setClosed(edge, closed);
+			closedSegments.remove(segment);
+			if(closed) closedSegments.add(segment);
+			println((closed ? "Closed " : "Reopened ") + "segment of " + name + ".");
+		}
+
+		engine.updateEdges(edges);
+		isochrone = null;
+		if(incrementalSearch != null) incrementalSearch.updateEdges(edges);
+		if(AStarManager.getStart() != null && AStarManager.getEnd() != null) constructPath();
+	}
+
+	/**
+	 *	Recalculates the path when the user changes the metric being minimised
+	 * @param minimiseValue The name of the metric we are minimising
+	 */
+	@Override
+	protected void onSetMinimiseValue(String minimiseValue) {
+		if(routingGraph != null) constructPath();
+	}
+
+	/**
+	 * Called when the user turns alternative routes on or off, recalculates the path to show or hide them.
+	 * @param alternatives	Whether alternatives are shown
+	 */
+	@Override
+	protected void onSetAlternatives(boolean alternatives) {
+		if(routingGraph != null) constructPath();
+	}
+
+	/**
+	 * Called when the user turns search stats on or off, recalculates the path to count or stop counting its search.
+	 * @param searchStats	Whether search stats are collected
+	 */
+	@Override
+	protected void onSetSearchStats(boolean searchStats) {
+		if(routingGraph != null) constructPath();
+	}
+
+	/**
+	 * Called when the user changes the mode of travel, recalculates the path for it.
+	 * @param mode	The new mode of travel
+	 */
+	@Override
+	protected void onSetTravelMode(TravelMode mode) {
+		if(routingGraph != null) constructPath();
+	}
+
+	/**
+	 * Called when the user presses the new profile button, asks for the settings of a custom metric (how much each
+	 * road class costs relative to normal, the traffic light penalty and turn costs) and adds it to the metrics that can be
+	 * minimised. Using the name of an existing profile replaces it, re-weighting the graph without reloading it.
+	 */
+	@Override
+	protected void onNewProfile() {
+		JTextField name = new JTextField("Custom");
+		JComboBox<String> base = new JComboBox<>(new String[]{Metric.TIME, Metric.DISTANCE});
+		JTextField trafficLights = new JTextField(String.valueOf(MathUtil.minutes(Metric.DEFAULT_TRAFFIC_LIGHT_PENALTY)));
+		JTextField[] classFactors = new JTextField[Class.values().length];
+		JTextField[] turnCosts = new JTextField[Turn.values().length];
+
+		JPanel panel = new JPanel(new GridLayout(0, 2));
+		panel.add(new JLabel("Name"));
+		panel.add(name);
+		panel.add(new JLabel("Based on"));
+		panel.add(base);
+		panel.add(new JLabel("Traffic light penalty (minutes or km)"));
+		panel.add(trafficLights);
+		for(Class roadClass : Class.values()){
+			classFactors[roadClass.ordinal()] = new JTextField("1");
+			panel.add(new JLabel(roadClass + " cost factor"));
+			panel.add(classFactors[roadClass.ordinal()]);
+		}
+		for(Turn turn : Turn.values()){
+			if(turn == Turn.STRAIGHT) continue;
+			turnCosts[turn.ordinal()] = new JTextField("0");
+			panel.add(new JLabel(turn + " penalty (seconds or km)"));
+			panel.add(turnCosts[turn.ordinal()]);
+		}
+		//Ask again until the settings are valid or the dialog is cancelled, the fields keep what was entered
+		Metric metric = null;
+		while(metric == null){
+			if(JOptionPane.showConfirmDialog(null, panel, "New Profile", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) return;
+			try{
+				boolean time = Metric.TIME.equals(base.getSelectedItem());
+				double penalty = Double.parseDouble(trafficLights.getText().trim());
+				metric = new Metric(name.getText().trim(), time, time ? penalty / 60 : penalty);
+				for(Class roadClass : Class.values()){
+					metric.setClassFactor(roadClass, Double.parseDouble(classFactors[roadClass.ordinal()].getText().trim()));
+				}
+				for(Turn turn : Turn.values()){
+					if(turn == Turn.STRAIGHT) continue;
+					double cost = Double.parseDouble(turnCosts[turn.ordinal()].getText().trim());
+					metric.setTurnCost(turn, time ? cost / 3600 : cost);
+				}
+			}catch(IllegalArgumentException e){
+				metric = null;
+				JOptionPane.showMessageDialog(null, "Invalid profile setting: " + e.getMessage(), "New Profile", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+
+		if(engine != null){
+			long startTime = System.currentTimeMillis();
+			engine.putMetric(metric);
+			println("Customised profile " + metric.getName() + " in " + (System.currentTimeMillis() - startTime) + "ms.");
+		}
+		metrics.put(metric.getName(), metric);
+		addMinimiseValue(metric.getName());
 	}
 
 	/**
@@ -220,26 +868,157 @@ public class Main extends GUI{
 	 * of the graph that the path includes.
 	 */
 	private void constructPath(){
+		alternativeSegments.clear();
+		corridor = null;
+		searchStats = null;
+		if(isSearchStats() && (isIncremental() || isAlternatives())){
+			println("Search stats are only collected for the A* search.");
+		}
+		if(isIncremental()){
+			constructIncrementalPath();
+			return;
+		}
+		if(isAlternatives()){
+			constructAlternativePaths();
+			return;
+		}
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		boolean turnsMatter = metric.hasTurnCosts() || (turnGraph.getBannedTurnCount() > 0 && mode.followsTurnRestrictions());
+		if(isSearchStats()){		//Always the A* search, so its work can be compared between metrics and modes
+			constructInstrumentedPath(metric, mode);
+			return;
+		}
+		Node start = AStarManager.getStart();
+		Node end = AStarManager.getEnd();
+		if(start == null || end == null){
+			showPath(new ArrayList<>());
+			return;
+		}
+		List<Node> path = routeCache.get(start, end, metric, mode);
+		if(path != null){
+			showPath(path);
+			println("Route from cache (" + routeCache.getHits() + " hits, " + routeCache.getMisses() + " misses).");
+			return;
+		}
+		if(engine.getCompressedGraph() != null && !turnsMatter){	//The compressed search doesn't know about turns
+			path = engine.getCompressedSearch(metric, mode).pathfind(start, end);
+		}else{
+			path = AStarManager.pathfind(getTurnGraph(metric), metric, mode);
+		}
+		routeCache.put(start, end, metric, mode, path);
+		showPath(path);
+	}
+
+	/**
+	 * Finds the path with A* while counting the work it does, printing the counts after the path and keeping them to
+	 * draw the nodes it settled.
+	 */
+	private void constructInstrumentedPath(Metric metric, TravelMode mode){
+		Node start = AStarManager.getStart();
+		Node end = AStarManager.getEnd();
+		if(start == null || end == null) return;
+		SearchStats stats = new SearchStats(routingGraph);
+		showPath(AStarManager.pathfind(getTurnGraph(metric), start, end, metric, mode, stats));
+		searchStats = stats;
+		println("Search stats: " + stats.getSettled() + " states settled | " + stats.getRelaxed() + " edges relaxed | "
+				+ stats.getPushes() + " heap pushes | " + stats.getPops() + " heap pops | " + stats.getDecreaseKeys()
+				+ " decrease keys | Peak frontier = " + stats.getPeakFrontier() + " | Time = "
+				+ MathUtil.round(stats.getTime() / 1e6, 3) + "ms");
+	}
+
+	/**
+	 * Finds the path with the incremental search, carrying on from the last one if it was to the same end with the same
+	 * metric and mode of travel. Moving the start keeps the search, as it measures distances to the end.
+	 */
+	private void constructIncrementalPath(){
+		Node start = AStarManager.getStart();
+		Node end = AStarManager.getEnd();
+		if(start == null || end == null) return;
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		if(incrementalSearch == null || incrementalSearch.getGoal() != end || incrementalSearch.getMetric() != metric
+				|| incrementalSearch.getMode() != mode){
+			incrementalSearch = new IncrementalSearch(routingGraph, metric, mode, start, end);
+		}else{
+			incrementalSearch.moveStart(start);
+		}
+		showPath(incrementalSearch.pathfind());
+		println("Incremental search expanded " + incrementalSearch.getExpandedCount() + " nodes.");
+	}
+
+	/**
+	 * Finds the best path along with up to two alternatives to it from the same search, showing the best path as usual
+	 * and the alternatives in their own colours with how they compare. Turns aren't taken into account.
+	 */
+	private void constructAlternativePaths(){
+		Node start = AStarManager.getStart();
+		Node end = AStarManager.getEnd();
+		if(start == null || end == null) return;
+		if(alternativeRoutes == null) alternativeRoutes = new AlternativeRoutes(routingGraph);
+		Metric metric = getMetric();
+		TravelMode mode = getTravelMode();
+		long startTime = System.nanoTime();
+		List<AlternativeRoutes.Route> routes = alternativeRoutes.find(routingGraph.indexOf(start), routingGraph.indexOf(end),
+				metric.getWeights(mode), ALTERNATIVE_COLOURS.length + 1);
+		long time = System.nanoTime() - startTime;
+		if(routes.isEmpty()){
+			showPath(new ArrayList<>());
+			return;
+		}
+
+		List<Node> path = new ArrayList<>();
+		path.add(start);
+		for(int edge : routes.get(0).getEdges()) path.add(routingGraph.getNode(routingGraph.getHead(edge)));
+		showPath(path);
+
+		Set<Segment> best = new HashSet<>(pathfindingSegments);
+		for(int i = 1; i < routes.size(); i++){
+			List<Segment> segments = new ArrayList<>();
+			double length = 0;
+			double hours = 0;
+			double shared = 0;
+			for(int edge : routes.get(i).getEdges()){
+				Segment segment = routingGraph.getSegment(edge);
+				segments.add(segment);
+				length += segment.getLength();
+				hours += segment.getLength() / Math.min(mode.getMaxSpeed(), segment.getRoad().getSpeedLimit());
+				if(best.contains(segment)) shared += segment.getLength();
+			}
+			alternativeSegments.add(segments);
+			println("Alternative " + i + " (" + ALTERNATIVE_COLOUR_NAMES[i - 1] + "): Length = " + MathUtil.round(length, 2) + "km | Time = "
+					+ MathUtil.round(hours, 2) + "hr | " + MathUtil.round(100 * (routes.get(i).getCost() / routes.get(0).getCost() - 1), 1)
+					+ "% longer by " + metric.getName().toLowerCase() + " | " + MathUtil.round(100 * shared / length, 0) + "% shared with the best path");
+		}
+		println("Found " + (routes.size() - 1) + " alternatives from " + alternativeRoutes.getCandidateCount() + " via nodes in "
+				+ MathUtil.round(time / 1e6, 3) + "ms.");
+	}
+
+	/**
+	 *	Highlights the path provided and prints out the roads it uses along with the total time/length.
+	 * @param path The nodes of the path in order
+	 */
+	private void showPath(List<Node> path){
 		pathfindingNodes.clear();
 		pathfindingSegments.clear();
-		pathfindingNodes.addAll(AStarManager.pathfind(getMinimiseValue().equals("Time")));
+		pathfindingNodes.addAll(path);
 		if(pathfindingNodes.size() != 0){
 			println("Path Found, roads on path:");
 			double length = 0;
 			double time = 0;
+			TravelMode mode = getTravelMode();
 			Map<Road, Double> roads = new HashMap<>();
-			for(int i = 0; i < pathfindingNodes.size() - 1; i++){
-				Segment segment = pathfindingNodes.get(i).getOutgoingSegment(pathfindingNodes.get(i + 1));
-				if(segment == null) continue;
+			for(Segment segment : engine.getSegments(pathfindingNodes)){
 				if(!roads.containsKey(segment.getRoad())) roads.put(segment.getRoad(), segment.getLength());
 				roads.put(segment.getRoad(), roads.get(segment.getRoad()) + segment.getLength());
 				length += segment.getLength();
-				time += segment.getLength() / segment.getRoad().getSpeedLimit();
+				time += segment.getLength() / Math.min(mode.getMaxSpeed(), segment.getRoad().getSpeedLimit());
 				pathfindingSegments.add(segment);
 			}
 
 			for(Road road : roads.keySet()){
-				println("	" + road.getName() + " | Length = " + MathUtil.round(roads.get(road), 2) + "km | Time = " + MathUtil.round(roads.get(road)/road.getSpeedLimit(), 2) + "hr");
+				double speed = Math.min(mode.getMaxSpeed(), road.getSpeedLimit());
+				println("	" + road.getName() + " | Length = " + MathUtil.round(roads.get(road), 2) + "km | Time = " + MathUtil.round(roads.get(road)/speed, 2) + "hr");
 			}
 
 			println("Total Length = " + MathUtil.round(length, 2) + "km");
@@ -329,11 +1108,10 @@ public class Main extends GUI{
 	/**
 	 * Called whenever the user edits the search box (except for when backspace or delete events), starts by
 	 * obtaining the text in the text boxed based off whether or not it is a selected road from the drop down
-	 * or a genuine inputted string, then descends down the Trie Structure created for quick name and prefix
-	 * searching. It descends down this tree as far as it can (or stops early if it can't go any further), then
-	 * prints out the children of the end node if it has any, if it does not it then prints everything below the
-	 * said node in the tree to the user. Also updates the JComboBox that the user typed into to show suggestions
-	 * based off the inputted text (once again uses the Trie Structure created at data load).
+	 * or a genuine inputted string, then looks it up in the Trie Structure the map engine builds for quick name and
+	 * prefix searching. Roads with exactly that name are printed out if there are any, otherwise every road whose name
+	 * starts with it. Also updates the JComboBox that the user typed into to show suggestions based off the inputted
+	 * text.
 	 */
 	@Override
 	protected void onSearch(){
@@ -342,30 +1120,13 @@ public class Main extends GUI{
 		String text = getSearchBox().getEditor().getItem() instanceof Road ? ((Road) getSearchBox().getEditor().getItem()).getName() : //Gets the text in the box, which could be based off a selected
 				(String) getSearchBox().getEditor().getItem();                                                                         //road or a inputted string
 		println("Searching roads with name: " + text);
-		text = text.toLowerCase().replace(" ", "");
-		char[] nameChar = text.toCharArray();
-
-		TrieNode<Road, Character> node = trieRoot;
-
-		//Descends trie structure as far as it can
-		for(int i = 0; i < nameChar.length; i++){
-			if(node.containsChild(nameChar[i])){
-				node = node.getChild(nameChar[i]);
-			}else{  //If it finds a dead end while descending, report to the user
-				println("No roads found.");
-				break;
-			}
-
-			if(i == nameChar.length - 1){   //If we're currently on the end index then check if the node has any values
-				if(node.hasValues()){   //If it does, add them to the selected values.
-					selectedRoads.addAll(node.getValues());
-				}else{  //If not, then print out everything below the said node to the user.
-					recPrintTrie(node);
-				}
-				println("Found " + selectedRoads.size() + " road(s).");
-				for(Road road : selectedRoads){
-					println(road.toString());
-				}
+		if(engine != null) selectedRoads.addAll(engine.findRoads(text));		//Exact matches, or every road starting with the text
+		if(selectedRoads.isEmpty()){
+			println("No roads found.");
+		}else{
+			println("Found " + selectedRoads.size() + " road(s).");
+			for(Road road : selectedRoads){
+				println(road.toString());
 			}
 		}
 
@@ -431,27 +1192,54 @@ public class Main extends GUI{
 	 */
 	@Override
 	protected void onLoad(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights){
-		this.nodeMap.clear();
-		this.roadMap.clear();
-		this.polygons.clear();
+		MapEngine loaded;
+		try{
+			loaded = MapEngine.load(nodes, roads, segments, polygons, restrictions, trafficLights, this::println);
+		}catch(IOException e){
+			e.printStackTrace();
+			println("Failed to load map: " + e.getMessage());
+			return;
+		}
 		this.articulationPoints.clear();
 		this.pathfindingNodes.clear();
 		this.pathfindingSegments.clear();
-		this.trieRoot = new TrieNode<>();
-
-		loadNodes(nodes);
-		loadRoads(roads);
-		loadSegments(segments);
-
-
-
-		if(polygons != null){       //Don't load polygons if the file doesn't exist
-			loadPolygons(polygons);
+		this.stops.clear();
+		this.isochrone = null;
+		this.corridor = null;
+		this.betweenness = null;
+		this.renderBetweenness = false;
+		this.incrementalSearch = null;
+		this.alternativeRoutes = null;
+		this.alternativeSegments.clear();
+		this.searchStats = null;
+		this.closedSegments.clear();
+		this.slowedSegments.clear();
+		this.engine = loaded;
+		this.nodeMap = engine.getNodes();
+		this.roadMap = engine.getRoads();
+		this.polygons = engine.getPolygons();
+		this.geometry = engine.getGeometry();
+		this.dataDirectory = engine.getDirectory();
+		this.quadRoot = engine.getQuadRoot();
+		this.segmentIndex = engine.getSegmentIndex();
+		this.routingGraph = engine.getGraph();
+		this.turnGraph = engine.getTurnGraph();
+		this.routeCache = engine.getRouteCache();
+		for(Metric metric : metrics.values()){        //Custom profiles carry over to the new map
+			engine.putMetric(metric);
 		}
 
-		if(restrictions != null){
-			loadRestrictions(restrictions);
+		polygonIndex = CorridorManager.indexPolygons(this.polygons);
+		File savedBetweenness = new File(dataDirectory, BETWEENNESS_FILE);
+		if(savedBetweenness.exists()){
+			try{
+				betweenness = Betweenness.read(savedBetweenness, roadMap);
+				println("Loaded saved betweenness, press Betweenness and leave the error bound blank to show it.");
+			}catch(IOException e){
+				println("Failed to read saved betweenness: " + e.getMessage());
+			}
 		}
+		hovered = null;
 
 		//Comparators for obtaining max and min x,y positions
 		Comparator<Node> comparatorX = (A, B)->{
@@ -475,306 +1263,9 @@ public class Main extends GUI{
 		scale = getDrawingAreaDimension().width / width;
 		origin = new Location(minX.getX(), maxY.getY());
 
-		quadRoot = new QuadNode(new Location(minX.getX(), minY.getY()), width, height, null);
-
-		for(Node node : nodeMap.values()){
-			recAddQuad(quadRoot, node);
-		}
-
-		if(trafficLights != null){
-			loadTrafficLights(trafficLights);
-		}
 		println("Loaded");
 	}
 
-
-	/**
-	 * Loads all nodes (Intersections and road ends) from the provided file into the nodeMap HashMap.
-	 *
-	 * @param file The file containing information about nodes in the map
-	 */
-	private void loadNodes(File file){
-		BufferedReader nodesIn; //Nodes in
-		try{
-			nodesIn = new BufferedReader(new FileReader(file));
-		}catch(FileNotFoundException e){
-			e.printStackTrace();
-			println("Failed to read Nodes Information.");
-			return;
-		}
-		try{
-			String line;
-			while((line = nodesIn.readLine()) != null){         //While we still have lines to read
-				String[] values = line.split("\t");
-				Node node = new Node(Integer.valueOf(values[0]), Double.valueOf(values[1]),
-						Double.valueOf(values[2]));
-				nodeMap.put(Integer.valueOf(values[0]), node);
-
-			}
-		}catch(IOException e){
-			e.printStackTrace();
-			println("Failed to read line in Nodes Information.");
-		}
-	}
-
-	/**
-	 * Loads all roads from the file into the roadMap HashMap, also stores them into the TrieStructure for ease of
-	 * searching names (root being trieRoot)
-	 *
-	 * @param file The file containing information about the roads in the map
-	 */
-	private void loadRoads(File file){
-		BufferedReader roadsIn;         //Roads in
-		try{
-			roadsIn = new BufferedReader(new FileReader(file));
-		}catch(FileNotFoundException e){
-			e.printStackTrace();
-			println("Failed to read Roads Information.");
-			return;
-		}
-		try{
-			String line;
-			roadsIn.readLine();                         //Skip the header line of the file
-			double totalSpeed = 0;
-			while((line = roadsIn.readLine()) != null){
-				String[] values = line.split("\t");
-				Road road = new Road(Integer.valueOf(values[0]), values[2], values[3], Integer.valueOf(values[4]),
-						Integer.valueOf(values[5]), Integer.valueOf(values[6]), Integer.valueOf(values[7]), Integer.valueOf(values[8]),
-						Integer.valueOf(values[9]));
-				roadMap.put(Integer.valueOf(values[0]), road);
-				totalSpeed += road.getSpeedLimit();
-
-				//Change to lowercase and remove all spaces, then construct the trie structure for
-				//quickly searching roads and road prefixes.
-				String text = road.getName().toLowerCase().replace(" ", "");
-				char[] characters = text.toCharArray();
-				TrieNode<Road, Character> node = trieRoot;
-				for(char letter : characters){       //Descend down/create children nodes that we need as we go
-					if(!node.containsChild(letter)){
-						node.addChild(new TrieNode<>(letter), letter);
-					}
-					node = node.getChild(letter);
-				}
-				node.addValue(road);
-			}
-
-			averageSpeed = totalSpeed / roadMap.size();
-		}catch(IOException e){
-			e.printStackTrace();
-			println("Failed to read line in Roads Information.");
-		}
-	}
-
-	/**
-	 * Loads all segments from the file and constructs the edges of the graph by adding them to the incoming and outgoing
-	 * of the segments start and end nodes.
-	 *
-	 * @param file The file containing information about the segments in the map
-	 */
-	private void loadSegments(File file){
-		BufferedReader segmentsIn;
-		try{
-			segmentsIn = new BufferedReader(new FileReader(file));
-		}catch(FileNotFoundException e){
-			e.printStackTrace();
-			println("Failed to read Segments Information.");
-			return;
-		}
-		try{
-			String line;
-			segmentsIn.readLine();
-			while((line = segmentsIn.readLine()) != null){
-				String[] values = line.split("\t");
-				List<Location> locations = new ArrayList<>();
-				for(int i = 4; i < values.length; i += 2){
-					locations.add(Location.newFromLatLon(Double.valueOf(values[i]), Double.valueOf(values[i + 1])));
-				}
-				Segment segment = new Segment(roadMap.get(Integer.valueOf(values[0])), locations, Double.valueOf(values[1]),
-						nodeMap.get(Integer.valueOf(values[2])), nodeMap.get(Integer.valueOf(values[3])));
-
-				Segment segmentAB = new Segment(roadMap.get(Integer.valueOf(values[0])), locations, Double.valueOf(values[1]),
-						nodeMap.get(Integer.valueOf(values[2])), nodeMap.get(Integer.valueOf(values[3])));
-
-				Segment segmentBA = new Segment(roadMap.get(Integer.valueOf(values[0])), locations, Double.valueOf(values[1]),
-						nodeMap.get(Integer.valueOf(values[3])), nodeMap.get(Integer.valueOf(values[2])));
-
-				//Based off whether the edge is one way or both ways add the edges to the start and end nodes appropriately
-				if(segment.getRoad().getDirection() == Direction.BOTH){
-					segmentAB.getStart().addOutgoing(segmentAB);
-					segmentAB.getStart().addIncoming(segmentBA);
-
-
-					segmentBA.getStart().addIncoming(segmentAB);
-					segmentBA.getStart().addOutgoing(segmentBA);
-				}else{
-					segmentAB.getStart().addOutgoing(segmentAB);
-					segmentAB.getEnd().addIncoming(segmentAB);
-				}
-				//Add edge to respective road
-				roadMap.get(segment.getRoad().getID()).segments.add(segment);
-			}
-		}catch(IOException e){
-			e.printStackTrace();
-			println("Failed to read line in Segments Information.");
-		}
-	}
-
-	/**
-	 * Loads all the polygons provided in polygon-shapes.mp file that may be provided into the polygons list,
-	 * then sorts said list so rendering order is correct (based on the static map in polygon class).
-	 *
-	 * @param file The file containing information about the polygons in the map
-	 */
-	private void loadPolygons(File file){
-		BufferedReader polygonsIn;
-		try{
-			polygonsIn = new BufferedReader(new FileReader(file));
-		}catch(FileNotFoundException e){
-			e.printStackTrace();
-			println("Failed to read Polygon Information.");
-			return;
-		}
-		try{
-			String line;
-			while((line = polygonsIn.readLine()) != null){
-				Polygon polygon = new Polygon();
-				while((line = polygonsIn.readLine()) != null && !line.contains("[END]")){
-					if(line.contains("[POLYGON]")) continue;
-					String lType = line.substring(0, line.lastIndexOf("="));        //Gets the lines data type
-					String value = line.substring(line.lastIndexOf("=") + 1);       //And the actual value assigned to type
-					switch(lType){
-						case "Type":
-							polygon.setType(Integer.decode(value));
-							break;
-						case "Label":
-							polygon.setLabel(value);
-							break;
-						case "EndLevel":
-							polygon.setZoomLevel(Integer.valueOf(value));
-							break;
-						case "Data0":
-							Pattern pattern = Pattern.compile("\\(([+-]?[0-9]*\\.?[0-9]+),([+-]?[0-9]*\\.?[0-9]+)\\)"); //Regex for extracting polygon point coordinates.
-							Matcher matcher = pattern.matcher(value);
-							List<Location> locations = new ArrayList<>();
-							while(matcher.find()){
-								locations.add(Location.newFromLatLon(Double.valueOf(matcher.group(1)), Double.valueOf(matcher.group(2))));
-							}
-							polygon.addPoint(locations);
-							break;
-					}
-				}
-				if(polygon.hasValues()){
-					polygons.add(polygon);
-				}
-			}
-			Collections.sort(polygons); //Finally sort the polygon list (based off rendering priority) to ensure the rendering order is correct
-		}catch(IOException e){
-			e.printStackTrace();
-			println("Failed to read line in Polygon Information");
-		}
-	}
-
-	/**
-	 *	Loads restrictions
-	 * @param file
-	 */
-	private void loadRestrictions(File file){
-		BufferedReader restrictionsIn;
-		try{
-			restrictionsIn = new BufferedReader(new FileReader(file));
-		}catch (FileNotFoundException e){
-			println("Failed to load Restriction Data");
-			return;
-		}
-
-		try{
-			restrictionsIn.readLine();
-			String line;
-			while((line = restrictionsIn.readLine()) != null){
-				String[] values = line.split("\t");
-				nodeMap.get(Integer.valueOf(values[2])).addRestriction(nodeMap.get(Integer.valueOf(values[0])), nodeMap.get(Integer.valueOf(values[4])));
-			}
-		}catch (IOException e){
-			println("Failed to read line in Restriction Data");
-		}
-	}
-
-
-	/**
-	 * Loads the traffic light information from a file.
-	 * @param file The file we are reading traffic light data from.
-	 */
-	private void loadTrafficLights(File file){
-		BufferedReader trafficIn;
-		try{
-			trafficIn = new BufferedReader(new FileReader(file));
-		}catch (FileNotFoundException e){
-			println("Failed to load Traffic Light Data");
-			return;
-		}
-
-		try{
-			trafficIn.readLine();
-			String line;
-			while((line = trafficIn.readLine()) != null){
-				String[] values = line.split("\t");
-				Location loc = Location.newFromLatLon(Double.valueOf(values[1]), Double.valueOf(values[0]));
-
-				QuadNode selectedQuadNode = quadRoot.descend(loc.x, loc.y);
-				selectedNode = selectedQuadNode.getValue();
-				searched.clear();
-				searched.add(selectedQuadNode);
-				checkClosest(loc.x, loc.y, selectedQuadNode.getParent());
-
-				selectedNode.setIntersection(true);
-
-			}
-		}catch(IOException e){
-			println("Failed to read line in Traffic Light Data");
-		}
-	}
-
-	/**
-	 * Recursively prints all children below the root node provided in the trie structure.
-	 *
-	 * @param node Root (of the current printing) node, generally to initialise the processing of printing the trie
-	 *             the TrieNode passed to begin with will be trieRoot or the node at the end of an inputted string
-	 */
-	private void recPrintTrie(TrieNode<Road, Character> node){
-		if(node.hasValues()){
-			selectedRoads.addAll(node.getValues());
-		}
-		if(node.hasChildren()){
-			for(TrieNode<Road, Character> child : node){
-				recPrintTrie(child);
-			}
-		}
-	}
-
-	/**
-	 * Used for building of the QuadTree used to quickly find closest node to a click position. Works by first attempting
-	 * to add the passed on root QuadNode a node value, and if unsuccessful (meaning it already has a value or has children
-	 * QuadNodes) it moves down the tree and descends any values in it's way on the way down.
-	 *
-	 * @param root The QuadNode to check and descend any possible values associated with it
-	 * @param node The node value we are attempting to place in the QuadTree structure
-	 */
-	private void recAddQuad(QuadNode root, Node node){
-		if(!root.addValue(node)){
-			root.descendValue();
-			recAddQuad(root.getChildCreate(node.getX(), node.getY()), node);
-		}
-	}
-
-	/**
-	 * Resets all of the nodes depth and reachback values.
-	 */
-	private void resetAPPoints(){
-		for(Node node : nodeMap.values()){
-			node.resetAP();
-		}
-	}
-
 	/**
 	 * Helper function for printing text to the GUI's text pane at the bottom
 	 *
@@ -0,0 +1,166 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * A command line front end to MapEngine for batch jobs on machines without a display. Nothing it uses loads AWT, so it
+ * starts without a display or any rendering state. Results go to standard output, progress and problems to standard
+ * error.
+ * <p>
+ * Usage: java MapCli directory command [arguments] [--metric Time|Distance] [--mode CAR|PEDESTRIAN|BICYCLE]
+ * <ul>
+ *     <li>route fromID toID: the best route between two nodes, road by road</li>
+ *     <li>batch file: the best route between every pair of node IDs in the file (one pair per line, - for standard
+ *     input), as a CSV line each</li>
+ *     <li>roads name: the roads with a name, or starting with it</li>
+ *     <li>nearest latitude longitude: the node and road nearest a point</li>
+ *     <li>aps: the articulation points of the whole map</li>
+ * </ul>
+ */
+public class MapCli {
+
+    private static final String USAGE = "Usage: java MapCli directory route fromID toID | batch file | roads name | nearest latitude longitude | aps"
+            + " [--metric Time|Distance] [--mode CAR|PEDESTRIAN|BICYCLE]";
+
+    public static void main(String[] args){
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        for(int i = 0; i < args.length; i++){
+            if(args[i].startsWith("--") && i + 1 < args.length) options.put(args[i].substring(2), args[++i]);
+            else arguments.add(args[i]);
+        }
+        if(arguments.size() < 2) exit(USAGE);
+
+        MapEngine engine;
+        try{
+            engine = MapEngine.load(new File(arguments.get(0)), System.err::println);
+        }catch(IOException e){
+            exit("Failed to load map: " + e.getMessage());
+            return;
+        }
+        Metric metric = engine.getMetric(options.getOrDefault("metric", Metric.TIME));
+        if(metric == null) exit("Unknown metric " + options.get("metric"));
+        TravelMode mode = null;
+        try{
+            mode = TravelMode.valueOf(options.getOrDefault("mode", TravelMode.CAR.name()).toUpperCase());
+        }catch(IllegalArgumentException e){
+            exit("Unknown mode " + options.get("mode"));
+        }
+
+        List<String> commandArguments = arguments.subList(2, arguments.size());
+        try{
+            switch(arguments.get(1)){
+                case "route":
+                    expect(commandArguments, 2);
+                    route(engine, node(engine, commandArguments.get(0)), node(engine, commandArguments.get(1)), metric, mode);
+                    break;
+                case "batch":
+                    expect(commandArguments, 1);
+                    batch(engine, commandArguments.get(0), metric, mode);
+                    break;
+                case "roads":
+                    if(commandArguments.isEmpty()) exit(USAGE);
+                    Set<Road> roads = engine.findRoads(String.join(" ", commandArguments));
+                    for(Road road : roads) System.out.println(road);
+                    System.err.println("Found " + roads.size() + " road(s).");
+                    break;
+                case "nearest":
+                    expect(commandArguments, 2);
+                    nearest(engine, Location.newFromLatLon(Double.parseDouble(commandArguments.get(0)), Double.parseDouble(commandArguments.get(1))));
+                    break;
+                case "aps":
+                    expect(commandArguments, 0);
+                    Set<Node> points = engine.getAllArticulationPoints();
+                    for(Node node : points) System.out.println(node.getID());
+                    System.err.println("Found " + points.size() + " articulation points.");
+                    break;
+                default:
+                    exit("Unknown command " + arguments.get(1) + "\n" + USAGE);
+            }
+        }catch(NumberFormatException e){
+            exit("Not a number: " + e.getMessage());
+        }catch(IOException e){
+            exit("Failed to read queries: " + e.getMessage());
+        }
+    }
+
+    private static void exit(String message){
+        System.err.println(message);
+        System.exit(1);
+    }
+
+    private static void expect(List<String> arguments, int count){
+        if(arguments.size() != count) exit(USAGE);
+    }
+
+    private static Node node(MapEngine engine, String id){
+        Node node = engine.getNodes().get(Integer.parseInt(id));
+        if(node == null) exit("No node with ID " + id);
+        return node;
+    }
+
+    /**
+     * Prints the roads along the best route with their lengths and times, then the totals
+     */
+    private static void route(MapEngine engine, Node start, Node end, Metric metric, TravelMode mode){
+        List<Node> path = engine.route(start, end, metric, mode);
+        if(path.isEmpty()){
+            System.out.println("No path found between " + start.getID() + " and " + end.getID() + ".");
+            return;
+        }
+        Map<Road, Double> roads = new LinkedHashMap<>();
+        for(Segment segment : engine.getSegments(path)) roads.merge(segment.getRoad(), segment.getLength(), Double::sum);
+        double length = 0;
+        double time = 0;
+        for(Map.Entry<Road, Double> entry : roads.entrySet()){
+            double speed = Math.min(mode.getMaxSpeed(), entry.getKey().getSpeedLimit());
+            System.out.println(entry.getKey().getName() + " | Length = " + MathUtil.round(entry.getValue(), 2) + "km | Time = "
+                    + MathUtil.round(entry.getValue() / speed, 2) + "hr");
+            length += entry.getValue();
+            time += entry.getValue() / speed;
+        }
+        System.out.println("Total Length = " + MathUtil.round(length, 2) + "km");
+        System.out.println("Total Time = " + MathUtil.round(time, 2) + "hr");
+    }
+
+    /**
+     * Finds the route for every pair of node IDs in a file, printing from, to, whether a route was found, its length in
+     * km, its time in hours and the number of nodes along it. Pairs naming nodes that aren't in the map are reported
+     * as not found.
+     */
+    private static void batch(MapEngine engine, String file, Metric metric, TravelMode mode) throws IOException {
+        long startTime = System.nanoTime();
+        int count = 0;
+        System.out.println("from,to,found,length_km,time_hr,nodes");
+        try(BufferedReader in = new BufferedReader(file.equals("-") ? new InputStreamReader(System.in) : new FileReader(file))){
+            String line;
+            while((line = in.readLine()) != null){
+                String[] ids = line.trim().split("[\\s,]+");
+                if(ids.length < 2) continue;
+                Node start = engine.getNodes().get(Integer.parseInt(ids[0]));
+                Node end = engine.getNodes().get(Integer.parseInt(ids[1]));
+                List<Node> path = start == null || end == null ? new ArrayList<>() : engine.route(start, end, metric, mode);
+                double length = 0;
+                double time = 0;
+                for(Segment segment : engine.getSegments(path)){
+                    length += segment.getLength();
+                    time += segment.getLength() / Math.min(mode.getMaxSpeed(), segment.getRoad().getSpeedLimit());
+                }
+                System.out.println(ids[0] + "," + ids[1] + "," + !path.isEmpty() + "," + MathUtil.round(length, 3) + ","
+                        + MathUtil.round(time, 4) + "," + path.size());
+                count++;
+            }
+        }
+        System.err.println(count + " routes in " + MathUtil.round((System.nanoTime() - startTime) / 1e6, 1) + "ms ("
+                + engine.getRouteCache().getHits() + " from the cache).");
+    }
+
+    private static void nearest(MapEngine engine, Location location){
+        Node node = engine.nearestNode(location);
+        System.out.println("Node " + node.getID() + " at " + MathUtil.round(node.getLocation().distance(location), 3) + "km");
+        SegmentIndex.Projection closest = engine.nearestSegment(location, Double.POSITIVE_INFINITY);
+        if(closest != null){
+            System.out.println("Road " + closest.getSegment().getRoad().getName() + " at "
+                    + MathUtil.round(closest.getLocation().distance(location), 3) + "km");
+        }
+    }
+}
@@ -0,0 +1,552 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A loaded map and everything that can be asked of it without a display: the nodes, roads and polygons, the routing
+ * graph and the metrics it is weighted by, finding nodes and segments by location and roads by name, routing and
+ * articulation points. Progress and problems are passed to a listener as messages rather than printed anywhere, so it
+ * can be used from the GUI (which prints the messages) or from batch jobs (see MapCli) alike. The classes it holds keep
+ * nothing only needed for drawing, the GUI draws them with MapRenderer, so loading and querying a map doesn't load AWT.
+ * <p>
+ * The other searches built from the graph (compressed, overlay, one-to-all and nearest facility labels) are kept here
+ * too, built when first asked for, so that live updates to the graph (see updateEdges) and replaced metrics reach all
+ * of them whoever made the change.
+ * <p>
+ * Not thread safe, except that routes can be searched for on several threads at once with search, which doesn't go
+ * through the route cache.
+ */
+public class MapEngine {
+
+    public static final String GEOMETRY_SNAPSHOT = "geometry.snapshot";     //Written next to the data files
+    private static final int ROUTE_CACHE_SIZE = 1000;
+
+    private Consumer<String> log;
+    private File directory;
+    private IntMap<Node> nodes = new IntMap<>();        //Nodes by ID
+    private IntMap<Road> roads = new IntMap<>();        //Roads by ID
+    private List<Polygon> polygons = new ArrayList<>();
+    private GeometryStore geometry;                     //Coordinates of every segment and polygon
+    private TrieNode<Road, Character> trieRoot = new TrieNode<>();      //Roads by lower case name without spaces
+    private QuadNode quadRoot;
+    private SegmentIndex segmentIndex;
+    private RoutingGraph graph;
+    private TurnGraph turnGraph;                        //Expanded only at restricted intersections
+    private TurnGraph turnCostGraph;                    //Fully expanded for metrics with turn costs, built when first needed
+    private Map<String, Metric> metrics = new LinkedHashMap<>();       //Metrics by name, in the order they were added
+    private RouteCache routeCache;
+    private ContractionHierarchy contractionHierarchy;                  //Metric independent, built when first needed
+    private Map<String, PhastSearch> oneToAllSearches = new HashMap<>();       //By metric name and travel mode
+    private OverlayGraph overlayGraph;                                  //Metric independent, built when first needed
+    private Map<String, OverlaySearch> overlaySearches = new HashMap<>();      //By metric name and travel mode
+    private CompressedGraph compressedGraph;                            //Null until compress is called
+    private Map<String, CompressedSearch> compressedSearches = new HashMap<>();    //By metric name and travel mode
+    private Map<String, FacilityManager.Facilities> facilities = new HashMap<>(); //By type
+    private Map<String, FacilityLabels> facilityLabels = new HashMap<>();      //By metric name, travel mode and facility type
+
+    private MapEngine(Consumer<String> log) {
+        this.log = log;
+        metrics.put(Metric.DISTANCE, Metric.distance());
+        metrics.put(Metric.TIME, Metric.time());
+    }
+
+    /**
+     * Loads the map in a directory, finding its files by their usual names
+     * @param directory The directory
+     * @param log       Told about progress and problems
+     * @return          The loaded map, with the distance and time metrics
+     * @throws IOException If the nodes, roads or segments couldn't be read
+     */
+    public static MapEngine load(File directory, Consumer<String> log) throws IOException {
+        return load(new File(directory, MapLoader.NODES_FILENAME), new File(directory, MapLoader.ROADS_FILENAME),
+                new File(directory, MapLoader.SEGS_FILENAME), optional(directory, MapLoader.POLYS_FILENAME),
+                optional(directory, MapLoader.RESTR_FILENAME), optional(directory, MapLoader.TRAFFIC_FILENAME), log);
+    }
+
+    private static File optional(File directory, String name){
+        File file = new File(directory, name);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Loads a map. The coordinates of the segments and polygons are memory mapped from a snapshot next to the segments
+     * file if there is one written from the same files, otherwise they are parsed and the snapshot written for next
+     * time. If a stale snapshot can't be removed the coordinates are kept in memory instead.
+     * @param nodes         The nodes file
+     * @param roads         The roads file
+     * @param segments      The segments file
+     * @param polygons      The polygons file, null if there isn't one
+     * @param restrictions  The turn restrictions file, null if there isn't one
+     * @param trafficLights The traffic lights file, null if there isn't one
+     * @param log           Told about progress and problems
+     * @return              The loaded map, with the distance and time metrics
+     * @throws IOException If the nodes, roads or segments couldn't be read
+     */
+    public static MapEngine load(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights,
+                                 Consumer<String> log) throws IOException {
+        File snapshot = new File(segments.getParentFile(), GEOMETRY_SNAPSHOT);
+        long source = sourceHash(segments, polygons);
+        MapEngine engine = new MapEngine(log);
+        engine.read(nodes, roads, segments, polygons, restrictions, snapshot, source);
+        if(!engine.geometry.isComplete()){
+            log.accept("Geometry snapshot doesn't match the data, rebuilding it.");
+            engine = new MapEngine(log);
+            if(!snapshot.delete()){
+                log.accept("Failed to delete geometry snapshot, keeping the geometry in memory.");
+                snapshot = null;
+            }
+            engine.read(nodes, roads, segments, polygons, restrictions, snapshot, source);
+        }
+        if(!engine.geometry.isMapped()){
+            engine.geometry.trim();
+            if(snapshot != null){
+                try{
+                    engine.geometry.write(snapshot, source);
+                }catch(IOException e){
+                    log.accept("Failed to write geometry snapshot: " + e.getMessage());
+                }
+            }
+        }
+        engine.build(trafficLights);
+        return engine;
+    }
+
+    /**
+     * Reads the files into the nodes, roads, polygons and geometry, mapping the snapshot if it isn't null
+     */
+    private void read(File nodesFile, File roadsFile, File segmentsFile, File polygonsFile, File restrictionsFile, File snapshot,
+                      long source) throws IOException {
+        directory = segmentsFile.getParentFile();
+        geometry = snapshot == null ? new GeometryStore() : openSnapshot(snapshot, source);
+        MapLoader.loadNodes(nodesFile, nodes);
+        MapLoader.loadRoads(roadsFile, roads);
+        MapLoader.loadSegments(segmentsFile, nodes, roads, geometry);
+        if(polygonsFile != null){
+            try{
+                MapLoader.loadPolygons(polygonsFile, geometry, polygons);
+            }catch(IOException e){
+                log.accept("Failed to read Polygon Information: " + e.getMessage());
+            }
+        }
+        if(restrictionsFile != null){
+            try{
+                MapLoader.loadRestrictions(restrictionsFile, nodes);
+            }catch(IOException e){
+                log.accept("Failed to load Restriction Data: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Memory maps the geometry snapshot if there is one written from the same segment and polygon files, so their
+     * coordinates don't need parsing, otherwise gives an empty store for the loaders to fill.
+     */
+    private GeometryStore openSnapshot(File snapshot, long source){
+        if(!snapshot.exists()) return new GeometryStore();
+        try{
+            GeometryStore store = GeometryStore.map(snapshot, source);
+            log.accept("Mapped geometry snapshot (" + store.getTotalPointCount() + " points).");
+            return store;
+        }catch(IOException e){
+            log.accept("Failed to map geometry snapshot: " + e.getMessage());
+            return new GeometryStore();
+        }
+    }
+
+    /**
+     * Hashes the contents of the files the geometry is read from, so a snapshot is only used for exactly those files.
+     * A file that is missing or can't be read is hashed as a marker, the loader reports the problem itself.
+     */
+    private static long sourceHash(File... files){
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        for(File file : files){
+            crc.update(0);
+            if(file == null) continue;
+            try(InputStream in = new FileInputStream(file)){
+                int read;
+                while((read = in.read(buffer)) > 0) crc.update(buffer, 0, read);
+            }catch(IOException e){
+                crc.update(1);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Builds the indexes and the routing graph once everything else is read, traffic lights last as they are placed
+     * at the nearest node
+     */
+    private void build(File trafficLights){
+        for(Road road : roads.values()){
+            TrieNode<Road, Character> node = trieRoot;
+            for(char letter : nameKey(road.getName()).toCharArray()){
+                if(!node.containsChild(letter)) node.addChild(new TrieNode<>(letter), letter);
+                node = node.getChild(letter);
+            }
+            node.addValue(road);
+        }
+
+        List<Segment> roadSegments = new ArrayList<>();
+        for(Road road : roads.values()) roadSegments.addAll(road.segments);
+        segmentIndex = new SegmentIndex(roadSegments);
+        quadRoot = MapLoader.buildQuadTree(nodes.values());
+        if(trafficLights != null){
+            try{
+                MapLoader.loadTrafficLights(trafficLights, quadRoot);
+            }catch(IOException e){
+                log.accept("Failed to load Traffic Light Data: " + e.getMessage());
+            }
+        }
+
+        graph = RoutingGraph.build(nodes.values());
+        turnGraph = TurnGraph.build(graph, false);
+        if(turnGraph.getBannedTurnCount() > 0){
+            log.accept("Loaded " + turnGraph.getBannedTurnCount() + " banned turns (" + (turnGraph.getStateCount() - graph.getNodeCount()) + " expanded states).");
+        }
+        for(Metric metric : metrics.values()){        //Customised last as edge times depend on the traffic lights
+            metric.customise(graph);
+        }
+        routeCache = new RouteCache(graph, ROUTE_CACHE_SIZE);
+    }
+
+    /**
+     * Adds a metric that routes can be found with, weighting the graph for it. A metric with the same name as one
+     * already added replaces it, along with the searches that were built for the old one.
+     * @param metric    The metric
+     */
+    public void putMetric(Metric metric){
+        metric.customise(graph);
+        metrics.put(metric.getName(), metric);
+        String prefix = metric.getName() + "/";
+        oneToAllSearches.keySet().removeIf(key -> key.startsWith(prefix));
+        overlaySearches.keySet().removeIf(key -> key.startsWith(prefix));
+        compressedSearches.keySet().removeIf(key -> key.startsWith(prefix));
+        facilityLabels.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * @param name  The name of the metric
+     * @return      The metric, null if there isn't one by that name
+     */
+    public Metric getMetric(String name){
+        return metrics.get(name);
+    }
+
+    /**
+     * @return The metrics by name, in the order they were added
+     */
+    public Collection<Metric> getMetrics(){
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Works out the weights of edges again after they have been closed, reopened or changed speed, for every metric,
+     * and passes the change on to the searches built from them. Overlays are only re-weighted in the cells holding the
+     * edges. One-to-all searches, compressed searches and facility labels are thrown away to be built again when next
+     * asked for, as their weights can't be patched in place.
+     * @param edges The edges that changed
+     */
+    public void updateEdges(List<Integer> edges){
+        for(Metric metric : metrics.values()){
+            metric.updateEdges(graph, edges);
+            for(TravelMode mode : TravelMode.values()){
+                OverlaySearch search = overlaySearches.get(metric.getName() + "/" + mode);
+                if(search != null) search.getOverlay().customiseCells(metric.getWeights(mode), edges);
+            }
+        }
+        oneToAllSearches.clear();
+        compressedSearches.clear();
+        facilityLabels.clear();
+    }
+
+    /**
+     * Gets the one-to-all search for a metric, building the contraction hierarchy the first time one is needed and
+     * customising it the first time the metric is used with a travel mode.
+     * @param metric    The metric being minimised
+     * @param mode      The mode of travel
+     * @return          The search
+     */
+    public PhastSearch getOneToAllSearch(Metric metric, TravelMode mode){
+        if(contractionHierarchy == null){
+            contractionHierarchy = new ContractionHierarchy(graph);
+            log.accept("Built contraction hierarchy in " + contractionHierarchy.getBuildTime() + "ms (" + contractionHierarchy.getArcCount() + " arcs).");
+        }
+        return oneToAllSearches.computeIfAbsent(metric.getName() + "/" + mode, key -> {
+            ContractionHierarchy customised = contractionHierarchy.customise(metric.getWeights(mode));
+            log.accept("Customised contraction hierarchy for " + metric.getName() + " by " + mode + " in " + customised.getCustomiseTime() + "ms.");
+            return new PhastSearch(customised);
+        });
+    }
+
+    /**
+     * Gets the overlay search for a metric, partitioning the graph the first time one is needed and customising the
+     * overlay the first time the metric is used with a travel mode.
+     * @param metric    The metric being minimised
+     * @param mode      The mode of travel
+     * @return          The search
+     */
+    public OverlaySearch getOverlaySearch(Metric metric, TravelMode mode){
+        if(overlayGraph == null){
+            Partition partition = GraphPartitioner.inertialFlowPartition(graph, OverlayGraph.CELL_SIZES);
+            StringBuilder cells = new StringBuilder();
+            for(int level = 0; level < partition.getLevelCount(); level++){
+                cells.append(level == 0 ? "" : ", ").append(partition.getCellCount(level));
+            }
+            log.accept("Partitioned graph in " + partition.getBuildTime() + "ms into " + partition.getLevelCount() + " levels (" + cells + " cells).");
+            overlayGraph = new OverlayGraph(partition);
+        }
+        return overlaySearches.computeIfAbsent(metric.getName() + "/" + mode, key -> {
+            OverlayGraph customised = overlayGraph.customise(metric.getWeights(mode));
+            log.accept("Customised overlay for " + metric.getName() + " by " + mode + " in " + customised.getCustomiseTime() + "ms ("
+                    + customised.getCliqueSize() + " clique entries).");
+            return new OverlaySearch(customised);
+        });
+    }
+
+    /**
+     * @return The overlay the overlay searches are customised from, null until the first one is asked for
+     */
+    public OverlayGraph getOverlayGraph(){
+        return overlayGraph;
+    }
+
+    /**
+     * Collapses the chains of degree 2 nodes of the graph, replacing any compressed graph already built
+     * @return The compressed graph
+     */
+    public CompressedGraph compress(){
+        compressedGraph = new CompressedGraph(graph);
+        compressedSearches.clear();
+        return compressedGraph;
+    }
+
+    /**
+     * @return The compressed graph, null if compress hasn't been called
+     */
+    public CompressedGraph getCompressedGraph(){
+        return compressedGraph;
+    }
+
+    /**
+     * Gets the search of the compressed graph for a metric, summing its weights along the chains the first time the
+     * metric is used with a travel mode. Only once compress has been called.
+     * @param metric    The metric being minimised
+     * @param mode      The mode of travel
+     * @return          The search
+     */
+    public CompressedSearch getCompressedSearch(Metric metric, TravelMode mode){
+        return compressedSearches.computeIfAbsent(metric.getName() + "/" + mode, key -> new CompressedSearch(compressedGraph, metric, mode));
+    }
+
+    /**
+     * @param type  The type of facility
+     * @return      The facilities of the type, found the first time the type is asked for
+     */
+    public FacilityManager.Facilities getFacilities(String type){
+        return facilities.computeIfAbsent(type, key -> FacilityManager.find(key, nodes.values(), polygons, graph, segmentIndex));
+    }
+
+    /**
+     * Gets the labels of the nearest facilities of a type to every node, labelling the nodes the first time the type
+     * is asked for with a metric and travel mode
+     * @param type      The type of facility
+     * @param metric    The metric being minimised
+     * @param mode      The mode of travel
+     * @param count     How many of the nearest facilities to label each node with
+     * @return          The labels
+     */
+    public FacilityLabels getFacilityLabels(String type, Metric metric, TravelMode mode, int count){
+        FacilityManager.Facilities found = getFacilities(type);
+        return facilityLabels.computeIfAbsent(metric.getName() + "/" + mode + "/" + type, key -> {
+            FacilityLabels built = FacilityLabels.build(graph, metric.getWeights(mode), found.getNodes(), count);
+            log.accept("Labelled nodes with their nearest " + found.getNames().length + " " + type + " by " + metric.getName()
+                    + " in " + built.getBuildTime() + "ms.");
+            return built;
+        });
+    }
+
+    /**
+     * Finds the best route between two nodes, from the route cache if it has already been found
+     * @param start     The start of the route
+     * @param end       The end of the route
+     * @param metric    The metric to minimise
+     * @param mode      The mode of travel
+     * @return          The nodes of the route in order, empty if there is no route
+     */
+    public List<Node> route(Node start, Node end, Metric metric, TravelMode mode){
+        List<Node> path = routeCache.get(start, end, metric, mode);
+        if(path == null){
+            path = search(start, end, metric, mode);
+            routeCache.put(start, end, metric, mode, path);
+        }
+        return path;
+    }
+
+    /**
+     * Searches for the best route between two nodes with A*, obeying turn restrictions, without the route cache. Safe
+     * to call from several threads at once as long as no metrics are being added or updated.
+     * @param start     The start of the route
+     * @param end       The end of the route
+     * @param metric    The metric to minimise
+     * @param mode      The mode of travel
+     * @return          The nodes of the route in order, empty if there is no route
+     */
+    public List<Node> search(Node start, Node end, Metric metric, TravelMode mode){
+        return AStarManager.pathfind(getTurnGraph(metric), start, end, metric, mode);
+    }
+
+    /**
+     * Gets the turn expanded graph to search with a metric, only metrics that charge for turns need every
+     * intersection expanded.
+     * @param metric    The metric being minimised
+     * @return          The graph
+     */
+    public synchronized TurnGraph getTurnGraph(Metric metric){
+        if(!metric.hasTurnCosts()) return turnGraph;
+        if(turnCostGraph == null){
+            turnCostGraph = TurnGraph.build(graph, true);
+            log.accept("Built turn cost graph with " + turnCostGraph.getStateCount() + " states.");
+        }
+        return turnCostGraph;
+    }
+
+    /**
+     * @return The turn graph expanded only at intersections with banned turns
+     */
+    public TurnGraph getTurnGraph(){
+        return turnGraph;
+    }
+
+    /**
+     * Finds the segment along each step of a path, walking the wrong way up one way roads where the path does
+     * @param path  The nodes of the path in order
+     * @return      The segments between each pair of nodes, leaving out steps with no segment between them
+     */
+    public List<Segment> getSegments(List<Node> path){
+        List<Segment> segments = new ArrayList<>();
+        for(int i = 0; i < path.size() - 1; i++){
+            Segment segment = path.get(i).getOutgoingSegment(path.get(i + 1));
+            if(segment == null){        //Walking the wrong way up a one way road
+                segment = path.get(i).getIncomingSegment(path.get(i + 1));
+            }
+            if(segment != null) segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * @param location  The location
+     * @return          The node nearest to it
+     */
+    public Node nearestNode(Location location){
+        return quadRoot.nearest(location.x, location.y);
+    }
+
+    /**
+     * @param location      The location
+     * @param maxDistance   How far away in km to look
+     * @return              The closest point on any segment, null if there are none within the distance
+     */
+    public SegmentIndex.Projection nearestSegment(Location location, double maxDistance){
+        return segmentIndex.nearest(location, maxDistance);
+    }
+
+    /**
+     * Finds roads by name, ignoring case and spaces
+     * @param name  The name, or the start of it
+     * @return      The roads with exactly that name if there are any, otherwise every road whose name starts with it
+     */
+    public Set<Road> findRoads(String name){
+        Set<Road> found = new LinkedHashSet<>();
+        String key = nameKey(name);
+        if(key.isEmpty()) return found;
+        TrieNode<Road, Character> node = trieRoot;
+        for(char letter : key.toCharArray()){
+            if(!node.containsChild(letter)) return found;
+            node = node.getChild(letter);
+        }
+        if(node.hasValues()) found.addAll(node.getValues());
+        else collect(node, found);
+        return found;
+    }
+
+    private static String nameKey(String name){
+        return name.toLowerCase().replace(" ", "");
+    }
+
+    private void collect(TrieNode<Road, Character> node, Set<Road> found){
+        if(node.hasValues()) found.addAll(node.getValues());
+        if(node.hasChildren()){
+            for(TrieNode<Road, Character> child : node){
+                collect(child, found);
+            }
+        }
+    }
+
+    /**
+     * @param root  A node to search from
+     * @return      The articulation points of the part of the map that can be reached from the node
+     */
+    public Set<Node> getArticulationPoints(Node root){
+        resetArticulationPoints();
+        return new HashSet<>(ArticulationPointManager.getAPS(root));
+    }
+
+    /**
+     * @return The articulation points of the whole map
+     */
+    public Set<Node> getAllArticulationPoints(){
+        resetArticulationPoints();
+        return new HashSet<>(ArticulationPointManager.getAllAps(nodes.values()));
+    }
+
+    /**
+     * Resets all of the nodes depth and reachback values.
+     */
+    public void resetArticulationPoints(){
+        for(Node node : nodes.values()){
+            node.resetAP();
+        }
+    }
+
+    /**
+     * @return The directory the map was loaded from
+     */
+    public File getDirectory(){
+        return directory;
+    }
+
+    public IntMap<Node> getNodes(){
+        return nodes;
+    }
+
+    public IntMap<Road> getRoads(){
+        return roads;
+    }
+
+    public List<Polygon> getPolygons(){
+        return polygons;
+    }
+
+    public GeometryStore getGeometry(){
+        return geometry;
+    }
+
+    public QuadNode getQuadRoot(){
+        return quadRoot;
+    }
+
+    public SegmentIndex getSegmentIndex(){
+        return segmentIndex;
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    public RouteCache getRouteCache(){
+        return routeCache;
+    }
+}
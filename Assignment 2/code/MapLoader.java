@@ -0,0 +1,218 @@
+import java.io.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the files of a map directory into nodes, roads, segments, polygons, turn restrictions and traffic lights. Used
+ * by the GUI and by the headless tools alike, so both see exactly the same graph for the same directory.
+ */
+public class MapLoader {
+
+    public static final String NODES_FILENAME = "nodeID-lat-lon.tab";
+    public static final String ROADS_FILENAME = "roadID-roadInfo.tab";
+    public static final String SEGS_FILENAME = "roadSeg-roadID-length-nodeID-nodeID-coords.tab";
+    public static final String POLYS_FILENAME = "polygon-shapes.mp";
+    public static final String RESTR_FILENAME = "restrictions.tab";
+    public static final String TRAFFIC_FILENAME = "NZtrafficLightCoords.txt";
+
+    private static final Pattern POINT = Pattern.compile("\\(([+-]?[0-9]*\\.?[0-9]+),([+-]?[0-9]*\\.?[0-9]+)\\)");     //Polygon point coordinates
+
+    /**
+     * Loads all nodes (Intersections and road ends)
+     * @param file  The file containing information about nodes in the map
+     * @param nodes The map to add the nodes to by ID
+     * @throws IOException If the file couldn't be read
+     */
+    public static void loadNodes(File file, IntMap<Node> nodes) throws IOException {
+        try(BufferedReader nodesIn = new BufferedReader(new FileReader(file))){
+            String line;
+            while((line = nodesIn.readLine()) != null){
+                String[] values = line.split("\t");
+                int id = Integer.parseInt(values[0]);
+                nodes.put(id, new Node(id, Double.parseDouble(values[1]), Double.parseDouble(values[2])));
+            }
+        }
+    }
+
+    /**
+     * Loads all roads
+     * @param file  The file containing information about the roads in the map
+     * @param roads The map to add the roads to by ID
+     * @throws IOException If the file couldn't be read
+     */
+    public static void loadRoads(File file, IntMap<Road> roads) throws IOException {
+        try(BufferedReader roadsIn = new BufferedReader(new FileReader(file))){
+            String line;
+            roadsIn.readLine();                         //Skip the header line of the file
+            while((line = roadsIn.readLine()) != null){
+                String[] values = line.split("\t");
+                int id = Integer.parseInt(values[0]);
+                roads.put(id, new Road(id, values[2], values[3], Integer.parseInt(values[4]),
+                        Integer.parseInt(values[5]), Integer.parseInt(values[6]), Integer.parseInt(values[7]), Integer.parseInt(values[8]),
+                        Integer.parseInt(values[9])));
+            }
+        }
+    }
+
+    /**
+     * Loads all segments and constructs the edges of the graph by adding them to the incoming and outgoing of the
+     * segments start and end nodes. Coordinates are only added to the geometry if it isn't already mapped from a
+     * snapshot.
+     * @param file      The file containing information about the segments in the map
+     * @param nodes     The nodes of the map by ID
+     * @param roads     The roads of the map by ID, each has its segments added to it
+     * @param geometry  The store for the segments' coordinates
+     * @throws IOException If the file couldn't be read
+     */
+    public static void loadSegments(File file, IntMap<Node> nodes, IntMap<Road> roads, GeometryStore geometry) throws IOException {
+        try(BufferedReader segmentsIn = new BufferedReader(new FileReader(file))){
+            String line;
+            segmentsIn.readLine();
+            while((line = segmentsIn.readLine()) != null){
+                String[] values = line.split("\t");
+                for(int i = 4; i < values.length && !geometry.isMapped(); i += 2){
+                    Location location = Location.newFromLatLon(Double.parseDouble(values[i]), Double.parseDouble(values[i + 1]));
+                    geometry.addPoint(location.x, location.y);
+                }
+                int polyline = geometry.endPolyline();
+                Road road = roads.get(Integer.parseInt(values[0]));
+                double length = Double.parseDouble(values[1]);
+                Node start = nodes.get(Integer.parseInt(values[2]));
+                Node end = nodes.get(Integer.parseInt(values[3]));
+                Segment segmentAB = new Segment(road, geometry, polyline, length, start, end);
+
+                //Based off whether the edge is one way or both ways add the edges to the start and end nodes appropriately.
+                //Both directions share the same polyline, and the road draws the forward one.
+                if(road.getDirection() == Direction.BOTH){
+                    Segment segmentBA = segmentAB.reverse();
+                    start.addOutgoing(segmentAB);
+                    start.addIncoming(segmentBA);
+
+                    end.addIncoming(segmentAB);
+                    end.addOutgoing(segmentBA);
+                }else{
+                    start.addOutgoing(segmentAB);
+                    end.addIncoming(segmentAB);
+                }
+                road.segments.add(segmentAB);
+            }
+        }
+    }
+
+    /**
+     * Loads all the polygons, then sorts them so rendering order is correct (based on the static map in polygon class)
+     * @param file      The file containing information about the polygons in the map
+     * @param geometry  The store for the polygons' coordinates
+     * @param polygons  The list to add the polygons to
+     * @throws IOException If the file couldn't be read
+     */
+    public static void loadPolygons(File file, GeometryStore geometry, List<Polygon> polygons) throws IOException {
+        try(BufferedReader polygonsIn = new BufferedReader(new FileReader(file))){
+            String line;
+            while((line = polygonsIn.readLine()) != null){
+                Polygon polygon = new Polygon(geometry);
+                while((line = polygonsIn.readLine()) != null && !line.contains("[END]")){
+                    if(line.contains("[POLYGON]")) continue;
+                    String lType = line.substring(0, line.lastIndexOf("="));        //Gets the lines data type
+                    String value = line.substring(line.lastIndexOf("=") + 1);       //And the actual value assigned to type
+                    switch(lType){
+                        case "Type":
+                            polygon.setType(Integer.decode(value));
+                            break;
+                        case "Label":
+                            polygon.setLabel(value);
+                            break;
+                        case "EndLevel":
+                            polygon.setZoomLevel(Integer.valueOf(value));
+                            break;
+                        case "Data0":
+                            Matcher matcher = POINT.matcher(value);
+                            while(!geometry.isMapped() && matcher.find()){
+                                Location location = Location.newFromLatLon(Double.parseDouble(matcher.group(1)), Double.parseDouble(matcher.group(2)));
+                                geometry.addPoint(location.x, location.y);
+                            }
+                            polygon.addRing(geometry.endPolyline());
+                            break;
+                    }
+                }
+                if(polygon.hasValues()){
+                    polygons.add(polygon);
+                }
+            }
+        }
+        Collections.sort(polygons);
+    }
+
+    /**
+     * Loads the turn restrictions onto the nodes they are at, restrictions naming nodes that aren't in the map are skipped
+     * @param file  The file containing the restrictions
+     * @param nodes The nodes of the map by ID
+     * @throws IOException If the file couldn't be read
+     */
+    public static void loadRestrictions(File file, IntMap<Node> nodes) throws IOException {
+        try(BufferedReader restrictionsIn = new BufferedReader(new FileReader(file))){
+            restrictionsIn.readLine();
+            String line;
+            while((line = restrictionsIn.readLine()) != null){
+                String[] values = line.split("\t");
+                Node via = nodes.get(Integer.parseInt(values[2]));
+                Node from = nodes.get(Integer.parseInt(values[0]));
+                Node to = nodes.get(Integer.parseInt(values[4]));
+                if(via != null && from != null && to != null) via.addRestriction(from, to);
+            }
+        }
+    }
+
+    /**
+     * Loads the traffic lights, marking the node nearest each one as an intersection with lights
+     * @param file      The file containing the traffic light coordinates
+     * @param quadRoot  The root of the QuadTree holding the nodes of the map
+     * @throws IOException If the file couldn't be read
+     */
+    public static void loadTrafficLights(File file, QuadNode quadRoot) throws IOException {
+        try(BufferedReader trafficIn = new BufferedReader(new FileReader(file))){
+            trafficIn.readLine();
+            String line;
+            while((line = trafficIn.readLine()) != null){
+                String[] values = line.split("\t");
+                Location loc = Location.newFromLatLon(Double.valueOf(values[1]), Double.valueOf(values[0]));
+                Node nearest = quadRoot.nearest(loc.x, loc.y);
+                if(nearest != null) nearest.setIntersection(true);
+            }
+        }
+    }
+
+    /**
+     * Builds a QuadTree over the nodes for finding the nearest node to a point, adding nodes near each other one after
+     * another
+     * @param nodes The nodes to add, there must be at least one
+     * @return      The root of the tree, covering every node
+     */
+    public static QuadNode buildQuadTree(Collection<Node> nodes){
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(Node node : nodes){
+            minX = Math.min(minX, node.getX());
+            minY = Math.min(minY, node.getY());
+            maxX = Math.max(maxX, node.getX());
+            maxY = Math.max(maxY, node.getY());
+        }
+        QuadNode root = new QuadNode(new Location(minX, minY), maxX - minX, maxY - minY, null);
+        for(Node node : HilbertCurve.sort(nodes)){
+            add(root, node);
+        }
+        return root;
+    }
+
+    /**
+     * Attempts to give the QuadNode the node as its value, and if unsuccessful (meaning it already has a value or has
+     * children QuadNodes) moves down the tree, descending any values in its way on the way down.
+     */
+    private static void add(QuadNode root, Node node){
+        while(!root.addValue(node)){
+            root.descendValue();
+            root = root.getChildCreate(node.getX(), node.getY());
+        }
+    }
+}
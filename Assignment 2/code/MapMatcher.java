@@ -0,0 +1,355 @@
+import java.util.*;
+
+/**
+ * Matches a GPS trace onto the road graph with a hidden Markov model, solved with the Viterbi algorithm as points
+ * arrive. The hidden states for a point are the places on roads near it: every segment within SEARCH_RADIUS (found
+ * through the SegmentIndex), once for each direction the mode of travel can drive along it. A state is more likely the
+ * closer it is to the point, with GPS noise taken to be normally distributed, and moving between the states of two
+ * points is more likely the closer the distance driven between them is to the straight line distance between the
+ * points (Newson and Krumm's model).
+ * <p>
+ * The driving distances come from Dijkstra searches bounded a little beyond the furthest a vehicle could plausibly
+ * have driven. One search from each road end the last point's states lead to answers for every state of the new
+ * point at once, and searches are cached by source so the same road end isn't searched again for the next few points.
+ * When no state of a point can be reached from the last one the trace is cut there and matching starts again.
+ * <p>
+ * Matches are handed out as soon as they are final rather than at the end of the trace: once every state of the newest
+ * point that is still possible leads back through the same state of an earlier point, no later point can change the
+ * path up to there, so those points are matched and their layers dropped. Only the points since then are kept.
+ * Not thread safe, each thread should have its own instance.
+ */
+public class MapMatcher {
+
+    public static final double SEARCH_RADIUS = 0.05;       //How far from a point to look for roads, in km
+    private static final double SIGMA = 0.01;               //Standard deviation of GPS error, in km
+    private static final double BETA = 0.01;                //How far driving distances usually differ from straight lines, in km
+    private static final double DETOUR_FACTOR = 4;          //Searches go this many times the straight line distance
+    private static final double DETOUR_SLACK = 0.2;         //Plus this many km
+    private static final int CACHE_SIZE = 256;              //Sources whose searches are kept
+
+    private RoutingGraph graph;
+    private SegmentIndex index;
+    private TravelMode mode;
+    private float[] lengths;                                //Length of each edge, infinite if the mode can't use it
+    private DijkstraSearch search;
+    private Map<Integer, Reach> cache = new LinkedHashMap<Integer, Reach>(CACHE_SIZE, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Reach> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private long searchCount = 0;
+    private long cacheHits = 0;
+
+    //The points of the trace that aren't final yet, since the last cut or the last point the states converged at
+    private List<List<State>> layers = new ArrayList<>();
+    private List<int[]> parents = new ArrayList<>();        //Layer -> state -> best state of the layer before
+    private List<Integer> layerPoints = new ArrayList<>();  //Layer -> index of its point in the trace
+    private double[] scores;                                //Log probability of the best path to each state of the last layer
+    private Location lastLocation;
+    private List<Match> window = new ArrayList<>();         //Matches of the points not yet taken, from windowStart on
+    private int windowStart = 0;                            //Index of the first point in the window
+    private int decided = 0;                                //Points before this index are final
+    private int pointCount = 0;
+
+    /**
+     * A place on the road a point could have been: along an edge, some distance from its tail
+     */
+    private static class State {
+        SegmentIndex.Projection projection;
+        int edge;
+        float offset;
+
+        State(SegmentIndex.Projection projection, int edge, float offset) {
+            this.projection = projection;
+            this.edge = edge;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The nodes within a distance of a source, sorted by node so they can be binary searched
+     */
+    private static class Reach {
+        float bound;
+        int[] nodes;
+        float[] distances;
+    }
+
+    /**
+     * Where a point of a trace was matched to
+     */
+    public static class Match {
+        private Location location;
+        private Segment segment;
+        private double fraction;
+
+        Match(SegmentIndex.Projection projection) {
+            this.location = projection.getLocation();
+            this.segment = projection.getSegment();
+            this.fraction = projection.getFraction();
+        }
+
+        /**
+         * @return The point on the road
+         */
+        public Location getLocation(){
+            return location;
+        }
+
+        public Segment getSegment(){
+            return segment;
+        }
+
+        /**
+         * @return How far along the segment the point is, from 0 at its start to 1 at its end
+         */
+        public double getFraction(){
+            return fraction;
+        }
+    }
+
+    /**
+     * @param graph The graph to match to
+     * @param index The index over the graph's segments
+     * @param mode  The mode of travel the traces were recorded by
+     */
+    public MapMatcher(RoutingGraph graph, SegmentIndex index, TravelMode mode) {
+        this.graph = graph;
+        this.index = index;
+        this.mode = mode;
+        this.search = new DijkstraSearch(graph, false);
+        this.lengths = new float[graph.getEdgeCount()];
+        for(int edge = 0; edge < lengths.length; edge++){
+            lengths[edge] = graph.allows(edge, mode) ? graph.getLength(edge) : RoutingGraph.INFINITY;
+        }
+        reset();
+    }
+
+    /**
+     * Starts a new trace
+     */
+    public void reset(){
+        layers.clear();
+        parents.clear();
+        layerPoints.clear();
+        scores = null;
+        lastLocation = null;
+        window.clear();
+        windowStart = 0;
+        decided = 0;
+        pointCount = 0;
+    }
+
+    /**
+     * Adds the next point of the trace, advancing the Viterbi algorithm one step
+     * @param location  Where the point was recorded
+     */
+    public void addPoint(Location location){
+        int point = pointCount++;
+        window.add(null);
+        List<State> states = findStates(location);
+        if(states.isEmpty()){               //Left unmatched, the next point carries on from the last one that matched
+            if(layers.isEmpty()) decided = pointCount;
+            return;
+        }
+
+        double[] emissions = new double[states.size()];
+        for(int j = 0; j < states.size(); j++){
+            double d = states.get(j).projection.getDistance() / SIGMA;
+            emissions[j] = -0.5 * d * d;
+        }
+
+        if(scores != null){
+            List<State> previous = layers.get(layers.size() - 1);
+            double straightLine = lastLocation.distance(location);
+            float bound = (float) (straightLine * DETOUR_FACTOR + DETOUR_SLACK);
+            double[] newScores = new double[states.size()];
+            int[] best = new int[states.size()];
+            Arrays.fill(newScores, Double.NEGATIVE_INFINITY);
+            boolean reachable = false;
+            for(int i = 0; i < previous.size(); i++){
+                if(scores[i] == Double.NEGATIVE_INFINITY) continue;
+                State from = previous.get(i);
+                Reach reach = reach(graph.getHead(from.edge), bound);
+                for(int j = 0; j < states.size(); j++){
+                    double driven = drivenDistance(from, states.get(j), reach);
+                    if(driven > bound) continue;
+                    double score = scores[i] - Math.abs(straightLine - driven) / BETA + emissions[j];
+                    if(score > newScores[j]){
+                        newScores[j] = score;
+                        best[j] = i;
+                        reachable = true;
+                    }
+                }
+            }
+            if(reachable){
+                layers.add(states);
+                parents.add(best);
+                layerPoints.add(point);
+                scores = newScores;
+                lastLocation = location;
+                settle();
+                return;
+            }
+            finishRun();        //Nothing joins up, so cut the trace here
+        }
+
+        layers.add(states);
+        parents.add(new int[states.size()]);
+        layerPoints.add(point);
+        decided = point;
+        scores = emissions;
+        lastLocation = location;
+    }
+
+    /**
+     * Takes the matches that have become final since they were last taken
+     * @return Where each of those points was matched to, in the order they were added, null for points that couldn't
+     *         be matched
+     */
+    public List<Match> takeFinished(){
+        List<Match> finished = window.subList(0, decided - windowStart);
+        List<Match> result = new ArrayList<>(finished);
+        finished.clear();
+        windowStart = decided;
+        return result;
+    }
+
+    /**
+     * Finishes the trace
+     * @return Where each point not already taken was matched to, in the order they were added, null for points that
+     *         couldn't be matched
+     */
+    public List<Match> finish(){
+        finishRun();
+        List<Match> result = takeFinished();
+        reset();
+        return result;
+    }
+
+    /**
+     * Traces back the most likely states of the run of points since the last cut
+     */
+    private void finishRun(){
+        if(scores == null) return;
+        int state = 0;
+        for(int j = 1; j < scores.length; j++){
+            if(scores[j] > scores[state]) state = j;
+        }
+        fix(layers.size() - 1, state);
+        scores = null;
+    }
+
+    /**
+     * Looks for the latest layer before the last that every state still possible leads back to the same state of, and
+     * fixes the matches up to there
+     */
+    private void settle(){
+        int[] live = new int[scores.length];
+        int count = 0;
+        for(int j = 0; j < scores.length; j++){
+            if(scores[j] != Double.NEGATIVE_INFINITY) live[count++] = j;
+        }
+        for(int layer = layers.size() - 1; layer > 0 && count > 1; layer--){
+            //Replace the states with their distinct parents in the layer before
+            boolean[] seen = new boolean[layers.get(layer - 1).size()];
+            int[] parent = parents.get(layer);
+            int distinct = 0;
+            for(int i = 0; i < count; i++){
+                int state = parent[live[i]];
+                if(!seen[state]){
+                    seen[state] = true;
+                    live[distinct++] = state;
+                }
+            }
+            count = distinct;
+            if(count == 1) fix(layer - 1, live[0]);
+        }
+    }
+
+    /**
+     * Matches the points of the layers up to and including one by tracing back from a state of it, then drops those
+     * layers
+     */
+    private void fix(int last, int state){
+        for(int layer = last; layer >= 0; layer--){
+            window.set(layerPoints.get(layer) - windowStart, new Match(layers.get(layer).get(state).projection));
+            state = parents.get(layer)[state];
+        }
+        layers.subList(0, last + 1).clear();
+        parents.subList(0, last + 1).clear();
+        layerPoints.subList(0, last + 1).clear();
+        decided = layerPoints.isEmpty() ? pointCount : layerPoints.get(0);
+    }
+
+    /**
+     * @return Every place on a road near the location, once for each direction the mode can travel along it
+     */
+    private List<State> findStates(Location location){
+        List<State> states = new ArrayList<>();
+        for(SegmentIndex.Projection projection : index.withinRadius(location, SEARCH_RADIUS)){
+            Segment segment = projection.getSegment();
+            for(int edge : graph.getEdges(segment)){
+                if(!graph.allows(edge, mode)) continue;
+                boolean forwards = graph.getSegment(edge).getStart() == segment.getStart();
+                double fraction = forwards ? projection.getFraction() : 1 - projection.getFraction();
+                states.add(new State(projection, edge, (float) (fraction * graph.getLength(edge))));
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return The distance driven from one state to another, infinite if it is further than the reach was searched
+     */
+    private double drivenDistance(State from, State to, Reach reach){
+        if(from.edge == to.edge && to.offset >= from.offset) return to.offset - from.offset;
+        int position = Arrays.binarySearch(reach.nodes, graph.getTail(to.edge));
+        if(position < 0) return RoutingGraph.INFINITY;
+        return (graph.getLength(from.edge) - from.offset) + reach.distances[position] + to.offset;
+    }
+
+    /**
+     * Gets the nodes within a distance of a source, from the cache if it was searched at least that far before
+     */
+    private Reach reach(int source, float bound){
+        Reach reach = cache.get(source);
+        if(reach != null && reach.bound >= bound){
+            cacheHits++;
+            return reach;
+        }
+        searchCount++;
+        search.reset();
+        search.addSource(source, 0);
+        List<Integer> settled = new ArrayList<>();
+        while(search.peekDistance() <= bound){
+            settled.add(search.settleNext(lengths));
+        }
+        Collections.sort(settled);
+        reach = new Reach();
+        reach.bound = bound;
+        reach.nodes = new int[settled.size()];
+        reach.distances = new float[settled.size()];
+        for(int i = 0; i < settled.size(); i++){
+            reach.nodes[i] = settled.get(i);
+            reach.distances[i] = search.getDistance(settled.get(i));
+        }
+        cache.put(source, reach);
+        return reach;
+    }
+
+    /**
+     * @return The number of shortest path searches run
+     */
+    public long getSearchCount(){
+        return searchCount;
+    }
+
+    /**
+     * @return The number of times a search was answered from the cache
+     */
+    public long getCacheHits(){
+        return cacheHits;
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class to map match a directory of GPS traces as a batch job. Each trace is a text file of points, one per line,
+ * whose last two columns are the latitude and longitude (lines starting with # and header lines are skipped). Traces
+ * are matched in parallel, each thread reusing its own MapMatcher, and streamed through it a line at a time so a trace
+ * is never held in memory as more than the matcher's own state. Each trace gets a .matched file in the output
+ * directory with the road every point was matched to.
+ */
+public class MapMatchingManager {
+
+    /**
+     * The totals from a batch job
+     */
+    public static class Result {
+        private int traces;
+        private long points;
+        private long matched;
+        private long millis;
+
+        Result(int traces, long points, long matched, long millis) {
+            this.traces = traces;
+            this.points = points;
+            this.matched = matched;
+            this.millis = millis;
+        }
+
+        public int getTraces(){
+            return traces;
+        }
+
+        public long getPoints(){
+            return points;
+        }
+
+        /**
+         * @return The number of points that were matched to a road
+         */
+        public long getMatched(){
+            return matched;
+        }
+
+        public long getMillis(){
+            return millis;
+        }
+
+        public double getPointsPerSecond(){
+            return millis == 0 ? points * 1000.0 : points * 1000.0 / millis;
+        }
+    }
+
+    /**
+     * Map matches every trace in a directory
+     * @param graph     The graph to match to
+     * @param index     The index over the graph's segments
+     * @param mode      The mode of travel the traces were recorded by
+     * @param directory The directory of traces, every file in it is read
+     * @param output    The directory to write the matched traces to
+     * @param threads   The number of traces to match at once
+     * @return          The totals
+     * @throws IOException If a trace couldn't be read or written
+     */
+    public static Result matchDirectory(RoutingGraph graph, SegmentIndex index, TravelMode mode, File directory, File output, int threads) throws IOException {
+        File[] traces = directory.listFiles(File::isFile);
+        if(traces == null) throw new IOException("Couldn't list " + directory);
+        Arrays.sort(traces);
+        if(!output.isDirectory() && !output.mkdirs()) throw new IOException("Couldn't create " + output);
+
+        long startTime = System.currentTimeMillis();
+        AtomicLong points = new AtomicLong();
+        AtomicLong matched = new AtomicLong();
+        ThreadLocal<MapMatcher> matchers = ThreadLocal.withInitial(() -> new MapMatcher(graph, index, mode));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try{
+            List<Future<?>> futures = new ArrayList<>();
+            for(File trace : traces){
+                futures.add(executor.submit(() -> {
+                    long[] counts = matchTrace(matchers.get(), trace, new File(output, trace.getName() + ".matched"));
+                    points.addAndGet(counts[0]);
+                    matched.addAndGet(counts[1]);
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures){
+                try{
+                    future.get();
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while map matching", e);
+                }catch(ExecutionException e){
+                    if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+        return new Result(traces.length, points.get(), matched.get(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Matches one trace, writing a line per point as soon as its match is final: its index, latitude and longitude,
+     * then the matched latitude, longitude, road id, road name, the IDs of the segment's start and end nodes and how far
+     * along the segment it is, or "unmatched". Only the points waiting on their match are kept.
+     * @return The number of points and the number of those that were matched
+     */
+    private static long[] matchTrace(MapMatcher matcher, File trace, File output) throws IOException {
+        matcher.reset();
+        Deque<double[]> pending = new ArrayDeque<>();       //Recorded latitude and longitude of points not yet written
+        long[] counts = new long[2];
+        try(BufferedReader reader = new BufferedReader(new FileReader(trace));
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(output)))){
+            String line;
+            while((line = reader.readLine()) != null){
+                double[] latLon = parseLine(line);
+                if(latLon == null) continue;
+                pending.add(latLon);
+                matcher.addPoint(Location.newFromLatLon(latLon[0], latLon[1]));
+                for(MapMatcher.Match match : matcher.takeFinished()) writeMatch(writer, pending.poll(), match, counts);
+            }
+            for(MapMatcher.Match match : matcher.finish()) writeMatch(writer, pending.poll(), match, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Writes the line for the next point of a trace, counting it and whether it was matched
+     */
+    private static void writeMatch(PrintWriter writer, double[] recorded, MapMatcher.Match match, long[] counts){
+        writer.print(counts[0]++ + "," + recorded[0] + "," + recorded[1] + ",");
+        if(match == null){
+            writer.println("unmatched");
+            return;
+        }
+        counts[1]++;
+        Segment segment = match.getSegment();
+        writer.printf("%.6f,%.6f,%d,%s,%d,%d,%.3f%n", match.getLocation().getLatitude(), match.getLocation().getLongitude(),
+                segment.getRoad().getID(), segment.getRoad().getName(), segment.getStart().getID(),
+                segment.getEnd().getID(), match.getFraction());
+    }
+
+    /**
+     * @return The latitude and longitude in the last two columns of a line, null if it isn't a point
+     */
+    private static double[] parseLine(String line){
+        line = line.trim();
+        if(line.isEmpty() || line.startsWith("#")) return null;
+        String[] columns = line.split("[,\\t ]+");
+        if(columns.length < 2) return null;
+        try{
+            return new double[]{Double.parseDouble(columns[columns.length - 2]), Double.parseDouble(columns[columns.length - 1])};
+        }catch(NumberFormatException e){
+            return null;        //A header
+        }
+    }
+}
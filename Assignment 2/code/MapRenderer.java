@@ -0,0 +1,163 @@
+import java.awt.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the map for the GUI: nodes, roads and their segments, polygons and the QuadTree. The colours and the pixel
+ * buffers polylines are decoded into live here rather than in the map's classes, so a map can be loaded and queried
+ * (see MapEngine) without AWT. Only used from the rendering thread.
+ */
+public class MapRenderer {
+
+    public static final int NODE_SIZE = 5;
+
+    private static final Color WATER = new Color(73, 134, 205);
+    private static final Map<Integer, Color> POLYGON_COLOURS = new HashMap<>();      //Polygon type -> fill colour
+    static{
+        POLYGON_COLOURS.put(64, WATER);                 //Lake
+        POLYGON_COLOURS.put(65, WATER);                 //Lake
+        POLYGON_COLOURS.put(2, Color.GRAY);             //City?
+        POLYGON_COLOURS.put(69, Color.BLUE);            //Blue-Unknown
+        POLYGON_COLOURS.put(7, Color.GRAY);             //Airport
+        POLYGON_COLOURS.put(71, WATER);                 //River
+        POLYGON_COLOURS.put(72, WATER);                 //River
+        POLYGON_COLOURS.put(40, WATER);                 //Ocean
+        POLYGON_COLOURS.put(8, Color.ORANGE);           //Shopping-Centre
+        POLYGON_COLOURS.put(10, Color.GREEN);           //University
+        POLYGON_COLOURS.put(14, Color.DARK_GRAY);       //Airport-Runway
+        POLYGON_COLOURS.put(80, new Color(204, 102, 0));    //Woods
+        POLYGON_COLOURS.put(19, Color.ORANGE);          //Man made area
+        POLYGON_COLOURS.put(22, Color.GREEN);           //National Park
+        POLYGON_COLOURS.put(23, Color.GREEN);           //City Park
+        POLYGON_COLOURS.put(24, Color.GREEN);           //Golf
+        POLYGON_COLOURS.put(25, Color.PINK);            //Sport
+        POLYGON_COLOURS.put(26, Color.DARK_GRAY);       //Cemetery
+        POLYGON_COLOURS.put(11, Color.PINK);            //Hospital
+        POLYGON_COLOURS.put(5, Color.DARK_GRAY);        //Car Park
+        POLYGON_COLOURS.put(60, WATER);                 //Lake
+        POLYGON_COLOURS.put(62, WATER);                 //Lake
+        POLYGON_COLOURS.put(30, Color.GREEN);           //State Park
+    }
+
+    private static int[] screenX = new int[64];         //Filled by toScreen
+    private static int[] screenY = new int[64];
+
+    /**
+     * Renders a node, the location of rendering is based off the nodes location, the scale and the origin location.
+     * If the node is selected by the user it is drawn red, if it is part of the path blue.
+     * @param g             The graphics pane in which to render the node
+     * @param node          The node
+     * @param scale         The the number of pixels per kilometer
+     * @param origin        The origin of which to render based off
+     * @param selected      Whether or not the node has been selected by the user
+     * @param partOfPath    Whether or not the node is on the path found
+     */
+    public static void drawNode(Graphics g, Node node, double scale, Location origin, boolean selected, boolean partOfPath){
+        Point point = node.getLocation().asPoint(origin, scale);
+        if(g.getClipBounds().contains(point)){      //Ensures we aren't rendering things that can't be seen
+            g.setColor(selected ? Color.RED : partOfPath ? Color.BLUE : Color.BLACK);
+            int size = AStarManager.isStartOrEnd(node) ? NODE_SIZE * 2 : NODE_SIZE;
+            g.fillOval(point.x - size / 2, point.y - size / 2, size, size);
+        }
+    }
+
+    /**
+     * Draws a road (the segments associated to the road). Roads are highlighted in red if the user has selected the
+     * road, and segments on the path in blue.
+     * @param g             The graphics pane in which to render to
+     * @param road          The road
+     * @param scale         The numbers of pixels per kilometer
+     * @param origin        The origin of the rendering
+     * @param selected      Whether or not the road has been selected
+     * @param partOfPath    The segments of the path found
+     */
+    public static void drawRoad(Graphics g, Road road, double scale, Location origin, boolean selected, List<Segment> partOfPath){
+        for(Segment segment : road.segments){
+            drawSegment(g, segment, scale, origin, selected ? Color.RED : partOfPath.contains(segment) ? Color.BLUE : Color.BLACK);
+        }
+    }
+
+    /**
+     * Draws a segment in the colour provided, if either end of it is visible
+     * @param g         The graphics pane in which to render to
+     * @param segment   The segment
+     * @param scale     The numbers of pixels per kilometer
+     * @param origin    The origin of the rendering
+     * @param colour    The colour to draw the segment
+     */
+    public static void drawSegment(Graphics g, Segment segment, double scale, Location origin, Color colour){
+        Rectangle bounds = g.getClipBounds();
+        if(bounds.contains(segment.getStart().getLocation().asPoint(origin, scale))
+                || bounds.contains(segment.getEnd().getLocation().asPoint(origin, scale))){
+            g.setColor(colour);
+            int count = toScreen(segment.getGeometry(), segment.getPolyline(), origin, scale);
+            g.drawPolyline(screenX, screenY, count);
+        }
+    }
+
+    /**
+     * Fills in each ring of a polygon in the colour for its type, if any one of the ring's points is visible
+     * @param g         The graphics pane in which to render to
+     * @param polygon   The polygon
+     * @param scale     The the number of pixels per kilometer
+     * @param origin    The origin of which to render based off
+     */
+    public static void drawPolygon(Graphics g, Polygon polygon, double scale, Location origin){
+        Rectangle bounds = g.getClipBounds();
+        for(int ring : polygon.getRings()){
+            int size = toScreen(polygon.getGeometry(), ring, origin, scale);
+            boolean contains = false;
+            for(int i = 0; i < size && !contains; i++){
+                contains = bounds.contains(screenX[i], screenY[i]);
+            }
+            if(contains){
+                g.setColor(POLYGON_COLOURS.get(polygon.getType()));
+                g.fillPolygon(screenX, screenY, size);
+            }
+        }
+    }
+
+    /**
+     * Outlines each ring of a polygon in the current colour
+     * @param g         The graphics pane in which to render to
+     * @param polygon   The polygon
+     * @param scale     The the number of pixels per kilometer
+     * @param origin    The origin of which to render based off
+     */
+    public static void outlinePolygon(Graphics g, Polygon polygon, double scale, Location origin){
+        for(int ring : polygon.getRings()){
+            int size = toScreen(polygon.getGeometry(), ring, origin, scale);
+            g.drawPolygon(screenX, screenY, size);
+        }
+    }
+
+    /**
+     * Outlines the area each QuadNode of a tree covers
+     * @param g         The graphics pane in which to render to
+     * @param node      The root of the tree
+     * @param origin    The origin of the rendering
+     * @param scale     The the number of pixels per kilometer
+     */
+    public static void drawQuadTree(Graphics g, QuadNode node, Location origin, double scale){
+        Point p = new Location(node.getX(), node.getY() + node.getHeight()).asPoint(origin, scale);
+        g.setColor(Color.RED);
+        g.drawRect(p.x, p.y, (int) (node.getWidth() * scale), (int) (node.getHeight() * scale));
+        for(QuadNode child : node.children){
+            if(child != null) drawQuadTree(g, child, origin, scale);
+        }
+    }
+
+    /**
+     * Decodes a polyline into screenX and screenY, growing them if needed
+     * @return The number of points
+     */
+    private static int toScreen(GeometryStore geometry, int polyline, Location origin, double scale){
+        int count = geometry.getPointCount(polyline);
+        if(count > screenX.length){
+            screenX = new int[Math.max(count, 2 * screenX.length)];
+            screenY = new int[screenX.length];
+        }
+        return geometry.toScreen(polyline, origin, scale, screenX, screenY);
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * A class to compute one-to-many and many-to-many travel cost matrices. Rather than running A* for every pair, one
+ * Dijkstra search is run per source which stops as soon as every target has been settled. Sources are searched in
+ * parallel, each thread reusing its own search state.
+ */
+public class MatrixManager {
+
+    /**
+     * Computes the travel cost from every source to every target.
+     * @param graph         The graph to search
+     * @param sources       The source nodes, one row each
+     * @param targets       The target nodes, one column each
+     * @param weights       The weight of each edge, from the metric being minimised
+     * @return              The matrix of costs
+     */
+    public static TravelMatrix computeMatrix(RoutingGraph graph, List<Node> sources, List<Node> targets, float[] weights){
+        int[] sourceIndices = toIndices(graph, sources);
+        int[] targetIndices = toIndices(graph, targets);
+        TravelMatrix matrix = new TravelMatrix(toIDs(sources), toIDs(targets));
+
+        //Marks which nodes are targets so a search knows when it has found them all, duplicates are only counted once
+        boolean[] isTarget = new boolean[graph.getNodeCount()];
+        int distinctTargets = 0;
+        for(int target : targetIndices){
+            if(target != -1 && !isTarget[target]){
+                isTarget[target] = true;
+                distinctTargets++;
+            }
+        }
+        final int targetCount = distinctTargets;
+
+        ThreadLocal<DijkstraSearch> searches = ThreadLocal.withInitial(() -> new DijkstraSearch(graph, false));
+        IntStream.range(0, sourceIndices.length).parallel().forEach(row -> {
+            DijkstraSearch search = searches.get();
+            search.reset();
+            if(sourceIndices[row] != -1){
+                search.addSource(sourceIndices[row], 0);
+                int remaining = targetCount;
+                int node;
+                while(remaining > 0 && (node = search.settleNext(weights)) != -1){
+                    if(isTarget[node]) remaining--;
+                }
+            }
+            for(int column = 0; column < targetIndices.length; column++){
+                matrix.set(row, column, targetIndices[column] == -1 ? RoutingGraph.INFINITY : search.getDistance(targetIndices[column]));
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Computes the travel cost between every pair of the given nodes.
+     * @param graph         The graph to search
+     * @param nodes         The nodes, used as both the rows and the columns
+     * @param weights       The weight of each edge, from the metric being minimised
+     * @return              The square matrix of costs
+     */
+    public static TravelMatrix computeMatrix(RoutingGraph graph, List<Node> nodes, float[] weights){
+        return computeMatrix(graph, nodes, nodes, weights);
+    }
+
+    private static int[] toIndices(RoutingGraph graph, List<Node> nodes){
+        int[] indices = new int[nodes.size()];
+        for(int i = 0; i < indices.length; i++){
+            indices[i] = graph.indexOf(nodes.get(i));
+        }
+        return indices;
+    }
+
+    private static int[] toIDs(List<Node> nodes){
+        int[] ids = new int[nodes.size()];
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = nodes.get(i).getID();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,230 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A way of weighting the edges of the routing graph, such as shortest distance, fastest time or a custom profile
+ * like avoiding residential roads. The weight of every edge is worked out once when the metric is customised and kept
+ * in a float array indexed by edge id, so searches never recompute them. Changing a profile only means customising
+ * it again, the graph doesn't have to be reloaded.
+ * <p>
+ * A separate array is kept for each TravelMode, with edges the mode isn't allowed on weighted infinity and travel
+ * times capped at the top speed of the mode.
+ */
+public class Metric {
+
+    public static final String DISTANCE = "Distance";
+    public static final String TIME = "Time";
+    public static final double DEFAULT_TRAFFIC_LIGHT_PENALTY = 0.05;   //Hours lost waiting at a set of traffic lights
+
+    private static final AtomicInteger VERSIONS = new AtomicInteger();     //Shared so no two metrics' weights have the same version
+
+    private String name;
+    private boolean time;               //Whether weights are travel times (hours) or distances (km)
+    private double[] classFactors;      //Multiplier on the weight of each road class, indexed by Class ordinal
+    private double trafficLightPenalty; //Added when entering a node with traffic lights, in the units of the metric
+    private double[] turnCosts;         //Added when making each kind of Turn, in the units of the metric
+
+    private float[][] weights;          //Edge weights indexed by TravelMode ordinal then edge id
+    private float[] costPerKm;          //Lower bound on the cost of travelling 1km in a straight line, per TravelMode
+    private int version;                //Changes every time the weights do
+
+    /**
+     * @param name                  The name of the metric, shown to the user
+     * @param time                  Whether the metric measures time (hours) instead of distance (km)
+     * @param trafficLightPenalty   The cost added for passing through traffic lights, must not be negative
+     * @throws IllegalArgumentException If the penalty is negative
+     */
+    public Metric(String name, boolean time, double trafficLightPenalty) {
+        this.name = name;
+        this.time = time;
+        setTrafficLightPenalty(trafficLightPenalty);
+        this.classFactors = new double[Class.values().length];
+        Arrays.fill(classFactors, 1);
+        this.turnCosts = new double[Turn.values().length];
+    }
+
+    /**
+     * @return The plain shortest distance metric
+     */
+    public static Metric distance(){
+        return new Metric(DISTANCE, false, 0);
+    }
+
+    /**
+     * @return The fastest time metric, travelling at the speed limit (plus the bonus for the road class) with a
+     * penalty for every set of traffic lights
+     */
+    public static Metric time(){
+        return new Metric(TIME, true, DEFAULT_TRAFFIC_LIGHT_PENALTY);
+    }
+
+    /**
+     * Sets how much more (or less) a road class costs to use than normal, for example a factor of 3 on residential
+     * roads makes routes avoid them unless they save a lot. Factors must be positive, an edge that costs nothing or
+     * less than nothing would break the A* heuristic and the searches that assume weights never go down.
+     * @param roadClass The road class
+     * @param factor    The multiplier on the cost of roads in that class
+     * @throws IllegalArgumentException If the factor isn't a positive finite number
+     */
+    public void setClassFactor(Class roadClass, double factor){
+        if(!(factor > 0) || Double.isInfinite(factor)){
+            throw new IllegalArgumentException(roadClass + " cost factor must be positive, not " + factor);
+        }
+        classFactors[roadClass.ordinal()] = factor;
+    }
+
+    /**
+     * @param trafficLightPenalty   The cost added for passing through traffic lights, must not be negative
+     * @throws IllegalArgumentException If the penalty is negative
+     */
+    public void setTrafficLightPenalty(double trafficLightPenalty){
+        if(!(trafficLightPenalty >= 0) || Double.isInfinite(trafficLightPenalty)){
+            throw new IllegalArgumentException("Traffic light penalty must not be negative, not " + trafficLightPenalty);
+        }
+        this.trafficLightPenalty = trafficLightPenalty;
+    }
+
+    /**
+     * Sets the cost of making a kind of turn at an intersection, for example to avoid right turns across traffic
+     * @param turn  The kind of turn
+     * @param cost  The cost added for making it, in the units of the metric, must not be negative
+     * @throws IllegalArgumentException If the cost is negative
+     */
+    public void setTurnCost(Turn turn, double cost){
+        if(!(cost >= 0) || Double.isInfinite(cost)){
+            throw new IllegalArgumentException(turn + " penalty must not be negative, not " + cost);
+        }
+        turnCosts[turn.ordinal()] = cost;
+    }
+
+    public float getTurnCost(Turn turn){
+        return (float) turnCosts[turn.ordinal()];
+    }
+
+    /**
+     * @return Whether any kind of turn has a cost, meaning searches need a fully expanded TurnGraph
+     */
+    public boolean hasTurnCosts(){
+        for(double cost : turnCosts){
+            if(cost != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Works out the weight of every edge of the graph for this metric, must be called again if the metric or graph
+     * is changed.
+     * @param graph The graph to weight
+     */
+    public void customise(RoutingGraph graph){
+        TravelMode[] modes = TravelMode.values();
+        float[][] newWeights = new float[modes.length][graph.getEdgeCount()];
+        float[] bounds = new float[modes.length];
+        Arrays.fill(bounds, RoutingGraph.INFINITY);
+        for(int edge = 0; edge < graph.getEdgeCount(); edge++){
+            double straightLine = graph.getNode(graph.getTail(edge)).getLocation().distance(graph.getNode(graph.getHead(edge)).getLocation());
+            for(TravelMode mode : modes){
+                int m = mode.ordinal();
+                newWeights[m][edge] = calculateWeight(graph, edge, mode);
+
+                //The heuristic must never overestimate, so the bound is the cheapest cost per straight line km of any edge
+                if(straightLine > 0) bounds[m] = Math.min(bounds[m], (float) (newWeights[m][edge] / straightLine));
+            }
+        }
+        for(int m = 0; m < bounds.length; m++){
+            if(Float.isInfinite(bounds[m])) bounds[m] = 0;
+        }
+        this.costPerKm = bounds;
+        this.weights = newWeights;
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Works out the weights of edges again after they have been closed, reopened or changed speed, without touching
+     * the rest of the graph. The heuristic bound is only ever lowered so it stays admissible.
+     * @param graph The graph the metric was customised for
+     * @param edges The edges that changed
+     */
+    public void updateEdges(RoutingGraph graph, Collection<Integer> edges){
+        for(TravelMode mode : TravelMode.values()){
+            int m = mode.ordinal();
+            for(int edge : edges){
+                weights[m][edge] = calculateWeight(graph, edge, mode);
+                double straightLine = graph.getNode(graph.getTail(edge)).getLocation().distance(graph.getNode(graph.getHead(edge)).getLocation());
+                if(straightLine > 0) costPerKm[m] = Math.min(costPerKm[m], (float) (weights[m][edge] / straightLine));
+            }
+        }
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Calculates the cost of travelling along an edge
+     * @param graph     The graph
+     * @param edge      The edge
+     * @param mode      The mode of travel, which limits the speed along the edge
+     * @return          The cost, infinite if the mode can't use the edge
+     */
+    private float calculateWeight(RoutingGraph graph, int edge, TravelMode mode){
+        if(!graph.allows(edge, mode) || graph.isClosed(edge)) return RoutingGraph.INFINITY;
+        Segment segment = graph.getSegment(edge);
+        Road road = segment.getRoad();
+        double speed = Float.isNaN(graph.getSpeed(edge)) ? road.getSpeedLimit() + road.getRoadClass().getIncreasedSpeed() : graph.getSpeed(edge);
+        speed = Math.min(mode.getMaxSpeed(), speed);
+        double cost = time ? segment.getLength() / speed : segment.getLength();
+        cost *= classFactors[road.getRoadClass().ordinal()];
+        return (float) (cost + (segment.getEnd().isIntersection() ? trafficLightPenalty : 0));
+    }
+
+    /**
+     * @param mode  The mode of travel
+     * @return      The weight of each edge of the graph for the mode, indexed by edge id
+     */
+    public float[] getWeights(TravelMode mode){
+        return weights[mode.ordinal()];
+    }
+
+    /**
+     * Calculates a lower bound on the cost of travelling between two locations, used as the A* heuristic
+     * @param from  The start location
+     * @param to    The end location
+     * @param mode  The mode of travel
+     * @return      The lower bound
+     */
+    public float estimate(Location from, Location to, TravelMode mode){
+        return (float) (from.distance(to) * costPerKm[mode.ordinal()]);
+    }
+
+    /**
+     * @param mode  The mode of travel
+     * @return      The lower bound on the cost of travelling 1km used by estimate, which only changes when the metric
+     *              is customised again or an update makes an edge cheaper than any before
+     */
+    public float getCostPerKm(TravelMode mode){
+        return costPerKm[mode.ordinal()];
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return A number that changes whenever the weights are worked out again or updated, and that no other metric's
+     *         weights ever have, so results found with these weights can be told apart from any others
+     */
+    public int getVersion(){
+        return version;
+    }
+
+    /**
+     * @return Whether the metric measures time in hours rather than distance in km
+     */
+    public boolean isTime(){
+        return time;
+    }
+
+    @Override
+    public String toString(){
+        return name;
+    }
+}
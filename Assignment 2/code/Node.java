@@ -1,4 +1,3 @@
-import java.awt.*;
 import java.util.*;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -14,37 +13,18 @@ public class Node implements Iterable<Segment>{
 	private List<Node> searchChildren = new ArrayList<>();
 
 	private boolean isIntersection = false;
+	private int graphIndex = -1;	//Index the last RoutingGraph built from this node gave it
 
 	private Map<Node, Segment> incoming = new HashMap<>();
 	private Map<Node, Segment> outgoing = new HashMap<>();
 
-	private Map<Node, Node> restrictions = new HashMap<>();
-
-	public static final int SIZE = 5;
+	private Map<Node, Set<Node>> restrictions = new HashMap<>();	//Node coming from -> nodes that can't be turned to
 
 	public Node(int ID, double x, double y){
 		this.ID = ID;
 		this.location = Location.newFromLatLon(x, y);
 	}
 
-	/**
-	 * Renders this node to the passed graphics pane, the location of rendering is based off the nodes location,
-	 * the scale and the origin location. If the boolean selected is true then we render the node as red, as it
-	 * has been selected by the user
-	 * @param g             The graphics pane in which to render the node
-	 * @param scale         The the number of pixels per kilometer
-	 * @param origin        The origin of which to render based off
-	 * @param selected      Whether or not the node has been selected by the user
-	 */
-	public void redraw(Graphics g, double scale, Location origin, boolean selected, boolean partOfPath){
-		if(g.getClipBounds().contains(location.asPoint(origin, scale))){    //Ensures we aren't rendering things that can't be seen
-			g.setColor(selected ? Color.RED : partOfPath ? Color.BLUE : Color.BLACK);//isIntersection ? Color.MAGENTA : Color.BLACK);
-			Point point = location.asPoint(origin, scale);
-			int _size = AStarManager.isStartOrEnd(this) ? SIZE * 2 : SIZE;
-			g.fillOval(point.x - _size / 2, point.y - _size / 2, _size, _size);
-		}
-	}
-
 	/**
 	 * Adds an incoming segment to the segment list
 	 * @param segment The segment to add
@@ -62,14 +42,26 @@ public class Node implements Iterable<Segment>{
 	}
 
 
+	/**
+	 * Bans turning through this node from one neighbour to another, any number of turns can be banned
+	 * @param comingFrom	The node the turn starts from
+	 * @param goingTo		The node the turn ends at
+	 */
 	public void addRestriction(Node comingFrom, Node goingTo){
-		restrictions.put(comingFrom, goingTo);
+		restrictions.computeIfAbsent(comingFrom, k -> new HashSet<>()).add(goingTo);
 	}
 
 
 	public boolean isRestricted(Node comingFrom, Node goingTo){
-		if(!incoming.containsKey(comingFrom) || !outgoing.containsKey(goingTo) || !restrictions.containsKey(comingFrom)) return false;
-		return restrictions.get(comingFrom).equals(goingTo);
+		Set<Node> banned = restrictions.get(comingFrom);
+		return banned != null && banned.contains(goingTo);
+	}
+
+	/**
+	 * @return Whether any turns through this node are banned
+	 */
+	public boolean hasRestrictions(){
+		return !restrictions.isEmpty();
 	}
 
 	/**
@@ -89,6 +81,20 @@ public class Node implements Iterable<Segment>{
 		return outgoing.keySet();
 	}
 
+	/**
+	 * @return All of the segments leaving this node, used for building the routing graph
+	 */
+	public Collection<Segment> getOutgoingSegments(){
+		return outgoing.values();
+	}
+
+	/**
+	 * @return All of the segments arriving at this node
+	 */
+	public Collection<Segment> getIncomingSegments(){
+		return incoming.values();
+	}
+
 	public Set<Node> getIncomingNodes(){
 		return incoming.keySet();
 	}
@@ -196,6 +202,21 @@ public class Node implements Iterable<Segment>{
 		this.parent = parent;
 	}
 
+	/**
+	 * @return The index the last RoutingGraph built from this node gave it, -1 if none has been
+	 */
+	public int getGraphIndex() {
+		return graphIndex;
+	}
+
+	/**
+	 * Called by RoutingGraph when it gives this node an index, so the index can be found without a hash lookup
+	 * @param graphIndex	The index of the node in the graph
+	 */
+	public void setGraphIndex(int graphIndex) {
+		this.graphIndex = graphIndex;
+	}
+
 	public boolean isIntersection() {
 		return isIntersection;
 	}
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+/**
+ * An indexed binary min heap of node indices keyed by float distances. Unlike a PriorityQueue of AStarNodes a node can
+ * only ever be in the heap once, offering it again with a smaller key just moves it up the heap, so no stale entries
+ * build up and nothing is allocated per relaxation.
+ */
+public class NodeHeap {
+
+    private int[] heap;
+    private float[] keys;       //Keys indexed by node
+    private int[] positions;    //Position of each node in the heap, -1 if it isn't in the heap
+    private int size = 0;
+
+    public NodeHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.keys = new float[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Adds the node to the heap, or lowers its key if it is already in the heap with a larger key
+     * @param node  The node to add
+     * @param key   The key of the node
+     */
+    public void offer(int node, float key){
+        int position = positions[node];
+        if(position == -1){
+            position = size++;
+            heap[position] = node;
+            positions[node] = position;
+        }else if(key >= keys[node]){
+            return;
+        }
+        keys[node] = key;
+        siftUp(position);
+    }
+
+    /**
+     * Removes the node with the smallest key from the heap
+     * @return  The node removed
+     */
+    public int poll(){
+        int node = heap[0];
+        positions[node] = -1;
+        size--;
+        if(size > 0){
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return node;
+    }
+
+    /**
+     * @return The smallest key in the heap
+     */
+    public float peekKey(){
+        return keys[heap[0]];
+    }
+
+    public boolean contains(int node){
+        return positions[node] != -1;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Empties the heap, only touches the nodes still left in it so it's cheap to reuse between searches
+     */
+    public void clear(){
+        for(int i = 0; i < size; i++){
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position){
+        int node = heap[position];
+        float key = keys[node];
+        while(position > 0){
+            int parent = (position - 1) >>> 1;
+            if(keys[heap[parent]] <= key) break;
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+
+    private void siftDown(int position){
+        int node = heap[position];
+        float key = keys[node];
+        int half = size >>> 1;
+        while(position < half){
+            int child = 2 * position + 1;
+            if(child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) child++;
+            if(key <= keys[heap[child]]) break;
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+}
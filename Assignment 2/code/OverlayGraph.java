@@ -0,0 +1,379 @@
+import java.io.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * A multi-level overlay over a Partition of the RoutingGraph (customisable route planning). The boundary nodes of a
+ * cell are the nodes with an edge to a different cell on that level, and every cell keeps a clique of the shortest
+ * distances between each pair of its boundary nodes, travelling only inside the cell. A query then only has to search
+ * the cells of its source and target, moving through every other cell using the cliques (see OverlaySearch).
+ * <p>
+ * Like the ContractionHierarchy this is split into a metric independent part, the partition and the boundary nodes
+ * of each cell, and customisation, which works out the cliques for one set of edge weights. Cliques are built bottom
+ * up, those on level 0 by searching the road graph inside the cell and those above by searching the overlay of the
+ * level below inside the cell, with the cells of a level customised in parallel. When only a few roads change, only
+ * the cells containing them (and the cells above those) are customised again.
+ */
+public class OverlayGraph {
+
+    public static final int[] CELL_SIZES = {64, 512, 4096, 32768};     //Largest cell on each level, for partitioning the graph
+
+    private RoutingGraph graph;
+    private Partition partition;
+
+    private int[][] boundaryFirst;      //Level -> cell -> offset of the cell's boundary nodes (size cells + 1)
+    private int[][] boundaryNodes;      //Level -> boundary node indices, grouped by cell
+    private int[][] boundaryIndex;      //Level -> node index -> index within its cell's boundary nodes, -1 if not one
+    private int[][] cliqueFirst;        //Level -> cell -> offset of the cell's clique (size cells + 1)
+    private int[][] parentCells;        //Level -> cell -> the cell containing it on the level above
+
+    private float[] weights;            //Null until customised
+    private float[][] cliques;          //Level -> row major boundary to boundary distances, grouped by cell
+
+    private long customiseTime;
+
+    private ThreadLocal<CellSearch> searches = ThreadLocal.withInitial(CellSearch::new);     //Bound to this copy's cliques
+
+    /**
+     * Finds the boundary nodes of every cell, the overlay has to be customised before it can be searched
+     * @param partition The partition to build the overlay over
+     */
+    public OverlayGraph(Partition partition) {
+        this.partition = partition;
+        this.graph = partition.getGraph();
+        int levelCount = partition.getLevelCount();
+        int nodeCount = graph.getNodeCount();
+        boundaryFirst = new int[levelCount][];
+        boundaryNodes = new int[levelCount][];
+        boundaryIndex = new int[levelCount][nodeCount];
+        cliqueFirst = new int[levelCount][];
+        parentCells = new int[levelCount][];
+
+        for(int level = 0; level < levelCount; level++){
+            final int l = level;
+            int cellCount = partition.getCellCount(level);
+            int[] counts = new int[cellCount + 1];
+            boolean[] boundary = new boolean[nodeCount];
+            for(int v = 0; v < nodeCount; v++){
+                final int node = v;
+                GraphPartitioner.forEachNeighbour(graph, v, w -> {
+                    if(partition.getCell(l, w) != partition.getCell(l, node)) boundary[node] = true;
+                });
+                if(boundary[v]) counts[partition.getCell(level, v) + 1]++;
+            }
+            for(int cell = 0; cell < cellCount; cell++) counts[cell + 1] += counts[cell];
+            boundaryFirst[level] = counts;
+
+            boundaryNodes[level] = new int[counts[cellCount]];
+            int[] fill = Arrays.copyOf(counts, cellCount);
+            Arrays.fill(boundaryIndex[level], -1);
+            for(int v = 0; v < nodeCount; v++){
+                if(!boundary[v]) continue;
+                int cell = partition.getCell(level, v);
+                boundaryIndex[level][v] = fill[cell] - counts[cell];
+                boundaryNodes[level][fill[cell]++] = v;
+            }
+
+            cliqueFirst[level] = new int[cellCount + 1];
+            for(int cell = 0; cell < cellCount; cell++){
+                int size = counts[cell + 1] - counts[cell];
+                cliqueFirst[level][cell + 1] = cliqueFirst[level][cell] + size * size;
+            }
+
+            parentCells[level] = new int[cellCount];
+            for(int v = 0; v < nodeCount; v++){
+                parentCells[level][partition.getCell(level, v)] = level + 1 < levelCount ? partition.getCell(level + 1, v) : 0;
+            }
+        }
+    }
+
+    /**
+     * Creates a customised copy of an overlay, sharing all of the metric independent arrays
+     */
+    private OverlayGraph(OverlayGraph overlay) {
+        this.graph = overlay.graph;
+        this.partition = overlay.partition;
+        this.boundaryFirst = overlay.boundaryFirst;
+        this.boundaryNodes = overlay.boundaryNodes;
+        this.boundaryIndex = overlay.boundaryIndex;
+        this.cliqueFirst = overlay.cliqueFirst;
+        this.parentCells = overlay.parentCells;
+    }
+
+    /**
+     * Customises the overlay for a set of edge weights, the overlay itself is left untouched so it can be customised
+     * for any number of metrics.
+     * @param weights   The weight of each edge of the graph
+     * @return          A copy of the overlay with cliques for the metric
+     */
+    public OverlayGraph customise(float[] weights){
+        long startTime = System.currentTimeMillis();
+        OverlayGraph customised = new OverlayGraph(this);
+        customised.weights = weights;
+        customised.cliques = new float[cliqueFirst.length][];
+        for(int level = 0; level < cliqueFirst.length; level++){
+            final int l = level;
+            customised.cliques[level] = new float[cliqueFirst[level][partition.getCellCount(level)]];
+            IntStream.range(0, partition.getCellCount(level)).parallel().forEach(cell -> customised.customiseCell(l, cell));
+        }
+        customised.customiseTime = System.currentTimeMillis() - startTime;
+        return customised;
+    }
+
+    /**
+     * Customises again after the weights of some edges have changed, only the cells containing those edges and the
+     * cells above them are worked out again. The overlay must already be customised.
+     * @param weights   The new weight of each edge of the graph
+     * @param edges     The edges whose weights changed
+     * @return          The number of cells customised
+     */
+    public int customiseCells(float[] weights, Collection<Integer> edges){
+        long startTime = System.currentTimeMillis();
+        this.weights = weights;
+        int levelCount = cliqueFirst.length;
+        List<Set<Integer>> dirty = new ArrayList<>();
+        for(int level = 0; level < levelCount; level++) dirty.add(new HashSet<>());
+        for(int edge : edges){
+            int tail = graph.getTail(edge);
+            int head = graph.getHead(edge);
+            for(int level = 0; level < levelCount; level++){
+                if(partition.getCell(level, tail) == partition.getCell(level, head)){
+                    dirty.get(level).add(partition.getCell(level, tail));
+                    break;      //Cells above are marked when this one is customised
+                }
+            }
+        }
+
+        int customisedCells = 0;
+        for(int level = 0; level < levelCount; level++){
+            final int l = level;
+            dirty.get(level).parallelStream().forEach(cell -> customiseCell(l, cell));
+            customisedCells += dirty.get(level).size();
+            if(level + 1 < levelCount){
+                for(int cell : dirty.get(level)) dirty.get(level + 1).add(parentCells[level][cell]);
+            }
+        }
+        customiseTime = System.currentTimeMillis() - startTime;
+        return customisedCells;
+    }
+
+    /**
+     * Works out the clique of one cell, the cells of the level below must already be customised
+     */
+    private void customiseCell(int level, int cell){
+        CellSearch search = getSearch();
+        int first = boundaryFirst[level][cell];
+        int size = boundaryFirst[level][cell + 1] - first;
+        int offset = cliqueFirst[level][cell];
+        for(int i = 0; i < size; i++){
+            search.run(level, boundaryNodes[level][first + i], -1);
+            for(int j = 0; j < size; j++){
+                cliques[level][offset + i * size + j] = search.getDistance(boundaryNodes[level][first + j]);
+            }
+        }
+    }
+
+    /**
+     * Finds the shortest path between two nodes of the same cell staying inside the cell, used to unpack the clique
+     * arcs of a path into road edges
+     * @param level     The level of the cell
+     * @param from      The node index the path starts at
+     * @param to        The node index the path ends at
+     * @return          The edges of the path in order
+     */
+    public List<Integer> unpack(int level, int from, int to){
+        CellSearch search = getSearch();
+        search.run(-1 - level, from, to);
+        List<Integer> edges = new ArrayList<>();
+        for(int node = to; node != from; node = graph.getTail(search.parentEdges[node])){
+            edges.add(search.parentEdges[node]);
+        }
+        Collections.reverse(edges);
+        return edges;
+    }
+
+    private CellSearch getSearch(){
+        return searches.get();
+    }
+
+    /**
+     * @param level The level
+     * @param node  A node index
+     * @return      The index of the node within its cell's boundary nodes on the level, -1 if it isn't a boundary node
+     */
+    public int getBoundaryIndex(int level, int node){
+        return boundaryIndex[level][node];
+    }
+
+    /**
+     * @return The first position of the cell's boundary nodes, see getBoundaryNode
+     */
+    public int getBoundaryFirst(int level, int cell){
+        return boundaryFirst[level][cell];
+    }
+
+    public int getBoundaryEnd(int level, int cell){
+        return boundaryFirst[level][cell + 1];
+    }
+
+    public int getBoundaryNode(int level, int position){
+        return boundaryNodes[level][position];
+    }
+
+    /**
+     * @param level The level
+     * @param cell  The cell
+     * @param from  The index of the boundary node within the cell the path starts at
+     * @param to    The index of the boundary node within the cell the path ends at
+     * @return      The shortest distance between the two staying inside the cell
+     */
+    public float getClique(int level, int cell, int from, int to){
+        int size = boundaryFirst[level][cell + 1] - boundaryFirst[level][cell];
+        return cliques[level][cliqueFirst[level][cell] + from * size + to];
+    }
+
+    public Partition getPartition(){
+        return partition;
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    public float[] getWeights(){
+        return weights;
+    }
+
+    /**
+     * @return The total number of clique entries over every level
+     */
+    public long getCliqueSize(){
+        long size = 0;
+        for(int[] first : cliqueFirst) size += first[first.length - 1];
+        return size;
+    }
+
+    /**
+     * @return How long the last customisation took in milliseconds
+     */
+    public long getCustomiseTime(){
+        return customiseTime;
+    }
+
+    /**
+     * Writes the cliques of a customised overlay to a binary file. The layout is the level count, then for each level
+     * the number of entries and the entries, all big endian. The partition is written separately.
+     * @param file  The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void writeMetric(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            out.writeInt(cliques.length);
+            for(float[] clique : cliques){
+                out.writeInt(clique.length);
+                for(float distance : clique) out.writeFloat(distance);
+            }
+        }
+    }
+
+    /**
+     * Reads cliques previously written with writeMetric
+     * @param file      The file to read from
+     * @param weights   The edge weights the cliques were customised with
+     * @return          A copy of this overlay customised with the cliques read
+     * @throws IOException If the file couldn't be read or was written for a different partition
+     */
+    public OverlayGraph readMetric(File file, float[] weights) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            OverlayGraph customised = new OverlayGraph(this);
+            customised.weights = weights;
+            int levelCount = in.readInt();
+            if(levelCount != cliqueFirst.length) throw new IOException("Metric was customised for a different partition");
+            customised.cliques = new float[levelCount][];
+            for(int level = 0; level < levelCount; level++){
+                int size = in.readInt();
+                if(size != cliqueFirst[level][partition.getCellCount(level)]) throw new IOException("Metric was customised for a different partition");
+                customised.cliques[level] = new float[size];
+                for(int i = 0; i < size; i++) customised.cliques[level][i] = in.readFloat();
+            }
+            return customised;
+        }
+    }
+
+    /**
+     * A Dijkstra search confined to one cell, either over the overlay of the level below or over road edges
+     */
+    private class CellSearch {
+        float[] distances;
+        int[] parentEdges;
+        int[] rounds;
+        int round = 0;
+        NodeHeap frontier;
+
+        CellSearch(){
+            distances = new float[graph.getNodeCount()];
+            parentEdges = new int[graph.getNodeCount()];
+            rounds = new int[graph.getNodeCount()];
+            frontier = new NodeHeap(graph.getNodeCount());
+        }
+
+        /**
+         * Searches from the source inside its cell. A level of 0 or more searches the overlay of the level below
+         * (road edges for level 0) to find clique distances, a level of -1 - l searches road edges inside the
+         * level l cell and keeps the edge each node was reached by.
+         * @param level     The level of the cell
+         * @param source    The node index the search starts at
+         * @param target    The node index to stop at, -1 to search the whole cell
+         */
+        void run(int level, int source, int target){
+            round++;
+            frontier.clear();
+            boolean roadEdges = level <= 0;
+            int cellLevel = level < 0 ? -1 - level : level;
+            int cell = partition.getCell(cellLevel, source);
+            setDistance(source, 0, -1);
+
+            while(!frontier.isEmpty()){
+                int node = frontier.poll();
+                if(node == target) return;
+                float distance = distances[node];
+
+                if(!roadEdges){
+                    //Across the clique of the node's cell on the level below
+                    int below = level - 1;
+                    int subCell = partition.getCell(below, node);
+                    int from = boundaryIndex[below][node];
+                    int first = boundaryFirst[below][subCell];
+                    int size = boundaryFirst[below][subCell + 1] - first;
+                    int offset = cliqueFirst[below][subCell] + from * size;
+                    for(int to = 0; to < size; to++){
+                        relax(boundaryNodes[below][first + to], -1, distance + cliques[below][offset + to]);
+                    }
+                }
+
+                for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                    int head = graph.getHead(edge);
+                    if(partition.getCell(cellLevel, head) != cell) continue;
+                    //Above level 0 edges inside a cell of the level below are covered by its clique
+                    if(!roadEdges && partition.getCell(level - 1, head) == partition.getCell(level - 1, node)) continue;
+                    relax(head, edge, distance + weights[edge]);
+                }
+            }
+        }
+
+        private void relax(int node, int edge, float distance){
+            if(distance < getDistance(node)) setDistance(node, distance, edge);
+        }
+
+        private void setDistance(int node, float distance, int edge){
+            distances[node] = distance;
+            parentEdges[node] = edge;
+            rounds[node] = round;
+            frontier.offer(node, distance);
+        }
+
+        float getDistance(int node){
+            return rounds[node] == round ? distances[node] : RoutingGraph.INFINITY;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.*;
+
+/**
+ * Point to point search over a customised OverlayGraph. Each node is searched on the highest level at which its
+ * cell holds neither the source nor the target: nodes in the lowest level cells of the source and target relax their
+ * road edges, every other node jumps straight across its cell using the cell's clique and then takes the road edges
+ * leaving the cell. The search only ever settles nodes in the two end cells and boundary nodes of the overlay.
+ * Not thread safe, each thread should have its own instance.
+ */
+public class OverlaySearch {
+
+    private OverlayGraph overlay;
+    private RoutingGraph graph;
+    private Partition partition;
+
+    private float[] distances;
+    private int[] parentNodes;
+    private int[] parentEdges;      //Road edge the node was reached by, -1 if it was a clique arc
+    private int[] parentLevels;     //Level of the clique arc the node was reached by
+    private int[] rounds;
+    private int round = 0;
+    private NodeHeap frontier;
+    private int settledCount;
+
+    public OverlaySearch(OverlayGraph overlay) {
+        this.overlay = overlay;
+        this.graph = overlay.getGraph();
+        this.partition = overlay.getPartition();
+        int nodeCount = graph.getNodeCount();
+        distances = new float[nodeCount];
+        parentNodes = new int[nodeCount];
+        parentEdges = new int[nodeCount];
+        parentLevels = new int[nodeCount];
+        rounds = new int[nodeCount];
+        frontier = new NodeHeap(nodeCount);
+    }
+
+    /**
+     * Finds the shortest path between two nodes
+     * @param start The start of the path
+     * @param end   The end of the path
+     * @return      The nodes of the path in order, empty if there is no path
+     */
+    public List<Node> pathfind(Node start, Node end){
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if(source == -1 || target == -1 || Float.isInfinite(search(source, target))) return new ArrayList<>();
+
+        //Walk back from the target, unpacking clique arcs into the road edges they stand for
+        List<Node> path = new ArrayList<>();
+        for(int node = target; node != source; node = parentNodes[node]){
+            if(parentEdges[node] != -1){
+                path.add(graph.getNode(node));
+                continue;
+            }
+            List<Integer> edges = overlay.unpack(parentLevels[node], parentNodes[node], node);
+            for(int i = edges.size() - 1; i >= 0; i--){
+                path.add(graph.getNode(graph.getHead(edges.get(i))));
+            }
+        }
+        path.add(start);
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Finds the shortest distance between two nodes
+     * @param source    The index of the source node
+     * @param target    The index of the target node
+     * @return          The distance, infinity if the target can't be reached
+     */
+    public float search(int source, int target){
+        round++;
+        frontier.clear();
+        settledCount = 0;
+        setDistance(source, 0, -1, -1, 0);
+        float[] weights = overlay.getWeights();
+
+        while(!frontier.isEmpty()){
+            int node = frontier.poll();
+            settledCount++;
+            if(node == target) return distances[node];
+            float distance = distances[node];
+            int level = queryLevel(node, source, target);
+
+            if(level >= 0){
+                int cell = partition.getCell(level, node);
+                int from = overlay.getBoundaryIndex(level, node);
+                int first = overlay.getBoundaryFirst(level, cell);
+                for(int position = first; position < overlay.getBoundaryEnd(level, cell); position++){
+                    relax(overlay.getBoundaryNode(level, position), node, -1, level,
+                            distance + overlay.getClique(level, cell, from, position - first));
+                }
+            }
+
+            for(int edge = graph.firstOut(node); edge < graph.endOut(node); edge++){
+                int head = graph.getHead(edge);
+                if(level >= 0 && partition.getCell(level, head) == partition.getCell(level, node)) continue;
+                relax(head, node, edge, 0, distance + weights[edge]);
+            }
+        }
+        return RoutingGraph.INFINITY;
+    }
+
+    /**
+     * @return The highest level on which the node's cell holds neither the source nor the target, -1 if there isn't one
+     */
+    private int queryLevel(int node, int source, int target){
+        for(int level = partition.getLevelCount() - 1; level >= 0; level--){
+            int cell = partition.getCell(level, node);
+            if(cell != partition.getCell(level, source) && cell != partition.getCell(level, target)) return level;
+        }
+        return -1;
+    }
+
+    private void relax(int node, int parent, int edge, int level, float distance){
+        if(distance < getDistance(node)) setDistance(node, distance, parent, edge, level);
+    }
+
+    private void setDistance(int node, float distance, int parent, int edge, int level){
+        distances[node] = distance;
+        parentNodes[node] = parent;
+        parentEdges[node] = edge;
+        parentLevels[node] = level;
+        rounds[node] = round;
+        frontier.offer(node, distance);
+    }
+
+    private float getDistance(int node){
+        return rounds[node] == round ? distances[node] : RoutingGraph.INFINITY;
+    }
+
+    /**
+     * @return The number of nodes settled by the last search
+     */
+    public int getSettledCount(){
+        return settledCount;
+    }
+
+    public OverlayGraph getOverlay(){
+        return overlay;
+    }
+}
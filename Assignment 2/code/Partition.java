@@ -0,0 +1,97 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * A nested multi-level partition of the nodes of a RoutingGraph into cells. Level 0 has the smallest cells and every
+ * cell is completely inside one cell of each level above it. Built by GraphPartitioner and used by the OverlayGraph.
+ */
+public class Partition {
+
+    private RoutingGraph graph;
+    private int[][] cells;          //Level -> node index -> cell
+    private int[] cellCounts;       //Number of cells on each level
+    private long buildTime;
+
+    Partition(RoutingGraph graph, int[][] cells, int[] cellCounts, long buildTime) {
+        this.graph = graph;
+        this.cells = cells;
+        this.cellCounts = cellCounts;
+        this.buildTime = buildTime;
+    }
+
+    /**
+     * @param level The level
+     * @param node  A node index of the graph
+     * @return      The cell the node is in on that level
+     */
+    public int getCell(int level, int node){
+        return cells[level][node];
+    }
+
+    public int getCellCount(int level){
+        return cellCounts[level];
+    }
+
+    public int getLevelCount(){
+        return cells.length;
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * @return How long partitioning took in milliseconds, 0 if the partition was read from a file
+     */
+    public long getBuildTime(){
+        return buildTime;
+    }
+
+    /**
+     * Writes the partition to a binary file. The layout is the level count, node count, the node IDs, then for each
+     * level the cell count and the cell of each node, all big endian.
+     * @param file  The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void write(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            out.writeInt(cells.length);
+            out.writeInt(graph.getNodeCount());
+            for(int v = 0; v < graph.getNodeCount(); v++) out.writeInt(graph.getExternalId(v));
+            for(int level = 0; level < cells.length; level++){
+                out.writeInt(cellCounts[level]);
+                for(int cell : cells[level]) out.writeInt(cell);
+            }
+        }
+    }
+
+    /**
+     * Reads a partition previously written with write
+     * @param file      The file to read from
+     * @param graph     The graph the partition was built for
+     * @return          The partition read
+     * @throws IOException If the file couldn't be read or was built for a different graph
+     */
+    public static Partition read(File file, RoutingGraph graph) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            int levelCount = in.readInt();
+            int nodeCount = in.readInt();
+            if(nodeCount != graph.getNodeCount()) throw new IOException("Partition was built for a different graph");
+
+            int[] order = new int[nodeCount];       //Position in the file -> node index
+            for(int i = 0; i < nodeCount; i++){
+                int node = graph.indexOfId(in.readInt());
+                if(node == -1) throw new IOException("Partition was built for a different graph");
+                order[i] = node;
+            }
+
+            int[][] cells = new int[levelCount][nodeCount];
+            int[] cellCounts = new int[levelCount];
+            for(int level = 0; level < levelCount; level++){
+                cellCounts[level] = in.readInt();
+                for(int i = 0; i < nodeCount; i++) cells[level][order[i]] = in.readInt();
+            }
+            return new Partition(graph, cells, cellCounts, 0);
+        }
+    }
+}
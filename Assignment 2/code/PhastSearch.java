@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+/**
+ * One-to-all shortest path search over a ContractionHierarchy (PHAST). A small Dijkstra search is run from the
+ * source over upward arcs only, then every node is visited once in decreasing rank order, pulling distances down
+ * its incoming downward arcs. The sweep is a straight pass over the arrays in the order they are stored, with no
+ * priority queue involved, which makes it much faster than Dijkstra when the distance to every node is wanted.
+ * Not thread safe, each thread should have its own instance.
+ */
+public class PhastSearch {
+
+    private ContractionHierarchy hierarchy;
+    private float[] distances;      //Indexed by sweep position
+    private NodeHeap heap;
+
+    public PhastSearch(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        this.distances = new float[hierarchy.getGraph().getNodeCount()];
+        this.heap = new NodeHeap(distances.length);
+    }
+
+    /**
+     * Computes the distance from the source to every node of the graph
+     * @param source    The index of the source node
+     * @return          The distance to every node, indexed by node index (infinity if unreachable)
+     */
+    public float[] search(int source){
+        Arrays.fill(distances, RoutingGraph.INFINITY);
+
+        //Upward search
+        int start = hierarchy.getPosition(source);
+        distances[start] = 0;
+        heap.clear();
+        heap.offer(start, 0);
+        while(!heap.isEmpty()){
+            int position = heap.poll();
+            float distance = distances[position];
+            for(int arc = hierarchy.getUpFirst(position); arc < hierarchy.getUpEnd(position); arc++){
+                int head = hierarchy.getUpHead(arc);
+                float newDistance = distance + hierarchy.getUpWeight(arc);
+                if(newDistance < distances[head]){
+                    distances[head] = newDistance;
+                    heap.offer(head, newDistance);
+                }
+            }
+        }
+
+        //Downward sweep, positions are in decreasing rank order so every tail is final before it's used
+        for(int position = 0; position < distances.length; position++){
+            float best = distances[position];
+            for(int arc = hierarchy.getDownFirst(position); arc < hierarchy.getDownEnd(position); arc++){
+                float viaTail = distances[hierarchy.getDownTail(arc)] + hierarchy.getDownWeight(arc);
+                if(viaTail < best) best = viaTail;
+            }
+            distances[position] = best;
+        }
+
+        float[] result = new float[distances.length];
+        for(int position = 0; position < distances.length; position++){
+            result[hierarchy.getNodeAt(position)] = distances[position];
+        }
+        return result;
+    }
+
+    public ContractionHierarchy getHierarchy(){
+        return hierarchy;
+    }
+}
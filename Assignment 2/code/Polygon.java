@@ -1,4 +1,3 @@
-import java.awt.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -7,40 +6,15 @@ import java.util.Map;
 public class Polygon implements Comparable{
 	private int type;
 	private int zoomLevel;
-	private Color colour;
 	private String label;
 	private int renderPriority;
 
-	private List<List<Location>> polygonPoints;
+	private GeometryStore geometry;
+	private List<Integer> rings;	//Polylines in the geometry store making up the polygon
 
-	private static Map<Integer, Color> COLOUR_MAP = new HashMap<>();                        //Used for obtaining the different colours for different types of polygons
 	private static Map<Integer, Integer> RENDER_PRIORITIES = new HashMap<>();               //Used for obtaining the rendering priority for different types of polygons
+	private static Map<Integer, String> TYPE_NAMES = new HashMap<>();                       //Used for describing polygons to the user
 	static{
-		//Statically declare the members of COLOUR_MAP HashMap
-		COLOUR_MAP.put(64, new Color(73, 134, 205));                               //Lake
-		COLOUR_MAP.put(65, new Color(73, 134, 205));                               //Lake
-		COLOUR_MAP.put(2, Color.GRAY);                                                      //City?
-		COLOUR_MAP.put(69, Color.BLUE);                                                     //Blue-Unknown
-		COLOUR_MAP.put(7, Color.GRAY);                                                      //Airport
-		COLOUR_MAP.put(71, new Color(73, 134, 205));                               //River
-		COLOUR_MAP.put(72, new Color(73, 134, 205));                               //River
-		COLOUR_MAP.put(40, new Color(73, 134, 205));                               //Ocean
-		COLOUR_MAP.put(8, Color.ORANGE);                                                    //Shopping-Centre
-		COLOUR_MAP.put(10, Color.GREEN);                                                    //University
-		COLOUR_MAP.put(14, Color.DARK_GRAY);                                                //Airport-Runway
-		COLOUR_MAP.put(80, new Color(204, 102, 0));                                //Woods
-		COLOUR_MAP.put(19, Color.ORANGE);                                                   //Man made area
-		COLOUR_MAP.put(22, Color.GREEN);                                                    //National Park
-		COLOUR_MAP.put(23, Color.GREEN);                                                    //City Park
-		COLOUR_MAP.put(24, Color.GREEN);                                                    //Golf
-		COLOUR_MAP.put(25, Color.pink);                                                     //Sport
-		COLOUR_MAP.put(26, Color.DARK_GRAY);                                                //Cemetery
-		COLOUR_MAP.put(11, Color.PINK);                                                     //Hospital
-		COLOUR_MAP.put(5, Color.DARK_GRAY);                                                 //Car Park
-		COLOUR_MAP.put(60, new Color(73, 134, 205));                               //Lake
-		COLOUR_MAP.put(62, new Color(73, 134, 205));                               //Lake
-		COLOUR_MAP.put(30, Color.GREEN);                                                    //State Park
-
 		//Statically declare members of RENDER_PRIORITIES HashMap
 		RENDER_PRIORITIES.put(64, 1);
 		RENDER_PRIORITIES.put(65, 1);
@@ -65,16 +39,42 @@ public class Polygon implements Comparable{
 		RENDER_PRIORITIES.put(5, 2);
 		RENDER_PRIORITIES.put(14, 3);
 		RENDER_PRIORITIES.put(19, 3);
+
+		//Statically declare members of TYPE_NAMES HashMap
+		TYPE_NAMES.put(2, "City");
+		TYPE_NAMES.put(5, "Car Park");
+		TYPE_NAMES.put(7, "Airport");
+		TYPE_NAMES.put(8, "Shopping Centre");
+		TYPE_NAMES.put(10, "University");
+		TYPE_NAMES.put(11, "Hospital");
+		TYPE_NAMES.put(14, "Airport Runway");
+		TYPE_NAMES.put(19, "Man Made Area");
+		TYPE_NAMES.put(22, "National Park");
+		TYPE_NAMES.put(23, "City Park");
+		TYPE_NAMES.put(24, "Golf Course");
+		TYPE_NAMES.put(25, "Sport");
+		TYPE_NAMES.put(26, "Cemetery");
+		TYPE_NAMES.put(30, "State Park");
+		TYPE_NAMES.put(40, "Ocean");
+		TYPE_NAMES.put(60, "Lake");
+		TYPE_NAMES.put(62, "Lake");
+		TYPE_NAMES.put(64, "Lake");
+		TYPE_NAMES.put(65, "Lake");
+		TYPE_NAMES.put(71, "River");
+		TYPE_NAMES.put(72, "River");
+		TYPE_NAMES.put(80, "Woods");
 	}
 
-	public Polygon(int type, int zoomLevel){
+	public Polygon(GeometryStore geometry, int type, int zoomLevel){
+		this.geometry = geometry;
 		this.type = type;
 		this.zoomLevel = zoomLevel;
-		this.polygonPoints = new ArrayList<>();
+		this.rings = new ArrayList<>();
 	}
 
-	public Polygon(){
-		this.polygonPoints = new ArrayList<>();
+	public Polygon(GeometryStore geometry){
+		this.geometry = geometry;
+		this.rings = new ArrayList<>();
 	}
 
 	/**
@@ -93,51 +93,48 @@ public class Polygon implements Comparable{
 	}
 
 	/**
-	 * Adds a list of points to the polygon points, as according to the Polish Format provided polygons defined can have
+	 * Adds a ring of points to the polygon, as according to the Polish Format provided polygons defined can have
 	 * multiple different polygons inside of them (for polygons that have holes in them)
-	 * @param points The list of points to add
+	 * @param polyline The polyline in the geometry store holding the ring's points
 	 */
-	public void addPoint(List<Location> points){
-		polygonPoints.add(points);
+	public void addRing(int polyline){
+		rings.add(polyline);
 	}
 
 	/**
-	 * Renders the polygon to the graphics pane based off the scale and origin provided.
-	 * @param g             The graphics pane in which to render the node
-	 * @param scale         The the number of pixels per kilometer
-	 * @param origin        The origin of which to render based off
-	 */
-	public void redraw(Graphics g, double scale, Location origin){
-		for(List<Location> polygon : polygonPoints){
-			int[] xPoints = new int[polygon.size()];
-			int[] yPoints = new int[polygon.size()];
-			boolean contains = false;
-			for(int i = 0; i < polygon.size(); i++){
-				Point point = polygon.get(i).asPoint(origin, scale);
-
-				//If any one of the polygon's points lie inside of the graphics pane then we should render the entire polygon.
-				if(g.getClipBounds().contains(point)) contains = true;
-				xPoints[i] = point.x;
-				yPoints[i] = point.y;
-			}
-
-			if(contains){
-				g.setColor(colour);
-				g.fillPolygon(xPoints, yPoints, polygon.size());
-			}
-		}
-	}
-
-	/**
-	 * Sets the polygons type and also based off that gets the colour and render priority
+	 * Sets the polygons type and also based off that gets the render priority
 	 * @param type The type to assign to this polygon.
 	 */
 	public void setType(int type){
 		this.type = type;
-		colour = COLOUR_MAP.get(type);
 		renderPriority = RENDER_PRIORITIES.get(type);
 	}
 
+	/**
+	 * @return The type of this polygon
+	 */
+	public int getType(){
+		return type;
+	}
+
+	/**
+	 * @return What sort of place the polygon is, from its type
+	 */
+	public String getTypeName(){
+		return TYPE_NAMES.getOrDefault(type, "Type " + type);
+	}
+
+	/**
+	 * @return The polylines in the geometry store making up the polygon's rings
+	 */
+	public List<Integer> getRings(){
+		return rings;
+	}
+
+	public GeometryStore getGeometry(){
+		return geometry;
+	}
+
 	/**
 	 * @return The zoom level of this polygon
 	 */
@@ -156,7 +153,7 @@ public class Polygon implements Comparable{
 	 * @return Returns true if this polygon has a type, zoomLevel and any polygon points
 	 */
 	public boolean hasValues(){
-		return type != 0 && zoomLevel != 0 && polygonPoints != null && polygonPoints.size() != 0;
+		return type != 0 && zoomLevel != 0 && rings != null && rings.size() != 0;
 	}
 
 	@Override
@@ -164,7 +161,6 @@ public class Polygon implements Comparable{
 		return "Polygon{" +
 				"type=" + type +
 				", zoomLevel=" + zoomLevel +
-				", colour=" + colour +
 				", label='" + label + '\'' +
 				'}';
 	}
@@ -1,4 +1,4 @@
-import java.awt.*;
+import java.util.List;
 
 public class QuadNode{
 	public QuadNode[] children = new QuadNode[4];
@@ -16,16 +16,6 @@ public class QuadNode{
 	}
 
 
-	public void redraw(Graphics g, Location origin, double scale){
-		Point p = new Location(location.x, location.y + height).asPoint(origin, scale);
-		g.setColor(Color.RED);
-		g.drawRect(p.x, p.y, (int)(width * scale), (int)(height * scale));
-		for(QuadNode child : children){
-			if(child == null) continue;
-			child.redraw(g, origin, scale);
-		}
-	}
-
 	/**
 	 * @return The value of this QuadNode
 	 */
@@ -206,6 +196,51 @@ public class QuadNode{
 		return index == -1 ? null : children[index];
 	}
 
+	/**
+	 * Finds every node held in this QuadNode or below it that lies inside a box. Quadrants that don't overlap the box
+	 * are skipped along with everything below them, so only the part of the tree around the box is visited.
+	 * @param minX	The left of the box
+	 * @param minY	The bottom of the box
+	 * @param maxX	The right of the box
+	 * @param maxY	The top of the box
+	 * @param found	Has the nodes inside the box added to it
+	 */
+	public void collect(double minX, double minY, double maxX, double maxY, List<Node> found){
+		if(location.x > maxX || location.x + width < minX || location.y > maxY || location.y + height < minY) return;
+		if(hasValue() && value.getX() >= minX && value.getX() <= maxX && value.getY() >= minY && value.getY() <= maxY){
+			found.add(value);
+		}
+		for(QuadNode child : children){
+			if(child != null) child.collect(minX, minY, maxX, maxY, found);
+		}
+	}
+
+	/**
+	 * Finds the node held in this QuadNode or below it that is nearest to a point. Quadrants further from the point than
+	 * the nearest node found so far are skipped, and the quadrant the point is in is searched first so a near node is
+	 * found quickly.
+	 * @param x	The x position of the point
+	 * @param y	The y position of the point
+	 * @return	The nearest node, null if there are none
+	 */
+	public Node nearest(double x, double y){
+		return nearest(x, y, null);
+	}
+
+	private Node nearest(double x, double y, Node best){
+		double bestDistance = best == null ? Double.POSITIVE_INFINITY : MathUtil.distance(x, y, best.getX(), best.getY());
+		if(MathUtil.distance(x, y, MathUtil.constrain(x, location.x, location.x + width), MathUtil.constrain(y, location.y, location.y + height)) > bestDistance){
+			return best;
+		}
+		if(hasValue() && MathUtil.distance(x, y, value.getX(), value.getY()) < bestDistance) best = value;
+		QuadNode first = getChild(x, y);
+		if(first != null) best = first.nearest(x, y, best);
+		for(QuadNode child : children){
+			if(child != null && child != first) best = child.nearest(x, y, best);
+		}
+		return best;
+	}
+
 	/**
 	 * @return The parent of this QuadNode (Root QuadNode will return null)
 	 */
@@ -1,4 +1,3 @@
-import java.awt.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -42,21 +41,6 @@ public class Road{
 
 	}
 
-	/**
-	 * Draws the road (the segments associated to the road) to the graphics pane provided, locations based off the scale
-	 * and origin of the rendering. Roads will be highlighted in red if the boolean selected is true, as the user has
-	 * selected the road.
-	 * @param g         The graphics pane in which to render to
-	 * @param scale     The numbers of pixels per kilometer
-	 * @param origin    The origin of the rendering
-	 * @param selected  Whether or not the road has been selected
-	 */
-	public void redraw(Graphics g, double scale, Location origin, boolean selected, List<Segment> partOfPath){
-		for(Segment segment : segments){
-			segment.redraw(g, scale, origin, selected, partOfPath.contains(segment));
-		}
-	}
-
 	@Override
 	public String toString(){
 		return name;
@@ -90,4 +74,25 @@ public class Road{
 	public Class getRoadClass() {
 		return roadClass;
 	}
+
+	/**
+	 * @return Whether cars are allowed on the road
+	 */
+	public boolean isForCar() {
+		return forCar;
+	}
+
+	/**
+	 * @return Whether pedestrians are allowed on the road
+	 */
+	public boolean isForPedestrians() {
+		return forPed;
+	}
+
+	/**
+	 * @return Whether bicycles are allowed on the road
+	 */
+	public boolean isForBicycles() {
+		return forByc;
+	}
 }
@@ -0,0 +1,141 @@
+import java.util.*;
+
+/**
+ * A bounded cache of routes, so asking for the same route again (clicking the same start and end, or switching back
+ * to a metric already used) doesn't search again. Routes are keyed by their start and end, the version of the metric's
+ * weights and the mode of travel, and kept compactly as the edge ids along them. The least recently used route is
+ * dropped once the cache is full.
+ * <p>
+ * Routes are only valid for the graph version they were found on: once a road is closed, reopened or changes speed
+ * the next lookup empties the cache. Metrics get a new version whenever their weights change, so a replaced or
+ * updated profile never hits routes found with its old weights. Not thread safe.
+ */
+public class RouteCache {
+
+    private static final int[] NO_PATH = new int[0];
+
+    private RoutingGraph graph;
+    private int graphVersion;
+    private LinkedHashMap<Key, int[]> routes;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param graph     The graph routes are found on
+     * @param capacity  The most routes to keep
+     */
+    public RouteCache(RoutingGraph graph, int capacity) {
+        this.graph = graph;
+        this.graphVersion = graph.getVersion();
+        this.routes = new LinkedHashMap<Key, int[]>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest){
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up a route, counting a hit or a miss
+     * @param start     The start of the route
+     * @param end       The end of the route
+     * @param metric    The metric minimised
+     * @param mode      The mode of travel
+     * @return          The nodes of the route in order (empty if it is known there is no route), null if it isn't cached
+     */
+    public List<Node> get(Node start, Node end, Metric metric, TravelMode mode){
+        if(graph.getVersion() != graphVersion){
+            routes.clear();
+            graphVersion = graph.getVersion();
+        }
+        int[] edges = routes.get(new Key(graph.indexOf(start), graph.indexOf(end), metric.getVersion(), mode, graphVersion));
+        if(edges == null){
+            misses++;
+            return null;
+        }
+        hits++;
+        List<Node> path = new ArrayList<>(edges.length + 1);
+        if(edges == NO_PATH) return path;
+        path.add(start);
+        for(int edge : edges) path.add(graph.getNode(graph.getHead(edge)));
+        return path;
+    }
+
+    /**
+     * Caches a route, storing the cheapest edge for the metric between each pair of nodes along it
+     * @param start     The start of the route
+     * @param end       The end of the route
+     * @param metric    The metric minimised
+     * @param mode      The mode of travel
+     * @param path      The nodes of the route in order, empty if there is no route
+     */
+    public void put(Node start, Node end, Metric metric, TravelMode mode, List<Node> path){
+        if(graph.getVersion() != graphVersion) return;     //Found on a graph the cache hasn't caught up with yet
+        int[] edges = path.isEmpty() ? NO_PATH : new int[path.size() - 1];
+        float[] weights = metric.getWeights(mode);
+        for(int i = 0; i + 1 < path.size(); i++){
+            int from = graph.indexOf(path.get(i));
+            int to = graph.indexOf(path.get(i + 1));
+            int best = -1;
+            for(int edge = graph.firstOut(from); edge < graph.endOut(from); edge++){
+                if(graph.getHead(edge) == to && (best == -1 || weights[edge] < weights[best])) best = edge;
+            }
+            if(best == -1) return;      //Not a path of this graph
+            edges[i] = best;
+        }
+        routes.put(new Key(graph.indexOf(start), graph.indexOf(end), metric.getVersion(), mode, graphVersion), edges);
+    }
+
+    /**
+     * Empties the cache
+     */
+    public void clear(){
+        routes.clear();
+    }
+
+    public int size(){
+        return routes.size();
+    }
+
+    public int getHits(){
+        return hits;
+    }
+
+    public int getMisses(){
+        return misses;
+    }
+
+    private static class Key {
+        private final int start;
+        private final int end;
+        private final int metricVersion;
+        private final TravelMode mode;
+        private final int graphVersion;
+
+        Key(int start, int end, int metricVersion, TravelMode mode, int graphVersion) {
+            this.start = start;
+            this.end = end;
+            this.metricVersion = metricVersion;
+            this.mode = mode;
+            this.graphVersion = graphVersion;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return start == key.start && end == key.end && metricVersion == key.metricVersion && mode == key.mode
+                    && graphVersion == key.graphVersion;
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = start;
+            hash = 31 * hash + end;
+            hash = 31 * hash + metricVersion;
+            hash = 31 * hash + mode.ordinal();
+            return 31 * hash + graphVersion;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.util.*;
+
+/**
+ * A compact, array based copy of the road graph used by the routing algorithms. Nodes are given dense indices and
+ * edges are stored in compressed sparse row (CSR) form, so the outgoing edges of node u are the edge ids firstOut[u]
+ * up to firstOut[u + 1]. A reverse CSR is also kept so searches can run over incoming edges. Edge weights are kept
+ * separately by each Metric.
+ * <p>
+ * Node indices are handed out along a Hilbert curve (see HilbertCurve) rather than in the order of the map's hash
+ * table, so nodes close together in the graph are mostly close together in every array indexed by node, and a search
+ * stays within a small part of memory. The IDs from the data files are kept in externalIds to map back and forth, and
+ * each Node keeps its own index so looking one up doesn't go through a hash table.
+ * <p>
+ * Every edge has an access mask of the TravelModes allowed to use it, so one graph serves every mode. One way roads
+ * get an edge against their direction as well, allowed only for the modes that don't follow one way restrictions.
+ * <p>
+ * Roads can be closed or have their speed changed while the program runs. These live updates are kept per edge, along
+ * with a version number that goes up with every change, and are picked up by Metric.updateEdges.
+ */
+public class RoutingGraph {
+
+    public static final float INFINITY = Float.POSITIVE_INFINITY;
+
+    private Node[] nodes;
+    private int[] externalIds;  //Node index -> ID in the data files
+    private int[] sortedIds;    //The IDs in increasing order, for looking up indices by ID
+    private int[] idIndices;    //Node index of each ID in sortedIds
+
+    private int[] firstOut;     //Outgoing edge offsets per node (size n + 1)
+    private int[] head;         //Edge -> node the edge goes to
+    private int[] tail;         //Edge -> node the edge comes from
+    private int[] firstIn;      //Incoming edge offsets per node (size n + 1)
+    private int[] inEdges;      //Edge ids sorted by the node they go to
+
+    private Segment[] segments;
+    private float[] lengths;    //Length of each edge in km
+    private byte[] access;      //Mask of the travel modes allowed on each edge
+    private boolean[] closed;   //Edges closed by a live update
+    private float[] speeds;     //Speed set by a live update in km/h, NaN to use the speed limit
+    private int version = 0;    //Goes up every time an edge is updated
+
+    private RoutingGraph(){ }
+
+    /**
+     * Builds the routing graph from the outgoing segments of every node in the map.
+     * @param mapNodes  The nodes of the map
+     * @return          The built graph
+     */
+    public static RoutingGraph build(Collection<Node> mapNodes){
+        RoutingGraph graph = new RoutingGraph();
+        graph.nodes = HilbertCurve.sort(mapNodes).toArray(new Node[0]);
+        graph.externalIds = new int[graph.nodes.length];
+        for(int i = 0; i < graph.nodes.length; i++){
+            graph.nodes[i].setGraphIndex(i);
+            graph.externalIds[i] = graph.nodes[i].getID();
+        }
+        Integer[] byId = new Integer[graph.nodes.length];
+        for(int i = 0; i < byId.length; i++) byId[i] = i;
+        Arrays.sort(byId, Comparator.comparingInt(i -> graph.externalIds[i]));
+        graph.sortedIds = new int[byId.length];
+        graph.idIndices = new int[byId.length];
+        for(int i = 0; i < byId.length; i++){
+            graph.sortedIds[i] = graph.externalIds[byId[i]];
+            graph.idIndices[i] = byId[i];
+        }
+
+        //Outgoing segments of each node followed by any one way segments it can be left by against their direction
+        List<List<Segment>> outgoing = new ArrayList<>();
+        int edgeCount = 0;
+        for(Node node : graph.nodes){
+            List<Segment> segments = new ArrayList<>(node.getOutgoingSegments());
+            for(Segment segment : node.getIncomingSegments()){
+                if(segment.getRoad().getDirection() == Direction.ONE && accessMask(segment.getRoad(), true) != 0){
+                    segments.add(segment.reverse());
+                }
+            }
+            outgoing.add(segments);
+            edgeCount += segments.size();
+        }
+
+        graph.firstOut = new int[graph.nodes.length + 1];
+        graph.head = new int[edgeCount];
+        graph.tail = new int[edgeCount];
+        graph.segments = new Segment[edgeCount];
+        graph.lengths = new float[edgeCount];
+        graph.access = new byte[edgeCount];
+        graph.closed = new boolean[edgeCount];
+        graph.speeds = new float[edgeCount];
+        Arrays.fill(graph.speeds, Float.NaN);
+
+        int edge = 0;
+        for(int u = 0; u < graph.nodes.length; u++){
+            graph.firstOut[u] = edge;
+            int forwardCount = graph.nodes[u].getOutgoingSegments().size();
+            List<Segment> segments = outgoing.get(u);
+            for(int i = 0; i < segments.size(); i++){
+                Segment segment = segments.get(i);
+                graph.tail[edge] = u;
+                graph.head[edge] = segment.getEnd().getGraphIndex();
+                graph.segments[edge] = segment;
+                graph.lengths[edge] = (float) segment.getLength();
+                graph.access[edge] = (byte) accessMask(segment.getRoad(), i >= forwardCount);
+                edge++;
+            }
+        }
+        graph.firstOut[graph.nodes.length] = edge;
+
+        //Counting sort the edges by head to get the reverse adjacency
+        graph.firstIn = new int[graph.nodes.length + 1];
+        for(int e = 0; e < edgeCount; e++){
+            graph.firstIn[graph.head[e] + 1]++;
+        }
+        for(int v = 0; v < graph.nodes.length; v++){
+            graph.firstIn[v + 1] += graph.firstIn[v];
+        }
+        graph.inEdges = new int[edgeCount];
+        int[] fill = Arrays.copyOf(graph.firstIn, graph.nodes.length);
+        for(int e = 0; e < edgeCount; e++){
+            graph.inEdges[fill[graph.head[e]]++] = e;
+        }
+        return graph;
+    }
+
+    /**
+     * Works out which travel modes may use a road
+     * @param road              The road
+     * @param againstOneWay     Whether the edge goes against the direction of a one way road
+     * @return                  The mask of the allowed modes
+     */
+    private static int accessMask(Road road, boolean againstOneWay){
+        int mask = 0;
+        for(TravelMode mode : TravelMode.values()){
+            if(mode.allows(road) && !(againstOneWay && mode.followsOneWay())) mask |= mode.getMask();
+        }
+        return mask;
+    }
+
+    /**
+     * @param node  The node to look up
+     * @return      The index of the node in this graph, or -1 if it isn't part of it
+     */
+    public int indexOf(Node node){
+        int index = node.getGraphIndex();
+        if(index >= 0 && index < nodes.length && nodes[index] == node) return index;
+        return indexOfId(node.getID());     //A node another graph was built from last, or an equal copy of one
+    }
+
+    /**
+     * @param id    The ID of a node in the data files
+     * @return      The index of the node in this graph, or -1 if it isn't part of it
+     */
+    public int indexOfId(int id){
+        int position = Arrays.binarySearch(sortedIds, id);
+        return position < 0 ? -1 : idIndices[position];
+    }
+
+    /**
+     * @param index The index of a node in this graph
+     * @return      The ID of the node in the data files
+     */
+    public int getExternalId(int index){
+        return externalIds[index];
+    }
+
+    public Node getNode(int index){
+        return nodes[index];
+    }
+
+    public int getNodeCount(){
+        return nodes.length;
+    }
+
+    public int getEdgeCount(){
+        return head.length;
+    }
+
+    /**
+     * @return The first outgoing edge id of the node
+     */
+    public int firstOut(int node){
+        return firstOut[node];
+    }
+
+    /**
+     * @return One past the last outgoing edge id of the node
+     */
+    public int endOut(int node){
+        return firstOut[node + 1];
+    }
+
+    /**
+     * @return The position in the incoming edge list of the first incoming edge of the node
+     */
+    public int firstIn(int node){
+        return firstIn[node];
+    }
+
+    /**
+     * @return One past the position of the last incoming edge of the node
+     */
+    public int endIn(int node){
+        return firstIn[node + 1];
+    }
+
+    /**
+     * @param position  A position in the incoming edge list, between firstIn and endIn
+     * @return          The edge id at that position
+     */
+    public int inEdge(int position){
+        return inEdges[position];
+    }
+
+    public int getHead(int edge){
+        return head[edge];
+    }
+
+    public int getTail(int edge){
+        return tail[edge];
+    }
+
+    public Segment getSegment(int edge){
+        return segments[edge];
+    }
+
+    public float getLength(int edge){
+        return lengths[edge];
+    }
+
+    /**
+     * @return The mask of the TravelModes allowed to use the edge
+     */
+    public int getAccess(int edge){
+        return access[edge];
+    }
+
+    /**
+     * Finds the edges running along a segment of road, in both directions
+     * @param segment   The segment
+     * @return          The edge ids
+     */
+    public List<Integer> getEdges(Segment segment){
+        List<Integer> edges = new ArrayList<>();
+        for(Node end : new Node[]{segment.getStart(), segment.getEnd()}){
+            int node = indexOf(end);
+            if(node == -1) continue;
+            for(int edge = firstOut(node); edge < endOut(node); edge++){
+                Segment other = segments[edge];
+                if(other.getRoad() == segment.getRoad() && (other.getEnd() == segment.getStart() || other.getEnd() == segment.getEnd())
+                        && other.getEnd() != end){
+                    edges.add(edge);
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Closes or reopens an edge, closed edges can't be used by any mode of travel
+     */
+    public void setClosed(int edge, boolean closed){
+        this.closed[edge] = closed;
+        version++;
+    }
+
+    public boolean isClosed(int edge){
+        return closed[edge];
+    }
+
+    /**
+     * Sets the speed traffic is moving along an edge
+     * @param edge  The edge
+     * @param speed The speed in km/h, NaN to go back to the speed limit
+     */
+    public void setSpeed(int edge, float speed){
+        speeds[edge] = speed;
+        version++;
+    }
+
+    /**
+     * @return The speed set for the edge in km/h, NaN if it hasn't been changed from the speed limit
+     */
+    public float getSpeed(int edge){
+        return speeds[edge];
+    }
+
+    /**
+     * @return A number that changes every time an edge is closed, reopened or changes speed
+     */
+    public int getVersion(){
+        return version;
+    }
+
+    /**
+     * @param edge  The edge
+     * @param mode  The mode of travel
+     * @return      Whether the mode is allowed to use the edge
+     */
+    public boolean allows(int edge, TravelMode mode){
+        return (access[edge] & mode.getMask()) != 0;
+    }
+}
@@ -0,0 +1,123 @@
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * How much work one A* search did: the states it settled, the edges it relaxed, what went in and out of the heap, how
+ * big the frontier got and how long it took, along with the order nodes were settled in so the search space can be
+ * drawn over the map. Only collected when a SearchStats is passed to AStarManager.pathfind, a search without one does
+ * no counting at all.
+ * <p>
+ * The frontier is a NodeHeap, which lowers the key of a state already in it rather than adding it a second time, so
+ * there are never stale entries to skip when polling. Those in place updates are counted as decrease keys instead,
+ * each is an entry a heap without decrease key would have had to skip later.
+ */
+public class SearchStats {
+
+    private static final int NODE_SIZE = 4;
+
+    private RoutingGraph graph;
+    private int settled;
+    private int relaxed;
+    private int pushes;
+    private int decreaseKeys;
+    private int pops;
+    private int peakFrontier;
+    private long time;
+    private int[] settleOrder = new int[64];    //Graph node of each settled state, in the order they were settled
+
+    public SearchStats(RoutingGraph graph) {
+        this.graph = graph;
+    }
+
+    void settle(int node){
+        if(settled == settleOrder.length) settleOrder = Arrays.copyOf(settleOrder, 2 * settled);
+        settleOrder[settled++] = node;
+    }
+
+    void relax(){
+        relaxed++;
+    }
+
+    void push(int frontierSize){
+        pushes++;
+        if(frontierSize > peakFrontier) peakFrontier = frontierSize;
+    }
+
+    void decreaseKey(){
+        decreaseKeys++;
+    }
+
+    void pop(){
+        pops++;
+    }
+
+    void setTime(long time){
+        this.time = time;
+    }
+
+    /**
+     * Draws every node the search settled, going from blue for the first settled through to red for the last
+     * @param g         The graphics pane in which to render to
+     * @param scale     The numbers of pixels per kilometer
+     * @param origin    The origin of the rendering
+     */
+    public void redraw(Graphics g, double scale, Location origin){
+        Rectangle bounds = g.getClipBounds();
+        for(int i = 0; i < settled; i++){
+            Point point = graph.getNode(settleOrder[i]).getLocation().asPoint(origin, scale);
+            if(bounds != null && !bounds.contains(point)) continue;
+            float order = settled == 1 ? 0 : (float) i / (settled - 1);
+            g.setColor(Color.getHSBColor(0.66f * (1 - order), 1, 1));
+            g.fillOval(point.x - NODE_SIZE / 2, point.y - NODE_SIZE / 2, NODE_SIZE, NODE_SIZE);
+        }
+    }
+
+    /**
+     * @return The number of states settled, a node can be settled once per way of arriving at it when turns matter
+     */
+    public int getSettled(){
+        return settled;
+    }
+
+    /**
+     * @return The number of edges relaxed, those allowed for the mode and turn that lead to an unsettled state
+     */
+    public int getRelaxed(){
+        return relaxed;
+    }
+
+    /**
+     * @return The number of states added to the heap
+     */
+    public int getPushes(){
+        return pushes;
+    }
+
+    /**
+     * @return The number of times a state already in the heap had its key lowered
+     */
+    public int getDecreaseKeys(){
+        return decreaseKeys;
+    }
+
+    /**
+     * @return The number of states taken off the heap
+     */
+    public int getPops(){
+        return pops;
+    }
+
+    /**
+     * @return The most states that were in the heap at once
+     */
+    public int getPeakFrontier(){
+        return peakFrontier;
+    }
+
+    /**
+     * @return How long the search took in nanoseconds
+     */
+    public long getTime(){
+        return time;
+    }
+}
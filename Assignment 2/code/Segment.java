@@ -1,39 +1,41 @@
-import java.awt.*;
-import java.util.List;
 import java.util.Objects;
 
 public class Segment{
 	private Road road;
-	private List<Location> coords;      //Coordinates that the segment runs through, used for rendering
+	private GeometryStore geometry;     //Holds the coordinates that the segment runs through
+	private int polyline;               //The segment's polyline in the geometry store, from start to end as loaded
 	private double length;
 	private Node start;
 	private Node end;
 
-	public Segment(Road road, List<Location> coords, double length, Node start, Node end){
+	public Segment(Road road, GeometryStore geometry, int polyline, double length, Node start, Node end){
 		this.road = road;
-		this.coords = coords;
+		this.geometry = geometry;
+		this.polyline = polyline;
 		this.length = length;
 		this.start = start;
 		this.end = end;
 	}
 
 	/**
-	 * Draws the segment to the given graphics pane, based off the scale and origin provided. The the selected boolean
-	 * is true then we render the segment as red as it has been selected as part of a road by the user.
-	 * @param g         The graphics pane in which to render to
-	 * @param scale     The numbers of pixels per kilometer
-	 * @param origin    The origin of the rendering
-	 * @param selected  Whether or not the road has been selected
+	 * @return A copy of this segment going the other way, sharing the same coordinates
 	 */
-	public void redraw(Graphics g, double scale, Location origin, boolean selected, boolean partOfPath){
-		//Ensures that the polygon is actually visible in the graphics pane, if it isn't then we don't want to render it.
-		if(g.getClipBounds().contains(start.getLocation().asPoint(origin, scale)) || g.getClipBounds().contains(end.getLocation().asPoint(origin, scale))){
-			g.setColor(selected ? Color.RED : partOfPath ? Color.BLUE : Color.BLACK);
-			for(int i = 0; i < coords.size() - 1; i++){
-				g.drawLine(coords.get(i).asPoint(origin, scale).x, coords.get(i).asPoint(origin, scale).y,
-						coords.get(i + 1).asPoint(origin, scale).x, coords.get(i + 1).asPoint(origin, scale).y);
-			}
-		}
+	public Segment reverse(){
+		return new Segment(road, geometry, polyline, length, end, start);
+	}
+
+	/**
+	 * @return The store holding the segment's coordinates
+	 */
+	public GeometryStore getGeometry(){
+		return geometry;
+	}
+
+	/**
+	 * @return The segment's polyline in the geometry store, running from the start of the segment as it was loaded
+	 */
+	public int getPolyline(){
+		return polyline;
 	}
 
 	/**
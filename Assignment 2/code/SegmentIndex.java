@@ -0,0 +1,251 @@
+import java.util.*;
+
+/**
+ * A static R-tree (a BoxTree) over the bounding boxes of road segments' polylines, for finding the nearest point on a
+ * road to a location.
+ * <p>
+ * Nearest searches are branch and bound: boxes are visited closest first and skipped once they are further away than
+ * the best segment found so far, and segments are measured exactly against every line of their polyline. Searches
+ * are thread safe.
+ */
+public class SegmentIndex {
+
+    private Segment[] segments;         //In leaf order
+    private BoxTree tree;
+    private long buildTime;
+
+    private ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[2][64]);   //Decoded polylines
+
+    /**
+     * A point on a segment found by a search
+     */
+    public static class Projection {
+        private Segment segment;
+        private Location location;
+        private double fraction;
+        private double distance;
+
+        Projection(Segment segment, Location location, double fraction, double distance) {
+            this.segment = segment;
+            this.location = location;
+            this.fraction = fraction;
+            this.distance = distance;
+        }
+
+        public Segment getSegment(){
+            return segment;
+        }
+
+        /**
+         * @return The closest point on the segment
+         */
+        public Location getLocation(){
+            return location;
+        }
+
+        /**
+         * @return How far along the segment the point is, from 0 at its start to 1 at its end
+         */
+        public double getFraction(){
+            return fraction;
+        }
+
+        /**
+         * @return The distance in km from the location searched to the point
+         */
+        public double getDistance(){
+            return distance;
+        }
+    }
+
+    /**
+     * Builds the index
+     * @param roadSegments  The segments to index, only one direction of each two way segment is needed
+     */
+    public SegmentIndex(Collection<Segment> roadSegments) {
+        long startTime = System.currentTimeMillis();
+        int count = roadSegments.size();
+        Segment[] unsorted = roadSegments.toArray(new Segment[0]);
+        float[] leafBoxes = new float[4 * count];
+        for(int i = 0; i < count; i++){
+            double[][] points = decode(unsorted[i]);
+            int size = unsorted[i].getGeometry().getPointCount(unsorted[i].getPolyline());
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for(int p = 0; p < size; p++){
+                minX = Math.min(minX, (float) points[0][p]);
+                minY = Math.min(minY, (float) points[1][p]);
+                maxX = Math.max(maxX, (float) points[0][p]);
+                maxY = Math.max(maxY, (float) points[1][p]);
+            }
+            leafBoxes[4 * i] = minX;
+            leafBoxes[4 * i + 1] = minY;
+            leafBoxes[4 * i + 2] = maxX;
+            leafBoxes[4 * i + 3] = maxY;
+        }
+
+        tree = new BoxTree(leafBoxes);
+        segments = new Segment[count];
+        for(int i = 0; i < count; i++){
+            segments[i] = unsorted[tree.getItem(i)];
+        }
+        buildTime = System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Finds the closest point on any segment to a location
+     * @param location      The location
+     * @param maxDistance   How far away in km to look, infinity for no limit
+     * @return              The closest point, null if no segment is within maxDistance
+     */
+    public Projection nearest(Location location, double maxDistance){
+        if(segments.length == 0) return null;
+        Nearest search = new Nearest(location, maxDistance);
+        search.visit(tree.getRootLevel(), 0);
+        return search.best == -1 ? null : project(segments[search.best], location);
+    }
+
+    /**
+     * Finds every segment within a distance of a location, with the closest point on each
+     * @param location  The location
+     * @param radius    The distance in km
+     * @return          The points, closest first
+     */
+    public List<Projection> withinRadius(Location location, double radius){
+        List<Projection> found = new ArrayList<>();
+        if(segments.length > 0) collect(tree.getRootLevel(), 0, location, radius, found);
+        found.sort(Comparator.comparingDouble(Projection::getDistance));
+        return found;
+    }
+
+    private void collect(int level, int box, Location location, double radius, List<Projection> found){
+        if(tree.distance(level, box, location.x, location.y) > radius) return;
+        if(level == 0){
+            Projection projection = project(segments[box], location);
+            if(projection.distance <= radius) found.add(projection);
+            return;
+        }
+        for(int child = tree.firstChild(box); child < tree.endChild(level, box); child++){
+            collect(level - 1, child, location, radius, found);
+        }
+    }
+
+    /**
+     * A branch and bound search for the nearest segment
+     */
+    private class Nearest {
+        private Location location;
+        private double bestDistance;
+        private int best = -1;
+
+        Nearest(Location location, double maxDistance) {
+            this.location = location;
+            this.bestDistance = maxDistance;
+        }
+
+        void visit(int level, int box){
+            if(level == 0){
+                double distance = distance(segments[box], location);
+                if(distance <= bestDistance){
+                    bestDistance = distance;
+                    best = box;
+                }
+                return;
+            }
+
+            //Visit the children closest first, so the bound tightens as early as possible
+            int first = tree.firstChild(box);
+            int end = tree.endChild(level, box);
+            long[] byDistance = new long[end - first];
+            for(int child = first; child < end; child++){
+                float distance = (float) tree.distance(level - 1, child, location.x, location.y);
+                byDistance[child - first] = ((long) Float.floatToIntBits(distance) << 32) | child;
+            }
+            Arrays.sort(byDistance);    //Non negative floats order the same as their bits
+            for(long entry : byDistance){
+                if(Float.intBitsToFloat((int) (entry >>> 32)) > bestDistance) break;
+                visit(level - 1, (int) entry);
+            }
+        }
+    }
+
+    /**
+     * @return The shortest distance from the location to any line of the segment's polyline
+     */
+    private double distance(Segment segment, Location location){
+        double[][] points = decode(segment);
+        int size = segment.getGeometry().getPointCount(segment.getPolyline());
+        double closest = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < size - 1; i++){
+            double t = along(points, i, location);
+            double x = points[0][i] + t * (points[0][i + 1] - points[0][i]);
+            double y = points[1][i] + t * (points[1][i + 1] - points[1][i]);
+            closest = Math.min(closest, MathUtil.distance(x, y, location.x, location.y));
+        }
+        if(size == 1) closest = MathUtil.distance(points[0][0], points[1][0], location.x, location.y);
+        return closest;
+    }
+
+    /**
+     * Works out the closest point on a segment to a location and how far along the segment it is
+     */
+    private Projection project(Segment segment, Location location){
+        double[][] points = decode(segment);
+        int size = segment.getGeometry().getPointCount(segment.getPolyline());
+        double closest = Double.POSITIVE_INFINITY;
+        double bestX = points[0][0], bestY = points[1][0], bestAlong = 0;
+        double travelled = 0;
+        for(int i = 0; i < size - 1; i++){
+            double lineLength = MathUtil.distance(points[0][i], points[1][i], points[0][i + 1], points[1][i + 1]);
+            double t = along(points, i, location);
+            double x = points[0][i] + t * (points[0][i + 1] - points[0][i]);
+            double y = points[1][i] + t * (points[1][i + 1] - points[1][i]);
+            double distance = MathUtil.distance(x, y, location.x, location.y);
+            if(distance < closest){
+                closest = distance;
+                bestX = x;
+                bestY = y;
+                bestAlong = travelled + t * lineLength;
+            }
+            travelled += lineLength;
+        }
+        if(size == 1) closest = MathUtil.distance(bestX, bestY, location.x, location.y);
+        return new Projection(segment, new Location(bestX, bestY), travelled == 0 ? 0 : bestAlong / travelled, closest);
+    }
+
+    /**
+     * @return How far along line i of the polyline the closest point to the location is, from 0 to 1
+     */
+    private static double along(double[][] points, int i, Location location){
+        double dX = points[0][i + 1] - points[0][i];
+        double dY = points[1][i + 1] - points[1][i];
+        double lengthSquared = dX * dX + dY * dY;
+        if(lengthSquared == 0) return 0;
+        return MathUtil.constrain(((location.x - points[0][i]) * dX + (location.y - points[1][i]) * dY) / lengthSquared, 0, 1);
+    }
+
+    /**
+     * Decodes a segment's polyline into this thread's scratch arrays
+     */
+    private double[][] decode(Segment segment){
+        double[][] points = scratch.get();
+        int size = segment.getGeometry().getPointCount(segment.getPolyline());
+        if(points[0].length < size){
+            points = new double[][]{new double[2 * size], new double[2 * size]};
+            scratch.set(points);
+        }
+        segment.getGeometry().decode(segment.getPolyline(), points[0], points[1]);
+        return points;
+    }
+
+    public int getSegmentCount(){
+        return segments.length;
+    }
+
+    /**
+     * @return How long building the index took in milliseconds
+     */
+    public long getBuildTime(){
+        return buildTime;
+    }
+}
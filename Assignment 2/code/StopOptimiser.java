@@ -0,0 +1,217 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Orders a set of stops into a short round trip (a small travelling salesman problem) using a precomputed
+ * TravelMatrix. Tours start from a nearest neighbour construction and are then improved with 2-opt and Or-opt moves
+ * until no move helps or the time budget runs out. Several randomised restarts are run in parallel and the best tour
+ * is kept. The matrix doesn't need to be symmetric, one way roads are accounted for when reversing part of a tour.
+ */
+public class StopOptimiser {
+
+    private static final double UNREACHABLE_COST = 1e6;    //Cost used for pairs with no path so they are avoided
+    private static final double EPSILON = 1e-9;
+    private static final int OR_OPT_MAX_LENGTH = 3;
+    private static final int RANDOM_CANDIDATES = 3;         //How many of the nearest stops a randomised restart picks from
+
+    /**
+     * Finds a short round trip visiting every stop of the matrix. Stop 0 is treated as the depot, the tour starts
+     * and ends there.
+     * @param matrix        A square matrix of travel costs between the stops
+     * @param timeBudget    How long to spend improving tours, in milliseconds
+     * @param restarts      How many tours to build and improve (run in parallel)
+     * @return              The stop indices in visiting order, starting with 0
+     */
+    public static int[] optimise(TravelMatrix matrix, long timeBudget, int restarts){
+        int size = matrix.getRows();
+        if(size <= 2) return IntStream.range(0, size).toArray();
+
+        double[][] costs = new double[size][size];
+        for(int i = 0; i < size; i++){
+            for(int j = 0; j < size; j++){
+                float cost = matrix.get(i, j);
+                costs[i][j] = Float.isInfinite(cost) ? UNREACHABLE_COST : cost;
+            }
+        }
+
+        long deadline = System.nanoTime() + timeBudget * 1_000_000;
+        return IntStream.range(0, Math.max(1, restarts)).parallel()
+                .mapToObj(restart -> {
+                    int[] tour = nearestNeighbour(costs, restart == 0 ? null : new Random(restart));
+                    improve(tour, costs, deadline);
+                    return tour;
+                })
+                .min(Comparator.comparingDouble(tour -> tourCost(tour, costs)))
+                .get();
+    }
+
+    /**
+     * @param tour      The stop indices in visiting order
+     * @param matrix    The matrix of travel costs
+     * @return          The total cost of the round trip, infinity if a leg has no path
+     */
+    public static double tourCost(int[] tour, TravelMatrix matrix){
+        double cost = 0;
+        for(int i = 0; i < tour.length; i++){
+            cost += matrix.get(tour[i], tour[(i + 1) % tour.length]);
+        }
+        return cost;
+    }
+
+    private static double tourCost(int[] tour, double[][] costs){
+        double cost = 0;
+        for(int i = 0; i < tour.length; i++){
+            cost += costs[tour[i]][tour[(i + 1) % tour.length]];
+        }
+        return cost;
+    }
+
+    /**
+     * Builds a tour by always travelling to the closest unvisited stop. If random is provided then one of the few
+     * closest stops is picked at random instead, giving each restart a different starting tour.
+     * @param costs     The matrix of travel costs
+     * @param random    The random source, or null for the plain nearest neighbour tour
+     * @return          The tour built
+     */
+    private static int[] nearestNeighbour(double[][] costs, Random random){
+        int size = costs.length;
+        int[] tour = new int[size];
+        boolean[] visited = new boolean[size];
+        visited[0] = true;
+        for(int position = 1; position < size; position++){
+            int current = tour[position - 1];
+            int[] candidates = new int[RANDOM_CANDIDATES];
+            Arrays.fill(candidates, -1);
+            for(int stop = 0; stop < size; stop++){
+                if(visited[stop]) continue;
+                //Insert the stop into the sorted list of closest candidates
+                for(int k = 0; k < candidates.length; k++){
+                    if(candidates[k] == -1 || costs[current][stop] < costs[current][candidates[k]]){
+                        System.arraycopy(candidates, k, candidates, k + 1, candidates.length - k - 1);
+                        candidates[k] = stop;
+                        break;
+                    }
+                }
+            }
+            int available = 0;
+            while(available < candidates.length && candidates[available] != -1) available++;
+            int next = random == null ? candidates[0] : candidates[random.nextInt(available)];
+            tour[position] = next;
+            visited[next] = true;
+        }
+        return tour;
+    }
+
+    /**
+     * Repeatedly applies improving 2-opt and Or-opt moves until neither finds one or the deadline passes.
+     * @param tour      The tour to improve, modified in place
+     * @param costs     The matrix of travel costs
+     * @param deadline  The System.nanoTime at which to stop
+     */
+    private static void improve(int[] tour, double[][] costs, long deadline){
+        boolean improved = true;
+        while(improved && System.nanoTime() < deadline){
+            improved = twoOpt(tour, costs, deadline) | orOpt(tour, costs);
+        }
+    }
+
+    /**
+     * Reverses sections of the tour while doing so makes it shorter. Because the costs may not be symmetric the
+     * reversed section costs something different to travel, prefix sums of the forward and backward leg costs let
+     * each move be evaluated in constant time.
+     * @return Whether the tour was improved
+     */
+    private static boolean twoOpt(int[] tour, double[][] costs, long deadline){
+        int size = tour.length;
+        double[] forward = new double[size];    //forward[k] = cost of legs tour[0] -> ... -> tour[k]
+        double[] backward = new double[size];   //backward[k] = cost of legs tour[k] -> ... -> tour[0]
+        boolean improvedAny = false;
+        boolean improved = true;
+        while(improved && System.nanoTime() < deadline){
+            improved = false;
+            for(int k = 1; k < size; k++){
+                forward[k] = forward[k - 1] + costs[tour[k - 1]][tour[k]];
+                backward[k] = backward[k - 1] + costs[tour[k]][tour[k - 1]];
+            }
+
+            search:
+            for(int i = 1; i < size - 1; i++){
+                int before = tour[i - 1];
+                int first = tour[i];
+                for(int j = i + 1; j < size; j++){
+                    int last = tour[j];
+                    int after = tour[(j + 1) % size];
+                    double delta = costs[before][last] + costs[first][after] - costs[before][first] - costs[last][after]
+                            + (backward[j] - backward[i]) - (forward[j] - forward[i]);
+                    if(delta < -EPSILON){
+                        reverse(tour, i, j);
+                        improved = true;
+                        improvedAny = true;
+                        break search;
+                    }
+                }
+            }
+        }
+        return improvedAny;
+    }
+
+    /**
+     * Moves short runs of up to three stops to a better place in the tour, keeping their order.
+     * @return Whether the tour was improved
+     */
+    private static boolean orOpt(int[] tour, double[][] costs){
+        int size = tour.length;
+        boolean improvedAny = false;
+        for(int length = 1; length <= OR_OPT_MAX_LENGTH; length++){
+            for(int i = 1; i + length - 1 < size; i++){
+                int first = tour[i];
+                int last = tour[i + length - 1];
+                int before = tour[i - 1];
+                int after = tour[(i + length) % size];
+                double removeGain = costs[before][first] + costs[last][after] - costs[before][after];
+
+                for(int p = 0; p < size; p++){
+                    if(p >= i - 1 && p <= i + length - 1) continue;     //Inserting next to itself changes nothing
+                    int from = tour[p];
+                    int to = tour[(p + 1) % size];
+                    double insertCost = costs[from][first] + costs[last][to] - costs[from][to];
+                    if(insertCost - removeGain < -EPSILON){
+                        moveRun(tour, i, length, p);
+                        improvedAny = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return improvedAny;
+    }
+
+    private static void reverse(int[] tour, int i, int j){
+        while(i < j){
+            int temp = tour[i];
+            tour[i++] = tour[j];
+            tour[j--] = temp;
+        }
+    }
+
+    /**
+     * Moves the run of stops starting at position i so that it sits after the stop currently at position p.
+     */
+    private static void moveRun(int[] tour, int i, int length, int p){
+        int[] run = Arrays.copyOfRange(tour, i, i + length);
+        List<Integer> rest = new ArrayList<>();
+        int insertAfter = -1;
+        for(int k = 0; k < tour.length; k++){
+            if(k >= i && k < i + length) continue;
+            rest.add(tour[k]);
+            if(k == p) insertAfter = rest.size() - 1;
+        }
+        int index = 0;
+        for(int k = 0; k < rest.size(); k++){
+            tour[index++] = rest.get(k);
+            if(k == insertAfter){
+                for(int stop : run) tour[index++] = stop;
+            }
+        }
+    }
+}
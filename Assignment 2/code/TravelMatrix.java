@@ -0,0 +1,87 @@
+import java.io.*;
+
+/**
+ * A dense matrix of travel costs between a list of source nodes and a list of target nodes. Values are stored row
+ * major in a single float array, unreachable pairs are infinity.
+ */
+public class TravelMatrix {
+
+    private int[] sourceIDs;
+    private int[] targetIDs;
+    private float[] values;
+
+    public TravelMatrix(int[] sourceIDs, int[] targetIDs) {
+        this.sourceIDs = sourceIDs;
+        this.targetIDs = targetIDs;
+        this.values = new float[sourceIDs.length * targetIDs.length];
+    }
+
+    /**
+     * @param row       The source index
+     * @param column    The target index
+     * @return          The cost of travelling from the source to the target
+     */
+    public float get(int row, int column){
+        return values[row * targetIDs.length + column];
+    }
+
+    public void set(int row, int column, float value){
+        values[row * targetIDs.length + column] = value;
+    }
+
+    public int getRows(){
+        return sourceIDs.length;
+    }
+
+    public int getColumns(){
+        return targetIDs.length;
+    }
+
+    /**
+     * @return The node IDs of the sources, in row order
+     */
+    public int[] getSourceIDs(){
+        return sourceIDs;
+    }
+
+    /**
+     * @return The node IDs of the targets, in column order
+     */
+    public int[] getTargetIDs(){
+        return targetIDs;
+    }
+
+    /**
+     * Writes the matrix to a binary file. The layout is the row and column counts, the source IDs, the target IDs
+     * and then the values row by row, all big endian.
+     * @param file  The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void write(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            out.writeInt(sourceIDs.length);
+            out.writeInt(targetIDs.length);
+            for(int id : sourceIDs) out.writeInt(id);
+            for(int id : targetIDs) out.writeInt(id);
+            for(float value : values) out.writeFloat(value);
+        }
+    }
+
+    /**
+     * Reads a matrix previously written with write
+     * @param file  The file to read from
+     * @return      The matrix read
+     * @throws IOException If the file couldn't be read
+     */
+    public static TravelMatrix read(File file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            int[] sourceIDs = new int[in.readInt()];
+            int[] targetIDs = new int[in.readInt()];
+            for(int i = 0; i < sourceIDs.length; i++) sourceIDs[i] = in.readInt();
+            for(int i = 0; i < targetIDs.length; i++) targetIDs[i] = in.readInt();
+            TravelMatrix matrix = new TravelMatrix(sourceIDs, targetIDs);
+            for(int i = 0; i < matrix.values.length; i++) matrix.values[i] = in.readFloat();
+            return matrix;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The ways of travelling the road network. Each mode has a bit in the access mask kept for every edge of the
+ * RoutingGraph, a top speed and whether it has to follow one way roads.
+ */
+public enum TravelMode{
+    CAR (1, Double.POSITIVE_INFINITY, true),
+    PEDESTRIAN (2, 5, false),
+    BICYCLE (4, 20, true);
+
+    private int mask;
+    private double maxSpeed;        //km/h, roads with higher limits are travelled at this speed
+    private boolean followsOneWay;
+
+    TravelMode(int mask, double maxSpeed, boolean followsOneWay){
+        this.mask = mask;
+        this.maxSpeed = maxSpeed;
+        this.followsOneWay = followsOneWay;
+    }
+
+    /**
+     * @param road  The road
+     * @return      Whether this mode of travel is allowed on the road
+     */
+    public boolean allows(Road road){
+        switch(this){
+            case CAR:
+                return road.isForCar();
+            case PEDESTRIAN:
+                return road.isForPedestrians();
+            default:
+                return road.isForBicycles();
+        }
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public boolean followsOneWay() {
+        return followsOneWay;
+    }
+
+    /**
+     * @return Whether this mode has to obey turn restrictions, which like one way roads only apply to vehicles
+     */
+    public boolean followsTurnRestrictions() {
+        return followsOneWay;
+    }
+
+    @Override
+    public String toString(){
+        return name().charAt(0) + name().substring(1).toLowerCase();
+    }
+}
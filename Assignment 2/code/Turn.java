@@ -0,0 +1,30 @@
+/**
+ * The kinds of turn that can be made when passing through an intersection, used to give turns a cost. New Zealand
+ * drives on the left, so right turns are the ones that cross oncoming traffic.
+ */
+public enum Turn{
+    STRAIGHT,
+    LEFT,
+    RIGHT,
+    U_TURN;
+
+    private static final double STRAIGHT_ANGLE = Math.toRadians(30);   //Changes of direction smaller than this are straight on
+    private static final double U_TURN_ANGLE = Math.toRadians(160);    //Changes of direction larger than this are U-turns
+
+    /**
+     * Works out which way a turn goes from the direction travelled into and out of an intersection
+     * @param from  Where the incoming edge started
+     * @param via   The intersection
+     * @param to    Where the outgoing edge ends
+     * @return      The kind of turn
+     */
+    public static Turn between(Location from, Location via, Location to){
+        if(from.equals(to)) return U_TURN;
+        double inX = via.x - from.x, inY = via.y - from.y;
+        double outX = to.x - via.x, outY = to.y - via.y;
+        double angle = Math.atan2(inX * outY - inY * outX, inX * outX + inY * outY);     //Positive is anticlockwise
+        if(Math.abs(angle) < STRAIGHT_ANGLE) return STRAIGHT;
+        if(Math.abs(angle) > U_TURN_ANGLE) return U_TURN;
+        return angle > 0 ? LEFT : RIGHT;
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.*;
+
+/**
+ * A turn expanded view of a RoutingGraph, used so searches can obey any number of turn restrictions at an
+ * intersection and charge for turns. Searching the plain graph can't do this correctly as the cost of leaving a node
+ * depends on which edge it was reached by, so a node reached along two different edges needs two labels.
+ * <p>
+ * To keep memory down only some intersections are expanded. A search state is either a node of the graph that isn't
+ * expanded (state id = node index), or an expanded node paired with the edge it was arrived along (state ids after
+ * the nodes, one per incoming edge). Expanded nodes keep their plain state for starting a search from, where no turn
+ * has been made yet. Only intersections with restrictions are expanded unless turn costs are wanted, in which case
+ * every node is as any turn might have a cost.
+ */
+public class TurnGraph {
+
+    private RoutingGraph graph;
+    private boolean turnCosts;
+
+    private int stateCount;
+    private int[] firstState;       //First expanded state of each node, or -1 if the node isn't expanded
+    private int[] arrivalStates;    //Edge -> state reached by travelling along it
+    private int[] stateEdges;       //Expanded state - node count -> edge arrived along
+    private long[] bannedTurns;     //Sorted (from edge, to edge) pairs that are not allowed
+
+    private TurnGraph(){ }
+
+    /**
+     * Builds the turn expanded graph from the restrictions stored on the nodes of the routing graph.
+     * @param graph         The graph to expand
+     * @param turnCosts     Whether turns will be charged for, which means expanding every node
+     * @return              The built graph
+     */
+    public static TurnGraph build(RoutingGraph graph, boolean turnCosts){
+        TurnGraph turnGraph = new TurnGraph();
+        turnGraph.graph = graph;
+        turnGraph.turnCosts = turnCosts;
+
+        int nodeCount = graph.getNodeCount();
+        turnGraph.firstState = new int[nodeCount];
+        int stateCount = nodeCount;
+        for(int v = 0; v < nodeCount; v++){
+            boolean expand = turnCosts || graph.getNode(v).hasRestrictions();
+            turnGraph.firstState[v] = expand ? stateCount : -1;
+            if(expand) stateCount += graph.endIn(v) - graph.firstIn(v);
+        }
+        turnGraph.stateCount = stateCount;
+
+        turnGraph.arrivalStates = new int[graph.getEdgeCount()];
+        turnGraph.stateEdges = new int[stateCount - nodeCount];
+        List<Long> banned = new ArrayList<>();
+        for(int v = 0; v < nodeCount; v++){
+            if(turnGraph.firstState[v] == -1){
+                for(int position = graph.firstIn(v); position < graph.endIn(v); position++){
+                    turnGraph.arrivalStates[graph.inEdge(position)] = v;
+                }
+                continue;
+            }
+
+            Node via = graph.getNode(v);
+            for(int position = graph.firstIn(v); position < graph.endIn(v); position++){
+                int inEdge = graph.inEdge(position);
+                int state = turnGraph.firstState[v] + position - graph.firstIn(v);
+                turnGraph.arrivalStates[inEdge] = state;
+                turnGraph.stateEdges[state - nodeCount] = inEdge;
+
+                if(!via.hasRestrictions()) continue;
+                Node from = graph.getNode(graph.getTail(inEdge));
+                for(int outEdge = graph.firstOut(v); outEdge < graph.endOut(v); outEdge++){
+                    if(via.isRestricted(from, graph.getNode(graph.getHead(outEdge)))){
+                        banned.add(((long) inEdge << 32) | outEdge);
+                    }
+                }
+            }
+        }
+
+        turnGraph.bannedTurns = new long[banned.size()];
+        for(int i = 0; i < turnGraph.bannedTurns.length; i++){
+            turnGraph.bannedTurns[i] = banned.get(i);
+        }
+        Arrays.sort(turnGraph.bannedTurns);
+        return turnGraph;
+    }
+
+    /**
+     * @param node  A node index of the graph
+     * @return      The state to start a search at the node from
+     */
+    public int startState(int node){
+        return node;
+    }
+
+    /**
+     * @param edge  An edge of the graph
+     * @return      The state reached by travelling along the edge
+     */
+    public int arrivalState(int edge){
+        return arrivalStates[edge];
+    }
+
+    /**
+     * @param state A search state
+     * @return      The node index the state is at
+     */
+    public int getNode(int state){
+        return state < graph.getNodeCount() ? state : graph.getHead(stateEdges[state - graph.getNodeCount()]);
+    }
+
+    /**
+     * @param state A search state
+     * @return      The edge the state was arrived along, or -1 if it isn't known (no turn will be restricted)
+     */
+    public int getArrivalEdge(int state){
+        return state < graph.getNodeCount() ? -1 : stateEdges[state - graph.getNodeCount()];
+    }
+
+    /**
+     * @param inEdge    The edge arrived along, or -1 if not known
+     * @param outEdge   The edge to leave by
+     * @return          Whether the turn between the two is not allowed
+     */
+    public boolean isBanned(int inEdge, int outEdge){
+        return inEdge != -1 && bannedTurns.length > 0 && Arrays.binarySearch(bannedTurns, ((long) inEdge << 32) | outEdge) >= 0;
+    }
+
+    /**
+     * @param inEdge    The edge arrived along, or -1 if not known
+     * @param outEdge   The edge to leave by
+     * @return          The kind of turn made between the two, straight if the edge arrived along isn't known
+     */
+    public Turn getTurn(int inEdge, int outEdge){
+        if(inEdge == -1) return Turn.STRAIGHT;
+        Node from = graph.getNode(graph.getTail(inEdge));
+        Node via = graph.getNode(graph.getHead(inEdge));
+        Node to = graph.getNode(graph.getHead(outEdge));
+        return from == to ? Turn.U_TURN : Turn.between(from.getLocation(), via.getLocation(), to.getLocation());
+    }
+
+    public RoutingGraph getGraph(){
+        return graph;
+    }
+
+    public int getStateCount(){
+        return stateCount;
+    }
+
+    public int getBannedTurnCount(){
+        return bannedTurns.length;
+    }
+
+    /**
+     * @return Whether every node is expanded so turn costs can be charged
+     */
+    public boolean hasTurnCosts(){
+        return turnCosts;
+    }
+}